@@ -0,0 +1,74 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtree.dist;
+
+import com.github.gumtreediff.actions.ActionGenerator;
+import com.github.gumtreediff.actions.model.Action;
+import com.github.gumtreediff.matchers.CompositeMatchers;
+import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.matchers.Matcher;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
+import com.github.gumtreediff.utils.Pair;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the generation of the edit script alone, the trees being matched once by the classic GumTree.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ActionGeneratorAnalyzer {
+
+    @State(Scope.Benchmark)
+    public static class MatchedTrees {
+
+        @Param({"100", "1000", "10000"})
+        public String corpus;
+
+        public ITree src;
+
+        public ITree dst;
+
+        public MappingStore mappings;
+
+        @Setup
+        public void load() throws Exception {
+            Pair<TreeContext, TreeContext> trees = BenchmarkCorpus.load(corpus);
+            src = trees.getFirst().getRoot();
+            dst = trees.getSecond().getRoot();
+            Matcher m = new CompositeMatchers.ClassicGumtree(src, dst, new MappingStore());
+            m.match();
+            mappings = m.getMappings();
+        }
+    }
+
+    @Benchmark
+    public List<Action> testGenerate(MatchedTrees d) {
+        return new ActionGenerator(d.src, d.dst, d.mappings).generate();
+    }
+}
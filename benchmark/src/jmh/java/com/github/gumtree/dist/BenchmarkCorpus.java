@@ -0,0 +1,130 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtree.dist;
+
+import com.github.gumtreediff.gen.TreeGenerator;
+import com.github.gumtreediff.io.TreeIoUtils;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
+import com.github.gumtreediff.utils.Pair;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tree pairs used by the benchmarks. A corpus is either a number of nodes, in which case a pair of
+ * synthetic trees of this size is built from a fixed seed, or the path of the first tree of a pair
+ * collected by {@link BenchmarkCollector} (the second one having the same path with _v1 instead of _v0).
+ */
+public final class BenchmarkCorpus {
+
+    private static final int TYPES = 40;
+
+    private static final int MAX_CHILDREN = 6;
+
+    private static final double EDIT_RATIO = 0.05D;
+
+    private BenchmarkCorpus() {}
+
+    public static Pair<TreeContext, TreeContext> load(String corpus) throws IOException {
+        if (corpus.matches("[0-9]+"))
+            return synthetic(Integer.parseInt(corpus), corpus.hashCode());
+        String other = corpus.replace("_v0", "_v1");
+        TreeGenerator generator = corpus.endsWith(".gtb") ? TreeIoUtils.fromBinary() : TreeIoUtils.fromXml();
+        return new Pair<>(generator.generateFromFile(corpus), generator.generateFromFile(other));
+    }
+
+    /**
+     * @return a random tree of the given size, and a copy where a fixed ratio of the nodes have
+     *     been renamed, deleted, inserted or moved.
+     */
+    public static Pair<TreeContext, TreeContext> synthetic(int size, long seed) {
+        Random random = new Random(seed);
+        TreeContext src = new TreeContext();
+        src.setRoot(randomTree(src, size, random));
+        src.validate();
+
+        TreeContext dst = new TreeContext();
+        dst.importTypeLabels(src);
+        dst.setRoot(src.getRoot().deepCopy());
+        List<ITree> nodes = new ArrayList<>(dst.getRoot().getDescendants());
+        int edits = Math.max(1, (int) (size * EDIT_RATIO));
+        for (int i = 0; i < edits && !nodes.isEmpty(); i++) {
+            ITree t = nodes.get(random.nextInt(nodes.size()));
+            ITree parent = t.getParent();
+            switch (random.nextInt(4)) {
+                case 0:
+                    if (t.isLeaf())
+                        t.setLabel(label(random));
+                    break;
+                case 1:
+                    if (t.isLeaf()) {
+                        parent.getChildren().remove(t);
+                        nodes.remove(t);
+                    }
+                    break;
+                case 2:
+                    ITree leaf = dst.createTree(random.nextInt(TYPES), label(random), null);
+                    leaf.setParent(parent);
+                    parent.getChildren().add(random.nextInt(parent.getChildren().size() + 1), leaf);
+                    nodes.add(leaf);
+                    break;
+                default:
+                    ITree target = nodes.get(random.nextInt(nodes.size()));
+                    if (target.isLeaf() || target == t || target.getParents().contains(t))
+                        break;
+                    parent.getChildren().remove(t);
+                    t.setParent(target);
+                    target.getChildren().add(random.nextInt(target.getChildren().size() + 1), t);
+            }
+        }
+        dst.validate();
+        return new Pair<>(src, dst);
+    }
+
+    private static ITree randomTree(TreeContext ctx, int size, Random random) {
+        ITree root = ctx.createTree(0, ITree.NO_LABEL, "type0");
+        Deque<ITree> pending = new ArrayDeque<>();
+        pending.add(root);
+        int count = 1;
+        while (count < size) {
+            ITree parent = pending.isEmpty() ? root : pending.poll();
+            int children = 1 + random.nextInt(MAX_CHILDREN);
+            for (int i = 0; i < children && count < size; i++, count++) {
+                int type = 1 + random.nextInt(TYPES - 1);
+                boolean leaf = random.nextInt(3) == 0;
+                ITree t = ctx.createTree(type, leaf ? label(random) : ITree.NO_LABEL, "type" + type);
+                t.setParentAndUpdateChildren(parent);
+                if (!leaf)
+                    pending.add(t);
+            }
+        }
+        return root;
+    }
+
+    private static String label(Random random) {
+        return "id" + random.nextInt(1000);
+    }
+}
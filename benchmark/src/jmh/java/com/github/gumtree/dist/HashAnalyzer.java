@@ -0,0 +1,82 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtree.dist;
+
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.hash.HashGenerator;
+import com.github.gumtreediff.tree.hash.RollingHashGenerator;
+import com.github.gumtreediff.tree.hash.StaticHashGenerator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the hash generators on the source tree of the corpus.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashAnalyzer {
+
+    @State(Scope.Benchmark)
+    public static class TreeData {
+
+        @Param({"100", "1000", "10000"})
+        public String corpus;
+
+        @Param({"md5-rolling", "java-rolling", "random-rolling", "std-static", "md5-static"})
+        public String generator;
+
+        public ITree tree;
+
+        public HashGenerator hashGenerator;
+
+        @Setup
+        public void load() throws Exception {
+            tree = BenchmarkCorpus.load(corpus).getFirst().getRoot();
+            switch (generator) {
+                case "md5-rolling":
+                    hashGenerator = new RollingHashGenerator.Md5RollingHashGenerator();
+                    break;
+                case "java-rolling":
+                    hashGenerator = new RollingHashGenerator.JavaRollingHashGenerator();
+                    break;
+                case "random-rolling":
+                    hashGenerator = new RollingHashGenerator.RandomRollingHashGenerator();
+                    break;
+                case "std-static":
+                    hashGenerator = new StaticHashGenerator.StdHashGenerator();
+                    break;
+                default:
+                    hashGenerator = new StaticHashGenerator.Md5HashGenerator();
+            }
+        }
+    }
+
+    @Benchmark
+    public int testHash(TreeData d) {
+        d.hashGenerator.hash(d.tree);
+        return d.tree.getHash();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtree.dist;
+
+import com.github.gumtreediff.gen.TreeGenerator;
+import com.github.gumtreediff.io.TreeIoUtils;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.EndElement;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * The event based XML reader that preceded {@link TreeIoUtils.XmlInternalGenerator}, kept as a baseline
+ * for {@link XmlReaderAnalyzer}. It only reads the positions and lengths of the nodes.
+ */
+public class LegacyXmlReader extends TreeGenerator {
+
+    private static final QName TYPE = new QName("type");
+    private static final QName LABEL = new QName("label");
+    private static final QName TYPE_LABEL = new QName("typeLabel");
+
+    @Override
+    protected TreeContext generate(Reader source) throws IOException {
+        XMLInputFactory fact = XMLInputFactory.newInstance();
+        TreeContext context = new TreeContext();
+        try {
+            ArrayDeque<ITree> trees = new ArrayDeque<>();
+            XMLEventReader r = fact.createXMLEventReader(source);
+            while (r.hasNext()) {
+                XMLEvent e = r.nextEvent();
+                if (e instanceof StartElement) {
+                    StartElement s = (StartElement) e;
+                    if (!s.getName().getLocalPart().equals("tree"))
+                        continue;
+                    int type = Integer.parseInt(s.getAttributeByName(TYPE).getValue());
+
+                    ITree t = context.createTree(type,
+                            labelForAttribute(s, LABEL), labelForAttribute(s, TYPE_LABEL));
+                    Iterator<?> it = s.getAttributes();
+                    while (it.hasNext()) {
+                        Attribute a = (Attribute) it.next();
+                        String key = a.getName().getLocalPart();
+                        if (key.equals("pos"))
+                            t.setPos(Integer.parseInt(a.getValue()));
+                        else if (key.equals("length"))
+                            t.setLength(Integer.parseInt(a.getValue()));
+                    }
+
+                    if (trees.isEmpty())
+                        context.setRoot(t);
+                    else
+                        t.setParentAndUpdateChildren(trees.peekFirst());
+                    trees.addFirst(t);
+                } else if (e instanceof EndElement) {
+                    if (!((EndElement) e).getName().getLocalPart().equals("tree"))
+                        continue;
+                    trees.removeFirst();
+                }
+            }
+            return context;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static String labelForAttribute(StartElement s, QName attrName) {
+        Attribute attr = s.getAttributeByName(attrName);
+        return attr == null ? ITree.NO_LABEL : attr.getValue();
+    }
+}
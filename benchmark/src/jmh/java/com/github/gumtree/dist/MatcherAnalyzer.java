@@ -19,40 +19,140 @@
 
 package com.github.gumtree.dist;
 
-import com.github.gumtreediff.io.TreeIoUtils;
+import com.github.gumtreediff.matchers.CompositeMatcher.MatcherFactory;
 import com.github.gumtreediff.matchers.CompositeMatchers;
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.Matcher;
+import com.github.gumtreediff.matchers.Matchers;
+import com.github.gumtreediff.matchers.OptimizedVersions;
+import com.github.gumtreediff.matchers.Register;
+import com.github.gumtreediff.matchers.heuristic.LcsMatcher;
+import com.github.gumtreediff.matchers.optimal.rted.RtedMatcher;
+import com.github.gumtreediff.matchers.optimal.zs.ZsMatcher;
 import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
+import com.github.gumtreediff.utils.Pair;
 
 import org.openjdk.jmh.annotations.*;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks each matcher on the corpus, see {@link BenchmarkCorpus} for the available corpora. The
+ * registered matchers are created from {@link Matchers} by their id, the other ones (the Theta
+ * optimizations and the optimal matchers) are named after their class. The optimal matchers being
+ * at least quadratic, they are only run on the small corpora.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
 public class MatcherAnalyzer {
+
+    static {
+        // Matchers only installs some of the registered matchers by default.
+        for (Class<? extends Matcher> clazz : Arrays.asList(CompositeMatchers.CompleteGumtreeMatcher.class,
+                OptimizedVersions.MtDiff.class, LcsMatcher.class))
+            if (Matchers.getInstance().findByClass(clazz) == null)
+                Matchers.getInstance().install(clazz, clazz.getAnnotation(Register.class));
+    }
+
+    static final Map<String, MatcherFactory> UNREGISTERED = new HashMap<>();
+
+    static {
+        UNREGISTERED.put("CdabcdefSeq", OptimizedVersions.CdabcdefSeq::new);
+        UNREGISTERED.put("CdabcdefPar", OptimizedVersions.CdabcdefPar::new);
+        UNREGISTERED.put("Gtbcdef", OptimizedVersions.Gtbcdef::new);
+        UNREGISTERED.put("Rtedacdef", OptimizedVersions.Rtedacdef::new);
+        UNREGISTERED.put("RtedMatcher", RtedMatcher::new);
+        UNREGISTERED.put("ZsMatcher", ZsMatcher::new);
+    }
+
     @State(Scope.Benchmark)
     public static class TreeData {
+
+        @Param({"100", "1000", "10000"})
+        public String corpus;
+
+        public ITree src;
+
+        public ITree dst;
+
+        @Setup
+        public void load() throws Exception {
+            Pair<TreeContext, TreeContext> trees = BenchmarkCorpus.load(corpus);
+            src = trees.getFirst().getRoot();
+            dst = trees.getSecond().getRoot();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class RegisteredMatcher {
+
+        @Param({"gumtree", "gumtree-complete", "change-distiller", "xy", "mtdiff", "lcs"})
+        public String matcher;
+
         @Setup
-        public void load() {
-            try {
-                String otherPath = refPath.replace("_v0_", "_v1_");
-                src = TreeIoUtils.fromXml().generateFromFile(refPath).getRoot();
-                dst = TreeIoUtils.fromXml().generateFromFile(otherPath).getRoot();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        public void check() {
+            if (Matchers.getInstance().getFactory(matcher) == null)
+                throw new IllegalArgumentException("Unknown matcher " + matcher + ", expected one of "
+                        + Matchers.getInstance().getEntries());
         }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ThetaMatcher {
 
-        @Param({})
-        public String refPath;
+        @Param({"CdabcdefSeq", "CdabcdefPar", "Gtbcdef"})
+        public String matcher;
+    }
+
+    @State(Scope.Benchmark)
+    public static class SmallTreeData {
+
+        @Param({"100", "1000"})
+        public String corpus;
 
         public ITree src;
 
         public ITree dst;
+
+        @Setup
+        public void load() throws Exception {
+            Pair<TreeContext, TreeContext> trees = BenchmarkCorpus.load(corpus);
+            src = trees.getFirst().getRoot();
+            dst = trees.getSecond().getRoot();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class OptimalMatcher {
+
+        @Param({"RtedMatcher", "ZsMatcher", "Rtedacdef"})
+        public String matcher;
+    }
+
+    @Benchmark
+    public MappingStore testRegisteredMatcher(TreeData d, RegisteredMatcher m) {
+        return match(Matchers.getInstance().getMatcher(m.matcher, d.src, d.dst));
     }
 
     @Benchmark
-    public void testClassicGumtree(TreeData d) {
-        Matcher m = new CompositeMatchers.ClassicGumtree(d.src, d.dst, new MappingStore());
-        m.match();
+    public MappingStore testThetaMatcher(TreeData d, ThetaMatcher m) {
+        return match(UNREGISTERED.get(m.matcher).newMatcher(d.src, d.dst, new MappingStore()));
     }
 
+    @Benchmark
+    public MappingStore testOptimalMatcher(SmallTreeData d, OptimalMatcher m) {
+        return match(UNREGISTERED.get(m.matcher).newMatcher(d.src, d.dst, new MappingStore()));
+    }
+
+    private static MappingStore match(Matcher matcher) {
+        matcher.match();
+        return matcher.getMappings();
+    }
 }
@@ -0,0 +1,81 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtree.dist;
+
+import com.github.gumtreediff.io.TreeIoUtils;
+import com.github.gumtreediff.tree.TreeContext;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks writing and reading the source tree of the corpus in the XML and binary formats.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationAnalyzer {
+
+    @State(Scope.Benchmark)
+    public static class TreeData {
+
+        @Param({"100", "1000", "10000"})
+        public String corpus;
+
+        @Param({"xml", "binary"})
+        public String format;
+
+        public TreeContext context;
+
+        public byte[] serialized;
+
+        @Setup
+        public void load() throws Exception {
+            context = BenchmarkCorpus.load(corpus).getFirst();
+            serialized = write(this);
+        }
+    }
+
+    static byte[] write(TreeData d) throws Exception {
+        if (d.format.equals("binary"))
+            return TreeIoUtils.toBinary(d.context).toByteArray();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TreeIoUtils.toXml(d.context).writeTo(out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] testWrite(TreeData d) throws Exception {
+        return write(d);
+    }
+
+    @Benchmark
+    public TreeContext testRead(TreeData d) throws Exception {
+        if (d.format.equals("binary"))
+            return TreeIoUtils.fromBinary().generateFromBytes(d.serialized);
+        return TreeIoUtils.fromXml().generateFromStream(new ByteArrayInputStream(d.serialized));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtree.dist;
+
+import com.github.gumtreediff.io.TreeIoUtils;
+import com.github.gumtreediff.tree.TreeContext;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the XML tree readers on the source tree of the corpus: the former event based reader, the
+ * cursor based reader on a byte stream and on a mapped file, and the cursor based reader building a
+ * compact tree store.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XmlReaderAnalyzer {
+
+    @State(Scope.Benchmark)
+    public static class XmlData {
+
+        @Param({"100", "1000", "10000"})
+        public String corpus;
+
+        @Param({"legacy", "stream", "file", "compact"})
+        public String reader;
+
+        public byte[] serialized;
+
+        public File file;
+
+        @Setup
+        public void load() throws Exception {
+            TreeContext context = BenchmarkCorpus.load(corpus).getFirst();
+            file = File.createTempFile("gumtree", ".gxml");
+            TreeIoUtils.toXml(context).writeTo(file);
+            serialized = Files.readAllBytes(file.toPath());
+        }
+
+        @TearDown
+        public void delete() {
+            file.delete();
+        }
+    }
+
+    @Benchmark
+    public TreeContext testRead(XmlData d) throws Exception {
+        switch (d.reader) {
+            case "legacy":
+                return new LegacyXmlReader().generateFromStream(new ByteArrayInputStream(d.serialized));
+            case "file":
+                return TreeIoUtils.fromXml().generateFromFile(d.file);
+            case "compact":
+                TreeIoUtils.XmlInternalGenerator generator = TreeIoUtils.fromXml();
+                generator.setCompact(true);
+                return generator.generateFromFile(d.file);
+            default:
+                return TreeIoUtils.fromXml().generateFromStream(new ByteArrayInputStream(d.serialized));
+        }
+    }
+}
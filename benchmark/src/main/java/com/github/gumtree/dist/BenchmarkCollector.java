@@ -60,9 +60,9 @@ public class BenchmarkCollector {
             String oldName = path.toString().replaceAll("[^a-zA-Z0-9_]", "_");
             String newName = otherPath.toString().replaceAll("[^a-zA-Z0-9_]", "_");
             TreeContext ctx = getTreeContext(path.toAbsolutePath().toString());
-            TreeIoUtils.toXml(ctx).writeTo(new File(OUTPUT_DIR + oldName + ".xml"));
+            TreeIoUtils.toBinary(ctx).writeTo(new File(OUTPUT_DIR + oldName + ".gtb"));
             ctx = getTreeContext(otherPath.toAbsolutePath().toString());
-            TreeIoUtils.toXml(ctx).writeTo(new File(OUTPUT_DIR + newName + ".xml"));
+            TreeIoUtils.toBinary(ctx).writeTo(new File(OUTPUT_DIR + newName + ".gtb"));
         }
     }
 
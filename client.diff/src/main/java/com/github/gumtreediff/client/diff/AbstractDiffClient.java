@@ -25,6 +25,7 @@ import com.github.gumtreediff.client.Client;
 import com.github.gumtreediff.gen.Generators;
 import com.github.gumtreediff.matchers.Matcher;
 import com.github.gumtreediff.matchers.Matchers;
+import com.github.gumtreediff.matchers.MatchingProfile;
 import com.github.gumtreediff.tree.TreeContext;
 
 import java.io.IOException;
@@ -43,6 +44,7 @@ public abstract class AbstractDiffClient<O extends AbstractDiffClient.Options> e
         public ArrayList<String> generators = new ArrayList<>();
         public String src;
         public String dst;
+        public boolean profile;
 
         @Override
         public Option[] values() {
@@ -59,6 +61,13 @@ public abstract class AbstractDiffClient<O extends AbstractDiffClient.Options> e
                             generators.add(args[0]);
                         }
                     },
+                    new Option("--profile", "Print the time, mappings and candidates of each matching phase "
+                            + "on the error output.", 0) {
+                        @Override
+                        protected void process(String name, String[] args) {
+                            profile = true;
+                        }
+                    },
                     new Option.Help(this) {
                         @Override
                         public void process(String name, String[] args) {
@@ -72,6 +81,7 @@ public abstract class AbstractDiffClient<O extends AbstractDiffClient.Options> e
         void dump(PrintStream out) {
             out.printf("Current path: %s\n", System.getProperty("user.dir"));
             out.printf("Diff: %s %s\n", src, dst);
+            out.printf("Profile: %s\n", profile);
         }
     }
 
@@ -104,7 +114,12 @@ public abstract class AbstractDiffClient<O extends AbstractDiffClient.Options> e
         matcher = (opts.matcher == null)
                 ? matchers.getMatcher(getSrcTreeContext().getRoot(), getDstTreeContext().getRoot())
                 : matchers.getMatcher(opts.matcher, getSrcTreeContext().getRoot(), getDstTreeContext().getRoot());
-        matcher.match();
+        if (opts.profile) {
+            MatchingProfile profile = new MatchingProfile();
+            matcher.match(profile);
+            profile.print(System.err);
+        } else
+            matcher.match();
         getSrcTreeContext().importTypeLabels(getDstTreeContext());
         return matcher;
     }
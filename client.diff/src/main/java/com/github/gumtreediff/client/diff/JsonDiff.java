@@ -21,15 +21,12 @@
 package com.github.gumtreediff.client.diff;
 
 import com.github.gumtreediff.actions.ActionGenerator;
-import com.github.gumtreediff.actions.model.Action;
 import com.github.gumtreediff.client.Option;
 import com.github.gumtreediff.client.Register;
 import com.github.gumtreediff.io.ActionsIoUtils;
 import com.github.gumtreediff.io.TreeIoUtils;
 import com.github.gumtreediff.matchers.Matcher;
 
-import java.util.List;
-
 @Register(name = "jsondiff", description = "Dump actions in the JSON format",
         options = AbstractDiffClient.Options.class)
 public class JsonDiff extends AbstractDiffClient<AbstractDiffClient.Options> {
@@ -48,10 +45,8 @@ public class JsonDiff extends AbstractDiffClient<AbstractDiffClient.Options> {
         Matcher m = matchTrees();
         ActionGenerator g = new ActionGenerator(getSrcTreeContext().getRoot(),
                 getDstTreeContext().getRoot(), m.getMappings());
-        g.generate();
-        List<Action> actions = g.getActions();
         try {
-            ActionsIoUtils.toJson(getSrcTreeContext(), actions, m.getMappings()).writeTo(System.out);
+            ActionsIoUtils.toJson(getSrcTreeContext(), g, m.getMappings()).writeTo(System.out);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -21,7 +21,6 @@
 package com.github.gumtreediff.client.diff;
 
 import com.github.gumtreediff.actions.ActionGenerator;
-import com.github.gumtreediff.actions.model.Action;
 import com.github.gumtreediff.client.Option;
 import com.github.gumtreediff.client.Register;
 import com.github.gumtreediff.io.ActionsIoUtils;
@@ -32,7 +31,6 @@ import com.github.gumtreediff.tree.TreeContext;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.Arrays;
-import java.util.List;
 
 @Register(name = "diff", description = "Dump actions in our textual format",
         options = AbstractDiffClient.Options.class)
@@ -98,11 +96,9 @@ public class TextDiff extends AbstractDiffClient<TextDiff.Options> {
         Matcher m = matchTrees();
         ActionGenerator g = new ActionGenerator(getSrcTreeContext().getRoot(),
                 getDstTreeContext().getRoot(), m.getMappings());
-        g.generate();
-        List<Action> actions = g.getActions();
         try {
             ActionsIoUtils.ActionSerializer serializer = opts.format.getSerializer(
-                    getSrcTreeContext(), actions, m.getMappings());
+                    getSrcTreeContext(), g, m.getMappings());
             if (opts.output == null)
                 serializer.writeTo(System.out);
             else
@@ -115,27 +111,27 @@ public class TextDiff extends AbstractDiffClient<TextDiff.Options> {
     enum OutputFormat { // TODO make a registry for that also ?
         TEXT {
             @Override
-            ActionsIoUtils.ActionSerializer getSerializer(TreeContext sctx, List<Action> actions, MappingStore mappings)
+            ActionsIoUtils.ActionSerializer getSerializer(TreeContext sctx, ActionGenerator g, MappingStore mappings)
                     throws IOException {
-                return ActionsIoUtils.toText(sctx, actions, mappings);
+                return ActionsIoUtils.toText(sctx, g, mappings);
             }
         },
         XML {
             @Override
-            ActionsIoUtils.ActionSerializer getSerializer(TreeContext sctx, List<Action> actions, MappingStore mappings)
+            ActionsIoUtils.ActionSerializer getSerializer(TreeContext sctx, ActionGenerator g, MappingStore mappings)
                     throws IOException {
-                return ActionsIoUtils.toXml(sctx, actions, mappings);
+                return ActionsIoUtils.toXml(sctx, g, mappings);
             }
         },
         JSON {
             @Override
-            ActionsIoUtils.ActionSerializer getSerializer(TreeContext sctx, List<Action> actions, MappingStore mappings)
+            ActionsIoUtils.ActionSerializer getSerializer(TreeContext sctx, ActionGenerator g, MappingStore mappings)
                     throws IOException {
-                return ActionsIoUtils.toJson(sctx, actions, mappings);
+                return ActionsIoUtils.toJson(sctx, g, mappings);
             }
         };
 
-        abstract ActionsIoUtils.ActionSerializer getSerializer(TreeContext sctx, List<Action> actions,
+        abstract ActionsIoUtils.ActionSerializer getSerializer(TreeContext sctx, ActionGenerator g,
                                                                MappingStore mappings) throws IOException;
     }
 }
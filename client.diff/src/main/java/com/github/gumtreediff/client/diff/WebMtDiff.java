@@ -87,7 +87,11 @@ public class WebMtDiff extends AbstractDiffClient<WebMtDiff.Options> {
     public void run() {
         Matchers.getMtDiffInstance();
         DirectoryComparator comparator = new DirectoryComparator(opts.src, opts.dst);
-        comparator.compare();
+        // Modified files are listed as soon as they are found, the page shows the comparison so far.
+        comparator.compareAsync().exceptionally(e -> {
+            e.printStackTrace();
+            return null;
+        });
         configureSpark(comparator, opts.defaultPort);
         Spark.awaitInitialization();
         System.out
@@ -77,7 +77,7 @@ public final class HtmlDiffs {
         int mId = 1;
 
         TagIndex ltags = new TagIndex();
-        for (ITree t: src.getRoot().getTrees()) {
+        for (ITree t: src.getRoot().preOrder()) {
             if (c.getSrcMvTrees().contains(t)) {
                 mappingIds.put(mappings.getDst(t).getId(), mId);
                 ltags.addStartTag(t.getPos(), String.format(ID_SPAN, uId++));
@@ -102,7 +102,7 @@ public final class HtmlDiffs {
         }
 
         TagIndex rtags = new TagIndex();
-        for (ITree t: dst.getRoot().getTrees()) {
+        for (ITree t: dst.getRoot().preOrder()) {
             if (c.getDstMvTrees().contains(t)) {
                 int dId = mappingIds.get(t.getId());
                 rtags.addStartTag(t.getPos(), String.format(ID_SPAN, uId++));
@@ -80,7 +80,11 @@ public class WebDiff extends AbstractDiffClient<WebDiff.Options> {
     @Override
     public void run() {
         DirectoryComparator comparator = new DirectoryComparator(opts.src, opts.dst);
-        comparator.compare();
+        // Modified files are listed as soon as they are found, the page shows the comparison so far.
+        comparator.compareAsync().exceptionally(e -> {
+            e.printStackTrace();
+            return null;
+        });
         configureSpark(comparator, opts.defaultPort);
         Spark.awaitInitialization();
         System.out.println(String.format("Starting server: %s:%d", "http://127.0.0.1", opts.defaultPort));
@@ -20,17 +20,27 @@
 package com.github.gumtreediff.actions;
 
 import com.github.gumtreediff.actions.model.*;
+import com.github.gumtreediff.tree.ITree;
 import com.github.gumtreediff.tree.TreeContext;
-import org.jgrapht.DirectedGraph;
-import org.jgrapht.UndirectedGraph;
-import org.jgrapht.alg.ConnectivityInspector;
-import org.jgrapht.graph.DefaultDirectedGraph;
-import org.jgrapht.graph.DefaultEdge;
-import org.jgrapht.graph.SimpleGraph;
+import gnu.trove.list.array.TIntArrayList;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+/**
+ * Groups the actions of an edit script into clusters: inserts embedded in another insert, deletes
+ * embedded in another delete, updates to the same value and moves of nodes sharing a parent.
+ * Rather than testing every pair of actions, the actions are indexed by the node they insert or
+ * delete, by their value and by the parent of the moved node, and the related actions are merged
+ * in a union-find over their indexes. The clusters are listed in the order of their first action,
+ * and iterate over their actions in script order.
+ */
 public class ActionClusterFinder {
 
     private TreeContext src;
@@ -39,7 +49,9 @@ public class ActionClusterFinder {
 
     private List<Action> actions;
 
-    private DirectedGraph<Action, DefaultEdge> graph;
+    private int[] roots;
+
+    private Set<Action> embedded;
 
     private List<Set<Action>> clusters;
 
@@ -47,78 +59,86 @@ public class ActionClusterFinder {
         this.src = src;
         this.dst = dst;
         this.actions = actions;
-        graph = new DefaultDirectedGraph<>(DefaultEdge.class);
-
-        for (Action a: actions)
-            graph.addVertex(a);
-
+        this.embedded = new HashSet<>();
+
+        int n = actions.size();
+        roots = new int[n];
+        for (int i = 0; i < n; i++)
+            roots[i] = i;
+
+        Map<ITree, TIntArrayList> inserts = new IdentityHashMap<>();
+        Map<ITree, TIntArrayList> deletes = new IdentityHashMap<>();
+        Map<String, Integer> updates = new HashMap<>();
+        Map<ITree, Integer> moves = new IdentityHashMap<>();
+        for (int i = 0; i < n; i++) {
+            Action a = actions.get(i);
+            if (a instanceof Insert)
+                inserts.computeIfAbsent(a.getNode(), k -> new TIntArrayList(1)).add(i);
+            else if (a instanceof Delete)
+                deletes.computeIfAbsent(a.getNode(), k -> new TIntArrayList(1)).add(i);
+            else if (a instanceof Update)
+                union(i, updates.putIfAbsent(((Update) a).getValue(), i));
+            else if (a instanceof Move && a.getNode() != null)
+                union(i, moves.putIfAbsent(a.getNode().getParent(), i));
+        }
 
-        for (Action a1: actions) {
-            for (Action a2: actions) {
-                if (a1 != a2) {
-                    if (embeddedInserts(a1, a2) || sameValueUpdates(a1, a2)
-                            || sameParentMoves(a1, a2) || embeddedDeletes(a1, a2))
-                        graph.addEdge(a1, a2);
+        // An insert (resp. delete) is embedded in the inserts (resp. deletes) of its parent.
+        for (int i = 0; i < n; i++) {
+            Action a = actions.get(i);
+            TIntArrayList embedding = null;
+            if (a instanceof Insert)
+                embedding = inserts.get(((Insert) a).getParent());
+            else if (a instanceof Delete && a.getNode().getParent() != null)
+                embedding = deletes.get(a.getNode().getParent());
+            if (embedding == null)
+                continue;
+            for (int k = 0; k < embedding.size(); k++) {
+                int j = embedding.getQuick(k);
+                if (j != i) {
+                    union(i, j);
+                    embedded.add(a);
                 }
             }
         }
 
-        ConnectivityInspector alg = new ConnectivityInspector(graph);
-        clusters = alg.connectedSets();
+        clusters = new ArrayList<>();
+        int[] clusterOfRoot = new int[n];
+        for (int i = 0; i < n; i++) {
+            int r = find(i);
+            if (clusterOfRoot[r] == 0) {
+                clusters.add(new LinkedHashSet<>());
+                clusterOfRoot[r] = clusters.size();
+            }
+            clusters.get(clusterOfRoot[r] - 1).add(actions.get(i));
+        }
     }
 
     public List<Set<Action>> getClusters() {
         return clusters;
     }
 
-    private boolean embeddedInserts(Action a1, Action a2) {
-        if (!(a1 instanceof Insert && a2 instanceof Insert))
-            return false;
-        Insert i1 = (Insert) a1;
-        Insert i2 = (Insert) a2;
-        if (i2.getParent().equals(i1.getNode()))
-            return true;
-        else
-            return false;
-    }
-
-    private boolean embeddedDeletes(Action a1, Action a2) {
-        if (!(a1 instanceof Delete && a2 instanceof Delete))
-            return false;
-        Delete d1 = (Delete) a1;
-        Delete d2 = (Delete) a2;
-        if (d2.getNode().getParent() == null)
-            return false;
-        if (d2.getNode().getParent().equals(d1.getNode()))
-            return true;
-        else
-            return false;
+    private int find(int i) {
+        while (roots[i] != i) {
+            roots[i] = roots[roots[i]];
+            i = roots[i];
+        }
+        return i;
     }
 
-    private boolean sameParentMoves(Action a1, Action a2) {
-        if (!(a1 instanceof Move && a2 instanceof Move))
-            return false;
-        Move m1 = (Move) a1;
-        Move m2 = (Move) a2;
-        if (m1.getNode() == null)
-            return false;
-        if (m2.getNode() == null)
-            return false;
-        if (m1.getNode().getParent().equals(m2.getNode().getParent()))
-            return true;
-        else
-            return false;
+    private void union(int i, Integer other) {
+        if (other == null)
+            return;
+        union(i, other.intValue());
     }
 
-    private boolean sameValueUpdates(Action a1, Action a2) {
-        if (!(a1 instanceof Update && a2 instanceof Update))
-            return false;
-        Update u1 = (Update) a1;
-        Update u2 = (Update) a2;
-        if (u1.getValue().equals(u2.getValue()))
-            return true;
-        else
-            return false;
+    private void union(int i, int j) {
+        int ri = find(i);
+        int rj = find(j);
+        // The smallest index is kept as root, so that a root is the first action of its cluster.
+        if (ri < rj)
+            roots[rj] = ri;
+        else if (rj < ri)
+            roots[ri] = rj;
     }
 
     public String getClusterLabel(Set<Action> cluster) {
@@ -128,7 +148,7 @@ public class ActionClusterFinder {
         if (first instanceof Insert) {
             Insert root = null;
             for (Action a : cluster)
-                if (graph.inDegreeOf(a) == 0)
+                if (!embedded.contains(a))
                     root = (Insert) a;
             return root.format(src);
         } else if (first instanceof Move) {
@@ -140,7 +160,7 @@ public class ActionClusterFinder {
         } else if (first instanceof Delete) {
             Delete root = null;
             for (Action a : cluster)
-                if (graph.inDegreeOf(a) == 0)
+                if (!embedded.contains(a))
                     root = (Delete) a;
             return root.format(src);
         } else
@@ -25,55 +25,81 @@ import com.github.gumtreediff.matchers.Mapping;
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.tree.AbstractTree;
 import com.github.gumtreediff.tree.ITree;
-import com.github.gumtreediff.tree.TreeUtils;
-import gnu.trove.map.TIntObjectMap;
-import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Set;
-
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Computes the edit script transforming the source tree into the destination tree, following
+ * Chawathe et al. The source tree is never modified: the script is simulated on an index of it,
+ * where each node is a number and the children of a node are lists of numbers, so that finding
+ * or changing the position of a node costs O(1) or O(siblings). The destination nodes are
+ * numbered in breadth first order, so that the siblings of a node are a contiguous range and the
+ * in order siblings a bit set. The children are aligned by a longest common subsequence computed
+ * in O(c log c) time and O(c) space, c being the number of aligned children.
+ *
+ * As before, the mappings are looked up by the ids of the source nodes. The actions are the same
+ * as the ones of the original implementation as long as the ids of the source tree are not
+ * greater than its size (e.g. after {@link com.github.gumtreediff.tree.TreeContext#validate()})
+ * and the mappings are one-to-one.
+ */
 public class ActionGenerator {
 
-    private ITree origSrc;
+    private static final int NONE = -1;
 
-    private ITree newSrc;
+    private static final int OUTSIDE = -2;
 
-    private ITree origDst;
+    private final ITree origSrc;
 
-    private MappingStore origMappings;
+    private final ITree origDst;
 
-    private MappingStore newMappings;
+    private final MappingStore mappings;
 
-    private Set<ITree> dstInOrder;
+    private List<Action> actions;
 
-    private Set<ITree> srcInOrder;
+    private Consumer<? super Action> sink;
 
-    private int lastId;
+    // Source side: the nodes of the source tree in pre-order, then the fake root, then the inserted nodes.
+    private ITree[] srcNodes;
 
-    private List<Action> actions;
+    private int srcSize;
+
+    private int srcCount;
+
+    private int[] srcParents;
+
+    private TIntArrayList[] srcChildren;
+
+    private int[] srcPositions;
 
-    private TIntObjectMap<ITree> origSrcTrees;
+    private int[] srcToDst;
 
-    private TIntObjectMap<ITree> cpySrcTrees;
+    private IdIndex srcIds;
+
+    // Destination side: the nodes of the destination tree in breadth first order.
+    private ITree[] dstNodes;
+
+    private int[] dstParents;
+
+    private int[] dstFirstChildren;
+
+    private int[] dstToSrc;
+
+    private BitSet dstInOrder;
+
+    private int[] lcsPositions;
 
     public ActionGenerator(ITree src, ITree dst, MappingStore mappings) {
         this.origSrc = src;
-        this.newSrc = this.origSrc.deepCopy();
         this.origDst = dst;
-
-        origSrcTrees = new TIntObjectHashMap<>();
-        for (ITree t: origSrc.getTrees())
-            origSrcTrees.put(t.getId(), t);
-        cpySrcTrees = new TIntObjectHashMap<>();
-        for (ITree t: newSrc.getTrees())
-            cpySrcTrees.put(t.getId(), t);
-
-        origMappings = new MappingStore();
-        for (Mapping m: mappings)
-            this.origMappings.link(cpySrcTrees.get(m.getFirst().getId()), m.getSecond());
-        this.newMappings = origMappings.copy();
+        this.mappings = mappings;
     }
 
     public List<Action> getActions() {
@@ -81,181 +107,408 @@ public class ActionGenerator {
     }
 
     public List<Action> generate() {
-        ITree srcFakeRoot = new AbstractTree.FakeTree(newSrc);
-        ITree dstFakeRoot = new AbstractTree.FakeTree(origDst);
-        newSrc.setParent(srcFakeRoot);
-        origDst.setParent(dstFakeRoot);
-
         actions = new ArrayList<>();
-        dstInOrder = new HashSet<>();
-        srcInOrder = new HashSet<>();
-
-        lastId = newSrc.getSize() + 1;
-        newMappings.link(srcFakeRoot, dstFakeRoot);
-
-        List<ITree> bfsDst = TreeUtils.breadthFirst(origDst);
-        for (ITree x: bfsDst) {
-            ITree w = null;
-            ITree y = x.getParent();
-            ITree z = newMappings.getSrc(y);
+        generate(actions::add);
+        return actions;
+    }
 
-            if (!newMappings.hasDst(x)) {
+    /**
+     * Hand each action to the sink as soon as it is computed, without keeping them: the
+     * inserts, updates and moves come in breadth first order of the destination tree, then
+     * the deletes in post-order of the source tree. {@link #getActions()} is left unchanged.
+     */
+    public void generate(Consumer<? super Action> sink) {
+        this.sink = sink;
+        // Kept for compatibility: the destination root used to be given a fake parent.
+        origDst.setParent(new AbstractTree.FakeTree(origDst));
+
+        indexDestination();
+        indexSource();
+        indexMappings();
+
+        dstInOrder = new BitSet(dstNodes.length);
+        lcsPositions = new int[dstNodes.length];
+
+        int srcFakeRoot = srcSize;
+        for (int x = 0; x < dstNodes.length; x++) {
+            int w;
+            int y = dstParents[x];
+            int z = (y == NONE) ? srcFakeRoot : dstToSrc[y];
+
+            if (dstToSrc[x] == NONE) {
                 int k = findPos(x);
-                // Insertion case : insert new node.
-                w = new AbstractTree.FakeTree();
-                w.setId(newId());
-                // In order to use the real nodes from the second tree, we
-                // furnish x instead of w and fake that x has the newly
-                // generated ID.
-                Action ins = new Insert(x, origSrcTrees.get(z.getId()), k);
-                actions.add(ins);
-                //System.out.println(ins);
-                origSrcTrees.put(w.getId(), x);
-                newMappings.link(w, x);
-                z.getChildren().add(k, w);
-                w.setParent(z);
+                // Insertion case : insert a new node standing for x.
+                w = newSrcNode(dstNodes[x]);
+                sink.accept(new Insert(dstNodes[x], actionNode(z), k));
+                srcToDst[w] = x;
+                dstToSrc[x] = w;
+                insertChild(z, k, w);
             } else {
-                w = newMappings.getSrc(x);
-                if (!x.equals(origDst)) { // TODO => x != origDst // Case of the root
-                    ITree v = w.getParent();
-                    if (!w.getLabel().equals(x.getLabel())) {
-                        actions.add(new Update(origSrcTrees.get(w.getId()), x.getLabel()));
-                        w.setLabel(x.getLabel());
-                    }
-                    if (!z.equals(v)) {
+                w = dstToSrc[x];
+                if (x != 0) { // Case of the root
+                    int v = srcParents[w];
+                    if (!srcNodes[w].getLabel().equals(dstNodes[x].getLabel()))
+                        sink.accept(new Update(actionNode(w), dstNodes[x].getLabel()));
+                    if (z != v) {
                         int k = findPos(x);
-                        Action mv = new Move(origSrcTrees.get(w.getId()), origSrcTrees.get(z.getId()), k);
-                        actions.add(mv);
-                        //System.out.println(mv);
-                        int oldk = w.positionInParent();
-                        z.getChildren().add(k, w);
-                        w.getParent().getChildren().remove(oldk);
-                        w.setParent(z);
+                        sink.accept(new Move(actionNode(w), actionNode(z), k));
+                        int oldk = srcPositions[w];
+                        insertChild(z, k, w);
+                        removeChild(v, oldk);
                     }
                 }
             }
 
-            //FIXME not sure why :D
-            srcInOrder.add(w);
-            dstInOrder.add(x);
+            dstInOrder.set(x);
             alignChildren(w, x);
         }
 
-        for (ITree w : newSrc.postOrder()) {
-            if (!newMappings.hasSrc(w)) {
-                actions.add(new Delete(origSrcTrees.get(w.getId())));
-                //w.getParent().getChildren().remove(w);
+        addDeletes();
+        this.sink = null;
+    }
+
+    private void indexSource() {
+        List<ITree> nodes = new ArrayList<>();
+        List<ITree> stack = new ArrayList<>();
+        stack.add(origSrc);
+        while (!stack.isEmpty()) {
+            ITree t = stack.remove(stack.size() - 1);
+            nodes.add(t);
+            List<ITree> children = t.getChildren();
+            for (int i = children.size() - 1; i >= 0; i--)
+                stack.add(children.get(i));
+        }
+
+        srcSize = nodes.size();
+        int capacity = srcSize + 1 + dstNodes.length;
+        srcNodes = nodes.toArray(new ITree[capacity]);
+        srcParents = new int[capacity];
+        srcChildren = new TIntArrayList[capacity];
+        srcPositions = new int[capacity];
+        srcToDst = new int[capacity];
+        Arrays.fill(srcToDst, NONE);
+        srcIds = new IdIndex(srcNodes, srcSize);
+
+        // In pre-order, the parent of a node is the closest previous node still having children to visit.
+        int[] remaining = new int[srcSize];
+        int[] path = new int[srcSize];
+        int depth = 0;
+        for (int i = 0; i < srcSize; i++) {
+            while (depth > 0 && remaining[path[depth - 1]] == 0)
+                depth--;
+            int parent = (depth == 0) ? srcSize : path[depth - 1];
+            srcParents[i] = parent;
+            if (depth > 0) {
+                srcPositions[i] = srcChildren[parent].size();
+                srcChildren[parent].add(i);
+                remaining[parent]--;
+            }
+            int arity = srcNodes[i].getChildren().size();
+            if (arity > 0) {
+                srcChildren[i] = new TIntArrayList(arity);
+                remaining[i] = arity;
+                path[depth++] = i;
             }
         }
 
-        //FIXME should ensure isomorphism.
-        return actions;
+        int fakeRoot = srcSize;
+        srcParents[fakeRoot] = NONE;
+        srcChildren[fakeRoot] = new TIntArrayList();
+        srcChildren[fakeRoot].add(0);
+        srcParents[0] = fakeRoot;
+        srcPositions[0] = 0;
+        srcCount = srcSize + 1;
     }
 
-    private void alignChildren(ITree w, ITree x) {
-        srcInOrder.removeAll(w.getChildren());
-        dstInOrder.removeAll(x.getChildren());
+    private void indexDestination() {
+        List<ITree> nodes = new ArrayList<>();
+        TIntArrayList parents = new TIntArrayList();
+        TIntArrayList firstChildren = new TIntArrayList();
+        nodes.add(origDst);
+        parents.add(NONE);
+        for (int i = 0; i < nodes.size(); i++) {
+            firstChildren.add(nodes.size());
+            for (ITree c : nodes.get(i).getChildren()) {
+                nodes.add(c);
+                parents.add(i);
+            }
+        }
+        firstChildren.add(nodes.size());
 
-        List<ITree> s1 = new ArrayList<>();
-        for (ITree c: w.getChildren())
-            if (newMappings.hasSrc(c))
-                if (x.getChildren().contains(newMappings.getDst(c)))
-                    s1.add(c);
+        dstNodes = nodes.toArray(new ITree[nodes.size()]);
+        dstParents = parents.toArray();
+        dstFirstChildren = firstChildren.toArray();
+        dstToSrc = new int[dstNodes.length];
+        Arrays.fill(dstToSrc, NONE);
+    }
 
-        List<ITree> s2 = new ArrayList<>();
-        for (ITree c: x.getChildren())
-            if (newMappings.hasDst(c))
-                if (w.getChildren().contains(newMappings.getSrc(c)))
-                    s2.add(c);
+    private void indexMappings() {
+        Map<ITree, Integer> dstIndex = null;
+        int[] dstById = denseIds(dstNodes, dstNodes.length);
+        if (dstById == null) {
+            dstIndex = new IdentityHashMap<>(2 * dstNodes.length);
+            for (int i = 0; i < dstNodes.length; i++)
+                dstIndex.put(dstNodes[i], i);
+        }
 
-        List<Mapping> lcs = lcs(s1, s2);
+        for (Mapping m : mappings) {
+            int src = srcIds.get(m.getFirst().getId());
+            if (src == NONE)
+                continue;
+            ITree d = m.getSecond();
+            int dst = NONE;
+            if (dstById != null) {
+                int id = d.getId();
+                if (id >= 0 && id < dstById.length && dstNodes[dstById[id]] == d)
+                    dst = dstById[id];
+            } else {
+                Integer i = dstIndex.get(d);
+                if (i != null)
+                    dst = i;
+            }
+            if (dst == NONE) {
+                // Mapped outside of the destination tree: neither inserted nor deleted.
+                srcToDst[src] = OUTSIDE;
+            } else {
+                srcToDst[src] = dst;
+                dstToSrc[dst] = src;
+            }
+        }
+    }
 
-        for (Mapping m : lcs) {
-            srcInOrder.add(m.getFirst());
-            dstInOrder.add(m.getSecond());
+    private void alignChildren(int w, int x) {
+        TIntArrayList children = srcChildren[w];
+        if (children == null)
+            return;
+        int first = dstFirstChildren[x];
+        int last = dstFirstChildren[x + 1];
+        if (first == last)
+            return;
+
+        // Positions of the aligned children of x, in the order of the children of x.
+        int aligned = 0;
+        for (int c = first; c < last; c++) {
+            int s = dstToSrc[c];
+            if (s >= 0 && srcParents[s] == w)
+                lcsPositions[c] = aligned++;
+        }
+        if (aligned == 0)
+            return;
+
+        int[] s1 = new int[aligned];
+        int[] p = new int[aligned];
+        int n = 0;
+        boolean sorted = true;
+        for (int i = 0; i < children.size(); i++) {
+            int c = children.getQuick(i);
+            int d = srcToDst[c];
+            if (d >= 0 && dstParents[d] == x) {
+                s1[n] = c;
+                p[n] = lcsPositions[d];
+                sorted &= p[n] == n;
+                n++;
+            }
         }
 
-        for (ITree a : s1) {
-            for (ITree b: s2 ) {
-                if (origMappings.has(a, b)) {
-                    if (!lcs.contains(new Mapping(a, b))) {
-                        int k = findPos(b);
-                        Action mv = new Move(origSrcTrees.get(a.getId()), origSrcTrees.get(w.getId()), k);
-                        actions.add(mv);
-                        //System.out.println(mv);
-                        int oldk = a.positionInParent();
-                        w.getChildren().add(k, a);
-                        if (k  < oldk ) // FIXME this is an ugly way to patch the index
-                            oldk ++;
-                        a.getParent().getChildren().remove(oldk);
-                        a.setParent(w);
-                        srcInOrder.add(a);
-                        dstInOrder.add(b);
-                    }
-                }
+        boolean[] inLcs = new boolean[n];
+        if (sorted)
+            Arrays.fill(inLcs, true);
+        else
+            lcs(p, inLcs);
+
+        for (int i = 0; i < n; i++)
+            if (inLcs[i])
+                dstInOrder.set(srcToDst[s1[i]]);
+
+        for (int i = 0; i < n; i++) {
+            if (inLcs[i])
+                continue;
+            int a = s1[i];
+            int b = srcToDst[a];
+            int k = findPos(b);
+            sink.accept(new Move(actionNode(a), actionNode(w), k));
+            int oldk = srcPositions[a];
+            children.insert(k, a);
+            if (k < oldk)
+                oldk++;
+            children.removeAt(oldk);
+            renumber(w, Math.min(k, oldk));
+            dstInOrder.set(b);
+        }
+    }
+
+    /**
+     * Selects the longest common subsequence of the aligned children, given as the permutation
+     * p of their positions. The selected elements are the ones picked by the backtracking of the
+     * usual dynamic programming table, which prefers skipping a source child when both choices
+     * keep the same length: with L(i, j) the length of the longest increasing subsequence of the
+     * elements after i with values not less than j, the element i is kept when p[i] = j or when
+     * 1 + L(i + 1, p[i] + 1) > L(i + 1, j). These lengths are maintained in a max segment tree
+     * indexed by value, holding the length of the longest increasing subsequence starting at
+     * each remaining element.
+     */
+    private static void lcs(int[] p, boolean[] inLcs) {
+        int n = p.length;
+        int size = Integer.highestOneBit(Math.max(1, n - 1)) << 1;
+        int[] tree = new int[2 * size];
+
+        for (int t = n - 1; t >= 0; t--)
+            set(tree, size, p[t], 1 + max(tree, size, p[t] + 1, n));
+
+        int j = 0;
+        for (int i = 0; i < n; i++) {
+            set(tree, size, p[i], 0);
+            if (p[i] < j)
+                continue;
+            if (p[i] == j || 1 + max(tree, size, p[i] + 1, n) > max(tree, size, j, n)) {
+                inLcs[i] = true;
+                j = p[i] + 1;
             }
         }
     }
 
-    private int findPos(ITree x) {
-        ITree y = x.getParent();
-        List<ITree> siblings = y.getChildren();
+    private static void set(int[] tree, int size, int index, int value) {
+        int i = index + size;
+        tree[i] = value;
+        for (i >>= 1; i > 0; i >>= 1)
+            tree[i] = Math.max(tree[2 * i], tree[2 * i + 1]);
+    }
 
-        for (ITree c : siblings) {
-            if (dstInOrder.contains(c)) {
-                if (c.equals(x)) return 0;
-                else break;
-            }
+    private static int max(int[] tree, int size, int from, int to) {
+        int result = 0;
+        for (int l = from + size, r = to + size; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) == 1)
+                result = Math.max(result, tree[l++]);
+            if ((r & 1) == 1)
+                result = Math.max(result, tree[--r]);
         }
+        return result;
+    }
+
+    private int findPos(int x) {
+        int y = dstParents[x];
+        int first = (y == NONE) ? 0 : dstFirstChildren[y];
+
+        if (dstInOrder.nextSetBit(first) == x)
+            return 0;
+
+        int v = (x == 0) ? NONE : dstInOrder.previousSetBit(x - 1);
+        if (v < first)
+            return 0;
+
+        return srcPositions[dstToSrc[v]] + 1;
+    }
 
-        int xpos = x.positionInParent();
-        ITree v = null;
-        for (int i = 0; i < xpos; i++) {
-            ITree c = siblings.get(i);
-            if (dstInOrder.contains(c)) v = c;
+    private void addDeletes() {
+        // Iterative post-order of the current subtree of the source root. Mappings that do not
+        // respect the ancestry can move the root below one of its descendants: the nodes of such
+        // a cycle are visited once.
+        int[] path = new int[srcCount];
+        int[] next = new int[srcCount];
+        BitSet visited = new BitSet(srcCount);
+        visited.set(0);
+        int depth = 1;
+        while (depth > 0) {
+            int t = path[depth - 1];
+            TIntArrayList children = srcChildren[t];
+            if (children != null && next[depth - 1] < children.size()) {
+                int c = children.getQuick(next[depth - 1]++);
+                if (!visited.get(c)) {
+                    visited.set(c);
+                    path[depth] = c;
+                    next[depth] = 0;
+                    depth++;
+                }
+            } else {
+                if (srcToDst[t] == NONE)
+                    sink.accept(new Delete(actionNode(t)));
+                depth--;
+            }
         }
+    }
 
-        //if (v == null) throw new RuntimeException("No rightmost sibling in order");
-        if (v == null) return 0;
-
-        ITree u = newMappings.getSrc(v);
-        // siblings = u.getParent().getChildren();
-        // int upos = siblings.indexOf(u);
-        int upos = u.positionInParent();
-        // int r = 0;
-        // for (int i = 0; i <= upos; i++)
-        // if (srcInOrder.contains(siblings.get(i))) r++;
-        return upos + 1;
+    private int newSrcNode(ITree dst) {
+        int w = srcCount++;
+        srcNodes[w] = dst;
+        srcParents[w] = NONE;
+        return w;
     }
 
-    private int newId() {
-        return ++lastId;
+    private void insertChild(int parent, int k, int child) {
+        if (srcChildren[parent] == null)
+            srcChildren[parent] = new TIntArrayList();
+        srcChildren[parent].insert(k, child);
+        srcParents[child] = parent;
+        renumber(parent, k);
     }
 
-    private List<Mapping> lcs(List<ITree> x, List<ITree> y) {
-        int m = x.size();
-        int n = y.size();
-        List<Mapping> lcs = new ArrayList<>();
+    private void removeChild(int parent, int k) {
+        srcChildren[parent].removeAt(k);
+        renumber(parent, k);
+    }
+
+    private void renumber(int parent, int from) {
+        TIntArrayList children = srcChildren[parent];
+        for (int i = from; i < children.size(); i++)
+            srcPositions[children.getQuick(i)] = i;
+    }
 
-        int[][] opt = new int[m + 1][n + 1];
-        for (int i = m - 1; i >= 0; i--) {
-            for (int j = n - 1; j >= 0; j--) {
-                if (newMappings.getSrc(y.get(j)).equals(x.get(i))) opt[i][j] = opt[i + 1][j + 1] + 1;
-                else  opt[i][j] = Math.max(opt[i + 1][j], opt[i][j + 1]);
+    /**
+     * @return the node reported in the actions for the given source index: the source node
+     *     holding its id, or the destination node for an inserted node.
+     */
+    private ITree actionNode(int w) {
+        if (w >= srcSize) {
+            if (w == srcSize) {
+                // The fake root has the id 0, it used to be reported as the source node of id 0.
+                int i = srcIds.get(0);
+                return (i == NONE) ? null : srcNodes[i];
             }
+            return srcNodes[w];
         }
+        return srcNodes[srcIds.get(srcNodes[w].getId())];
+    }
 
-        int i = 0, j = 0;
-        while (i < m && j < n) {
-            if (newMappings.getSrc(y.get(j)).equals(x.get(i))) {
-                lcs.add(new Mapping(x.get(i), y.get(j)));
-                i++;
-                j++;
-            } else if (opt[i + 1][j] >= opt[i][j + 1]) i++;
-            else j++;
+    /**
+     * @return for each id, the index of the node holding it, or null if the ids of the nodes are
+     *     not exactly 0 to n - 1.
+     */
+    private static int[] denseIds(ITree[] nodes, int n) {
+        int[] byId = new int[n];
+        Arrays.fill(byId, NONE);
+        for (int i = 0; i < n; i++) {
+            int id = nodes[i].getId();
+            if (id < 0 || id >= n || byId[id] != NONE)
+                return null;
+            byId[id] = i;
         }
-
-        return lcs;
+        return byId;
     }
 
+    /**
+     * Index of the source nodes by id. As in the map used before, when several nodes share
+     * an id the last one in pre-order wins.
+     */
+    private static final class IdIndex {
+
+        private final int[] dense;
+
+        private final TIntIntHashMap sparse;
+
+        IdIndex(ITree[] nodes, int n) {
+            dense = denseIds(nodes, n);
+            if (dense == null) {
+                sparse = new TIntIntHashMap(2 * n, 0.5F, Integer.MIN_VALUE, NONE);
+                for (int i = 0; i < n; i++)
+                    sparse.put(nodes[i].getId(), i);
+            } else
+                sparse = null;
+        }
+
+        int get(int id) {
+            if (dense != null)
+                return (id >= 0 && id < dense.length) ? dense[id] : NONE;
+            return sparse.get(id);
+        }
+    }
 }
@@ -23,27 +23,33 @@ package com.github.gumtreediff.actions;
 import com.github.gumtreediff.actions.model.*;
 import com.github.gumtreediff.tree.ITree;
 import com.github.gumtreediff.tree.TreeContext;
+import com.github.gumtreediff.tree.TreeUtils;
 
 import java.util.List;
 
 public class ActionUtil {
     private ActionUtil() {}
 
+    /**
+     * Apply the actions to the trees of the context. The size, height and hash of the nodes are
+     * updated along the path to the root of each modified node, see {@link TreeUtils#updateAncestors(ITree)}.
+     */
     public static TreeContext apply(TreeContext context, List<Action> actions) {
         for (Action a: actions) {
             if (a instanceof Insert) {
                 Insert action = ((Insert) a);
-                action.getParent().insertChild(action.getNode(), action.getPosition());
+                TreeUtils.insertChild(action.getParent(), action.getNode(), action.getPosition());
             } else if (a instanceof Update) {
                 Update action = ((Update) a);
                 action.getNode().setLabel(action.getValue());
+                TreeUtils.updateAncestors(action.getNode());
             } else if (a instanceof Move) {
                 Move action = ((Move) a);
-                action.getNode().getParent().getChildren().remove(action.getNode());
-                action.getParent().insertChild(action.getNode(), action.getPosition());
+                TreeUtils.removeChild(action.getNode());
+                TreeUtils.insertChild(action.getParent(), action.getNode(), action.getPosition());
             } else if (a instanceof Delete) {
                 Delete action = ((Delete) a);
-                action.getNode().getParent().getChildren().remove(action.getNode());
+                TreeUtils.removeChild(action.getNode());
             } else throw new RuntimeException("No such action: " + a );
         }
         return context;
@@ -20,6 +20,8 @@
 
 package com.github.gumtreediff.actions;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Set;
 
@@ -45,8 +47,14 @@ public class LeavesClassifier extends TreeClassifier {
         super(src, dst, m);
     }
 
+    private Set<ITree> actionNodes;
+
     @Override
     public void classify() {
+        actionNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Action a: actions)
+            actionNodes.add(a.getNode());
+
         for (Action a: actions) {
             if (a instanceof Delete && isLeafAction(a)) {
                 srcDelTrees.add(a.getNode());
@@ -63,10 +71,9 @@ public class LeavesClassifier extends TreeClassifier {
     }
 
     private boolean isLeafAction(Action a) {
-        for (ITree d: a.getNode().getDescendants()) {
-            for (Action c: actions)
-                if (a != c && d == c.getNode()) return false;
-        }
+        for (ITree d: a.getNode().getDescendants())
+            if (actionNodes.contains(d))
+                return false;
 
         return true;
     }
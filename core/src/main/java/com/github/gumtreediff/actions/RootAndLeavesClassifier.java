@@ -20,7 +20,6 @@
 
 package com.github.gumtreediff.actions;
 
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -61,18 +60,11 @@ public class RootAndLeavesClassifier extends TreeClassifier {
             }
         }
 
-        Set<ITree> fDstAddTrees = new HashSet<>();
-        for (ITree t: dstAddTrees)
-            if (!dstAddTrees.contains(t.getParent()))
-                fDstAddTrees.add(t);
-        dstAddTrees = fDstAddTrees;
+        Set<ITree> added = dstAddTrees;
+        dstAddTrees = filter(added, t -> !added.contains(t.getParent()));
 
-        Set<ITree> fSrcDelTrees = new HashSet<>();
-        for (ITree t: srcDelTrees) {
-            if (!srcDelTrees.contains(t.getParent()))
-                fSrcDelTrees.add(t);
-        }
-        srcDelTrees = fSrcDelTrees;
+        Set<ITree> deleted = srcDelTrees;
+        srcDelTrees = filter(deleted, t -> !deleted.contains(t.getParent()));
     }
 
 }
@@ -20,9 +20,16 @@
 
 package com.github.gumtreediff.actions;
 
+import java.util.AbstractSet;
+import java.util.BitSet;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.function.Predicate;
 
 import com.github.gumtreediff.actions.model.Action;
 import com.github.gumtreediff.matchers.Mapping;
@@ -31,6 +38,11 @@ import com.github.gumtreediff.matchers.Matcher;
 import com.github.gumtreediff.tree.ITree;
 import com.github.gumtreediff.tree.TreeContext;
 
+/**
+ * Classifies the nodes of the source and destination trees according to the actions touching them.
+ * The classes are stored in bit sets indexed by the ids of the nodes of each tree (see {@link NodeSet}),
+ * so that testing the class of every node while rendering a diff neither hashes nor allocates.
+ */
 public abstract class TreeClassifier {
 
     protected Set<ITree> srcUpdTrees;
@@ -71,16 +83,32 @@ public abstract class TreeClassifier {
         this.src = src;
         this.dst = dst;
         this.mappings = new MappingStore(rawMappings);
-        this.srcDelTrees = new HashSet<>();
-        this.srcMvTrees = new HashSet<>();
-        this.srcUpdTrees = new HashSet<>();
-        this.dstMvTrees = new HashSet<>();
-        this.dstAddTrees = new HashSet<>();
-        this.dstUpdTrees = new HashSet<>();
+        NodeIndex srcIndex = new NodeIndex(src.getRoot());
+        NodeIndex dstIndex = new NodeIndex(dst.getRoot());
+        this.srcDelTrees = new NodeSet(srcIndex);
+        this.srcMvTrees = new NodeSet(srcIndex);
+        this.srcUpdTrees = new NodeSet(srcIndex);
+        this.dstMvTrees = new NodeSet(dstIndex);
+        this.dstAddTrees = new NodeSet(dstIndex);
+        this.dstUpdTrees = new NodeSet(dstIndex);
     }
 
     public abstract void classify();
 
+    /**
+     * @return a new set of the nodes of the given set satisfying the predicate, backed by a bit set when
+     *     the given set is.
+     */
+    protected static Set<ITree> filter(Set<ITree> trees, Predicate<? super ITree> predicate) {
+        if (trees instanceof NodeSet)
+            return ((NodeSet) trees).filter(predicate);
+        Set<ITree> filtered = new HashSet<>();
+        for (ITree t : trees)
+            if (predicate.test(t))
+                filtered.add(t);
+        return filtered;
+    }
+
     public Set<ITree> getSrcUpdTrees() {
         return srcUpdTrees;
     }
@@ -105,4 +133,187 @@ public abstract class TreeClassifier {
         return dstAddTrees;
     }
 
+    /**
+     * Numbering of the nodes of a tree: their id when the ids are exactly 0 to n - 1 (e.g. after
+     * {@link TreeContext#validate()}), otherwise their pre-order rank found by identity.
+     */
+    static final class NodeIndex {
+
+        private final ITree[] nodes;
+
+        private final Map<ITree, Integer> ranks;
+
+        NodeIndex(ITree root) {
+            int size = 0;
+            for (ITree t : root.preOrder())
+                size++;
+            ITree[] byId = new ITree[size];
+            boolean dense = true;
+            for (ITree t : root.preOrder()) {
+                int id = t.getId();
+                if (id < 0 || id >= size || byId[id] != null) {
+                    dense = false;
+                    break;
+                }
+                byId[id] = t;
+            }
+            if (dense) {
+                nodes = byId;
+                ranks = null;
+            } else {
+                nodes = new ITree[size];
+                ranks = new IdentityHashMap<>(2 * size);
+                int i = 0;
+                for (ITree t : root.preOrder()) {
+                    nodes[i] = t;
+                    ranks.put(t, i++);
+                }
+            }
+        }
+
+        /**
+         * @return the index of the node, or -1 if it does not belong to the tree.
+         */
+        int indexOf(Object o) {
+            if (!(o instanceof ITree))
+                return -1;
+            if (ranks == null) {
+                int id = ((ITree) o).getId();
+                return (id >= 0 && id < nodes.length && nodes[id] == o) ? id : -1;
+            }
+            Integer i = ranks.get(o);
+            return (i == null) ? -1 : i;
+        }
+
+        ITree get(int index) {
+            return nodes[index];
+        }
+
+        int size() {
+            return nodes.length;
+        }
+    }
+
+    /**
+     * A set of nodes of a tree, stored as a bit set over the index of the tree. Nodes that do not
+     * belong to the tree are kept aside in a hash set. The nodes of the tree are iterated by
+     * increasing id (or in pre-order when the ids are not a numbering), then the other ones.
+     */
+    static final class NodeSet extends AbstractSet<ITree> {
+
+        private final NodeIndex index;
+
+        private final BitSet bits;
+
+        private int cardinality;
+
+        private Set<Object> others;
+
+        NodeSet(NodeIndex index) {
+            this.index = index;
+            this.bits = new BitSet(index.size());
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            int i = index.indexOf(o);
+            if (i >= 0)
+                return bits.get(i);
+            return others != null && others.contains(o);
+        }
+
+        @Override
+        public boolean add(ITree t) {
+            int i = index.indexOf(t);
+            if (i < 0) {
+                if (others == null)
+                    others = new HashSet<>();
+                return others.add(t);
+            }
+            if (bits.get(i))
+                return false;
+            bits.set(i);
+            cardinality++;
+            return true;
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            int i = index.indexOf(o);
+            if (i < 0)
+                return others != null && others.remove(o);
+            if (!bits.get(i))
+                return false;
+            bits.clear(i);
+            cardinality--;
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            bits.clear();
+            cardinality = 0;
+            others = null;
+        }
+
+        @Override
+        public int size() {
+            return cardinality + (others == null ? 0 : others.size());
+        }
+
+        /**
+         * @return a new set over the same tree, holding the nodes of this set accepted by the filter.
+         */
+        NodeSet filter(Predicate<? super ITree> filter) {
+            NodeSet result = new NodeSet(index);
+            for (ITree t : this)
+                if (filter.test(t))
+                    result.add(t);
+            return result;
+        }
+
+        @Override
+        public Iterator<ITree> iterator() {
+            Iterator<Object> rest = (others == null) ? null : others.iterator();
+            return new Iterator<ITree>() {
+                int next = bits.nextSetBit(0);
+
+                // Bit of the last returned node, or -2 when it comes from the other nodes
+                int last = -1;
+
+                @Override
+                public boolean hasNext() {
+                    return next >= 0 || (rest != null && rest.hasNext());
+                }
+
+                @Override
+                public ITree next() {
+                    if (next >= 0) {
+                        ITree t = index.get(next);
+                        last = next;
+                        next = bits.nextSetBit(next + 1);
+                        return t;
+                    }
+                    if (rest == null)
+                        throw new NoSuchElementException();
+                    ITree t = (ITree) rest.next();
+                    last = -2;
+                    return t;
+                }
+
+                @Override
+                public void remove() {
+                    if (last == -1)
+                        throw new IllegalStateException();
+                    if (last == -2)
+                        rest.remove();
+                    else {
+                        bits.clear(last);
+                        cardinality--;
+                    }
+                    last = -1;
+                }
+            };
+        }
+    }
 }
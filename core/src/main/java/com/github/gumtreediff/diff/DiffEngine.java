@@ -0,0 +1,264 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.diff;
+
+import com.github.gumtreediff.actions.ActionGenerator;
+import com.github.gumtreediff.actions.model.Action;
+import com.github.gumtreediff.gen.Generators;
+import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.matchers.Matcher;
+import com.github.gumtreediff.matchers.Matchers;
+import com.github.gumtreediff.tree.TreeContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Diffs batches of file pairs on a single fork-join pool. For each pair, both files are parsed
+ * concurrently, then the trees are matched and the edit script is generated. At most
+ * {@code maxInFlight} pairs are being processed at a given time, so the trees of a large
+ * batch are never all in memory.
+ *
+ * Matchers forking sub tasks (such as the ChangeDistiller parallel leaves matcher, or the
+ * last chance recoveries of the bottom-up matchers) run them in the pool of the engine: the
+ * tasks are forked into the pool of the caller when it runs in one, and into the common pool
+ * otherwise.
+ */
+public class DiffEngine implements AutoCloseable {
+
+    private final ForkJoinPool pool;
+
+    private final boolean ownPool;
+
+    private final Semaphore inFlight;
+
+    private final int maxInFlight;
+
+    private final String matcher;
+
+    private final String generator;
+
+    private final Generators generators = Generators.getInstance();
+
+    private final Matchers matchers = Matchers.getInstance();
+
+    /**
+     * Create an engine using its own pool, with as many threads as available processors.
+     *
+     * @param matcher the id of the matcher in {@link Matchers}, or null for the default one.
+     * @param generator the id of the generator in {@link Generators}, or null to select it from the file names.
+     */
+    public DiffEngine(String matcher, String generator) {
+        this(matcher, generator, new ForkJoinPool(), true, 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create an engine scheduling its work on the given pool, which is not shut down when the engine is closed.
+     */
+    public DiffEngine(String matcher, String generator, ForkJoinPool pool, int maxInFlight) {
+        this(matcher, generator, pool, false, maxInFlight);
+    }
+
+    private DiffEngine(String matcher, String generator, ForkJoinPool pool, boolean ownPool, int maxInFlight) {
+        if (maxInFlight < 1)
+            throw new IllegalArgumentException("At least one diff must be allowed in flight: " + maxInFlight);
+        this.matcher = matcher;
+        this.generator = generator;
+        this.pool = pool;
+        this.ownPool = ownPool;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Schedule the diff of the given pair, waiting while {@code maxInFlight} diffs are already running.
+     * The returned future never completes exceptionally, failures being reported by {@link Result#getError()}.
+     */
+    public CompletableFuture<Result> submit(Input input) throws InterruptedException {
+        inFlight.acquire();
+        CompletableFuture<TreeContext> src = CompletableFuture.supplyAsync(() -> parse(input.getSrc()), pool);
+        CompletableFuture<TreeContext> dst = CompletableFuture.supplyAsync(() -> parse(input.getDst()), pool);
+        return src.thenCombineAsync(dst, (s, d) -> diff(input, s, d), pool)
+                .handle((result, error) -> {
+                    inFlight.release();
+                    if (error != null)
+                        return new Result(input, null, null, null, null, unwrap(error));
+                    return result;
+                });
+    }
+
+    /**
+     * Diff all the given pairs, handing each result to the consumer as soon as it is available, in
+     * completion order. The consumer is always called from the calling thread, which blocks until the
+     * last result has been consumed.
+     */
+    public void diff(Iterator<Input> inputs, Consumer<Result> consumer) throws InterruptedException {
+        BlockingQueue<Result> completed = new LinkedBlockingQueue<>();
+        int pending = 0;
+        while (inputs.hasNext() || pending > 0) {
+            if (inputs.hasNext() && pending < maxInFlight) {
+                submit(inputs.next()).thenAccept(completed::add);
+                pending++;
+            } else {
+                consumer.accept(completed.take());
+                pending--;
+            }
+            for (Result r = completed.poll(); r != null; r = completed.poll()) {
+                consumer.accept(r);
+                pending--;
+            }
+        }
+    }
+
+    public void diff(Iterable<Input> inputs, Consumer<Result> consumer) throws InterruptedException {
+        diff(inputs.iterator(), consumer);
+    }
+
+    @Override
+    public void close() {
+        if (ownPool)
+            pool.shutdown();
+    }
+
+    private TreeContext parse(String file) {
+        try {
+            if (generator == null)
+                return generators.getTree(file);
+            else
+                return generators.getTree(generator, file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Result diff(Input input, TreeContext src, TreeContext dst) {
+        Matcher m = (matcher == null)
+                ? matchers.getMatcher(src.getRoot(), dst.getRoot())
+                : matchers.getMatcher(matcher, src.getRoot(), dst.getRoot());
+        if (m == null)
+            throw new UnsupportedOperationException("No matcher \"" + matcher + "\" found.");
+        m.match();
+        src.importTypeLabels(dst);
+        ActionGenerator g = new ActionGenerator(src.getRoot(), dst.getRoot(), m.getMappings());
+        List<Action> actions = g.generate();
+        return new Result(input, src, dst, m.getMappings(), actions, null);
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null)
+            error = error.getCause();
+        return error;
+    }
+
+    public static class Input {
+
+        private final String src;
+
+        private final String dst;
+
+        public Input(String src, String dst) {
+            this.src = src;
+            this.dst = dst;
+        }
+
+        public String getSrc() {
+            return src;
+        }
+
+        public String getDst() {
+            return dst;
+        }
+
+        @Override
+        public String toString() {
+            return src + " -> " + dst;
+        }
+    }
+
+    public static class Result {
+
+        private final Input input;
+
+        private final TreeContext src;
+
+        private final TreeContext dst;
+
+        private final MappingStore mappings;
+
+        private final List<Action> actions;
+
+        private final Throwable error;
+
+        Result(Input input, TreeContext src, TreeContext dst, MappingStore mappings, List<Action> actions,
+               Throwable error) {
+            this.input = input;
+            this.src = src;
+            this.dst = dst;
+            this.mappings = mappings;
+            this.actions = actions;
+            this.error = error;
+        }
+
+        public Input getInput() {
+            return input;
+        }
+
+        public TreeContext getSrc() {
+            return src;
+        }
+
+        public TreeContext getDst() {
+            return dst;
+        }
+
+        public MappingStore getMappings() {
+            return mappings;
+        }
+
+        public List<Action> getActions() {
+            return actions;
+        }
+
+        /**
+         * @return the error that prevented the diff, or null if it succeeded.
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        public boolean isSuccessful() {
+            return error == null;
+        }
+    }
+}
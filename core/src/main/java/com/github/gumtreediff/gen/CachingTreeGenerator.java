@@ -0,0 +1,94 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.gen;
+
+import com.github.gumtreediff.tree.TreeContext;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A generator looking up the parsed trees in a {@link TreeCache} before delegating to another
+ * generator, and storing the trees it parses. Storing a tree is best effort: a tree that can not
+ * be stored is still returned.
+ */
+public class CachingTreeGenerator extends TreeGenerator {
+
+    private static final Logger LOGGER = Logger.getLogger("com.github.gumtreediff.gen");
+
+    private final TreeGenerator generator;
+
+    private final String id;
+
+    private final String version;
+
+    private final TreeCache cache;
+
+    /**
+     * @param id the id of the decorated generator.
+     * @param version the version of the decorated generator, trees parsed by other versions are ignored.
+     */
+    public CachingTreeGenerator(TreeGenerator generator, String id, String version, TreeCache cache) {
+        this.generator = generator;
+        this.id = id;
+        this.version = version;
+        this.cache = cache;
+    }
+
+    public TreeGenerator getGenerator() {
+        return generator;
+    }
+
+    @Override
+    protected TreeContext generate(Reader r) throws IOException {
+        return generateFromReader(r);
+    }
+
+    @Override
+    public TreeContext generateFromReader(Reader r) throws IOException {
+        String content = readAll(r);
+        String key = TreeCache.key(id, version, content.getBytes(StandardCharsets.UTF_8));
+        TreeContext context = cache.get(key);
+        if (context == null) {
+            context = generator.generateFromReader(new StringReader(content));
+            try {
+                cache.put(key, context);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Unable to store the tree " + key + " in the cache", e);
+            }
+        }
+        return context;
+    }
+
+    private static String readAll(Reader r) throws IOException {
+        try (Reader reader = r) {
+            StringBuilder b = new StringBuilder();
+            char[] buffer = new char[8192];
+            for (int n = reader.read(buffer); n != -1; n = reader.read(buffer))
+                b.append(buffer, 0, n);
+            return b.toString();
+        }
+    }
+}
@@ -23,6 +23,8 @@ package com.github.gumtreediff.gen;
 import com.github.gumtreediff.tree.TreeContext;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.regex.Pattern;
 
@@ -30,26 +32,59 @@ public class Generators extends Registry<String, TreeGenerator, Register> {
 
     private static Generators registry;
 
+    private TreeCache cache;
+
     public static final Generators getInstance() {
         if (registry == null)
             registry = new Generators();
         return registry;
     }
 
+    private Generators() {
+        String directory = System.getProperty("gt.cache.dir");
+        if (directory != null) {
+            long megabytes = Long.parseLong(System.getProperty("gt.cache.size", "256"));
+            try {
+                cache = new TreeCache(Paths.get(directory), megabytes * 1024 * 1024);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to open the tree cache " + directory, e);
+            }
+        }
+    }
+
+    /**
+     * Look up the trees in the given cache before parsing files, and store the parsed trees in it.
+     * The cache is disabled when null.
+     */
+    public void setCache(TreeCache cache) {
+        this.cache = cache;
+    }
+
+    public TreeCache getCache() {
+        return cache;
+    }
+
     public TreeContext getTree(String file) throws UnsupportedOperationException, IOException {
-        TreeGenerator p = get(file);
-        if (p == null)
+        Entry e = find(file);
+        if (e == null)
             throw new UnsupportedOperationException("No generator found for file: " + file);
-        return p.generateFromFile(file);
+        return instantiate(e).generateFromFile(file);
     }
 
     public TreeContext getTree(String generator, String file) throws UnsupportedOperationException, IOException {
         for (Entry e : entries)
             if (e.id.equals(generator))
-                return e.instantiate(null).generateFromFile(file);
+                return instantiate(e).generateFromFile(file);
         throw new UnsupportedOperationException("No generator \"" + generator + "\" found.");
     }
 
+    private TreeGenerator instantiate(Entry e) {
+        TreeGenerator generator = e.instantiate(null);
+        if (cache == null)
+            return generator;
+        return new CachingTreeGenerator(generator, e.id, TreeCache.versionOf(e.clazz), cache);
+    }
+
     @Override
     protected Entry newEntry(Class<? extends TreeGenerator> clazz, Register annotation) {
         return new Entry(annotation.id(), clazz, defaultFactory(clazz), annotation.priority()) {
@@ -75,6 +75,13 @@ public abstract class Registry<K, C, A> {
         entries.add(entry);
     }
 
+    /**
+     * Remove the entries of the given class, if any.
+     */
+    public void uninstall(Class<? extends C> clazz) {
+        entries.removeIf(e -> e.clazz.equals(clazz));
+    }
+
     protected abstract Entry newEntry(Class<? extends C> clazz, A annotation);
 
     protected Entry findEntry(K key) {
@@ -0,0 +1,281 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.gen;
+
+import com.github.gumtreediff.io.TreeIoUtils;
+import com.github.gumtreediff.tree.TreeContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A size bounded cache of parsed trees stored in a local directory, one file per tree. Trees are
+ * keyed by the digest of the generator id, the generator version and the parsed content, so that
+ * a new version of a generator never reads the trees of a previous one (see {@link #versionOf(Class)}).
+ * When the total size of the files exceeds the given bound, the least recently used trees are
+ * evicted. The modification time of a file is its last use, so that the order survives across runs.
+ *
+ * Trees are stored in the binary format of {@link TreeIoUtils#toBinary(TreeContext)}. Only the
+ * structure, types, type labels, labels, positions and lengths are restored: metadata attached by
+ * the generators is not.
+ */
+public class TreeCache {
+
+    private static final String EXTENSION = ".tree";
+
+    private static final ClassValue<String> VERSIONS = new ClassValue<String>() {
+        @Override
+        protected String computeValue(Class<?> clazz) {
+            try {
+                return computeVersion(clazz);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read the code of " + clazz.getName(), e);
+            }
+        }
+    };
+
+    private final Path directory;
+
+    private final long maxSize;
+
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75F, true);
+
+    private long size;
+
+    public TreeCache(Path directory, long maxSize) throws IOException {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        Files.createDirectories(directory);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : stream)
+                files.add(file);
+        }
+        Map<Path, FileTime> times = new LinkedHashMap<>();
+        for (Path file : files)
+            times.put(file, Files.getLastModifiedTime(file));
+        files.sort(Comparator.comparing(times::get));
+        for (Path file : files) {
+            long length = Files.size(file);
+            entries.put(keyOf(file), length);
+            size += length;
+        }
+        evict();
+    }
+
+    /**
+     * @return the key of the given content parsed by the given version of a generator.
+     */
+    public static String key(String generator, String version, byte[] content) {
+        MessageDigest digest = newDigest();
+        digest.update(generator.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(String.valueOf(version).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(content);
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @return the digest of the code of the given generator class, to be used as its version. The digest
+     *     covers the whole jar of the class, or the files of its package when it is loaded from a directory,
+     *     so that any change to the generator gives a new version. It is computed once per class.
+     */
+    public static String versionOf(Class<?> clazz) {
+        return VERSIONS.get(clazz);
+    }
+
+    private static String computeVersion(Class<?> clazz) throws IOException {
+        MessageDigest digest = newDigest();
+        CodeSource source = clazz.getProtectionDomain().getCodeSource();
+        Path location = null;
+        if (source != null && source.getLocation() != null && "file".equals(source.getLocation().getProtocol())) {
+            try {
+                location = Paths.get(source.getLocation().toURI());
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                location = null;
+            }
+        }
+        if (location != null && Files.isRegularFile(location))
+            update(digest, location);
+        else if (location != null && Files.isDirectory(location)) {
+            Path root = location;
+            Package p = clazz.getPackage();
+            if (p != null && !p.getName().isEmpty())
+                root = location.resolve(p.getName().replace('.', '/'));
+            List<Path> files;
+            try (Stream<Path> stream = Files.walk(root)) {
+                files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                digest.update(root.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                update(digest, file);
+            }
+        } else {
+            String name = clazz.getName();
+            try (InputStream in = clazz.getResourceAsStream(name.substring(name.lastIndexOf('.') + 1) + ".class")) {
+                if (in == null)
+                    throw new IOException("No class file found for " + name);
+                update(digest, in);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            update(digest, in);
+        }
+    }
+
+    private static void update(MessageDigest digest, InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        for (int n = in.read(buffer); n != -1; n = in.read(buffer))
+            digest.update(buffer, 0, n);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] digest) {
+        StringBuilder b = new StringBuilder();
+        for (byte d : digest)
+            b.append(String.format("%02x", d));
+        return b.toString();
+    }
+
+    /**
+     * @return the cached tree of the given key, already validated, or null.
+     */
+    public TreeContext get(String key) {
+        byte[] data;
+        synchronized (this) {
+            if (entries.get(key) == null)
+                return null;
+            Path file = fileOf(key);
+            try {
+                data = Files.readAllBytes(file);
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (IOException e) {
+                remove(key);
+                return null;
+            }
+        }
+        try {
+            return decode(data);
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                remove(key);
+            }
+            return null;
+        }
+    }
+
+    public void put(String key, TreeContext context) throws IOException {
+        byte[] data = encode(context);
+        if (data.length > maxSize)
+            return;
+        synchronized (this) {
+            Path tmp = Files.createTempFile(directory, key, ".tmp");
+            try {
+                Files.write(tmp, data);
+                Files.move(tmp, fileOf(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            Long previous = entries.put(key, (long) data.length);
+            size += data.length - (previous == null ? 0 : previous);
+            evict();
+        }
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    private void evict() throws IOException {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            Files.deleteIfExists(fileOf(eldest.getKey()));
+            size -= eldest.getValue();
+            it.remove();
+        }
+    }
+
+    private void remove(String key) {
+        Long length = entries.remove(key);
+        if (length != null)
+            size -= length;
+        try {
+            Files.deleteIfExists(fileOf(key));
+        } catch (IOException e) {
+            // The file will be overwritten or evicted later
+        }
+    }
+
+    private Path fileOf(String key) {
+        return directory.resolve(key + EXTENSION);
+    }
+
+    private static String keyOf(Path file) {
+        String name = file.getFileName().toString();
+        return name.substring(0, name.length() - EXTENSION.length());
+    }
+
+    static byte[] encode(TreeContext context) {
+        return TreeIoUtils.toBinary(context).toByteArray();
+    }
+
+    static TreeContext decode(byte[] data) throws IOException {
+        return TreeIoUtils.fromBinary().generateFromBytes(data);
+    }
+}
@@ -20,6 +20,7 @@
 
 package com.github.gumtreediff.io;
 
+import com.github.gumtreediff.actions.ActionGenerator;
 import com.github.gumtreediff.actions.model.*;
 import com.github.gumtreediff.io.TreeIoUtils.AbstractSerializer;
 import com.github.gumtreediff.matchers.Mapping;
@@ -35,6 +36,7 @@ import javax.xml.stream.XMLStreamWriter;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.List;
+import java.util.function.Consumer;
 
 public final class ActionsIoUtils {
 
@@ -74,15 +76,58 @@ public final class ActionsIoUtils {
         };
     }
 
+    /**
+     * Serialize the actions of the generator as text while they are generated, without building
+     * the list of actions. The generator runs each time the serializer is written.
+     */
+    public static ActionSerializer toText(TreeContext sctx, ActionGenerator generator,
+                                          MappingStore mappings) throws IOException {
+        return new ActionSerializer(sctx, mappings, generator) {
+
+            @Override
+            protected ActionFormatter newFormatter(TreeContext ctx, Writer writer) throws Exception {
+                return new TextFormatter(ctx, writer);
+            }
+        };
+    }
+
+    public static ActionSerializer toXml(TreeContext sctx, ActionGenerator generator,
+                                         MappingStore mappings) throws IOException {
+        return new ActionSerializer(sctx, mappings, generator) {
+
+            @Override
+            protected ActionFormatter newFormatter(TreeContext ctx, Writer writer) throws Exception {
+                return new XmlFormatter(ctx, writer);
+            }
+        };
+    }
+
+    public static ActionSerializer toJson(TreeContext sctx, ActionGenerator generator,
+                                          MappingStore mappings) throws IOException {
+        return new ActionSerializer(sctx, mappings, generator) {
+
+            @Override
+            protected ActionFormatter newFormatter(TreeContext ctx, Writer writer) throws Exception {
+                return new JsonFormatter(ctx, writer);
+            }
+        };
+    }
+
     public abstract static class ActionSerializer extends AbstractSerializer {
         final TreeContext context;
         final MappingStore mappings;
-        final List<Action> actions;
+        final Consumer<Consumer<Action>> actions;
 
         ActionSerializer(TreeContext context, MappingStore mappings, List<Action> actions) {
             this.context = context;
             this.mappings = mappings;
-            this.actions = actions;
+            this.actions = actions::forEach;
+        }
+
+        ActionSerializer(TreeContext context, MappingStore mappings, ActionGenerator generator) {
+            this.context = context;
+            this.mappings = mappings;
+            this.actions = generator::generate;
         }
 
         protected abstract ActionFormatter newFormatter(TreeContext ctx, Writer writer) throws Exception;
@@ -102,29 +147,52 @@ public final class ActionsIoUtils {
 
             // Write the actions
             fmt.startActions();
-            for (Action a : actions) {
-                ITree src = a.getNode();
-                if (a instanceof Move) {
-                    ITree dst = mappings.getDst(src);
-                    fmt.moveAction(src, dst.getParent(), ((Move) a).getPosition());
-                } else if (a instanceof Update) {
-                    ITree dst = mappings.getDst(src);
-                    fmt.updateAction(src, dst);
-                } else if (a instanceof Insert) {
-                    ITree dst = a.getNode();
-                    if (dst.isRoot())
-                        fmt.insertRoot(src);
-                    else
-                        fmt.insertAction(src, dst.getParent(), dst.getParent().getChildPosition(dst));
-                } else if (a instanceof Delete) {
-                    fmt.deleteAction(src);
-                }
+            try {
+                actions.accept(a -> {
+                    try {
+                        writeAction(fmt, a);
+                    } catch (Exception e) {
+                        throw new WriteException(e);
+                    }
+                });
+            } catch (WriteException e) {
+                throw (Exception) e.getCause();
             }
             fmt.endActions();
 
             // Finish up
             fmt.endOutput();
         }
+
+        private void writeAction(ActionFormatter fmt, Action a) throws Exception {
+            ITree src = a.getNode();
+            if (a instanceof Move) {
+                ITree dst = mappings.getDst(src);
+                fmt.moveAction(src, dst.getParent(), ((Move) a).getPosition());
+            } else if (a instanceof Update) {
+                ITree dst = mappings.getDst(src);
+                fmt.updateAction(src, dst);
+            } else if (a instanceof Insert) {
+                ITree dst = a.getNode();
+                if (dst.isRoot())
+                    fmt.insertRoot(src);
+                else
+                    fmt.insertAction(src, dst.getParent(), dst.getParent().getChildPosition(dst));
+            } else if (a instanceof Delete) {
+                fmt.deleteAction(src);
+            }
+        }
+    }
+
+    /**
+     * Carries the exception of a formatter out of the action sink.
+     */
+    private static final class WriteException extends RuntimeException {
+        private static final long serialVersionUID = -2960153851276214547L;
+
+        WriteException(Exception cause) {
+            super(cause);
+        }
     }
 
     interface ActionFormatter {
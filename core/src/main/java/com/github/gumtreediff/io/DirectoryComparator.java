@@ -22,19 +22,44 @@ package com.github.gumtreediff.io;
 
 import com.github.gumtreediff.utils.Pair;
 
-import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compare two directories. Both roots are walked concurrently, and each file found on both sides
+ * is compared as soon as the second walk reaches it, so that modified files are published before
+ * the walks are over. Added and deleted files are only known when both walks are finished.
+ *
+ * Files of different sizes are modified. Files of same size are compared through memory mapped
+ * regions, unless {@link #setTrustModificationTimes(boolean)} is enabled and they have the same
+ * modification time, in which case they are considered unchanged without being read.
+ *
+ * The collections returned by the getters are safe to read while the comparison is running.
+ */
 public class DirectoryComparator {
 
+    private static final int SMALL_FILE_SIZE = 64 * 1024;
+
+    private static final long MAPPED_REGION_SIZE = 8L * 1024 * 1024;
+
     private Path src;
 
     public Path getSrc() {
@@ -55,10 +80,26 @@ public class DirectoryComparator {
 
     private boolean dirMode = true;
 
+    private boolean trustModificationTimes = false;
+
+    private Executor executor = ForkJoinPool.commonPool();
+
+    /**
+     * Receives the differences as soon as they are found, possibly from several threads at once.
+     */
+    public interface Listener {
+
+        default void modified(File src, File dst) {}
+
+        default void deleted(File src) {}
+
+        default void added(File dst) {}
+    }
+
     public DirectoryComparator(String src, String dst) {
-        modifiedFiles = new ArrayList<>();
-        addedFiles = new HashSet<>();
-        deletedFiles =  new HashSet<>();
+        modifiedFiles = new CopyOnWriteArrayList<>();
+        addedFiles = ConcurrentHashMap.newKeySet();
+        deletedFiles = ConcurrentHashMap.newKeySet();
         this.src = Paths.get(src);
         this.dst = Paths.get(dst);
         if (!Files.exists(this.src) || !Files.exists(this.dst))
@@ -76,33 +117,99 @@ public class DirectoryComparator {
         }
     }
 
+    /**
+     * Consider files having the same size and modification time as unchanged without reading them.
+     */
+    public void setTrustModificationTimes(boolean trustModificationTimes) {
+        this.trustModificationTimes = trustModificationTimes;
+    }
+
+    /**
+     * Set the executor running the walks and the comparisons, the common fork-join pool by default.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
     public void compare() {
-        if (!dirMode) return;
-        AllFilesVisitor vSrc = new AllFilesVisitor(src);
-        AllFilesVisitor vDst = new AllFilesVisitor(dst);
+        compare(new Listener() {});
+    }
+
+    public void compare(Listener listener) {
         try {
-            Files.walkFileTree(src, vSrc);
-            Files.walkFileTree(dst, vDst);
-
-            Set<String> addedFiles = new HashSet<>();
-            addedFiles.addAll(vDst.files);
-            addedFiles.removeAll(vSrc.files);
-            for (String file : addedFiles) this.addedFiles.add(toDstFile(file));
-
-            Set<String> deletedFiles = new HashSet<>();
-            deletedFiles.addAll(vSrc.files);
-            deletedFiles.removeAll(vDst.files);
-            for (String file : deletedFiles) this.deletedFiles.add(toSrcFile(file));
-
-            Set<String> commonFiles = new HashSet<>();
-            commonFiles.addAll(vSrc.files);
-            commonFiles.retainAll(vDst.files);
-
-            for (String file : commonFiles)
-                if (hasChanged(file, file))
-                    modifiedFiles.add(new Pair<File, File>(toSrcFile(file), toDstFile(file)));
+            compareAsync(listener).join();
+        } catch (CompletionException e) {
+            e.getCause().printStackTrace();
+        }
+    }
+
+    public CompletableFuture<Void> compareAsync() {
+        return compareAsync(new Listener() {});
+    }
+
+    /**
+     * Start the comparison and return immediately. The results are both published to the listener
+     * and accumulated in the modified, added and deleted files of this comparator.
+     */
+    public CompletableFuture<Void> compareAsync(Listener listener) {
+        if (!dirMode)
+            return CompletableFuture.completedFuture(null);
+
+        // Files seen by a single walk so far, the second walk to find a file schedules its comparison.
+        Map<String, VisitedFile> pending = new ConcurrentHashMap<>();
+        Queue<CompletableFuture<Void>> comparisons = new ConcurrentLinkedQueue<>();
+        CompletableFuture<Void> srcWalk = CompletableFuture.runAsync(() -> walk(src, (file, attrs) -> {
+            VisitedFile other = pending.putIfAbsent(file, new VisitedFile(true, attrs));
+            if (other != null) {
+                pending.remove(file);
+                comparisons.add(compareAsync(file, attrs, other.attrs, listener));
+            }
+        }), executor);
+        CompletableFuture<Void> dstWalk = CompletableFuture.runAsync(() -> walk(dst, (file, attrs) -> {
+            VisitedFile other = pending.putIfAbsent(file, new VisitedFile(false, attrs));
+            if (other != null) {
+                pending.remove(file);
+                comparisons.add(compareAsync(file, other.attrs, attrs, listener));
+            }
+        }), executor);
+
+        return CompletableFuture.allOf(srcWalk, dstWalk).thenCompose(v -> {
+            for (Map.Entry<String, VisitedFile> e : pending.entrySet()) {
+                if (e.getValue().inSrc) {
+                    File f = toSrcFile(e.getKey());
+                    deletedFiles.add(f);
+                    listener.deleted(f);
+                } else {
+                    File f = toDstFile(e.getKey());
+                    addedFiles.add(f);
+                    listener.added(f);
+                }
+            }
+            return CompletableFuture.allOf(comparisons.toArray(new CompletableFuture<?>[0]));
+        });
+    }
+
+    private CompletableFuture<Void> compareAsync(String file, BasicFileAttributes srcAttrs,
+                                                 BasicFileAttributes dstAttrs, Listener listener) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                if (hasChanged(file, srcAttrs, dstAttrs)) {
+                    File s = toSrcFile(file);
+                    File d = toDstFile(file);
+                    modifiedFiles.add(new Pair<>(s, d));
+                    listener.modified(s, d);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    private void walk(Path root, AllFilesVisitor.FileConsumer consumer) {
+        try {
+            Files.walkFileTree(root, new AllFilesVisitor(root, consumer));
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
         }
     }
 
@@ -131,39 +238,86 @@ public class DirectoryComparator {
     }
 
     public boolean hasChanged(String s1, String s2) throws IOException {
-        File f1 = toSrcFile(s1);
-        File f2 = toDstFile(s2);
-        long l1 = Files.size(f1.toPath());
-        long l2 = Files.size(f2.toPath());
-        if (l1 != l2) return true;
-        else {
-            try (DataInputStream dis1 = new DataInputStream(new FileInputStream(f1));
-                    DataInputStream dis2 = new DataInputStream(new FileInputStream(f2))) {
-                int c1, c2;
-                while ((c1 = dis1.read()) != -1) {
-                    c2 = dis2.read();
-                    if (c1 != c2)
-                        return true;
-                }
-                return false;
+        Path p1 = toSrcFile(s1).toPath();
+        Path p2 = toDstFile(s2).toPath();
+        return hasChanged(p1, p2, Files.readAttributes(p1, BasicFileAttributes.class),
+                Files.readAttributes(p2, BasicFileAttributes.class));
+    }
+
+    private boolean hasChanged(String file, BasicFileAttributes a1, BasicFileAttributes a2) throws IOException {
+        return hasChanged(toSrcFile(file).toPath(), toDstFile(file).toPath(), a1, a2);
+    }
+
+    private boolean hasChanged(Path p1, Path p2, BasicFileAttributes a1, BasicFileAttributes a2)
+            throws IOException {
+        if (a1.size() != a2.size())
+            return true;
+        if (trustModificationTimes && a1.lastModifiedTime().equals(a2.lastModifiedTime()))
+            return false;
+        return !hasSameContent(p1, p2, a1.size());
+    }
+
+    private static boolean hasSameContent(Path p1, Path p2, long size) throws IOException {
+        if (size <= SMALL_FILE_SIZE)
+            return Arrays.equals(Files.readAllBytes(p1), Files.readAllBytes(p2));
+        try (FileChannel c1 = FileChannel.open(p1, StandardOpenOption.READ);
+                FileChannel c2 = FileChannel.open(p2, StandardOpenOption.READ)) {
+            for (long pos = 0; pos < size; pos += MAPPED_REGION_SIZE) {
+                long length = Math.min(MAPPED_REGION_SIZE, size - pos);
+                MappedByteBuffer b1 = c1.map(FileChannel.MapMode.READ_ONLY, pos, length);
+                MappedByteBuffer b2 = c2.map(FileChannel.MapMode.READ_ONLY, pos, length);
+                if (!b1.equals(b2))
+                    return false;
             }
+            return true;
+        }
+    }
+
+    private static class VisitedFile {
+
+        final boolean inSrc;
+
+        final BasicFileAttributes attrs;
+
+        VisitedFile(boolean inSrc, BasicFileAttributes attrs) {
+            this.inSrc = inSrc;
+            this.attrs = attrs;
         }
     }
 
     public static class AllFilesVisitor extends SimpleFileVisitor<Path> {
 
+        public interface FileConsumer {
+            void accept(String file, BasicFileAttributes attrs);
+        }
+
         private Set<String> files = new HashSet<>();
 
         private Path root;
 
+        private FileConsumer consumer;
+
         public AllFilesVisitor(Path root) {
             this.root = root;
+            this.consumer = (file, attrs) -> files.add(file);
+        }
+
+        /**
+         * Hand the path of each visited file, relative to the root, to the given consumer.
+         */
+        public AllFilesVisitor(Path root, FileConsumer consumer) {
+            this.root = root;
+            this.consumer = consumer;
+        }
+
+        public Set<String> getFiles() {
+            return files;
         }
 
         @Override
         public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
             if (!file.getFileName().startsWith("."))
-                files.add(root.relativize(file).toString());
+                consumer.accept(root.relativize(file).toString(), attrs);
             return FileVisitResult.CONTINUE;
         }
 
@@ -23,25 +23,36 @@ package com.github.gumtreediff.io;
 import com.github.gumtreediff.gen.Register;
 import com.github.gumtreediff.gen.TreeGenerator;
 import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.tree.CompactTreeStore;
 import com.github.gumtreediff.tree.ITree;
 import com.github.gumtreediff.tree.TreeContext;
 import com.github.gumtreediff.tree.TreeContext.MetadataSerializers;
 import com.github.gumtreediff.tree.TreeContext.MetadataUnserializers;
 import com.github.gumtreediff.tree.TreeUtils;
 import com.google.gson.stream.JsonWriter;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
 
-import javax.xml.namespace.QName;
 import javax.xml.stream.*;
-import javax.xml.stream.events.Attribute;
-import javax.xml.stream.events.EndElement;
-import javax.xml.stream.events.StartElement;
-import javax.xml.stream.events.XMLEvent;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayDeque;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Stack;
 import java.util.regex.Pattern;
@@ -50,16 +61,26 @@ public final class TreeIoUtils {
 
     private TreeIoUtils() {} // Forbids instantiation of TreeIOUtils
 
-    public static TreeGenerator fromXml() {
+    public static XmlInternalGenerator fromXml() {
         return new XmlInternalGenerator();
     }
 
-    public static TreeGenerator fromXml(MetadataUnserializers unserializers) {
+    public static XmlInternalGenerator fromXml(MetadataUnserializers unserializers) {
         XmlInternalGenerator generator = new XmlInternalGenerator();
         generator.getUnserializers().addAll(unserializers);
         return generator;
     }
 
+    public static BinaryGenerator fromBinary() {
+        return new BinaryGenerator();
+    }
+
+    public static BinaryGenerator fromBinary(MetadataUnserializers unserializers) {
+        BinaryGenerator generator = new BinaryGenerator();
+        generator.getUnserializers().addAll(unserializers);
+        return generator;
+    }
+
     public static TreeSerializer toXml(TreeContext ctx) {
         return new TreeSerializer(ctx) {
             @Override
@@ -120,6 +141,10 @@ public final class TreeIoUtils {
         };
     }
 
+    public static BinarySerializer toBinary(TreeContext ctx) {
+        return new BinarySerializer(ctx);
+    }
+
     public abstract static class AbstractSerializer {
 
         public abstract void writeTo(Writer writer) throws Exception;
@@ -606,6 +631,386 @@ public final class TreeIoUtils {
         }
     }
 
+    /**
+     * Binary format of the trees, much faster to read and write and smaller than XML. It starts with
+     * a magic number and a format version, followed by a table of all the strings (labels, type labels
+     * and metadata), the global metadata, the type labels, and the nodes in pre-order. Integers are
+     * encoded as unsigned LEB128 varints (zigzag for signed ones), positions being delta-encoded
+     * against the previous node. Only the metadata having a serializer are written.
+     */
+    static final class BinaryFormat {
+
+        static final int MAGIC = 0x47544200; // "GTB\0"
+
+        static final int VERSION = 1;
+
+        static final int HAS_POSITION = 1;
+
+        static final int HAS_METADATA = 2;
+
+        private BinaryFormat() {}
+    }
+
+    public static class BinarySerializer extends TreeSerializer {
+
+        public BinarySerializer(TreeContext ctx) {
+            super(ctx);
+        }
+
+        @Override
+        protected TreeFormatter newFormatter(TreeContext ctx, MetadataSerializers serializers, Writer writer) {
+            throw new UnsupportedOperationException("The binary format can only be written to byte streams");
+        }
+
+        @Override
+        public void writeTo(Writer writer) {
+            throw new UnsupportedOperationException("The binary format can only be written to byte streams");
+        }
+
+        @Override
+        public void writeTo(OutputStream stream) throws Exception {
+            writeTo(Channels.newChannel(stream));
+        }
+
+        @Override
+        public void writeTo(String file) throws Exception {
+            writeTo(new File(file));
+        }
+
+        @Override
+        public void writeTo(File file) throws Exception {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeTo(channel);
+            }
+        }
+
+        public void writeTo(WritableByteChannel channel) throws IOException {
+            ByteBuffer buffer = toByteBuffer();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+
+        public byte[] toByteArray() {
+            ByteBuffer buffer = toByteBuffer();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return bytes;
+        }
+
+        /**
+         * @return the Base64 encoding of the binary tree.
+         */
+        @Override
+        public String toString() {
+            return Base64.getEncoder().encodeToString(toByteArray());
+        }
+
+        private ByteBuffer toByteBuffer() {
+            TObjectIntMap<String> strings = new TObjectIntHashMap<>(64, 0.5F, -1);
+            List<String> table = new ArrayList<>();
+            intern(ITree.NO_LABEL, strings, table);
+
+            VarIntBuffer metadata = new VarIntBuffer(64);
+            writeMetadata(metadata, context.getMetadata(), strings, table);
+
+            TIntObjectMap<String> typeLabels = new TIntObjectHashMap<>();
+            List<ITree> trees = context.getRoot().getTrees();
+            VarIntBuffer nodes = new VarIntBuffer(trees.size() * 8);
+            int lastPos = 0;
+            VarIntBuffer nodeMetadata = new VarIntBuffer(16);
+            for (ITree t : trees) {
+                if (!typeLabels.containsKey(t.getType()) && context.hasLabelFor(t.getType()))
+                    typeLabels.put(t.getType(), context.getTypeLabel(t));
+                nodeMetadata.clear();
+                int metadataCount = writeMetadata(nodeMetadata, t.getMetadata(), strings, table);
+                int flags = (t.getPos() == ITree.NO_VALUE ? 0 : BinaryFormat.HAS_POSITION)
+                        | (metadataCount == 0 ? 0 : BinaryFormat.HAS_METADATA);
+                nodes.putSigned(t.getType());
+                nodes.put(intern(t.getLabel(), strings, table));
+                nodes.put(t.getChildren().size());
+                nodes.put(flags);
+                if (t.getPos() != ITree.NO_VALUE) {
+                    nodes.putSigned(t.getPos() - lastPos);
+                    nodes.put(t.getLength());
+                    lastPos = t.getPos();
+                }
+                if (metadataCount != 0)
+                    nodes.put(nodeMetadata);
+            }
+            int[] types = typeLabels.keys();
+            Arrays.sort(types);
+            for (int type : types)
+                intern(typeLabels.get(type), strings, table);
+
+            VarIntBuffer out = new VarIntBuffer(nodes.size() + metadata.size() + table.size() * 8 + 64);
+            out.buffer.putInt(BinaryFormat.MAGIC);
+            out.put(BinaryFormat.VERSION);
+            out.put(table.size());
+            for (String string : table)
+                out.put(string);
+            out.put(metadata);
+            out.put(types.length);
+            for (int type : types) {
+                out.putSigned(type);
+                out.put(strings.get(typeLabels.get(type)));
+            }
+            out.put(trees.size());
+            out.put(nodes);
+            ByteBuffer buffer = out.buffer;
+            buffer.flip();
+            return buffer;
+        }
+
+        /**
+         * Write the number of serialized entries followed by their key and value ids.
+         *
+         * @return the number of serialized entries.
+         */
+        private int writeMetadata(VarIntBuffer out, Iterator<Entry<String, Object>> it,
+                                  TObjectIntMap<String> strings, List<String> table) {
+            List<String> entries = new ArrayList<>();
+            TreeFormatter collector = new TreeFormatterAdapter(context) {
+                @Override
+                public void serializeAttribute(String name, String value) {
+                    entries.add(name);
+                    entries.add(value);
+                }
+            };
+            try {
+                writeAttributes(collector, it);
+            } catch (Exception e) {
+                throw new FormatException(e);
+            }
+            out.put(entries.size() / 2);
+            for (String entry : entries)
+                out.put(intern(entry, strings, table));
+            return entries.size() / 2;
+        }
+
+        private static int intern(String string, TObjectIntMap<String> strings, List<String> table) {
+            int id = strings.get(string);
+            if (id == -1) {
+                id = table.size();
+                strings.put(string, id);
+                table.add(string);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * A growable heap byte buffer writing varints.
+     */
+    static final class VarIntBuffer {
+
+        ByteBuffer buffer;
+
+        VarIntBuffer(int capacity) {
+            buffer = ByteBuffer.allocate(Math.max(capacity, 16));
+        }
+
+        int size() {
+            return buffer.position();
+        }
+
+        void clear() {
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+
+        void put(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void putSigned(int value) {
+            put((value << 1) ^ (value >> 31));
+        }
+
+        void put(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            put(bytes.length);
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        void put(VarIntBuffer other) {
+            ensure(other.size());
+            buffer.put(other.buffer.array(), other.buffer.arrayOffset(), other.size());
+        }
+
+        static int get(ByteBuffer buffer) {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0)
+                    return value;
+            }
+            throw new IllegalStateException("Malformed varint");
+        }
+
+        static int getSigned(ByteBuffer buffer) {
+            int value = get(buffer);
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        static String getString(ByteBuffer buffer) {
+            int length = get(buffer);
+            String value;
+            if (buffer.hasArray()) {
+                value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                        StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            } else {
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                value = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return value;
+        }
+    }
+
+    @Register(id = "binary", accept = "\\.gtb$")
+    public static class BinaryGenerator extends TreeGenerator {
+
+        final MetadataUnserializers unserializers = new MetadataUnserializers();
+
+        @Override
+        protected TreeContext generate(Reader r) {
+            throw new UnsupportedOperationException("The binary format can only be read from byte streams");
+        }
+
+        @Override
+        public TreeContext generateFromReader(Reader r) {
+            throw new UnsupportedOperationException("The binary format can only be read from byte streams");
+        }
+
+        @Override
+        public TreeContext generateFromFile(String path) throws IOException {
+            return generateFromFile(new File(path));
+        }
+
+        @Override
+        public TreeContext generateFromFile(File file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+                while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                    // Read the whole file
+                }
+                buffer.flip();
+                return generateFromBuffer(buffer);
+            }
+        }
+
+        @Override
+        public TreeContext generateFromStream(InputStream stream) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            for (int n = stream.read(chunk); n != -1; n = stream.read(chunk))
+                bytes.write(chunk, 0, n);
+            return generateFromBuffer(ByteBuffer.wrap(bytes.toByteArray()));
+        }
+
+        public TreeContext generateFromBytes(byte[] bytes) throws IOException {
+            return generateFromBuffer(ByteBuffer.wrap(bytes));
+        }
+
+        public TreeContext generateFromBuffer(ByteBuffer buffer) throws IOException {
+            try {
+                if (buffer.getInt() != BinaryFormat.MAGIC)
+                    throw new IOException("Not a binary tree file");
+                int version = VarIntBuffer.get(buffer);
+                if (version != BinaryFormat.VERSION)
+                    throw new IOException("Unsupported binary tree format version: " + version);
+                String[] strings = new String[VarIntBuffer.get(buffer)];
+                for (int i = 0; i < strings.length; i++)
+                    strings[i] = VarIntBuffer.getString(buffer);
+
+                TreeContext context = new TreeContext();
+                for (int i = VarIntBuffer.get(buffer); i > 0; i--) {
+                    String key = strings[VarIntBuffer.get(buffer)];
+                    unserializers.load(context, key, strings[VarIntBuffer.get(buffer)]);
+                }
+                TIntObjectMap<String> typeLabels = new TIntObjectHashMap<>();
+                for (int i = VarIntBuffer.get(buffer); i > 0; i--) {
+                    int type = VarIntBuffer.getSigned(buffer);
+                    typeLabels.put(type, strings[VarIntBuffer.get(buffer)]);
+                }
+
+                int count = VarIntBuffer.get(buffer);
+                ITree[] parents = new ITree[16];
+                int[] remaining = new int[16];
+                int depth = 0;
+                int lastPos = 0;
+                for (int i = 0; i < count; i++) {
+                    int type = VarIntBuffer.getSigned(buffer);
+                    ITree t = context.createTree(type, strings[VarIntBuffer.get(buffer)], typeLabels.get(type));
+                    int children = VarIntBuffer.get(buffer);
+                    int flags = VarIntBuffer.get(buffer);
+                    if ((flags & BinaryFormat.HAS_POSITION) != 0) {
+                        lastPos += VarIntBuffer.getSigned(buffer);
+                        t.setPos(lastPos);
+                        t.setLength(VarIntBuffer.get(buffer));
+                    }
+                    if ((flags & BinaryFormat.HAS_METADATA) != 0) {
+                        for (int j = VarIntBuffer.get(buffer); j > 0; j--) {
+                            String key = strings[VarIntBuffer.get(buffer)];
+                            unserializers.load(t, key, strings[VarIntBuffer.get(buffer)]);
+                        }
+                    }
+
+                    if (depth == 0)
+                        context.setRoot(t);
+                    else {
+                        parents[depth - 1].addChild(t);
+                        remaining[depth - 1]--;
+                    }
+                    while (depth > 0 && remaining[depth - 1] == 0)
+                        depth--;
+                    if (children > 0) {
+                        if (depth == parents.length) {
+                            parents = Arrays.copyOf(parents, depth * 2);
+                            remaining = Arrays.copyOf(remaining, depth * 2);
+                        }
+                        parents[depth] = t;
+                        remaining[depth] = children;
+                        depth++;
+                    }
+                }
+                context.validate();
+                return context;
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Malformed binary tree", e);
+            }
+        }
+
+        public MetadataUnserializers getUnserializers() {
+            return unserializers;
+        }
+    }
+
+    /**
+     * Reads the XML format with the cursor API of StAX: no event or attribute object is created, the
+     * trees are built while the document is scanned, and the labels are interned. Byte inputs are
+     * decoded by the parser, and files are read through a memory mapping. Alternatively, the trees
+     * can be read into a {@link CompactTreeStore}, see {@link #setCompact(boolean)}.
+     */
     @Register(id = "xml", accept = "\\.gxml$")
     // TODO Since it is not in the right package, I'm not even sure it is visible in the registry
     // TODO should we move this class elsewhere (another package)
@@ -614,13 +1019,19 @@ public final class TreeIoUtils {
         static MetadataUnserializers defaultUnserializers = new MetadataUnserializers();
         final MetadataUnserializers unserializers = new MetadataUnserializers(); // FIXME should it be pushed up or not?
 
-        private static final QName TYPE = new QName("type");
+        // The factories are not guaranteed to be thread-safe, and the generators run concurrently.
+        private static final ThreadLocal<XMLInputFactory> FACTORY =
+                ThreadLocal.withInitial(XMLInputFactory::newInstance);
 
-        private static final QName LABEL = new QName("label");
-        private static final QName TYPE_LABEL = new QName("typeLabel");
+        private static final String TREE = "tree";
+        private static final String TYPE = "type";
+        private static final String LABEL = "label";
+        private static final String TYPE_LABEL = "typeLabel";
         private static final String POS = "pos";
         private static final String LENGTH = "length";
 
+        private boolean compact;
+
         static {
             defaultUnserializers.add(POS, Integer::parseInt);
             defaultUnserializers.add(LENGTH, Integer::parseInt);
@@ -630,56 +1041,240 @@ public final class TreeIoUtils {
             unserializers.addAll(defaultUnserializers);
         }
 
+        /**
+         * Read the trees into a {@link CompactTreeStore} rather than into {@link Tree} nodes, which
+         * keeps the memory proportional to the number of nodes for very large trees.
+         */
+        public void setCompact(boolean compact) {
+            this.compact = compact;
+        }
+
         @Override
         protected TreeContext generate(Reader source) throws IOException {
-            XMLInputFactory fact = XMLInputFactory.newInstance();
+            try {
+                return read(FACTORY.get().createXMLStreamReader(source));
+            } catch (XMLStreamException e) {
+                throw new IOException("Malformed XML tree", e);
+            }
+        }
+
+        @Override
+        public TreeContext generateFromStream(InputStream stream) throws IOException {
+            try {
+                TreeContext context = read(FACTORY.get().createXMLStreamReader(stream, "UTF-8"));
+                context.validate();
+                return context;
+            } catch (XMLStreamException e) {
+                throw new IOException("Malformed XML tree", e);
+            }
+        }
+
+        @Override
+        public TreeContext generateFromFile(String path) throws IOException {
+            return generateFromFile(new File(path));
+        }
+
+        @Override
+        public TreeContext generateFromFile(File file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE)
+                    return super.generateFromFile(file);
+                return generateFromBuffer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+
+        public TreeContext generateFromBuffer(ByteBuffer buffer) throws IOException {
+            return generateFromStream(new ByteBufferInputStream(buffer.slice()));
+        }
+
+        private TreeContext read(XMLStreamReader r) throws XMLStreamException, IOException {
             TreeContext context = new TreeContext();
+            TreeSink sink = compact ? new CompactSink(context) : new TreeObjectSink(context);
+            // Attributes of the current element, the buffers are reused from one element to the other.
+            String[] keys = new String[8];
+            String[] values = new String[8];
             try {
-                ArrayDeque<ITree> trees = new ArrayDeque<>();
-                XMLEventReader r = fact.createXMLEventReader(source);
                 while (r.hasNext()) {
-                    XMLEvent e = r.nextEvent();
-                    if (e instanceof StartElement) {
-                        StartElement s = (StartElement) e;
-                        if (!s.getName().getLocalPart().equals("tree")) // FIXME need to deal with options
+                    int event = r.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        if (!TREE.equals(r.getLocalName())) // FIXME need to deal with options
                             continue;
-                        int type = Integer.parseInt(s.getAttributeByName(TYPE).getValue());
-
-                        ITree t = context.createTree(type,
-                                labelForAttribute(s, LABEL), labelForAttribute(s, TYPE_LABEL));
-                        // FIXME this iterator has no type, due to the API. We have to cast it later
-                        Iterator<?> it = s.getAttributes();
-                        while (it.hasNext()) {
-                            Attribute a = (Attribute) it.next();
-                            unserializers.load(t, a.getName().getLocalPart(), a.getValue());
+                        int count = r.getAttributeCount();
+                        if (count > keys.length) {
+                            keys = new String[Math.max(count, 2 * keys.length)];
+                            values = new String[keys.length];
                         }
-
-                        if (trees.isEmpty())
-                            context.setRoot(t);
-                        else
-                            t.setParentAndUpdateChildren(trees.peekFirst());
-                        trees.addFirst(t);
-                    } else if (e instanceof EndElement) {
-                        if (!((EndElement)e).getName().getLocalPart().equals("tree")) // FIXME need to deal with options
-                            continue;
-                        trees.removeFirst();
+                        String type = null;
+                        String label = ITree.NO_LABEL;
+                        String typeLabel = ITree.NO_LABEL;
+                        int pos = ITree.NO_VALUE;
+                        int length = ITree.NO_VALUE;
+                        for (int i = 0; i < count; i++) {
+                            String key = r.getAttributeLocalName(i);
+                            String value = r.getAttributeValue(i);
+                            keys[i] = key;
+                            values[i] = value;
+                            if (TYPE.equals(key))
+                                type = value;
+                            else if (LABEL.equals(key))
+                                label = value;
+                            else if (TYPE_LABEL.equals(key))
+                                typeLabel = value;
+                            else if (POS.equals(key) && unserializers.get(POS) != null)
+                                pos = Integer.parseInt(value);
+                            else if (LENGTH.equals(key) && unserializers.get(LENGTH) != null)
+                                length = Integer.parseInt(value);
+                        }
+                        if (type == null)
+                            throw new IOException("Missing type of tree at " + r.getLocation());
+
+                        sink.startTree(Integer.parseInt(type), label, typeLabel, pos, length);
+                        for (int i = 0; i < count; i++) {
+                            if (POS.equals(keys[i]) || LENGTH.equals(keys[i]))
+                                continue;
+                            MetadataUnserializer s = unserializers.get(keys[i]);
+                            if (s != null)
+                                sink.setMetadata(keys[i], s.fromString(values[i]));
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        if (TREE.equals(r.getLocalName())) // FIXME need to deal with options
+                            sink.endTree();
                     }
                 }
-                context.validate();
-                return context;
+            } catch (IOException | XMLStreamException e) {
+                throw e;
             } catch (Exception e) {
-                e.printStackTrace();
+                throw new IOException("Malformed XML tree", e);
+            } finally {
+                r.close();
             }
-            return null;
-        }
-
-        private static String labelForAttribute(StartElement s, QName attrName) {
-            Attribute attr = s.getAttributeByName(attrName);
-            return attr == null ? ITree.NO_LABEL : attr.getValue();
+            sink.finish();
+            return context;
         }
 
         public MetadataUnserializers getUnserializers() {
             return unserializers;
         }
+
+        private abstract static class TreeSink {
+
+            final TreeContext context;
+
+            TreeSink(TreeContext context) {
+                this.context = context;
+            }
+
+            abstract void startTree(int type, String label, String typeLabel, int pos, int length);
+
+            abstract void setMetadata(String key, Object value);
+
+            abstract void endTree();
+
+            void finish() {
+            }
+        }
+
+        private static final class TreeObjectSink extends TreeSink {
+
+            private final Map<String, String> labels = new HashMap<>();
+
+            private ITree[] trees = new ITree[16];
+
+            private int depth;
+
+            TreeObjectSink(TreeContext context) {
+                super(context);
+            }
+
+            @Override
+            void startTree(int type, String label, String typeLabel, int pos, int length) {
+                String interned = labels.putIfAbsent(label, label);
+                ITree t = context.createTree(type, interned == null ? label : interned, typeLabel);
+                if (pos != ITree.NO_VALUE)
+                    t.setPos(pos);
+                if (length != ITree.NO_VALUE)
+                    t.setLength(length);
+                if (depth == 0)
+                    context.setRoot(t);
+                else
+                    trees[depth - 1].addChild(t);
+                if (depth == trees.length)
+                    trees = Arrays.copyOf(trees, 2 * depth);
+                trees[depth++] = t;
+            }
+
+            @Override
+            void setMetadata(String key, Object value) {
+                trees[depth - 1].setMetadata(key, value);
+            }
+
+            @Override
+            void endTree() {
+                depth--;
+            }
+        }
+
+        private static final class CompactSink extends TreeSink {
+
+            private final CompactTreeStore.Builder builder = new CompactTreeStore.Builder();
+
+            CompactSink(TreeContext context) {
+                super(context);
+            }
+
+            @Override
+            void startTree(int type, String label, String typeLabel, int pos, int length) {
+                context.registerTypeLabel(type, typeLabel);
+                builder.startTree(type, label, pos, length);
+            }
+
+            @Override
+            void setMetadata(String key, Object value) {
+                builder.setMetadata(key, value);
+            }
+
+            @Override
+            void endTree() {
+                builder.endTree();
+            }
+
+            @Override
+            void finish() {
+                context.setRoot(builder.build().getRoot());
+            }
+        }
+    }
+
+    /**
+     * Reads a byte buffer, such as a mapped file, without copying it.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0)
+                return 0;
+            if (!buffer.hasRemaining())
+                return -1;
+            int n = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
     }
 }
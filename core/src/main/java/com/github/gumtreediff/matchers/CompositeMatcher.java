@@ -22,20 +22,62 @@ package com.github.gumtreediff.matchers;
 
 import com.github.gumtreediff.tree.ITree;
 
+/**
+ * Runs a sequence of matchers on the same store. When the budget of the composite (see
+ * {@link #setBudget(MatchingBudget)}) is exhausted, the remaining phases are skipped, and if a fallback
+ * is set, it completes the mappings found so far.
+ */
 public class CompositeMatcher extends Matcher {
 
     protected final Matcher[] matchers;
 
+    private MatcherFactory fallback;
+
     public CompositeMatcher(ITree src, ITree dst, MappingStore store, Matcher[] matchers) {
         super(src, dst, store);
         this.matchers = matchers;
     }
 
+    public MatcherFactory getFallback() {
+        return fallback;
+    }
+
+    /**
+     * Set the matcher run when the budget is exhausted, such as {@code GreedySubtreeMatcher::new}, or null
+     * to only keep the mappings found so far. The fallback is run without budget, in its own store, and
+     * its mappings between nodes that are not mapped yet are added to the store of the composite.
+     */
+    public void setFallback(MatcherFactory fallback) {
+        this.fallback = fallback;
+    }
+
     @Override
     public void match() {
-        for (Matcher matcher : matchers) {
-            matcher.match();
+        int done = 0;
+        while (done < matchers.length && !isBudgetExhausted())
+            runPhase(matchers[done++]);
+        if (isBudgetExhausted())
+            degrade(done);
+    }
+
+    private void degrade(int done) {
+        LOGGER.fine(String.format("Budget exhausted after %d of %d phases%s.", done, matchers.length,
+                fallback == null ? "" : ", running the fallback"));
+        if (fallback == null)
+            return;
+        MappingStore store = new MappingStore();
+        Matcher m = fallback.newMatcher(src, dst, store);
+        m.setBudget(MatchingBudget.unlimited());
+        runPhase(m);
+        for (Mapping mapping : store) {
+            ITree left = mapping.getFirst();
+            ITree right = mapping.getSecond();
+            if (!mappings.hasSrc(left) && !mappings.hasDst(right))
+                addMapping(left, right);
         }
     }
 
+    public interface MatcherFactory {
+        Matcher newMatcher(ITree src, ITree dst, MappingStore store);
+    }
 }
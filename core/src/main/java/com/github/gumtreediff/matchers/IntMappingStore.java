@@ -0,0 +1,226 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.matchers;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import com.github.gumtreediff.tree.ITree;
+
+/**
+ * A mapping store backed by two dense arrays indexed by node ids, -1 standing for unmapped nodes.
+ * The ids of the source and destination trees must be numbered (as done by
+ * {@link com.github.gumtreediff.tree.TreeContext#validate()} using a post-order) before the
+ * store is created, and must not change while it is used. Only nodes of these two trees can be linked.
+ */
+public class IntMappingStore extends MappingStore {
+
+    public static final int NO_MAPPING = -1;
+
+    private final ITree[] srcTrees;
+
+    private final ITree[] dstTrees;
+
+    private final int[] srcToDst;
+
+    private final int[] dstToSrc;
+
+    private int size;
+
+    public IntMappingStore(ITree src, ITree dst) {
+        srcTrees = index(src);
+        dstTrees = index(dst);
+        srcToDst = new int[srcTrees.length];
+        dstToSrc = new int[dstTrees.length];
+        Arrays.fill(srcToDst, NO_MAPPING);
+        Arrays.fill(dstToSrc, NO_MAPPING);
+    }
+
+    private IntMappingStore(IntMappingStore other) {
+        srcTrees = other.srcTrees;
+        dstTrees = other.dstTrees;
+        srcToDst = other.srcToDst.clone();
+        dstToSrc = other.dstToSrc.clone();
+        size = other.size;
+    }
+
+    private static ITree[] index(ITree root) {
+        int maxId = -1;
+        for (ITree t : root.preOrder()) {
+            if (t.getId() < 0)
+                throw new IllegalArgumentException("Unnumbered node: " + t.toShortString());
+            maxId = Math.max(maxId, t.getId());
+        }
+        ITree[] trees = new ITree[maxId + 1];
+        for (ITree t : root.preOrder())
+            trees[t.getId()] = t;
+        return trees;
+    }
+
+    private int srcId(ITree src) {
+        if (src == null)
+            return NO_MAPPING;
+        int id = src.getId();
+        return (id >= 0 && id < srcTrees.length && srcTrees[id] == src) ? id : NO_MAPPING;
+    }
+
+    private int dstId(ITree dst) {
+        if (dst == null)
+            return NO_MAPPING;
+        int id = dst.getId();
+        return (id >= 0 && id < dstTrees.length && dstTrees[id] == dst) ? id : NO_MAPPING;
+    }
+
+    /**
+     * @return the id of the destination node mapped to the source node of the given id, or -1.
+     */
+    public int getDstId(int srcId) {
+        return srcToDst[srcId];
+    }
+
+    /**
+     * @return the id of the source node mapped to the destination node of the given id, or -1.
+     */
+    public int getSrcId(int dstId) {
+        return dstToSrc[dstId];
+    }
+
+    @Override
+    public Set<Mapping> asSet() {
+        return new AbstractSet<Mapping>() {
+
+            @Override
+            public Iterator<Mapping> iterator() {
+                return new Iterator<Mapping>() {
+                    int next = advance(0);
+
+                    private int advance(int from) {
+                        while (from < srcToDst.length && srcToDst[from] == NO_MAPPING)
+                            from++;
+                        return from;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < srcToDst.length;
+                    }
+
+                    @Override
+                    public Mapping next() {
+                        if (next >= srcToDst.length)
+                            throw new NoSuchElementException();
+                        Mapping m = new Mapping(srcTrees[next], dstTrees[srcToDst[next]]);
+                        next = advance(next + 1);
+                        return m;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void forEachMapping(BiConsumer<ITree, ITree> action) {
+        for (int i = 0; i < srcToDst.length; i++)
+            if (srcToDst[i] != NO_MAPPING)
+                action.accept(srcTrees[i], dstTrees[srcToDst[i]]);
+    }
+
+    @Override
+    public IntMappingStore copy() {
+        return new IntMappingStore(this);
+    }
+
+    @Override
+    public void link(ITree src, ITree dst) {
+        int s = srcId(src);
+        int d = dstId(dst);
+        if (s == NO_MAPPING || d == NO_MAPPING)
+            throw new IllegalArgumentException("Only nodes of the trees given at creation can be linked");
+        if (srcToDst[s] == NO_MAPPING)
+            size++;
+        srcToDst[s] = d;
+        dstToSrc[d] = s;
+    }
+
+    @Override
+    public void unlink(ITree src, ITree dst) {
+        int s = srcId(src);
+        int d = dstId(dst);
+        if (s != NO_MAPPING && srcToDst[s] != NO_MAPPING) {
+            srcToDst[s] = NO_MAPPING;
+            size--;
+        }
+        if (d != NO_MAPPING)
+            dstToSrc[d] = NO_MAPPING;
+    }
+
+    @Override
+    public ITree getDst(ITree src) {
+        int s = srcId(src);
+        if (s == NO_MAPPING || srcToDst[s] == NO_MAPPING)
+            return null;
+        return dstTrees[srcToDst[s]];
+    }
+
+    @Override
+    public ITree getSrc(ITree dst) {
+        int d = dstId(dst);
+        if (d == NO_MAPPING || dstToSrc[d] == NO_MAPPING)
+            return null;
+        return srcTrees[dstToSrc[d]];
+    }
+
+    @Override
+    public boolean hasSrc(ITree src) {
+        int s = srcId(src);
+        return s != NO_MAPPING && srcToDst[s] != NO_MAPPING;
+    }
+
+    @Override
+    public boolean hasDst(ITree dst) {
+        int d = dstId(dst);
+        return d != NO_MAPPING && dstToSrc[d] != NO_MAPPING;
+    }
+
+    @Override
+    public boolean has(ITree src, ITree dst) {
+        return getDst(src) == dst;
+    }
+
+    @Override
+    public boolean isMatchable(ITree src, ITree dst) {
+        return src.hasSameType(dst) && !(hasSrc(src) || hasDst(dst));
+    }
+}
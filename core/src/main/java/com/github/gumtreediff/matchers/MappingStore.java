@@ -21,6 +21,7 @@
 package com.github.gumtreediff.matchers;
 
 import java.util.*;
+import java.util.function.BiConsumer;
 
 import com.github.gumtreediff.tree.ITree;
 
@@ -67,6 +68,20 @@ public class MappingStore implements Iterable<Mapping> {
         };
     }
 
+    /**
+     * @return the number of mappings.
+     */
+    public int size() {
+        return srcs.size();
+    }
+
+    /**
+     * Apply the given action on every mapping, without allocating {@link Mapping} objects.
+     */
+    public void forEachMapping(BiConsumer<ITree, ITree> action) {
+        srcs.forEach(action);
+    }
+
     public MappingStore copy() {
         return new MappingStore(asSet());
     }
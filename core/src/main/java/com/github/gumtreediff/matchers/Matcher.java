@@ -22,7 +22,6 @@ package com.github.gumtreediff.matchers;
 
 import com.github.gumtreediff.tree.ITree;
 
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.logging.Logger;
@@ -37,6 +36,14 @@ public abstract class Matcher {
 
     protected final MappingStore mappings;
 
+    private SimilarityMetrics similarityMetrics;
+
+    private MatcherListener listener;
+
+    private MatchingBudget budget;
+
+    private long candidates;
+
     public Matcher(ITree src, ITree dst, MappingStore mappings) {
         this.src = src;
         this.dst = dst;
@@ -45,6 +52,105 @@ public abstract class Matcher {
 
     public abstract void match();
 
+    /**
+     * Match the trees, reporting this matcher and the phases it runs to the given listener.
+     */
+    public void match(MatcherListener listener) {
+        setListener(listener);
+        runPhase(this);
+    }
+
+    public MatcherListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Set the listener notified of the phases run by this matcher, or null to disable profiling.
+     */
+    public void setListener(MatcherListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return the budget of this matcher, or null if it is unlimited.
+     */
+    public MatchingBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Set the budget bounding this matcher and the phases it runs, or null for no limit.
+     */
+    public void setBudget(MatchingBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * @return true if the budget of this matcher is exhausted, in which case it should stop as soon
+     *     as possible, keeping the mappings found so far.
+     */
+    protected boolean isBudgetExhausted() {
+        return budget != null && budget.isExhausted();
+    }
+
+    /**
+     * @return true if the budget of this matcher allows a distance matrix of the given number of cells.
+     */
+    protected boolean isCellsAllowed(long cells) {
+        return budget == null || budget.allowsCells(cells);
+    }
+
+    /**
+     * @return the number of candidate pairs examined by this matcher so far. What is a candidate
+     *     depends on the matcher (pairs of subtrees, similarity computations, cells of a distance matrix...).
+     */
+    public long getCandidates() {
+        return candidates;
+    }
+
+    protected void countCandidates(long count) {
+        candidates += count;
+        if (budget != null)
+            budget.consumeCandidates(count);
+    }
+
+    /**
+     * Run the given matcher as a phase of this one. The budget of this matcher is shared with the phase,
+     * unless it has its own. Without listener, this is a plain call to {@link #match()}. Otherwise the
+     * listener is propagated to the matcher, and notified of its wall time, of the mappings it added to
+     * its store and of the candidates it examined.
+     */
+    protected void runPhase(Matcher matcher) {
+        if (budget != null && matcher.budget == null)
+            matcher.budget = budget;
+        if (listener == null) {
+            matcher.match();
+            return;
+        }
+        matcher.setListener(listener);
+        listener.matcherStarted(matcher);
+        int mappingsBefore = matcher.getMappings().size();
+        long candidatesBefore = matcher.getCandidates();
+        long start = System.nanoTime();
+        try {
+            matcher.match();
+        } finally {
+            listener.matcherFinished(matcher, System.nanoTime() - start,
+                    matcher.getMappings().size() - mappingsBefore, matcher.getCandidates() - candidatesBefore);
+        }
+    }
+
+    /**
+     * Notify the listener, if any, of a matcher that has already been run as a phase of this one, for
+     * instance by a forked task, taking the given time. Its whole store is counted as its mappings.
+     */
+    protected void reportPhase(Matcher matcher, long nanos) {
+        if (listener == null)
+            return;
+        listener.matcherStarted(matcher);
+        listener.matcherFinished(matcher, nanos, matcher.getMappings().size(), matcher.getCandidates());
+    }
+
     public MappingStore getMappings() {
         return mappings;
     }
@@ -75,33 +181,30 @@ public abstract class Matcher {
         }
     }
 
+    /**
+     * @return the descendant based similarities between the source and destination trees,
+     *     indexed on first use.
+     */
+    protected SimilarityMetrics getSimilarityMetrics() {
+        if (similarityMetrics == null)
+            similarityMetrics = new SimilarityMetrics(src, dst, mappings);
+        return similarityMetrics;
+    }
+
     protected double chawatheSimilarity(ITree src, ITree dst) {
-        int max = Math.max(src.getDescendants().size(), dst.getDescendants().size());
-        return (double) numberOfCommonDescendants(src, dst) / (double) max;
+        return getSimilarityMetrics().chawatheSimilarity(src, dst);
     }
 
     protected double diceSimilarity(ITree src, ITree dst) {
-        double c = (double) numberOfCommonDescendants(src, dst);
-        return (2D * c) / ((double) src.getDescendants().size() + (double) dst.getDescendants().size());
+        return getSimilarityMetrics().diceSimilarity(src, dst);
     }
 
     protected double jaccardSimilarity(ITree src, ITree dst) {
-        double num = (double) numberOfCommonDescendants(src, dst);
-        double den = (double) src.getDescendants().size() + (double) dst.getDescendants().size() - num;
-        return num / den;
+        return getSimilarityMetrics().jaccardSimilarity(src, dst);
     }
 
     protected int numberOfCommonDescendants(ITree src, ITree dst) {
-        Set<ITree> dstDescendants = new HashSet<>(dst.getDescendants());
-        int common = 0;
-
-        for (ITree t : src.getDescendants()) {
-            ITree m = mappings.getDst(t);
-            if (m != null && dstDescendants.contains(m))
-                common++;
-        }
-
-        return common;
+        return getSimilarityMetrics().numberOfCommonDescendants(src, dst);
     }
 
     public boolean isMappingAllowed(ITree src, ITree dst) {
@@ -0,0 +1,43 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.matchers;
+
+/**
+ * Notified of the phases of a matching: the sub-matchers of a {@link CompositeMatcher}, and the
+ * matchers nested in a phase (such as the ZS matcher run by the bottom-up matchers on each pair of
+ * mapped subtrees). Phases are reported in a nested way, so the time of a phase includes the time
+ * of the phases it runs.
+ *
+ * @see Matcher#match(MatcherListener)
+ */
+public interface MatcherListener {
+
+    default void matcherStarted(Matcher matcher) {
+    }
+
+    /**
+     * @param nanos the wall time of the phase.
+     * @param mappings the number of mappings added by the phase to the store of the matcher (negative if
+     *     the phase removed more mappings than it added).
+     * @param candidates the number of candidate pairs examined during the phase.
+     */
+    void matcherFinished(Matcher matcher, long nanos, int mappings, long candidates);
+}
@@ -63,6 +63,10 @@ public class Matchers extends Registry<String, Matcher, Register> {
         return get(id, src, dst, new MappingStore());
     }
 
+    public Matcher getMatcher(String id, ITree src, ITree dst, MappingStore store) {
+        return get(id, src, dst, store);
+    }
+
     public Matcher getMatcher(ITree src, ITree dst) {
         return defaultMatcherFactory.instantiate(new Object[]{src, dst, new MappingStore()});
     }
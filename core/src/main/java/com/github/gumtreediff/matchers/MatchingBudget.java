@@ -0,0 +1,138 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.matchers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the work of a matching: a deadline, a maximum number of candidate pairs (as counted by
+ * {@link Matcher#getCandidates()}) and a maximum number of cells of the distance matrices of the
+ * optimal algorithms. The deadline starts when the budget is created.
+ *
+ * A budget is shared by a matcher and the phases it runs (see {@link Matcher#setBudget(MatchingBudget)}).
+ * It is checked cooperatively: once it is exhausted, the phases stop, keeping the mappings found so far,
+ * and the following phases of a {@link CompositeMatcher} are skipped.
+ */
+public final class MatchingBudget {
+
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    private final long deadline;
+
+    private final long maxCandidates;
+
+    private final long maxCells;
+
+    private final AtomicLong candidates = new AtomicLong();
+
+    private volatile boolean exhausted;
+
+    /**
+     * @param timeout the time allowed to the matching, or {@link #UNLIMITED}.
+     * @param unit the unit of the timeout.
+     * @param maxCandidates the maximum number of candidate pairs, or {@link #UNLIMITED}.
+     * @param maxCells the maximum number of cells of a distance matrix, or {@link #UNLIMITED}.
+     */
+    public MatchingBudget(long timeout, TimeUnit unit, long maxCandidates, long maxCells) {
+        this(deadline(timeout, unit), maxCandidates, maxCells);
+    }
+
+    private MatchingBudget(long deadline, long maxCandidates, long maxCells) {
+        this.deadline = deadline;
+        this.maxCandidates = maxCandidates;
+        this.maxCells = maxCells;
+    }
+
+    public static MatchingBudget ofTime(long timeout, TimeUnit unit) {
+        return new MatchingBudget(timeout, unit, UNLIMITED, UNLIMITED);
+    }
+
+    /**
+     * @return a new budget that is never exhausted, which still counts the candidates of its matcher.
+     */
+    public static MatchingBudget unlimited() {
+        return new MatchingBudget(UNLIMITED, UNLIMITED, UNLIMITED);
+    }
+
+    private static long deadline(long timeout, TimeUnit unit) {
+        if (timeout == UNLIMITED)
+            return UNLIMITED;
+        long nanos = unit.toNanos(timeout);
+        long now = System.nanoTime();
+        // Saturate rather than overflow for very long timeouts.
+        return nanos >= UNLIMITED - now ? UNLIMITED : now + nanos;
+    }
+
+    /**
+     * @return the remaining time in nanoseconds (zero once the deadline has passed), or {@link #UNLIMITED}.
+     */
+    public long getRemainingNanos() {
+        if (deadline == UNLIMITED)
+            return UNLIMITED;
+        return Math.max(deadline - System.nanoTime(), 0);
+    }
+
+    public long getMaxCandidates() {
+        return maxCandidates;
+    }
+
+    public long getMaxCells() {
+        return maxCells;
+    }
+
+    /**
+     * @return the number of candidate pairs examined so far by the matchers sharing this budget.
+     */
+    public long getCandidates() {
+        return candidates.get();
+    }
+
+    void consumeCandidates(long count) {
+        if (candidates.addAndGet(count) > maxCandidates)
+            exhausted = true;
+    }
+
+    /**
+     * @return true if the deadline has passed or too many candidates have been examined. Once
+     *     exhausted, a budget stays so.
+     */
+    public boolean isExhausted() {
+        if (exhausted)
+            return true;
+        if (deadline != UNLIMITED && System.nanoTime() - deadline >= 0)
+            exhausted = true;
+        return exhausted;
+    }
+
+    /**
+     * @return true if a distance matrix of the given number of cells may be computed.
+     */
+    public boolean allowsCells(long cells) {
+        return cells <= maxCells;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MatchingBudget(remaining=%dns, candidates=%d/%d, cells=%d)",
+                getRemainingNanos(), getCandidates(), maxCandidates, maxCells);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.matchers;
+
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A listener aggregating the phases of a matching by path (e.g.
+ * {@code ClassicGumtree/GreedyBottomUpMatcher/ZsMatcher}), in the order they were first started.
+ * A phase run many times, like the ZS matcher applied after each bottom-up mapping, is reported
+ * once with its number of runs.
+ *
+ * A profile follows one matching at a time, it must not be shared by matchings running concurrently.
+ */
+public class MatchingProfile implements MatcherListener {
+
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+
+    private final Deque<String> paths = new ArrayDeque<>();
+
+    @Override
+    public void matcherStarted(Matcher matcher) {
+        String name = matcher.getClass().getSimpleName();
+        paths.push(paths.isEmpty() ? name : paths.peek() + "/" + name);
+        phases.computeIfAbsent(paths.peek(), Phase::new);
+    }
+
+    @Override
+    public void matcherFinished(Matcher matcher, long nanos, int mappings, long candidates) {
+        Phase phase = phases.get(paths.pop());
+        phase.runs++;
+        phase.nanos += nanos;
+        phase.mappings += mappings;
+        phase.candidates += candidates;
+    }
+
+    public List<Phase> getPhases() {
+        return new ArrayList<>(phases.values());
+    }
+
+    public Phase getPhase(String path) {
+        return phases.get(path);
+    }
+
+    public void clear() {
+        phases.clear();
+        paths.clear();
+    }
+
+    public void print(PrintStream out) {
+        out.printf("%-60s %8s %12s %10s %14s%n", "phase", "runs", "time (ms)", "mappings", "candidates");
+        for (Phase phase : phases.values())
+            out.printf("%-60s %8d %12.3f %10d %14d%n", phase.path, phase.runs, phase.nanos / 1e6,
+                    phase.mappings, phase.candidates);
+    }
+
+    public static class Phase {
+
+        private final String path;
+
+        private int runs;
+
+        private long nanos;
+
+        private long mappings;
+
+        private long candidates;
+
+        Phase(String path) {
+            this.path = path;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public int getRuns() {
+            return runs;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getMappings() {
+            return mappings;
+        }
+
+        public long getCandidates() {
+            return candidates;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d runs, %.3f ms, %d mappings, %d candidates",
+                    path, runs, nanos / 1e6, mappings, candidates);
+        }
+    }
+}
@@ -42,6 +42,7 @@ import com.github.gumtreediff.matchers.heuristic.mtdiff.intern.TreeMatcherConfig
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class OptimizedVersions {
 
@@ -173,6 +174,25 @@ public class OptimizedVersions {
             ((MtDiffOptimizedMatcher) matchers[1]).initMtDiff(executorService, configuration,
                     labelConfiguration);
         }
+
+        /**
+         * Sets the time after which MTDIFF gives up, the following matchers still running.
+         *
+         * @param timeout the timeout
+         * @param unit the unit of the timeout
+         */
+        public void setTimeout(long timeout, TimeUnit unit) {
+            ((MtDiffOptimizedMatcher) matchers[1]).setTimeout(timeout, unit);
+        }
+
+        /**
+         * Sets the maximum number of cells of the MTDIFF matrices allocated on the heap.
+         *
+         * @param maxDenseCells the maximum number of cells
+         */
+        public void setMaxDenseCells(long maxDenseCells) {
+            ((MtDiffOptimizedMatcher) matchers[1]).setMaxDenseCells(maxDenseCells);
+        }
     }
 
     public static class Gtbcdef extends CompositeMatcher {
@@ -0,0 +1,150 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.matchers;
+
+import com.github.gumtreediff.tree.ITree;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Descendant based similarities between a source and a destination tree.
+ *
+ * When the ids of a tree are a post-order numbering (as done by
+ * {@link com.github.gumtreediff.tree.TreeContext#validate()}), the descendants of a node
+ * are the nodes whose ids lie between the id of its leftmost leaf and its own id. Common
+ * descendants are then counted by scanning the id range of the source node and testing
+ * the id of each mapped node against the range of the destination node, without allocation.
+ * Otherwise the descendants are collected as before.
+ *
+ * The index is built once, so the trees must not be modified while it is used.
+ */
+public final class SimilarityMetrics {
+
+    private final MappingStore mappings;
+
+    private final PostOrderIndex srcIndex;
+
+    private final PostOrderIndex dstIndex;
+
+    public SimilarityMetrics(ITree src, ITree dst, MappingStore mappings) {
+        this.mappings = mappings;
+        this.srcIndex = PostOrderIndex.build(src);
+        this.dstIndex = PostOrderIndex.build(dst);
+    }
+
+    public double chawatheSimilarity(ITree src, ITree dst) {
+        int max = Math.max(src.getSize() - 1, dst.getSize() - 1);
+        return (double) numberOfCommonDescendants(src, dst) / (double) max;
+    }
+
+    public double diceSimilarity(ITree src, ITree dst) {
+        double c = (double) numberOfCommonDescendants(src, dst);
+        return (2D * c) / ((double) (src.getSize() - 1) + (double) (dst.getSize() - 1));
+    }
+
+    public double jaccardSimilarity(ITree src, ITree dst) {
+        double num = (double) numberOfCommonDescendants(src, dst);
+        double den = (double) (src.getSize() - 1) + (double) (dst.getSize() - 1) - num;
+        return num / den;
+    }
+
+    public int numberOfCommonDescendants(ITree src, ITree dst) {
+        if (srcIndex == null || dstIndex == null || !srcIndex.contains(src) || !dstIndex.contains(dst))
+            return numberOfCommonDescendantsFromSets(src, dst);
+
+        int dstFirst = dstIndex.firstDescendant(dst);
+        int dstLast = dst.getId() - 1;
+        int common = 0;
+        for (int id = srcIndex.firstDescendant(src); id < src.getId(); id++) {
+            ITree m = mappings.getDst(srcIndex.get(id));
+            if (m != null && m.getId() >= dstFirst && m.getId() <= dstLast && dstIndex.contains(m))
+                common++;
+        }
+        return common;
+    }
+
+    private int numberOfCommonDescendantsFromSets(ITree src, ITree dst) {
+        Set<ITree> dstDescendants = new HashSet<>(dst.getDescendants());
+        int common = 0;
+
+        for (ITree t : src.getDescendants()) {
+            ITree m = mappings.getDst(t);
+            if (m != null && dstDescendants.contains(m))
+                common++;
+        }
+
+        return common;
+    }
+
+    private static final class PostOrderIndex {
+
+        private final int base;
+
+        private final ITree[] trees;
+
+        private final int[] firstDescendants;
+
+        private PostOrderIndex(int base, ITree[] trees, int[] firstDescendants) {
+            this.base = base;
+            this.trees = trees;
+            this.firstDescendants = firstDescendants;
+        }
+
+        /**
+         * @return the index of the tree, or null if its ids are not a post-order numbering.
+         */
+        static PostOrderIndex build(ITree root) {
+            int size = root.getSize();
+            if (size <= 0)
+                return null;
+            ITree[] trees = new ITree[size];
+            int[] firstDescendants = new int[size];
+            int base = ITree.NO_ID;
+            int i = 0;
+            for (ITree t : root.postOrder()) {
+                if (i == 0)
+                    base = t.getId();
+                if (i >= size || t.getId() != base + i)
+                    return null;
+                trees[i] = t;
+                firstDescendants[i] = t.isLeaf() ? i : firstDescendants[t.getChild(0).getId() - base];
+                i++;
+            }
+            if (i != size)
+                return null;
+            return new PostOrderIndex(base, trees, firstDescendants);
+        }
+
+        boolean contains(ITree t) {
+            int idx = t.getId() - base;
+            return idx >= 0 && idx < trees.length && trees[idx] == t;
+        }
+
+        ITree get(int id) {
+            return trees[id - base];
+        }
+
+        int firstDescendant(ITree t) {
+            return firstDescendants[t.getId() - base] + base;
+        }
+    }
+}
@@ -45,11 +45,14 @@ public class XyBottomUpMatcher extends Matcher {
     @Override
     public void match() {
         for (ITree src: this.src.postOrder())  {
+            if (isBudgetExhausted())
+                break;
             if (src.isRoot()) {
                 addMapping(src, this.dst);
                 lastChanceMatch(src, this.dst);
             } else if (!(mappings.hasSrc(src) || src.isLeaf())) {
                 Set<ITree> candidates = getDstCandidates(src);
+                countCandidates(candidates.size());
                 ITree best = null;
                 double max = -1D;
 
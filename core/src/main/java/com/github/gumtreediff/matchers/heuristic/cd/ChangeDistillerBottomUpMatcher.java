@@ -43,10 +43,13 @@ public class ChangeDistillerBottomUpMatcher extends Matcher {
     public void match() {
         List<ITree> dstTrees = TreeUtils.postOrder(this.dst);
         for (ITree currentSrcTree: this.src.postOrder()) {
+            if (isBudgetExhausted())
+                break;
             int numberOfLeaves = numberOfLeaves(currentSrcTree);
             for (ITree currentDstTree: dstTrees) {
                 if (isMappingAllowed(currentSrcTree, currentDstTree)
                         && !(currentSrcTree.isLeaf() || currentDstTree.isLeaf())) {
+                    countCandidates(1);
                     double similarity = chawatheSimilarity(currentSrcTree, currentDstTree);
                     if ((numberOfLeaves > MAX_NUMBER_OF_LEAVES && similarity >= STRUCT_SIM_THRESHOLD_1)
                             || (numberOfLeaves <= MAX_NUMBER_OF_LEAVES && similarity >= STRUCT_SIM_THRESHOLD_2)) {
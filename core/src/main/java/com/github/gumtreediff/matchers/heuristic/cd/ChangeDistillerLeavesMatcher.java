@@ -75,7 +75,7 @@ public class ChangeDistillerLeavesMatcher extends Matcher {
 
         @Override
         public ChangeDistillerCallableResult call() throws Exception {
-            for (int i = start; i < srcLeaves.size(); i += cores) {
+            for (int i = start; i < srcLeaves.size() && !isBudgetExhausted(); i += cores) {
                 ITree srcLeaf = srcLeaves.get(i);
                 for (ITree dstLeaf : dstLeaves) {
                     if (isMappingAllowed(srcLeaf,dstLeaf)) {
@@ -131,6 +131,7 @@ public class ChangeDistillerLeavesMatcher extends Matcher {
     public void match() {
         List<ITree> dstLeaves = retainLeaves(TreeUtils.postOrder(dst));
         List<ITree> srcLeaves = retainLeaves(TreeUtils.postOrder(src));
+        countCandidates((long) srcLeaves.size() * dstLeaves.size());
 
         List<Mapping> leafMappings = new LinkedList<>();
         HashMap<Mapping, Double> simMap = new HashMap<>();
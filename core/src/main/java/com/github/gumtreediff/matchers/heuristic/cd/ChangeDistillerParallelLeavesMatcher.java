@@ -24,9 +24,14 @@ import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.Matcher;
 import com.github.gumtreediff.tree.ITree;
 import com.github.gumtreediff.tree.TreeUtils;
+import com.github.gumtreediff.utils.LabelTable;
 
+import gnu.trove.impl.Constants;
+import gnu.trove.map.TLongDoubleMap;
+import gnu.trove.map.hash.TLongDoubleHashMap;
 import org.simmetrics.StringMetrics;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -36,14 +41,14 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Parallel variant of the ChangeDistiller leaves matcher.
+ *
+ * The labels of the leaves are interned before forking, so each task caches the similarities of
+ * the pairs of labels it has compared under a key made of their two ids. The cache of a task is
+ * cleared when it reaches {@link #MAX_CACHED_PAIRS} entries.
  */
 public class ChangeDistillerParallelLeavesMatcher extends Matcher {
 
@@ -61,35 +66,41 @@ public class ChangeDistillerParallelLeavesMatcher extends Matcher {
     private class ChangeDistillerLeavesMatcherCallable
             implements Callable<ChangeDistillerCallableResult> {
 
-        HashMap<String, Double> cacheResults = new HashMap<>();
+        TLongDoubleMap cacheResults = new TLongDoubleHashMap(Constants.DEFAULT_CAPACITY,
+                Constants.DEFAULT_LOAD_FACTOR, Constants.DEFAULT_LONG_NO_ENTRY_VALUE, -1D);
         private int cores;
         private List<ITree> dstLeaves;
+        private int[] dstLabels;
         List<Mapping> leafMappings = new LinkedList<>();
         HashMap<Mapping, Double> simMap = new HashMap<>();
         private List<ITree> srcLeaves;
+        private int[] srcLabels;
         private int start;
 
-        public ChangeDistillerLeavesMatcherCallable(List<ITree> srcLeaves, List<ITree> dstLeaves,
-                                                    int cores, int start) {
+        public ChangeDistillerLeavesMatcherCallable(List<ITree> srcLeaves, int[] srcLabels, List<ITree> dstLeaves,
+                                                    int[] dstLabels, int cores, int start) {
             this.srcLeaves = srcLeaves;
+            this.srcLabels = srcLabels;
             this.dstLeaves = dstLeaves;
+            this.dstLabels = dstLabels;
             this.cores = cores;
             this.start = start;
         }
 
         @Override
         public ChangeDistillerCallableResult call() throws Exception {
-            for (int i = start; i < srcLeaves.size(); i += cores) {
+            for (int i = start; i < srcLeaves.size() && !isBudgetExhausted(); i += cores) {
                 ITree srcLeaf = srcLeaves.get(i);
-                for (ITree dstLeaf : dstLeaves) {
+                for (int j = 0; j < dstLeaves.size(); j++) {
+                    ITree dstLeaf = dstLeaves.get(j);
                     if (isMappingAllowed(srcLeaf, dstLeaf)) {
-                        double sim = 0f;
-                        // TODO: Use a unique string instead of @@
-                        if (cacheResults.containsKey(srcLeaf.getLabel() + "@@" + dstLeaf.getLabel())) {
-                            sim = cacheResults.get(srcLeaf.getLabel() + "@@" + dstLeaf.getLabel());
-                        } else {
+                        long key = ((long) srcLabels[i] << 32) | dstLabels[j];
+                        double sim = cacheResults.get(key);
+                        if (sim < 0) {
                             sim = StringMetrics.qGramsDistance().compare(srcLeaf.getLabel(), dstLeaf.getLabel());
-                            cacheResults.put(srcLeaf.getLabel() + "@@" + dstLeaf.getLabel(), sim);
+                            if (cacheResults.size() >= MAX_CACHED_PAIRS)
+                                cacheResults.clear();
+                            cacheResults.put(key, sim);
                         }
                         if (sim > LABEL_SIM_THRESHOLD) {
                             Mapping mapping = new Mapping(srcLeaf, dstLeaf);
@@ -125,6 +136,11 @@ public class ChangeDistillerParallelLeavesMatcher extends Matcher {
 
     private static final double LABEL_SIM_THRESHOLD = 0.5D;
 
+    /**
+     * The maximum number of similarities cached by each task.
+     */
+    public static final int MAX_CACHED_PAIRS = Integer.parseInt(System.getProperty("gt.cd.mcp", "1048576"));
+
     public ChangeDistillerParallelLeavesMatcher(ITree src, ITree dst, MappingStore store) {
         super(src, dst, store);
     }
@@ -137,32 +153,24 @@ public class ChangeDistillerParallelLeavesMatcher extends Matcher {
     public void match() {
         List<ITree> dstLeaves = retainLeaves(TreeUtils.postOrder(dst));
         List<ITree> srcLeaves = retainLeaves(TreeUtils.postOrder(src));
+        countCandidates((long) srcLeaves.size() * dstLeaves.size());
+        LabelTable labels = new LabelTable();
+        int[] srcLabels = internLabels(srcLeaves, labels);
+        int[] dstLabels = internLabels(dstLeaves, labels);
 
         List<Mapping> leafMappings = new LinkedList<>();
         HashMap<Mapping, Double> simMap = new HashMap<>();
         int cores = Runtime.getRuntime().availableProcessors();
-        ExecutorService service = Executors.newFixedThreadPool(cores);
-        @SuppressWarnings("unchecked")
-        Future<ChangeDistillerCallableResult>[] futures = new Future[cores];
-        for (int i = 0; i < cores; i++) {
-            futures[i] =
-                    service.submit(new ChangeDistillerLeavesMatcherCallable(srcLeaves, dstLeaves, cores, i));
-        }
-        for (int i = 0; i < cores; i++) {
-            try {
-                ChangeDistillerCallableResult result = futures[i].get();
-                leafMappings.addAll(result.leafMappings);
-                simMap.putAll(result.simMap);
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
-            }
-
-        }
-        service.shutdown();
-        try {
-            service.awaitTermination(10, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        // Forked into the pool of the caller, see DiffEngine.
+        List<ForkJoinTask<ChangeDistillerCallableResult>> tasks = new ArrayList<>(cores);
+        for (int i = 0; i < cores; i++)
+            tasks.add(ForkJoinTask.adapt(
+                    new ChangeDistillerLeavesMatcherCallable(srcLeaves, srcLabels, dstLeaves, dstLabels, cores, i)));
+        ForkJoinTask.invokeAll(tasks);
+        for (ForkJoinTask<ChangeDistillerCallableResult> task : tasks) {
+            ChangeDistillerCallableResult result = task.join();
+            leafMappings.addAll(result.leafMappings);
+            simMap.putAll(result.simMap);
         }
 
         Set<ITree> srcIgnored = new HashSet<>();
@@ -178,6 +186,14 @@ public class ChangeDistillerParallelLeavesMatcher extends Matcher {
         }
     }
 
+    private static int[] internLabels(List<ITree> leaves, LabelTable labels) {
+        int[] ids = new int[leaves.size()];
+        int i = 0;
+        for (ITree leaf : leaves)
+            ids[i++] = labels.intern(leaf.getLabel());
+        return ids;
+    }
+
     private List<ITree> retainLeaves(List<ITree> trees) {
         Iterator<ITree> tit = trees.iterator();
         while (tit.hasNext()) {
@@ -26,11 +26,17 @@ import com.github.gumtreediff.matchers.Matcher;
 import com.github.gumtreediff.matchers.optimal.zs.ZsMatcher;
 import com.github.gumtreediff.tree.ITree;
 import com.github.gumtreediff.tree.TreeMap;
+import com.github.gumtreediff.tree.TreeUtils;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public abstract class AbstractBottomUpMatcher extends Matcher {
     //TODO make final?
@@ -38,6 +44,8 @@ public abstract class AbstractBottomUpMatcher extends Matcher {
             Integer.parseInt(System.getProperty("gt.bum.szt", "1000"));
     public static final double SIM_THRESHOLD =
             Double.parseDouble(System.getProperty("gt.bum.smt", "0.5"));
+    public static final boolean PARALLEL =
+            Boolean.parseBoolean(System.getProperty("gt.bum.par", "false"));
 
     protected TreeMap srcIds;
     protected TreeMap dstIds;
@@ -45,6 +53,15 @@ public abstract class AbstractBottomUpMatcher extends Matcher {
     protected TreeMap mappedSrc;
     protected TreeMap mappedDst;
 
+    private ZsMatcher.Workspace zsWorkspace;
+
+    private boolean parallel = PARALLEL;
+
+    // Recoveries forked in parallel mode, in the order they were started.
+    private final List<Recovery> pendingRecoveries = new ArrayList<>();
+
+    private final ArrayDeque<ZsMatcher.Workspace> freeWorkspaces = new ArrayDeque<>();
+
     public AbstractBottomUpMatcher(ITree src, ITree dst, MappingStore store) {
         super(src, dst, store);
         srcIds = new TreeMap(src);
@@ -81,20 +98,24 @@ public abstract class AbstractBottomUpMatcher extends Matcher {
         return candidates;
     }
 
-    //FIXME checks if it is better or not to remove the already found mappings.
+    /**
+     * Look for mappings among the nodes of the two subtrees that are not matched yet. The exact
+     * ZS algorithm is applied to views of the subtrees leaving out the matched subtrees, as long
+     * as one of them is smaller than SIZE_THRESHOLD. When the threshold is raised, the memory used by
+     * ZS can be bounded with {@link ZsMatcher#MAX_CELLS}, at the cost of the optimality of its mappings.
+     */
     protected void lastChanceMatch(ITree src, ITree dst) {
-        ITree cSrc = src.deepCopy();
-        ITree cDst = dst.deepCopy();
-        removeMatched(cSrc, true);
-        removeMatched(cDst, false);
-
-        if (cSrc.getSize() < AbstractBottomUpMatcher.SIZE_THRESHOLD
-                || cDst.getSize() < AbstractBottomUpMatcher.SIZE_THRESHOLD) {
-            Matcher m = new ZsMatcher(cSrc, cDst, new MappingStore());
-            m.match();
-            for (Mapping candidate: m.getMappings()) {
-                ITree left = srcIds.getTree(candidate.getFirst().getId());
-                ITree right = dstIds.getTree(candidate.getSecond().getId());
+        if (zsWorkspace == null)
+            zsWorkspace = new ZsMatcher.Workspace();
+        MappingStore zsMappings = new MappingStore();
+        ZsMatcher m = new ZsMatcher(src, dst, zsMappings, this::isSrcMatched, this::isDstMatched, zsWorkspace);
+
+        if (m.getSrcSize() < AbstractBottomUpMatcher.SIZE_THRESHOLD
+                || m.getDstSize() < AbstractBottomUpMatcher.SIZE_THRESHOLD) {
+            runPhase(m);
+            for (Mapping candidate: zsMappings) {
+                ITree left = candidate.getFirst();
+                ITree right = candidate.getSecond();
 
                 if (left.getId() == src.getId() || right.getId() == dst.getId()) {
 //                    System.err.printf("Trying to map already mapped source node (%d == %d || %d == %d)\n",
@@ -117,19 +138,112 @@ public abstract class AbstractBottomUpMatcher extends Matcher {
         mappedDst.putTrees(dst);
     }
 
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Whether {@link #recoverAndMap(ITree, ITree)} runs the recoveries concurrently, in the fork-join pool
+     * of the caller or in the common pool. Defaults to {@link #PARALLEL}.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Same as {@link #lastChanceMatch(ITree, ITree)} followed by mapping the two trees. In parallel mode,
+     * the two subtrees are marked as matched at once, but the ZS algorithm is forked and the mappings are
+     * only added by {@link #commitRecoveries()}. They are only needed by the nodes containing the source
+     * tree, so the recoveries have to be committed before one of them is examined. The results are the
+     * same as in serial mode, since the mappings are still added in the same order.
+     */
+    protected void recoverAndMap(ITree src, ITree dst) {
+        if (!parallel) {
+            lastChanceMatch(src, dst);
+            addMapping(src, dst);
+            return;
+        }
+
+        if (pendingRecoveries.size() >= 4 * parallelism())
+            commitRecoveries();
+        ZsMatcher.Workspace workspace = freeWorkspaces.isEmpty() ? new ZsMatcher.Workspace() : freeWorkspaces.pop();
+        ZsMatcher m = new ZsMatcher(src, dst, new MappingStore(), this::isSrcMatched, this::isDstMatched, workspace);
+        m.setBudget(getBudget());
+        Recovery recovery = new Recovery(src, dst, m, workspace);
+        if (m.getSrcSize() < AbstractBottomUpMatcher.SIZE_THRESHOLD
+                || m.getDstSize() < AbstractBottomUpMatcher.SIZE_THRESHOLD)
+            recovery.fork();
+        pendingRecoveries.add(recovery);
+        mappedSrc.putTrees(src);
+        mappedDst.putTrees(dst);
+    }
+
+    /**
+     * @return true if a recovery started by {@link #recoverAndMap(ITree, ITree)} on a descendant of the
+     *     given source tree has not been committed yet.
+     */
+    protected boolean hasPendingRecoveries(ITree tree) {
+        if (pendingRecoveries.isEmpty())
+            return false;
+        // The source trees are visited in post-order, so the last one is a descendant if any is.
+        for (ITree t = pendingRecoveries.get(pendingRecoveries.size() - 1).src; t != null; t = t.getParent())
+            if (t == tree)
+                return true;
+        return false;
+    }
+
+    /**
+     * Wait for the pending recoveries and add their mappings, in the order they were started.
+     */
+    protected void commitRecoveries() {
+        for (Recovery recovery : pendingRecoveries) {
+            if (recovery.task != null) {
+                recovery.task.join();
+                reportPhase(recovery.matcher, recovery.nanos);
+                for (Mapping candidate : recovery.matcher.getMappings()) {
+                    ITree left = candidate.getFirst();
+                    ITree right = candidate.getSecond();
+                    // The nodes of the views were not matched when they were taken, as checked in serial mode.
+                    if (left.getId() != recovery.src.getId() && right.getId() != recovery.dst.getId()
+                            && left.hasSameType(right) && left.getParent().hasSameType(right.getParent()))
+                        addMapping(left, right);
+                }
+            }
+            addMapping(recovery.src, recovery.dst);
+            freeWorkspaces.push(recovery.workspace);
+        }
+        pendingRecoveries.clear();
+    }
+
+    private static int parallelism() {
+        ForkJoinPool pool = ForkJoinTask.getPool();
+        return pool != null ? pool.getParallelism() : ForkJoinPool.getCommonPoolParallelism();
+    }
+
     /**
-     * Remove mapped nodes from the tree. Be careful this method will invalidate
-     * all the metrics of this tree and its descendants. If you need them, you need
-     * to recompute them.
+     * Remove mapped nodes from the tree. The size, height and hash of the remaining nodes
+     * are updated along the paths from the removed subtrees to the root, see
+     * {@link TreeUtils#updateAncestors(java.util.Collection)}. The metrics of the removed subtrees are
+     * left as they were.
      */
     public ITree removeMatched(ITree tree, boolean isSrc) {
+        Set<ITree> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<ITree> modified = new ArrayList<>();
         for (ITree t: tree.getTrees()) {
+            boolean inRemoved = t.getParent() != null && removed.contains(t.getParent());
             if ((isSrc && isSrcMatched(t)) || ((!isSrc) && isDstMatched(t))) {
-                if (t.getParent() != null) t.getParent().getChildren().remove(t);
+                if (t.getParent() != null) {
+                    if (!inRemoved && t != tree)
+                        modified.add(t.getParent());
+                    t.getParent().getChildren().remove(t);
+                }
                 t.setParent(null);
-            }
+                removed.add(t);
+            } else if (inRemoved)
+                removed.add(t);
         }
-        tree.refresh();
+        modified.add(tree);
+        TreeUtils.updateAncestors(modified);
         return tree;
     }
 
@@ -153,4 +267,35 @@ public abstract class AbstractBottomUpMatcher extends Matcher {
     boolean isDstMatched(ITree tree) {
         return mappedDst.contains(tree);
     }
+
+    private static final class Recovery {
+
+        final ITree src;
+
+        final ITree dst;
+
+        final ZsMatcher matcher;
+
+        final ZsMatcher.Workspace workspace;
+
+        ForkJoinTask<?> task;
+
+        long nanos;
+
+        Recovery(ITree src, ITree dst, ZsMatcher matcher, ZsMatcher.Workspace workspace) {
+            this.src = src;
+            this.dst = dst;
+            this.matcher = matcher;
+            this.workspace = workspace;
+        }
+
+        // Forked into the pool of the caller, see DiffEngine.
+        void fork() {
+            task = ForkJoinTask.adapt(() -> {
+                long start = System.nanoTime();
+                matcher.match();
+                nanos = System.nanoTime() - start;
+            }).fork();
+        }
+    }
 }
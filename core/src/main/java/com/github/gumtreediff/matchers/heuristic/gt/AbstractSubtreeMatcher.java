@@ -24,6 +24,10 @@ import com.github.gumtreediff.matchers.*;
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.MultiMappingStore;
 import com.github.gumtreediff.tree.ITree;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -53,7 +57,7 @@ public abstract class AbstractSubtreeMatcher extends Matcher {
         PriorityTreeList srcTrees = new PriorityTreeList(src);
         PriorityTreeList dstTrees = new PriorityTreeList(dst);
 
-        while (srcTrees.peekHeight() != -1 && dstTrees.peekHeight() != -1) {
+        while (srcTrees.peekHeight() != -1 && dstTrees.peekHeight() != -1 && !isBudgetExhausted()) {
             while (srcTrees.peekHeight() != dstTrees.peekHeight())
                 popLarger(srcTrees, dstTrees);
 
@@ -63,9 +67,27 @@ public abstract class AbstractSubtreeMatcher extends Matcher {
             boolean[] marksForSrcTrees = new boolean[currentHeightSrcTrees.size()];
             boolean[] marksForDstTrees = new boolean[currentHeightDstTrees.size()];
 
+            // Isomorphic trees have the same hash, so only the destination trees
+            // sharing the hash of a source tree need to be checked.
+            TIntObjectMap<TIntList> dstTreesByHash = new TIntObjectHashMap<>();
+            for (int j = 0; j < currentHeightDstTrees.size(); j++) {
+                int hash = currentHeightDstTrees.get(j).getHash();
+                TIntList bucket = dstTreesByHash.get(hash);
+                if (bucket == null) {
+                    bucket = new TIntArrayList(1);
+                    dstTreesByHash.put(hash, bucket);
+                }
+                bucket.add(j);
+            }
+
             for (int i = 0; i < currentHeightSrcTrees.size(); i++) {
-                for (int j = 0; j < currentHeightDstTrees.size(); j++) {
-                    ITree src = currentHeightSrcTrees.get(i);
+                ITree src = currentHeightSrcTrees.get(i);
+                TIntList bucket = dstTreesByHash.get(src.getHash());
+                if (bucket == null)
+                    continue;
+                countCandidates(bucket.size());
+                for (int k = 0; k < bucket.size(); k++) {
+                    int j = bucket.get(k);
                     ITree dst = currentHeightDstTrees.get(j);
 
                     if (src.isIsomorphicTo(dst)) {
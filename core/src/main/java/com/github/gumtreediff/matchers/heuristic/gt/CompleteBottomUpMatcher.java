@@ -41,6 +41,8 @@ public class CompleteBottomUpMatcher extends AbstractBottomUpMatcher {
     @Override
     public void match() {
         for (ITree t: src.postOrder())  {
+            if (isBudgetExhausted())
+                break;
             if (t.isRoot()) {
                 addMapping(t, this.dst);
                 lastChanceMatch(t, this.dst);
@@ -51,6 +53,7 @@ public class CompleteBottomUpMatcher extends AbstractBottomUpMatcher {
                         .collect(Collectors.toList());
 
                 List<ITree> dstCandidates = getDstCandidates(t);
+                countCandidates((long) srcCandidates.size() * dstCandidates.size());
                 ITree srcBest = null;
                 ITree dstBest = null;
                 double max = -1D;
@@ -30,6 +30,9 @@ import java.util.List;
  * using a post-order traversal, testing if the two selected trees might be mapped. The two trees are mapped 
  * if they are mappable and have a dice coefficient greater than SIM_THRESHOLD. Whenever two trees are mapped
  * a exact ZS algorithm is applied to look to possibly forgotten nodes.
+ *
+ * In parallel mode (see {@link #setParallel(boolean)}), the ZS recoveries of pairs of disjoint subtrees
+ * run concurrently, and are committed before visiting a node containing one of them.
  */
 public class GreedyBottomUpMatcher extends AbstractBottomUpMatcher {
 
@@ -40,12 +43,18 @@ public class GreedyBottomUpMatcher extends AbstractBottomUpMatcher {
     @Override
     public void match() {
         for (ITree t: src.postOrder())  {
+            if (isBudgetExhausted())
+                break;
             if (t.isRoot()) {
+                commitRecoveries();
                 addMapping(t, this.dst);
                 lastChanceMatch(t, this.dst);
                 break;
             } else if (!(isSrcMatched(t) || t.isLeaf())) {
+                if (hasPendingRecoveries(t))
+                    commitRecoveries();
                 List<ITree> candidates = getDstCandidates(t);
+                countCandidates(candidates.size());
                 ITree best = null;
                 double max = -1D;
 
@@ -57,11 +66,10 @@ public class GreedyBottomUpMatcher extends AbstractBottomUpMatcher {
                     }
                 }
 
-                if (best != null) {
-                    lastChanceMatch(t, best);
-                    addMapping(t, best);
-                }
+                if (best != null)
+                    recoverAndMap(t, best);
             }
         }
+        commitRecoveries();
     }
 }
@@ -54,7 +54,8 @@ public class GreedySubtreeMatcher extends AbstractSubtreeMatcher {
         // Rank the mappings by score.
         Set<ITree> srcIgnored = new HashSet<>();
         Set<ITree> dstIgnored = new HashSet<>();
-        Collections.sort(ambiguousList, new SiblingsMappingComparator(ambiguousList, mappings, getMaxTreeSize()));
+        Collections.sort(ambiguousList, new SiblingsMappingComparator(ambiguousList, mappings,
+                getSimilarityMetrics(), getMaxTreeSize()));
 
         // Select the best ambiguous mappings
         retainBestMapping(ambiguousList, srcIgnored, dstIgnored);
@@ -21,18 +21,19 @@ package com.github.gumtreediff.matchers.heuristic.gt;
 
 import com.github.gumtreediff.matchers.Mapping;
 import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.matchers.SimilarityMetrics;
 import com.github.gumtreediff.tree.ITree;
 
-import java.util.*;
+import java.util.List;
 
 public final class SiblingsMappingComparator extends AbstractMappingComparator {
 
-    private Map<ITree, List<ITree>> srcDescendants = new HashMap<>();
+    private final SimilarityMetrics similarityMetrics;
 
-    private Map<ITree, Set<ITree>> dstDescendants = new HashMap<>();
-
-    public SiblingsMappingComparator(List<Mapping> ambiguousMappings, MappingStore mappings, int maxTreeSize) {
+    public SiblingsMappingComparator(List<Mapping> ambiguousMappings, MappingStore mappings,
+                                     SimilarityMetrics similarityMetrics, int maxTreeSize) {
         super(ambiguousMappings, mappings, maxTreeSize);
+        this.similarityMetrics = similarityMetrics;
         for (Mapping ambiguousMapping: ambiguousMappings)
             similarities.put(ambiguousMapping, similarity(ambiguousMapping.getFirst(), ambiguousMapping.getSecond()));
     }
@@ -44,26 +45,7 @@ public final class SiblingsMappingComparator extends AbstractMappingComparator {
     }
 
     protected double siblingsJaccardSimilarity(ITree src, ITree dst) {
-        double num = (double) numberOfCommonDescendants(src, dst);
-        double den = (double) srcDescendants.get(src).size() + (double) dstDescendants.get(dst).size() - num;
-        return num / den;
-    }
-
-    protected int numberOfCommonDescendants(ITree src, ITree dst) {
-        if (!srcDescendants.containsKey(src))
-            srcDescendants.put(src, src.getDescendants());
-        if (!dstDescendants.containsKey(dst))
-            dstDescendants.put(dst, new HashSet<>(dst.getDescendants()));
-
-        int common = 0;
-
-        for (ITree t: srcDescendants.get(src)) {
-            ITree m = mappings.getDst(t);
-            if (m != null && dstDescendants.get(dst).contains(m))
-                common++;
-        }
-
-        return common;
+        return similarityMetrics.jaccardSimilarity(src, dst);
     }
 
-}
\ No newline at end of file
+}
@@ -24,6 +24,7 @@ import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.Matcher;
 import com.github.gumtreediff.tree.ITree;
 
+import com.github.gumtreediff.matchers.heuristic.mtdiff.hungarian.DoubleMatrix;
 import com.github.gumtreediff.matchers.heuristic.mtdiff.intern.InnerMatcherMtDiffRunnable;
 import com.github.gumtreediff.matchers.heuristic.mtdiff.intern.LMatcher;
 import com.github.gumtreediff.matchers.heuristic.mtdiff.intern.LabelConfiguration;
@@ -36,6 +37,8 @@ import com.github.gumtreediff.matchers.heuristic.mtdiff.intern.PostOrderSetGener
 import com.github.gumtreediff.matchers.heuristic.mtdiff.intern.TagComparator;
 import com.github.gumtreediff.matchers.heuristic.mtdiff.intern.TreeMatcherConfiguration;
 import com.github.gumtreediff.matchers.heuristic.mtdiff.similarity.InnerNodeSimilarityCalculator;
+import com.github.gumtreediff.matchers.heuristic.mtdiff.similarity.NGramCalculator;
+import com.github.gumtreediff.utils.LabelTable;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -49,14 +52,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.FutureTask;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -64,7 +71,6 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 public class MtDiffOptimizedMatcher extends Matcher {
 
-    private static final int HASH_MAP_SIZE = 50000;
     public static final int SIMILIARITY_CACHE_SIZE = 100000;
 
     /**
@@ -107,6 +113,10 @@ public class MtDiffOptimizedMatcher extends Matcher {
 
     private TreeMatcherConfiguration configuration;
     private ExecutorService executorService;
+    private long timeout = 0;
+    private long wait;
+    private long deadline;
+    private long maxDenseCells = DoubleMatrix.MAX_DENSE_CELLS;
 
     private LabelConfiguration labelConfiguration;
 
@@ -124,7 +134,9 @@ public class MtDiffOptimizedMatcher extends Matcher {
     }
 
     private void computeMatchingPairs() throws Exception {
-        final LMatcher lMatcher = new LMatcher(labelConfiguration, configuration.leafThreshold);
+        final NGramCalculator stringSim = new NGramCalculator(2, 1000, 10000, new LabelTable());
+        final LMatcher lMatcher =
+                new LMatcher(labelConfiguration, configuration.leafThreshold, stringSim);
         IdentityHashMap<ITree, Integer> orderedList1 = getNodesInOrder(getSrc());
         IdentityHashMap<ITree, Integer> orderedList2 = getNodesInOrder(getDst());
         final ConcurrentSkipListSet<MatchingCandidate> matchedLeaves =
@@ -174,8 +186,6 @@ public class MtDiffOptimizedMatcher extends Matcher {
         }
         List<Entry<Integer, Integer>> list = new LinkedList<>(tagSizeMap.entrySet());
         Collections.sort(list, new TagComparator(labelConfiguration));
-        final ConcurrentHashMap<String, Float> stringSimCache =
-                new ConcurrentHashMap<>(HASH_MAP_SIZE);
 
         ArrayList<ITree> leaves1tmp = new ArrayList<ITree>();
         ArrayList<ITree> leaves2tmp = new ArrayList<ITree>();
@@ -199,7 +209,7 @@ public class MtDiffOptimizedMatcher extends Matcher {
         IdentityHashMap<ITree, ITree> parents2 = getParents(getDst());
 
         matchLeaves(orderedList1, orderedList2, matchedLeaves, resultMap, unmatchedNodes1,
-                unmatchedNodes2, onlyOneClassPair, list, stringSimCache, leaves1tmp, leaves2tmp,
+                unmatchedNodes2, onlyOneClassPair, list, leaves1tmp, leaves2tmp,
                 skipList, lMatcher, parents1, parents2, leavesMap1, leavesMap2, directChildrenMap1,
                 directChildrenMap2, null);
         HashSet<Mapping> resultSet = new HashSet<>();
@@ -213,7 +223,7 @@ public class MtDiffOptimizedMatcher extends Matcher {
         assert (unmatchedNodes2.size() == 0);
         matchInnerNodes(orderedList1, orderedList2, resultMap, unmatchedNodesOrdered1,
                 unmatchedNodesOrdered2, leavesMap1, directChildrenMap1, leavesMap2,
-                directChildrenMap2, skipList, resultSet);
+                directChildrenMap2, skipList, resultSet, stringSim);
 
         resultSet = new HashSet<>();
         resultSet.addAll(resultMap.values());
@@ -269,20 +279,99 @@ public class MtDiffOptimizedMatcher extends Matcher {
     }
 
 
+    /**
+     * Sets the time after which the parallel phases are cancelled. Once it has elapsed, the
+     * pending tasks are cancelled and no mapping is added. A value of zero disables it. The
+     * remaining time of the budget of the matcher, if shorter, is used instead.
+     *
+     * @param timeout the timeout
+     * @param unit the unit of the timeout
+     */
+    public void setTimeout(long timeout, TimeUnit unit) {
+        this.timeout = unit.toNanos(timeout);
+    }
+
+    public long getMaxDenseCells() {
+        return maxDenseCells;
+    }
+
+    /**
+     * Sets the maximum number of cells of the similarity and cost matrices allocated on the heap.
+     * Larger matrices are sparse or mapped from a temporary file (see {@link DoubleMatrix}).
+     *
+     * @param maxDenseCells the maximum number of cells
+     */
+    public void setMaxDenseCells(long maxDenseCells) {
+        this.maxDenseCells = maxDenseCells;
+    }
+
     /**
      * Match with MTDIFF.
      */
     @Override
     public void match() {
+        wait = timeout > 0 ? timeout : Long.MAX_VALUE;
+        if (getBudget() != null) {
+            wait = Math.min(wait, getBudget().getRemainingNanos());
+        }
+        deadline = System.nanoTime() + Math.min(wait, Long.MAX_VALUE / 2);
         try {
             computeMatchingPairs();
 
+        } catch (TimeoutException e) {
+            LOGGER.fine("MTDIFF timed out, no mapping added");
         } catch (Exception e) {
             e.printStackTrace();
         }
 
     }
 
+    /**
+     * Schedules a task. Without executor, the task is run in the calling thread, once the
+     * deadline and the budget have been checked. With a fork join pool, the task is forked when
+     * already running in that pool, so that nested matchers share its workers instead of
+     * blocking them.
+     */
+    private <T> Future<T> submit(Callable<T> task) throws TimeoutException {
+        if (executorService == null) {
+            if (isBudgetExhausted() || (wait != Long.MAX_VALUE && System.nanoTime() - deadline >= 0)) {
+                throw new TimeoutException();
+            }
+            FutureTask<T> future = new FutureTask<>(task);
+            future.run();
+            return future;
+        }
+        if (executorService instanceof ForkJoinPool) {
+            ForkJoinTask<T> future = ForkJoinTask.adapt(task);
+            if (ForkJoinTask.getPool() == executorService) {
+                future.fork();
+            } else {
+                ((ForkJoinPool) executorService).execute(future);
+            }
+            return future;
+        }
+        return executorService.submit(task);
+    }
+
+    /**
+     * Waits for a task of a phase, cancelling all the tasks of the phase if it fails or if the
+     * timeout elapses.
+     */
+    private <T> T join(Future<T> future, List<? extends Future<?>> phase)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        try {
+            if (wait == Long.MAX_VALUE) {
+                return future.get();
+            }
+            return future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            for (Future<?> f : phase) {
+                f.cancel(true);
+            }
+            throw e;
+        }
+    }
+
     private void matchInnerNodes(IdentityHashMap<ITree, Integer> orderedList1,
             IdentityHashMap<ITree, Integer> orderedList2, IdentityHashMap<ITree, Mapping> resultMap,
             ArrayList<ITree> unmatchedNodesOrdered1, ArrayList<ITree> unmatchedNodesOrdered2,
@@ -290,63 +379,32 @@ public class MtDiffOptimizedMatcher extends Matcher {
             IdentityHashMap<ITree, ArrayList<ITree>> directChildrenMap1,
             IdentityHashMap<ITree, ArrayList<ITree>> leavesMap2,
             IdentityHashMap<ITree, ArrayList<ITree>> directChildrenMap2, HashSet<ITree> skipList,
-            HashSet<Mapping> resultSet) throws InterruptedException, ExecutionException {
+            HashSet<Mapping> resultSet, NGramCalculator stringSim)
+            throws InterruptedException, ExecutionException, TimeoutException {
         InnerNodeSimilarityCalculator innerMatcher2 =
                 new InnerNodeSimilarityCalculator(labelConfiguration, leavesMap1, leavesMap2,
-                        directChildrenMap1, directChildrenMap2, resultSet);
+                        directChildrenMap1, directChildrenMap2, resultSet, stringSim);
         if (unmatchedNodesOrdered1 == null) {
             return;
         }
         // final long time = System.currentTimeMillis();
 
-        AtomicInteger innerMatchCounter = new AtomicInteger(0);
         int start = 0;
         int step = Math.max(unmatchedNodesOrdered1.size() / 16, 1);
 
         LinkedList<Future<ArrayList<MatchingCandidate>>> results = new LinkedList<>();
         while (start + step < unmatchedNodesOrdered1.size()) {
-            InnerMatcherMtDiffRunnable runnable =
-                    new InnerMatcherMtDiffRunnable(unmatchedNodesOrdered1, unmatchedNodesOrdered2,
-                            innerMatchCounter, start, start + step, innerMatcher2);
-            if (executorService != null) {
-                results.add(executorService.submit(runnable));
-            } else {
-                FutureTask<ArrayList<MatchingCandidate>> task = new FutureTask<>(runnable);
-                task.run();
-                results.add(task);
-            }
+            results.add(submit(new InnerMatcherMtDiffRunnable(unmatchedNodesOrdered1,
+                    unmatchedNodesOrdered2, start, start + step, innerMatcher2)));
             start += step;
         }
-        InnerMatcherMtDiffRunnable runnable =
-                new InnerMatcherMtDiffRunnable(unmatchedNodesOrdered1, unmatchedNodesOrdered2,
-                        innerMatchCounter, start, unmatchedNodesOrdered1.size(), innerMatcher2);
-        if (executorService != null) {
-            results.add(executorService.submit(runnable));
-        } else {
-            FutureTask<ArrayList<MatchingCandidate>> task = new FutureTask<>(runnable);
-            task.run();
-            results.add(task);
-        }
+        results.add(submit(new InnerMatcherMtDiffRunnable(unmatchedNodesOrdered1,
+                unmatchedNodesOrdered2, start, unmatchedNodesOrdered1.size(), innerMatcher2)));
         LinkedList<MatchingCandidate> candidateList = new LinkedList<>();
         for (Future<ArrayList<MatchingCandidate>> fu : results) {
-            ArrayList<MatchingCandidate> candidates;
-            try {
-                candidates = fu.get();
-                candidateList.addAll(candidates);
-                candidates.clear();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-                throw e;
-            } catch (ExecutionException e) {
-                e.printStackTrace();
-                throw e;
-            }
-
-        }
-
-        while (innerMatchCounter.get() > 0) {
-            assert (false);
-            Thread.yield();
+            ArrayList<MatchingCandidate> candidates = join(fu, results);
+            candidateList.addAll(candidates);
+            candidates.clear();
         }
         Collections.sort(candidateList, new PairComparator(orderedList1, orderedList2));
         while ((unmatchedNodesOrdered1 != null && unmatchedNodesOrdered2 != null)
@@ -369,8 +427,8 @@ public class MtDiffOptimizedMatcher extends Matcher {
             final ConcurrentSkipListSet<MatchingCandidate> matchedLeaves,
             IdentityHashMap<ITree, Mapping> resultMap, Set<ITree> unmatchedNodes1,
             Set<ITree> unmatchedNodes2, boolean onlyOneClassPair,
-            List<Entry<Integer, Integer>> list, ConcurrentHashMap<String, Float> stringSimCache,
-            ArrayList<ITree> leaves1tmp, ArrayList<ITree> leaves2tmp, HashSet<ITree> skipList,
+            List<Entry<Integer, Integer>> list, ArrayList<ITree> leaves1tmp,
+            ArrayList<ITree> leaves2tmp, HashSet<ITree> skipList,
             LMatcher leafMatcher, Map<ITree, ITree> parents1, Map<ITree, ITree> parents2,
             Map<ITree, ArrayList<ITree>> leavesMap1, Map<ITree, ArrayList<ITree>> leavesMap2,
             Map<ITree, ArrayList<ITree>> directChildrenMap1,
@@ -403,63 +461,35 @@ public class MtDiffOptimizedMatcher extends Matcher {
             }
             ITree[] nodes = subLeaves1.toArray(new ITree[subLeaves1.size()]);
             subLeaves1.clear();
-            AtomicInteger leafSimCounter = new AtomicInteger(0);
             int start = 0;
             int step = Math.max(nodes.length / 16, 1);
             LinkedList<Future<LeafSimResults<ITree>>> leafSimResults = new LinkedList<>();
             while (start + step < nodes.length) {
-                LeafSimilarityRunnable runnable = new LeafSimilarityRunnable(stringSimCache, nodes,
-                        subLeaves2, leafSimCounter, start, start + step, orderedList1, orderedList2,
-                        skipList, leafMatcher, labelConfiguration, renames);
-                if (executorService != null) {
-                    leafSimResults.add(executorService.submit(runnable));
-                } else {
-                    FutureTask<LeafSimResults<ITree>> task = new FutureTask<>(runnable);
-                    task.run();
-                    leafSimResults.add(task);
-                }
+                leafSimResults.add(submit(new LeafSimilarityRunnable(nodes, subLeaves2, start,
+                        start + step, orderedList1, orderedList2, skipList, leafMatcher,
+                        labelConfiguration, renames)));
                 start += step;
             }
-            LeafSimilarityRunnable runnable = new LeafSimilarityRunnable(stringSimCache, nodes,
-                    subLeaves2, leafSimCounter, start, nodes.length, orderedList1, orderedList2,
-                    skipList, leafMatcher, labelConfiguration, renames);
-            if (executorService != null) {
-                leafSimResults.add(executorService.submit(runnable));
-            } else {
-                FutureTask<LeafSimResults<ITree>> task = new FutureTask<>(runnable);
-                task.run();
-                leafSimResults.add(task);
-            }
+            leafSimResults.add(submit(new LeafSimilarityRunnable(nodes, subLeaves2, start,
+                    nodes.length, orderedList1, orderedList2, skipList, leafMatcher,
+                    labelConfiguration, renames)));
             for (Future<LeafSimResults<ITree>> fu : leafSimResults) {
 
-                LeafSimResults<ITree> leafSimRes;
-                try {
+                LeafSimResults<ITree> leafSimRes = join(fu, leafSimResults);
 
-                    leafSimRes = fu.get();
+                matchedLeaves.addAll(leafSimRes.submatchedLeaves);
+                leafSimRes.submatchedLeaves.clear();
 
-                    matchedLeaves.addAll(leafSimRes.submatchedLeaves);
-                    leafSimRes.submatchedLeaves.clear();
-
-                    for (final Entry<ITree, ArrayList<MatchingCandidate>> entry : leafSimRes.subleafCandidateMap
-                            .entrySet()) {
-                        ArrayList<MatchingCandidate> myList = leafCandidateMap
-                                .putIfAbsent(entry.getKey(), new ArrayList<>(entry.getValue()));
-                        if (myList != null) {
-                            myList.addAll(entry.getValue());
-                        }
+                for (final Entry<ITree, ArrayList<MatchingCandidate>> entry : leafSimRes.subleafCandidateMap
+                        .entrySet()) {
+                    ArrayList<MatchingCandidate> myList = leafCandidateMap
+                            .putIfAbsent(entry.getKey(), new ArrayList<>(entry.getValue()));
+                    if (myList != null) {
+                        myList.addAll(entry.getValue());
                     }
-                    leafSimRes.subleafCandidateMap.clear();
-                    leafSimRes.submatchedLeaves.clear();
-
-                } catch (InterruptedException | ExecutionException e) {
-                    e.printStackTrace();
-                    throw e;
                 }
-
-            }
-            while (leafSimCounter.get() > 0) {
-                assert (false);
-                Thread.yield();
+                leafSimRes.subleafCandidateMap.clear();
+                leafSimRes.submatchedLeaves.clear();
             }
             leafSimResults.clear();
             subLeaves2.clear();
@@ -590,7 +620,6 @@ public class MtDiffOptimizedMatcher extends Matcher {
             nodeMappings.clear();
             nodeMappings = null;
 
-            AtomicInteger treeDiffCounter = new AtomicInteger(0);
             LinkedList<Future<Set<MatchingCandidate>>> diffResultList = new LinkedList<>();
             for (int i = 0; i < oldNodeArray.size(); i++) {
                 ArrayList<ITree> newNodeList = newNodeArray.get(i);
@@ -598,15 +627,15 @@ public class MtDiffOptimizedMatcher extends Matcher {
                 HashSet<MatchingCandidate> subList = mcList.get(i);
                 SimilarLeafExaminationRunnable treeDiffRunnable =
                         new SimilarLeafExaminationRunnable(oldNodeList, newNodeList, subList,
-                                treeDiffCounter, stringSimCache, onlyOneClassPair, orderedList1,
+                                onlyOneClassPair, orderedList1,
                                 orderedList2, resultMap, similarityCache, similarityEntries,
                                 parents1, parents2, leavesMap1, leavesMap2, labelConfiguration,
                                 leafMatcher, directChildrenMap1, directChildrenMap2, getSrc(),
                                 getDst(), configuration.weightSimilarity,
-                                configuration.weightPosition);
+                                configuration.weightPosition, maxDenseCells);
                 if (oldNodeList.size() * newNodeList.size() > 10000000) {
-                    while (treeDiffCounter.get() > 1) {
-                        Thread.yield();
+                    for (Future<Set<MatchingCandidate>> fu : diffResultList) {
+                        join(fu, diffResultList);
                     }
                     for (int j = 0; j < i; j++) {
                         HashSet<MatchingCandidate> subListX = mcList.get(j);
@@ -654,19 +683,9 @@ public class MtDiffOptimizedMatcher extends Matcher {
                         }
                         tmpCandidates.clear();
                         for (Future<Set<MatchingCandidate>> fu : diffResultList) {
-                            Set<MatchingCandidate> diffResult;
-                            try {
-                                diffResult = fu.get();
-                                candidateList.addAll(diffResult);
-                                diffResult.clear();
-                            } catch (InterruptedException e) {
-                                e.printStackTrace();
-                                throw e;
-                            } catch (ExecutionException e) {
-                                e.printStackTrace();
-                                throw e;
-                            }
-
+                            Set<MatchingCandidate> diffResult = join(fu, diffResultList);
+                            candidateList.addAll(diffResult);
+                            diffResult.clear();
                         }
                         Collections.sort(candidateList,
                                 new PairComparator(orderedList1, orderedList2));
@@ -689,14 +708,13 @@ public class MtDiffOptimizedMatcher extends Matcher {
                             assert (tmp == null);
                             resultMap.put(pair.first, pair);
                         }
-                        treeDiffCounter.decrementAndGet();
                     }
                     newNodeArray.get(i).clear();
                     oldNodeArray.get(i).clear();
                     similarityEntries.set(0);
                 } else {
                     if (executorService != null) {
-                        diffResultList.add(executorService.submit(treeDiffRunnable));
+                        diffResultList.add(submit(treeDiffRunnable));
                     } else {
                         FutureTask<Set<MatchingCandidate>> task =
                                 new FutureTask<>(treeDiffRunnable);
@@ -714,24 +732,9 @@ public class MtDiffOptimizedMatcher extends Matcher {
             candidateList.addAll(matchedLeaves);
             matchedLeaves.clear();
             for (Future<Set<MatchingCandidate>> fu : diffResultList) {
-                Set<MatchingCandidate> diffResult;
-                try {
-                    diffResult = fu.get();
-                    candidateList.addAll(diffResult);
-                    diffResult.clear();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                    throw e;
-                } catch (ExecutionException e) {
-                    e.printStackTrace();
-                    throw e;
-                }
-
-            }
-
-            while (leafSimCounter.get() > 0) {
-                assert (false);
-                Thread.yield();
+                Set<MatchingCandidate> diffResult = join(fu, diffResultList);
+                candidateList.addAll(diffResult);
+                diffResult.clear();
             }
             for (int j = 0; j < oldNodeArray.size(); j++) {
                 newNodeArray.get(j).clear();
@@ -21,9 +21,24 @@ package com.github.gumtreediff.matchers.heuristic.mtdiff.hungarian;
 
 /**
  * An abstract class representing a matrix of type double.
+ *
+ * Matrices of up to {@link #MAX_DENSE_CELLS} cells are arrays on the heap. Larger ones are kept
+ * sparse when most of their cells are expected to keep their initial value, and are otherwise
+ * mapped from a temporary file, outside of the heap. The sparse and mapped matrices are meant for
+ * the greedy assignment of large matrices: {@link Hungarian} writes every cell, so it always works
+ * on a dense copy of them.
  */
 public abstract class DoubleMatrix {
 
+    /**
+     * The maximum number of cells of the matrices allocated on the heap.
+     */
+    public static final long MAX_DENSE_CELLS =
+            Long.parseLong(System.getProperty("gt.mtdiff.mc", "16777216"));
+
+    // A large matrix is sparse when at most one cell in SPARSE_RATIO is expected to be set.
+    private static final int SPARSE_RATIO = 8;
+
     /**
      * New matrix.
      *
@@ -48,7 +63,55 @@ public abstract class DoubleMatrix {
      * @return the double matrix
      */
     public static DoubleMatrix newMatrix(final int rows, final int cols) {
-        return new InMemoryDoubleMatrix(rows, cols);
+        return newMatrix(rows, cols, 0, (long) rows * cols);
+    }
+
+    /**
+     * New matrix.
+     *
+     * @param rows          the rows
+     * @param cols          the cols
+     * @param initialValue  the initial value of all the cells
+     * @param expectedCells the expected number of cells that will be set to another value
+     * @return the double matrix
+     */
+    public static DoubleMatrix newMatrix(final int rows, final int cols, final double initialValue,
+            final long expectedCells) {
+        return newMatrix(rows, cols, initialValue, expectedCells, MAX_DENSE_CELLS);
+    }
+
+    /**
+     * New matrix.
+     *
+     * @param rows          the rows
+     * @param cols          the cols
+     * @param initialValue  the initial value of all the cells
+     * @param expectedCells the expected number of cells that will be set to another value
+     * @param maxDenseCells the maximum number of cells of the matrix to allocate it on the heap
+     * @return the double matrix
+     */
+    public static DoubleMatrix newMatrix(final int rows, final int cols, final double initialValue,
+            final long expectedCells, final long maxDenseCells) {
+        final long cells = (long) rows * cols;
+        if (cells <= maxDenseCells) {
+            return new InMemoryDoubleMatrix(rows, cols, initialValue);
+        } else if (expectedCells <= cells / SPARSE_RATIO) {
+            return new SparseDoubleMatrix(rows, cols, initialValue);
+        } else {
+            return new MappedDoubleMatrix(rows, cols, initialValue);
+        }
+    }
+
+    /**
+     * New matrix on the heap, whatever its size.
+     *
+     * @param rows         the rows
+     * @param cols         the cols
+     * @param initialValue the initial value of all the cells
+     * @return the double matrix
+     */
+    public static DoubleMatrix newDenseMatrix(final int rows, final int cols, final double initialValue) {
+        return new InMemoryDoubleMatrix(rows, cols, initialValue);
     }
 
     private final int cols;
@@ -61,7 +124,8 @@ public abstract class DoubleMatrix {
     }
 
     /**
-     * Releases the resources hold by this matrix.
+     * Releases the resources hold by this matrix. It must be called once the matrix is no longer
+     * used, even on failure: a mapped matrix keeps its temporary file until then.
      */
     public abstract void finish();
 
@@ -94,7 +94,9 @@ public final class Hungarian {
     }
 
     /**
-     * Find a minimizing solution for the linear assignment problem specified by the matrix.
+     * Find a minimizing solution for the linear assignment problem specified by the matrix. The
+     * reductions write every cell, so the algorithm runs on a dense copy of a matrix that is not square
+     * or not {@link DoubleMatrix#newDenseMatrix dense}, and in place otherwise.
      *
      * @param matrix the matrix
      * @return An array with an element for each row containing the assigned column of the matrix.
@@ -301,13 +303,13 @@ public final class Hungarian {
 
     private static DoubleMatrix makeNxN(final DoubleMatrix matrix) {
         assert matrix.numRows() > 0;
-        if (matrix.numRows() == matrix.numCols()) {
+        if (matrix.numRows() == matrix.numCols() && matrix instanceof InMemoryDoubleMatrix) {
             return matrix;
         }
 
         // KxM -> NxN with N = max(K, M)
         final int n = Math.max(matrix.numRows(), matrix.numCols());
-        final DoubleMatrix result = DoubleMatrix.newMatrix(n, n);
+        final DoubleMatrix result = DoubleMatrix.newDenseMatrix(n, n, 0);
         for (int i = 0; i < n; ++i) {
             for (int j = 0; j < n; ++j) {
                 if ((i >= matrix.numRows()) || (j >= matrix.numCols())) {
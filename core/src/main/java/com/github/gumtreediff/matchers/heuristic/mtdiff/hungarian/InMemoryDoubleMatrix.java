@@ -19,12 +19,19 @@
 
 package com.github.gumtreediff.matchers.heuristic.mtdiff.hungarian;
 
+import java.util.Arrays;
+
 final class InMemoryDoubleMatrix extends DoubleMatrix {
     private final double[][] data;
 
-    InMemoryDoubleMatrix(final int rows, final int cols) {
+    InMemoryDoubleMatrix(final int rows, final int cols, final double initialValue) {
         super(rows, cols);
         data = new double[rows][cols];
+        if (initialValue != 0) {
+            for (final double[] row : data) {
+                Arrays.fill(row, initialValue);
+            }
+        }
     }
 
 
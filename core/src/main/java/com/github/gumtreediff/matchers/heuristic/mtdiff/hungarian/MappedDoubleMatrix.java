@@ -0,0 +1,91 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.matchers.heuristic.mtdiff.hungarian;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A double matrix mapped from a temporary file, so that its cells are outside of the heap.
+ * The file is mapped by chunks of whole rows, each chunk being at most {@link #CHUNK_BYTES} long.
+ * It is deleted by {@link #finish()}, the memory being released when the chunks are collected.
+ */
+final class MappedDoubleMatrix extends DoubleMatrix {
+    private static final int CHUNK_BYTES = 1 << 30;
+
+    private final int rowsPerChunk;
+
+    private File file;
+
+    private DoubleBuffer[] chunks;
+
+    MappedDoubleMatrix(final int rows, final int cols, final double initialValue) {
+        super(rows, cols);
+        final long rowBytes = (long) cols * Double.BYTES;
+        if (rowBytes > CHUNK_BYTES) {
+            throw new IllegalArgumentException("Too many columns for a mapped matrix: " + cols);
+        }
+        rowsPerChunk = (int) Math.max(1, CHUNK_BYTES / Math.max(rowBytes, 1));
+        chunks = new DoubleBuffer[(rows + rowsPerChunk - 1) / rowsPerChunk];
+        try {
+            file = File.createTempFile("gumtree-matrix", ".bin");
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                    FileChannel channel = raf.getChannel()) {
+                for (int c = 0; c < chunks.length; c++) {
+                    final int chunkRows = Math.min(rowsPerChunk, rows - c * rowsPerChunk);
+                    chunks[c] = channel.map(FileChannel.MapMode.READ_WRITE,
+                            c * rowsPerChunk * rowBytes, chunkRows * rowBytes).asDoubleBuffer();
+                    if (initialValue != 0) {
+                        for (int i = 0; i < chunks[c].capacity(); i++) {
+                            chunks[c].put(i, initialValue);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            finish();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void finish() {
+        chunks = null;
+        if (file != null) {
+            file.delete();
+            file = null;
+        }
+    }
+
+    @Override
+    public double get(final int row, final int col) {
+        return chunks[row / rowsPerChunk].get((row % rowsPerChunk) * numCols() + col);
+    }
+
+    @Override
+    public void set(final int row, final int col, final double val) {
+        chunks[row / rowsPerChunk].put((row % rowsPerChunk) * numCols() + col, val);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.matchers.heuristic.mtdiff.hungarian;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.map.TIntDoubleMap;
+import gnu.trove.map.hash.TIntDoubleHashMap;
+
+/**
+ * A double matrix storing only the cells that differ from its initial value, in a map per row.
+ */
+final class SparseDoubleMatrix extends DoubleMatrix {
+    private final double initialValue;
+
+    private TIntDoubleMap[] data;
+
+    SparseDoubleMatrix(final int rows, final int cols, final double initialValue) {
+        super(rows, cols);
+        this.initialValue = initialValue;
+        data = new TIntDoubleMap[rows];
+    }
+
+    @Override
+    public void finish() {
+        data = null;
+    }
+
+    @Override
+    public double get(final int row, final int col) {
+        final TIntDoubleMap cells = data[row];
+        return cells == null ? initialValue : cells.get(col);
+    }
+
+    @Override
+    public void set(final int row, final int col, final double val) {
+        TIntDoubleMap cells = data[row];
+        if (Double.doubleToLongBits(val) == Double.doubleToLongBits(initialValue)) {
+            if (cells != null) {
+                cells.remove(col);
+            }
+        } else {
+            if (cells == null) {
+                cells = new TIntDoubleHashMap(Constants.DEFAULT_CAPACITY,
+                        Constants.DEFAULT_LOAD_FACTOR, -1, initialValue);
+                data[row] = cells;
+            }
+            cells.put(col, val);
+        }
+    }
+}
@@ -25,11 +25,9 @@ import com.github.gumtreediff.matchers.heuristic.mtdiff.similarity.InnerNodeSimi
 
 import java.util.ArrayList;
 import java.util.concurrent.Callable;
-import java.util.concurrent.atomic.AtomicInteger;
 
 public class InnerMatcherMtDiffRunnable implements Callable<ArrayList<MatchingCandidate>> {
 
-    private AtomicInteger counter = null;
     private int end;
     private InnerNodeSimilarityCalculator imatcher;
     private int start;
@@ -45,22 +43,19 @@ public class InnerMatcherMtDiffRunnable implements Callable<ArrayList<MatchingCa
      *
      * @param unmatchedNodesOrdered1 the unmatched nodes ordered1
      * @param unmatchedNodesOrdered2 the unmatched nodes ordered2
-     * @param counter                the counter
      * @param start                  the start
      * @param end                    the end
      * @param imatcher               the imatcher
      */
     public InnerMatcherMtDiffRunnable(ArrayList<ITree> unmatchedNodesOrdered1,
-              ArrayList<ITree> unmatchedNodesOrdered2, AtomicInteger counter, int start, int end,
+              ArrayList<ITree> unmatchedNodesOrdered2, int start, int end,
               InnerNodeSimilarityCalculator imatcher) {
         super();
         this.unmatchedNodesOrdered1 = unmatchedNodesOrdered1;
         this.unmatchedNodesOrdered2 = unmatchedNodesOrdered2;
         this.imatcher = imatcher;
-        this.counter = counter;
         this.start = start;
         this.end = end;
-        counter.incrementAndGet();
     }
 
 
@@ -81,7 +76,6 @@ public class InnerMatcherMtDiffRunnable implements Callable<ArrayList<MatchingCa
                 candidates.addAll(tmp);
 
             }
-            counter.decrementAndGet();
             return candidates;
 
         } catch (Exception e) {
@@ -33,7 +33,7 @@ public class LMatcher {
     private GaussianIntSimilarityMeasure intSim = new GaussianIntSimilarityMeasure(1);
     private LabelConfiguration labelConfiguration;
 
-    private NGramCalculator stringSim = new NGramCalculator(2, 10, 10);
+    private final NGramCalculator stringSim;
 
     private final double threshold;
 
@@ -44,8 +44,25 @@ public class LMatcher {
      * @param threshold          the threshold to determine matching leaves
      */
     public LMatcher(LabelConfiguration labelConfiguration, double threshold) {
+        this(labelConfiguration, threshold, new NGramCalculator(2, 10, 10));
+    }
+
+    /**
+     * Instantiates a new leaf matcher comparing the string labels with the given calculator.
+     *
+     * @param labelConfiguration the label configuration
+     * @param threshold          the threshold to determine matching leaves
+     * @param stringSim          the n-gram calculator, shared with the other users of the labels
+     */
+    public LMatcher(LabelConfiguration labelConfiguration, double threshold,
+            NGramCalculator stringSim) {
         this.labelConfiguration = labelConfiguration;
         this.threshold = threshold;
+        this.stringSim = stringSim;
+    }
+
+    public NGramCalculator getStringSimilarity() {
+        return stringSim;
     }
 
     /**
@@ -32,11 +32,9 @@ import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.atomic.AtomicInteger;
 
 public class LeafSimilarityRunnable implements Callable<LeafSimResults<ITree>> {
 
-    private AtomicInteger counter = null;
     private int end;
     private LabelConfiguration labelConfiguration;
     private LMatcher lmatcher;
@@ -45,18 +43,15 @@ public class LeafSimilarityRunnable implements Callable<LeafSimResults<ITree>> {
     private HashMap<String, String> renames;
     private HashSet<ITree> skipList;
     private int start;
-    private NGramCalculator stringSim = new NGramCalculator(2, 1000, 10000);
-    private ConcurrentHashMap<String, Float> stringSimCache;
+    private NGramCalculator stringSim;
     private ITree[] subLeaves1;
     private ArrayList<ITree> subLeaves2;
 
     /**
      * Instantiates a new leaf similarity runnable.
      *
-     * @param stringSimCache     the string sim cache
      * @param subLeaves1         the sub leaves1
      * @param subLeaves2         the sub leaves2
-     * @param counter            the counter
      * @param start              the start
      * @param end                the end
      * @param orderedList1       the ordered list1
@@ -66,23 +61,20 @@ public class LeafSimilarityRunnable implements Callable<LeafSimResults<ITree>> {
      * @param labelConfiguration the label configuration
      * @param renames            the renames
      */
-    public LeafSimilarityRunnable(ConcurrentHashMap<String, Float> stringSimCache, ITree[] subLeaves1,
-              ArrayList<ITree> subLeaves2, AtomicInteger counter, int start, int end,
+    public LeafSimilarityRunnable(ITree[] subLeaves1, ArrayList<ITree> subLeaves2, int start, int end,
               IdentityHashMap<ITree, Integer> orderedList1, IdentityHashMap<ITree, Integer> orderedList2,
               HashSet<ITree> skipList, LMatcher lmatcher, LabelConfiguration labelConfiguration,
               HashMap<String, String> renames) {
         super();
-        this.stringSimCache = stringSimCache;
         this.subLeaves1 = subLeaves1;
         this.subLeaves2 = subLeaves2;
-        this.counter = counter;
         this.start = start;
         this.end = end;
-        counter.incrementAndGet();
         this.orderedList1 = orderedList1;
         this.orderedList2 = orderedList2;
         this.skipList = skipList;
         this.lmatcher = lmatcher;
+        this.stringSim = lmatcher.getStringSimilarity();
         this.labelConfiguration = labelConfiguration;
         this.renames = renames;
     }
@@ -166,7 +158,7 @@ public class LeafSimilarityRunnable implements Callable<LeafSimResults<ITree>> {
                     }
                 }
 
-                computeLeafSimilarities(matchedLeaves, stringSimCache, leafCandidateMap, subLeaves2,
+                computeLeafSimilarities(matchedLeaves, leafCandidateMap, subLeaves2,
                         stringSim, firstNode, skipList, lmatcher);
                 if (firstNode.getType() == labelConfiguration.basicTypeLabel) {
                     basicTypeCache.putIfAbsent(firstNode.getLabel(), firstNode);
@@ -199,8 +191,6 @@ public class LeafSimilarityRunnable implements Callable<LeafSimResults<ITree>> {
             basicTypeCache.clear();
             basicNameCache.clear();
             basicTypeQualifierCache.clear();
-            counter.decrementAndGet();
-            stringSim.clear();
             return new LeafSimResults<ITree>(leafCandidateMap, matchedLeaves);
         } catch (Exception e) {
             e.printStackTrace();
@@ -210,7 +200,6 @@ public class LeafSimilarityRunnable implements Callable<LeafSimResults<ITree>> {
     }
 
     private void computeLeafSimilarities(final ConcurrentSkipListSet<MatchingCandidate> matchedLeaves,
-                                         ConcurrentHashMap<String, Float> stringSimCache,
                                          final ConcurrentHashMap<ITree, ArrayList<MatchingCandidate>> leafCandidateMap,
                                          ArrayList<ITree> subLeaves2, NGramCalculator stringSim, final ITree firstNode,
                                          HashSet<ITree> skipList, LMatcher lmatcher) {
@@ -238,13 +227,7 @@ public class LeafSimilarityRunnable implements Callable<LeafSimResults<ITree>> {
                     } else if (firstNode.getLabel().equals(secondNode.getLabel())) {
                         sim = 1.0f;
                     } else {
-                        if (stringSimCache.get(firstNode.getLabel() + "@@" + secondNode.getLabel()) != null) {
-                            sim = stringSimCache.get(firstNode.getLabel() + "@@" + secondNode.getLabel());
-                        } else if (stringSimCache.get(secondNode.getLabel() + "@@" + firstNode.getLabel()) != null) {
-                            sim = stringSimCache.get(secondNode.getLabel() + "@@" + firstNode.getLabel());
-                        } else {
-                            sim = stringSim.similarity(firstNode.getLabel(), secondNode.getLabel());
-                        }
+                        sim = stringSim.similarity(firstNode.getLabel(), secondNode.getLabel());
                     }
                 } else if (secondNode.getType() == labelConfiguration.basicTypeLabel
                         || secondNode.getType() == labelConfiguration.qualifierLabel) {
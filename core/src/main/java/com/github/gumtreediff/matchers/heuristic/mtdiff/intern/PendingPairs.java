@@ -0,0 +1,66 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.matchers.heuristic.mtdiff.intern;
+
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * The pairs of old and new nodes whose aggregation is not finished, stored in a set of columns
+ * per row. Only the candidate pairs are pending at first, so the memory used is proportional to
+ * their number rather than to the number of pairs of nodes.
+ */
+final class PendingPairs {
+    private final TIntSet[] rows;
+
+    PendingPairs(final int rows) {
+        this.rows = new TIntSet[rows];
+    }
+
+    void add(final int row, final int col) {
+        if (rows[row] == null) {
+            rows[row] = new TIntHashSet();
+        }
+        rows[row].add(col);
+    }
+
+    boolean contains(final int row, final int col) {
+        return rows[row] != null && rows[row].contains(col);
+    }
+
+    void remove(final int row, final int col) {
+        if (rows[row] != null) {
+            rows[row].remove(col);
+        }
+    }
+
+    void removeRow(final int row) {
+        rows[row] = null;
+    }
+
+    void removeColumn(final int col) {
+        for (final TIntSet cols : rows) {
+            if (cols != null) {
+                cols.remove(col);
+            }
+        }
+    }
+}
@@ -23,6 +23,7 @@ package com.github.gumtreediff.matchers.heuristic.mtdiff.intern;
 import com.github.gumtreediff.matchers.Mapping;
 import com.github.gumtreediff.tree.ITree;
 
+import com.github.gumtreediff.matchers.heuristic.mtdiff.hungarian.DoubleMatrix;
 import com.github.gumtreediff.matchers.heuristic.mtdiff.similarity.NGramCalculator;
 
 import java.util.ArrayList;
@@ -36,7 +37,6 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -44,7 +44,6 @@ public class SimilarLeafExaminationRunnable implements Callable<Set<MatchingCand
 
     private ConcurrentHashMap<ITree, ConcurrentHashMap<ITree, MatchingCandidate>> candidateMap =
             new ConcurrentHashMap<>();
-    private AtomicInteger count;
     private Map<ITree, ArrayList<ITree>> directChildrenMap1 = null;
     private Map<ITree, ArrayList<ITree>> directChildrenMap2 = null;
     private ConcurrentSkipListSet<MatchingCandidate> initialList;
@@ -54,6 +53,7 @@ public class SimilarLeafExaminationRunnable implements Callable<Set<MatchingCand
     private Map<ITree, ArrayList<ITree>> leavesMap1 = null;
     private Map<ITree, ArrayList<ITree>> leavesMap2 = null;
     private LMatcher leafMatcher;
+    private long maxDenseCells;
     private ArrayList<ITree> newNodes;
     private ArrayList<ITree> oldNodes;
     private boolean onlyOneClassPair;
@@ -66,8 +66,7 @@ public class SimilarLeafExaminationRunnable implements Callable<Set<MatchingCand
     private ITree root2;
     private ConcurrentHashMap<ITree, ConcurrentHashMap<ITree, Float>> similarityCache;
     private AtomicLong similarityEntries;
-    private NGramCalculator stringSim = new NGramCalculator(2, 10, 10);
-    private ConcurrentHashMap<String, Float> stringSimCache;
+    private NGramCalculator stringSim;
     private double weightPosition;
     private double weightSimilarity;
 
@@ -77,8 +76,6 @@ public class SimilarLeafExaminationRunnable implements Callable<Set<MatchingCand
      * @param oldNodes the old nodes
      * @param newNodes the new nodes
      * @param initialListOld the initial list old
-     * @param count the count
-     * @param stringSimCache the string sim cache
      * @param onlyOneClassPair the only one class pair
      * @param orderedListOld the ordered list old
      * @param orderedListNew the ordered list new
@@ -97,10 +94,10 @@ public class SimilarLeafExaminationRunnable implements Callable<Set<MatchingCand
      * @param root2 the root2
      * @param weightSimilarity the weight similarity
      * @param weightPosition the weight position
+     * @param maxDenseCells the maximum number of cells of the matrices allocated on the heap
      */
     public SimilarLeafExaminationRunnable(ArrayList<ITree> oldNodes, ArrayList<ITree> newNodes,
-            HashSet<MatchingCandidate> initialListOld, AtomicInteger count,
-            ConcurrentHashMap<String, Float> stringSimCache, boolean onlyOneClassPair,
+            HashSet<MatchingCandidate> initialListOld, boolean onlyOneClassPair,
             IdentityHashMap<ITree, Integer> orderedListOld,
             IdentityHashMap<ITree, Integer> orderedListNew,
             IdentityHashMap<ITree, Mapping> resultMap,
@@ -110,22 +107,20 @@ public class SimilarLeafExaminationRunnable implements Callable<Set<MatchingCand
             LabelConfiguration labelConfiguration, LMatcher leafMatcher,
             Map<ITree, ArrayList<ITree>> directChildrenMap1,
             Map<ITree, ArrayList<ITree>> directChildrenMap2, ITree root1, ITree root2,
-            double weightSimilarity, double weightPosition) {
+            double weightSimilarity, double weightPosition, long maxDenseCells) {
         super();
         this.oldNodes = oldNodes;
         this.newNodes = newNodes;
         this.initialListOld = initialListOld;
-        this.count = count;
         this.similarityCache = similarityCache;
-        this.stringSimCache = stringSimCache;
         this.onlyOneClassPair = onlyOneClassPair;
         this.orderedListOld = orderedListOld;
         this.orderedListNew = orderedListNew;
         this.resultMap = resultMap;
-        count.incrementAndGet();
         this.similarityEntries = similarityEntries;
         this.labelConfiguration = labelConfiguration;
         this.leafMatcher = leafMatcher;
+        this.stringSim = leafMatcher.getStringSimilarity();
         this.leavesMap1 = leavesMap1;
         this.leavesMap2 = leavesMap2;
         this.parents1 = parents1;
@@ -136,6 +131,7 @@ public class SimilarLeafExaminationRunnable implements Callable<Set<MatchingCand
         this.root2 = root2;
         this.weightSimilarity = weightSimilarity;
         this.weightPosition = weightPosition;
+        this.maxDenseCells = maxDenseCells;
     }
 
 
@@ -159,93 +155,88 @@ public class SimilarLeafExaminationRunnable implements Callable<Set<MatchingCand
                     new BreadthFirstComparator<ITree>(orderedListNew);
             Collections.sort(newNodes, compNew);
             compNew = null;
-            boolean[][] aggregationFinished = new boolean[oldNodes.size()][newNodes.size()];
-            double[][] similarityScores = new double[oldNodes.size()][newNodes.size()];
-            ITree[] firstAggregations = new ITree[oldNodes.size()];
-            ITree[] secondAggregations = new ITree[newNodes.size()];
-            final ConcurrentSkipListSet<MatchingCandidate> resultList =
-                    new ConcurrentSkipListSet<>(new PairComparator(orderedListOld, orderedListNew));
-            final ConcurrentHashMap<ITree, MatchingCandidate> currentResultMap =
-                    new ConcurrentHashMap<>();
-            AtomicBoolean[] doneOld = new AtomicBoolean[oldNodes.size()];
-            for (int i = 0; i < oldNodes.size(); i++) {
-                doneOld[i] = new AtomicBoolean();
-            }
-            for (MatchingCandidate mc : initialList) {
-
-                ConcurrentHashMap<ITree, MatchingCandidate> tmp = new ConcurrentHashMap<>();
-                ConcurrentHashMap<ITree, MatchingCandidate> tmp2 = candidateMap.put(mc.first, tmp);
-                if (tmp2 != null) {
-                    tmp = tmp2;
+            final PendingPairs pendingPairs = new PendingPairs(oldNodes.size());
+            final DoubleMatrix similarityScores = DoubleMatrix.newMatrix(oldNodes.size(),
+                    newNodes.size(), Float.MIN_VALUE, initialList.size(), maxDenseCells);
+            try {
+                ITree[] firstAggregations = new ITree[oldNodes.size()];
+                ITree[] secondAggregations = new ITree[newNodes.size()];
+                final ConcurrentSkipListSet<MatchingCandidate> resultList =
+                        new ConcurrentSkipListSet<>(new PairComparator(orderedListOld, orderedListNew));
+                final ConcurrentHashMap<ITree, MatchingCandidate> currentResultMap =
+                        new ConcurrentHashMap<>();
+                AtomicBoolean[] doneOld = new AtomicBoolean[oldNodes.size()];
+                for (int i = 0; i < oldNodes.size(); i++) {
+                    doneOld[i] = new AtomicBoolean();
                 }
-                tmp.put(mc.second, mc);
-            }
-            for (MatchingCandidate mc : initialList) {
+                for (MatchingCandidate mc : initialList) {
 
-                ConcurrentHashMap<ITree, MatchingCandidate> tmp = candidateMap.get(mc.first);
-                if (tmp == null) {
-                    tmp = new ConcurrentHashMap<>();
-                    ConcurrentHashMap<ITree, MatchingCandidate> tmp2 =
-                            candidateMap.putIfAbsent(mc.first, tmp);
+                    ConcurrentHashMap<ITree, MatchingCandidate> tmp = new ConcurrentHashMap<>();
+                    ConcurrentHashMap<ITree, MatchingCandidate> tmp2 = candidateMap.put(mc.first, tmp);
                     if (tmp2 != null) {
                         tmp = tmp2;
                     }
+                    tmp.put(mc.second, mc);
                 }
-                tmp.put(mc.second, mc);
-            }
-            for (int i = 0; i < oldNodes.size(); i++) {
-                firstAggregations[i] = oldNodes.get(i);
-            }
-            for (int j = 0; j < newNodes.size(); j++) {
-                secondAggregations[j] = newNodes.get(j);
-            }
-            for (int i = 0; i < oldNodes.size(); i++) {
-                ITree oldNode = oldNodes.get(i);
-                ConcurrentHashMap<ITree, MatchingCandidate> tmp = candidateMap.get(oldNode);
-                if (tmp != null) {
-                    for (int j = 0; j < newNodes.size(); j++) {
-                        ITree newNode = newNodes.get(j);
-                        MatchingCandidate mc = tmp.get(newNode);
-                        if (mc == null) {
-                            aggregationFinished[i][j] = true;
-                            similarityScores[i][j] = Float.MIN_VALUE;
-                        } else {
-                            aggregationFinished[i][j] = false;
-                            similarityScores[i][j] = mc.getValue();
+                for (MatchingCandidate mc : initialList) {
+
+                    ConcurrentHashMap<ITree, MatchingCandidate> tmp = candidateMap.get(mc.first);
+                    if (tmp == null) {
+                        tmp = new ConcurrentHashMap<>();
+                        ConcurrentHashMap<ITree, MatchingCandidate> tmp2 =
+                                candidateMap.putIfAbsent(mc.first, tmp);
+                        if (tmp2 != null) {
+                            tmp = tmp2;
                         }
                     }
-                } else {
-                    for (int j = 0; j < newNodes.size(); j++) {
-                        aggregationFinished[i][j] = true;
-                        similarityScores[i][j] = Float.MIN_VALUE;
+                    tmp.put(mc.second, mc);
+                }
+                for (int i = 0; i < oldNodes.size(); i++) {
+                    firstAggregations[i] = oldNodes.get(i);
+                }
+                for (int j = 0; j < newNodes.size(); j++) {
+                    secondAggregations[j] = newNodes.get(j);
+                }
+                for (int i = 0; i < oldNodes.size(); i++) {
+                    ITree oldNode = oldNodes.get(i);
+                    ConcurrentHashMap<ITree, MatchingCandidate> tmp = candidateMap.get(oldNode);
+                    if (tmp != null) {
+                        for (int j = 0; j < newNodes.size(); j++) {
+                            ITree newNode = newNodes.get(j);
+                            MatchingCandidate mc = tmp.get(newNode);
+                            if (mc != null) {
+                                pendingPairs.add(i, j);
+                                similarityScores.set(i, j, mc.getValue());
+                            }
+                        }
                     }
                 }
-            }
-            AtomicBoolean changed = new AtomicBoolean(true);
-            AtomicIntegerArray foundMaxArray = new AtomicIntegerArray(oldNodes.size());
+                AtomicBoolean changed = new AtomicBoolean(true);
+                AtomicIntegerArray foundMaxArray = new AtomicIntegerArray(oldNodes.size());
 
-            new SimilarityMatrixHelper(aggregationFinished, firstAggregations, secondAggregations,
-                    currentResultMap, changed, oldNodes, newNodes, resultMap, stringSim,
-                    stringSimCache, onlyOneClassPair, similarityScores, initialList, candidateMap,
-                    foundMaxArray, similarityCache, similarityEntries, parents1, parents2,
-                    leavesMap1, leavesMap2, labelConfiguration, leafMatcher, directChildrenMap1,
-                    directChildrenMap2, root1, root2, weightSimilarity, weightPosition).call();
+                new SimilarityMatrixHelper(pendingPairs, firstAggregations, secondAggregations,
+                        currentResultMap, changed, oldNodes, newNodes, resultMap, stringSim,
+                        onlyOneClassPair, similarityScores, initialList, candidateMap,
+                        foundMaxArray, similarityCache, similarityEntries, parents1, parents2,
+                        leavesMap1, leavesMap2, labelConfiguration, leafMatcher, directChildrenMap1,
+                        directChildrenMap2, root1, root2, weightSimilarity, weightPosition,
+                        maxDenseCells).call();
 
-            resultList.addAll(initialList);
-            count.decrementAndGet();
-            stringSim.clear();
-            initialList.clear();
-            for (Entry<ITree, ConcurrentHashMap<ITree, MatchingCandidate>> entry : candidateMap
-                    .entrySet()) {
-                if (entry.getValue() != null) {
-                    entry.getValue().clear();
+                resultList.addAll(initialList);
+                initialList.clear();
+                for (Entry<ITree, ConcurrentHashMap<ITree, MatchingCandidate>> entry : candidateMap
+                        .entrySet()) {
+                    if (entry.getValue() != null) {
+                        entry.getValue().clear();
+                    }
                 }
+                candidateMap.clear();
+                firstAggregations = null;
+                secondAggregations = null;
+                return resultList;
+            } finally {
+                similarityScores.finish();
             }
-            candidateMap.clear();
-            firstAggregations = null;
-            secondAggregations = null;
-            similarityScores = null;
-            return resultList;
         } catch (Exception e) {
             e.printStackTrace();
             throw e;
@@ -30,7 +30,6 @@ import com.github.gumtreediff.matchers.heuristic.mtdiff.similarity.InnerNodeSimi
 import com.github.gumtreediff.matchers.heuristic.mtdiff.similarity.NGramCalculator;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -51,48 +50,19 @@ class SimilarityMatrixHelper {
 
     private static final int NODE_AGGREGATION_LABEL = -1000;
 
-    private static double[][] performTransformation(double[][] original) {
-        double[][] similarityValues = new double[original.length][];
-        for (int i = 0; i < original.length; i++) {
-            similarityValues[i] = Arrays.copyOf(original[i], original[i].length);
-        }
-
-        double min = Double.MAX_VALUE;
-        double max = Double.MIN_VALUE;
-
-        final int size = similarityValues.length;
-        for (int row = 0; row < size; ++row) {
-            for (int column = 0; column < similarityValues[row].length; ++column) {
-                final double value = similarityValues[row][column];
-
-                if (value < min) {
-                    min = value;
-                }
-
-                if (value > max) {
-                    max = value;
-                }
-            }
-        }
-
-        for (int row = 0; row < size; ++row) {
-            for (int column = 0; column < similarityValues[row].length; ++column) {
-                final double value = similarityValues[row][column];
-
-                if (max != min) {
-                    final double newSimilarityValue = (value - min) / (max - min) * 1000000;
-                    similarityValues[row][column] = newSimilarityValue;
-                } else {
-                    similarityValues[row][column] = 1000000;
-                }
+    private static int positionDifference(boolean byRank, int oldPosition, int newRank,
+            int newOffset) {
+        return Math.abs(oldPosition - (byRank ? newRank : newOffset));
+    }
 
-            }
+    private static double scale(double value, double min, double max) {
+        if (max != min) {
+            return (value - min) / (max - min) * 1000000;
+        } else {
+            return 1000000;
         }
-
-        return similarityValues;
     }
 
-    private boolean[][] aggregationFinished;
     private ConcurrentHashMap<ITree, ConcurrentHashMap<ITree, MatchingCandidate>> candidateMap;
     private AtomicBoolean changed;
     private ConcurrentHashMap<ITree, MatchingCandidate> currentResultMap;
@@ -106,9 +76,11 @@ class SimilarityMatrixHelper {
 
     private Map<ITree, ArrayList<ITree>> leavesMap2 = null;
     private LMatcher leafMatcher;
+    private long maxDenseCells;
     private ArrayList<ITree> newNodes;
     private ArrayList<ITree> oldNodes;
     private boolean onlyOneClassPair;
+    private PendingPairs pendingPairs;
 
     private Map<ITree, ITree> parents1;
     private Map<ITree, ITree> parents2;
@@ -118,19 +90,18 @@ class SimilarityMatrixHelper {
     private ITree[] secondAggregations;
     private ConcurrentHashMap<ITree, ConcurrentHashMap<ITree, Float>> similarityCache;
     private AtomicLong similarityEntries;
-    private double[][] similarityScores;
+    private DoubleMatrix similarityScores;
     private NGramCalculator stringSim;
-    private ConcurrentHashMap<String, Float> stringSimCache;
     private double weightPosition;
     private double weightSimilarity;
 
-    SimilarityMatrixHelper(boolean[][] aggregationFinished, ITree[] firstAggregations,
+    SimilarityMatrixHelper(PendingPairs pendingPairs, ITree[] firstAggregations,
             ITree[] secondAggregations,
             ConcurrentHashMap<ITree, MatchingCandidate> currentResultMap, AtomicBoolean changed,
             ArrayList<ITree> oldNodes, ArrayList<ITree> newNodes,
             IdentityHashMap<ITree, Mapping> resultMap, NGramCalculator stringSim,
-            ConcurrentHashMap<String, Float> stringSimCache, boolean onlyOneClassPair,
-            double[][] similarityScores, ConcurrentSkipListSet<MatchingCandidate> initialList,
+            boolean onlyOneClassPair, DoubleMatrix similarityScores,
+            ConcurrentSkipListSet<MatchingCandidate> initialList,
             ConcurrentHashMap<ITree, ConcurrentHashMap<ITree, MatchingCandidate>> candidateMap,
             AtomicIntegerArray foundMaxArray,
             ConcurrentHashMap<ITree, ConcurrentHashMap<ITree, Float>> similarityCache,
@@ -139,9 +110,9 @@ class SimilarityMatrixHelper {
             LabelConfiguration labelConfiguration, LMatcher leafMatcher,
             Map<ITree, ArrayList<ITree>> directChildrenMap1,
             Map<ITree, ArrayList<ITree>> directChildrenMap2, ITree root1, ITree root2,
-            double weightSimilarity, double weightPosition) {
+            double weightSimilarity, double weightPosition, long maxDenseCells) {
 
-        this.aggregationFinished = aggregationFinished;
+        this.pendingPairs = pendingPairs;
         this.firstAggregations = firstAggregations;
         this.secondAggregations = secondAggregations;
         this.currentResultMap = currentResultMap;
@@ -151,7 +122,6 @@ class SimilarityMatrixHelper {
         this.similarityEntries = similarityEntries;
         this.resultMap = resultMap;
         this.stringSim = stringSim;
-        this.stringSimCache = stringSimCache;
         this.onlyOneClassPair = onlyOneClassPair;
         this.similarityScores = similarityScores;
         this.initialList = initialList;
@@ -169,6 +139,7 @@ class SimilarityMatrixHelper {
         this.root2 = root2;
         this.weightSimilarity = weightSimilarity;
         this.weightPosition = weightPosition;
+        this.maxDenseCells = maxDenseCells;
     }
 
 
@@ -184,26 +155,24 @@ class SimilarityMatrixHelper {
                     int maxCount = 0;
                     int indexNew = -1;
                     for (int j = 0; j < newNodes.size(); j++) {
-                        if (!aggregationFinished[i][j]) {
-                            if (similarityScores[i][j] > maxValue) {
-                                maxValue = similarityScores[i][j];
+                        if (pendingPairs.contains(i, j)) {
+                            if (similarityScores.get(i, j) > maxValue) {
+                                maxValue = similarityScores.get(i, j);
                                 indexNew = j;
                                 maxCount = 1;
-                            } else if (Math.abs(similarityScores[i][j] - maxValue) < 0.00001) {
+                            } else if (Math.abs(similarityScores.get(i, j) - maxValue) < 0.00001) {
                                 maxCount++;
                                 indexNew = j;
                             }
                         }
                     }
                     if (maxCount == 1 && newNodes.size() > 1) {
-                        for (int j = 0; j < newNodes.size(); j++) {
-                            aggregationFinished[i][j] = true;
-                        }
+                        pendingPairs.removeRow(i);
                         boolean found = true;
                         for (int k = 0; k < oldNodes.size(); k++) {
-                            if (!aggregationFinished[k][indexNew]) {
+                            if (pendingPairs.contains(k, indexNew)) {
                                 if (i != k) {
-                                    if (similarityScores[k][indexNew] >= maxValue) {
+                                    if (similarityScores.get(k, indexNew) >= maxValue) {
                                         found = false;
                                         break;
                                     }
@@ -211,14 +180,12 @@ class SimilarityMatrixHelper {
                             }
                         }
                         if (found) {
-                            for (int k = 0; k < oldNodes.size(); k++) {
-                                aggregationFinished[k][indexNew] = true;
-                            }
+                            pendingPairs.removeColumn(indexNew);
                         }
                     } else if (maxCount > 1) {
                         for (int j = 0; j < newNodes.size(); j++) {
-                            if (similarityScores[i][j] < maxValue) {
-                                aggregationFinished[i][j] = true;
+                            if (similarityScores.get(i, j) < maxValue) {
+                                pendingPairs.remove(i, j);
                             }
                         }
                     }
@@ -228,19 +195,17 @@ class SimilarityMatrixHelper {
                     int maxCount = 0;
                     for (int i = 0; i < oldNodes.size(); i++) {
 
-                        if (!aggregationFinished[i][0]) {
-                            if (similarityScores[i][0] > maxValue) {
-                                maxValue = similarityScores[i][0];
+                        if (pendingPairs.contains(i, 0)) {
+                            if (similarityScores.get(i, 0) > maxValue) {
+                                maxValue = similarityScores.get(i, 0);
                                 maxCount = 1;
-                            } else if (Math.abs(similarityScores[i][0] - maxValue) < 0.00001) {
+                            } else if (Math.abs(similarityScores.get(i, 0) - maxValue) < 0.00001) {
                                 maxCount++;
                             }
                         }
                     }
                     if (maxCount == 1) {
-                        for (int i = 0; i < oldNodes.size(); i++) {
-                            aggregationFinished[i][0] = true;
-                        }
+                        pendingPairs.removeColumn(0);
                     }
 
                 }
@@ -249,11 +214,7 @@ class SimilarityMatrixHelper {
                         NodeAggregation tmp =
                                 createAggregation((ITree) firstAggregations[i], parents1);
                         if (tmp == null) {
-                            for (int j = 0; j < newNodes.size(); j++) {
-                                if (!aggregationFinished[i][j]) {
-                                    aggregationFinished[i][j] = true;
-                                }
-                            }
+                            pendingPairs.removeRow(i);
                         }
                         firstAggregations[i] = tmp;
                     }
@@ -264,127 +225,125 @@ class SimilarityMatrixHelper {
                         NodeAggregation tmp =
                                 createAggregation((ITree) secondAggregations[j], parents2);
                         if (tmp == null) {
-                            for (int i = 0; i < oldNodes.size(); i++) {
-                                if (!aggregationFinished[i][j]) {
-                                    aggregationFinished[i][j] = true;
-                                }
-                            }
+                            pendingPairs.removeColumn(j);
                         }
                         secondAggregations[j] = tmp;
                     }
                 }
                 for (int i = 0; i < oldNodes.size(); i++) {
-                    updateSimilarityRow(aggregationFinished, similarityScores, firstAggregations,
+                    updateSimilarityRow(pendingPairs, similarityScores, firstAggregations,
                             secondAggregations, currentResultMap, changed, i, newNodes,
-                            onlyOneClassPair, resultMap, stringSim, stringSimCache, similarityCache,
+                            onlyOneClassPair, resultMap, stringSim, similarityCache,
                             similarityEntries);
                 }
             }
-            DoubleMatrix matrix = DoubleMatrix.newMatrix(Math.max(oldNodes.size(), newNodes.size()),
-                    Math.max(oldNodes.size(), newNodes.size()));
-            int maxDiff = Integer.MIN_VALUE;
-            double[][] posDiff = new double[oldNodes.size()][newNodes.size()];
-            ArrayList<ITree> oldNodesSorted = new ArrayList<>(oldNodes);
-            Collections.sort(oldNodesSorted, new IdComparator());
-            HashMap<ITree, Integer> oldRankMap = new HashMap<>();
-            int rank = 0;
-            for (ITree node : oldNodesSorted) {
-                oldRankMap.put(node, rank);
-                rank++;
-            }
-            ArrayList<ITree> newNodesSorted = new ArrayList<>(newNodes);
-            Collections.sort(newNodesSorted, new IdComparator());
-            HashMap<ITree, Integer> newRankMap = new HashMap<>();
-            rank = 0;
-            for (ITree node : newNodesSorted) {
-                newRankMap.put(node, rank);
-                rank++;
-            }
-
-            for (int i = 0; i < oldNodes.size(); i++) {
-                for (int j = 0; j < newNodes.size(); j++) {
-                    if (root1.getId() > oldNodes.get(i).getId()) {
-                        int val = Math.abs(
-                                oldRankMap.get(oldNodes.get(i)) - newRankMap.get(newNodes.get(j)));
-                        posDiff[i][j] = val;
-                        if (val > maxDiff) {
-                            maxDiff = val;
-                        }
-                    } else {
-                        int val = Math.abs((oldNodes.get(i).getId() - root1.getId())
-                                - (newNodes.get(j).getId() - root2.getId()));
-                        posDiff[i][j] = val;
-                        if (val > maxDiff) {
-                            maxDiff = val;
-                        }
-                    }
-                }
-            }
+            // The square cost matrix is only filled for the actual pairs of nodes, the other cells
+            // keeping the default value. Large matrices are assigned greedily, and may then be sparse
+            // when there are much more nodes on a side. The Hungarian algorithm writes every cell of
+            // its matrix, which is therefore dense.
+            final boolean greedy = Math.abs(oldNodes.size() - newNodes.size()) > 2500
+                    || oldNodes.size() > 1000 || newNodes.size() > 1000;
+            final int size = Math.max(oldNodes.size(), newNodes.size());
             double defaultValue = 0;
             if (newNodes.size() > oldNodes.size()) {
-                defaultValue = matrix.numRows() * matrix.numCols() * weightSimilarity * 1000000
-                        + matrix.numRows() * matrix.numCols() * weightPosition * 1000000;
-            }
-            for (int i = 0; i < matrix.numRows(); i++) {
-                for (int j = 0; j < matrix.numCols(); j++) {
-
-                    matrix.set(i, j, defaultValue);
-                }
+                defaultValue = size * size * weightSimilarity * 1000000
+                        + size * size * weightPosition * 1000000;
             }
+            final DoubleMatrix matrix = greedy ? DoubleMatrix.newMatrix(size, size, defaultValue,
+                    (long) oldNodes.size() * newNodes.size(), maxDenseCells)
+                    : DoubleMatrix.newDenseMatrix(size, size, defaultValue);
             List<ITree> skipList = new LinkedList<>();
-
-            for (int i = 0; i < oldNodes.size(); i++) {
-                double maxsim = 0;
-                double minDiff = Integer.MAX_VALUE;
+            int[] res = null;
+            try {
+                ArrayList<ITree> oldNodesSorted = new ArrayList<>(oldNodes);
+                Collections.sort(oldNodesSorted, new IdComparator());
+                HashMap<ITree, Integer> oldRankMap = new HashMap<>();
+                int rank = 0;
+                for (ITree node : oldNodesSorted) {
+                    oldRankMap.put(node, rank);
+                    rank++;
+                }
+                ArrayList<ITree> newNodesSorted = new ArrayList<>(newNodes);
+                Collections.sort(newNodesSorted, new IdComparator());
+                HashMap<ITree, Integer> newRankMap = new HashMap<>();
+                rank = 0;
+                for (ITree node : newNodesSorted) {
+                    newRankMap.put(node, rank);
+                    rank++;
+                }
+                final boolean[] byRank = new boolean[oldNodes.size()];
+                final int[] oldPositions = new int[oldNodes.size()];
+                final int[] newRanks = new int[newNodes.size()];
+                final int[] newOffsets = new int[newNodes.size()];
+                for (int i = 0; i < oldNodes.size(); i++) {
+                    byRank[i] = root1.getId() > oldNodes.get(i).getId();
+                    oldPositions[i] = byRank[i] ? oldRankMap.get(oldNodes.get(i))
+                            : oldNodes.get(i).getId() - root1.getId();
+                }
                 for (int j = 0; j < newNodes.size(); j++) {
+                    newRanks[j] = newRankMap.get(newNodes.get(j));
+                    newOffsets[j] = newNodes.get(j).getId() - root2.getId();
+                }
 
-                    if (similarityScores[i][j] - maxsim > 0.001) {
-                        maxsim = similarityScores[i][j];
-                        minDiff = posDiff[i][j];
-                    } else if (similarityScores[i][j] - maxsim < 0.001) {
-                        if (minDiff > posDiff[i][j]) {
-                            minDiff = posDiff[i][j];
+                // The position differences and the similarities are both scaled to [0, 1000000],
+                // without copying them in dense matrices.
+                double minDiff = Double.MAX_VALUE;
+                double maxDiff = Double.MIN_VALUE;
+                double minSim = Double.MAX_VALUE;
+                double maxSim = Double.MIN_VALUE;
+                for (int i = 0; i < oldNodes.size(); i++) {
+                    for (int j = 0; j < newNodes.size(); j++) {
+                        final double diff = positionDifference(byRank[i], oldPositions[i], newRanks[j],
+                                newOffsets[j]);
+                        if (diff < minDiff) {
+                            minDiff = diff;
+                        }
+                        if (diff > maxDiff) {
+                            maxDiff = diff;
+                        }
+                        final double sim = similarityScores.get(i, j);
+                        if (sim < minSim) {
+                            minSim = sim;
+                        }
+                        if (sim > maxSim) {
+                            maxSim = sim;
                         }
                     }
                 }
-            }
-
-            double[][] similarityScoresTransformed = performTransformation(similarityScores);
-
-            double[][] posDiffTransformed = performTransformation(posDiff);
-            for (int i = 0; i < oldNodes.size(); i++) {
-                for (int j = 0; j < newNodes.size(); j++) {
-                    double val = ((1000000 - similarityScoresTransformed[i][j]) * weightSimilarity)
-                            + posDiffTransformed[i][j] * weightPosition;
-                    matrix.set(i, j, val);
-                }
-            }
-
-
-            int[] res = null;
-            if (Math.abs(oldNodes.size() - newNodes.size()) > 2500 || oldNodes.size() > 1000
-                    || newNodes.size() > 1000) {
-                res = new int[oldNodes.size()];
-                HashSet<Integer> alreadyDone = new HashSet<>();
                 for (int i = 0; i < oldNodes.size(); i++) {
-                    double min = Double.MAX_VALUE;
-                    int index = -1;
                     for (int j = 0; j < newNodes.size(); j++) {
-                        if (matrix.get(i, j) < min && !alreadyDone.contains(j)) {
-                            min = matrix.get(i, j);
-                            index = j;
-                            if (min == 0) {
-                                break;
+                        final double diff = positionDifference(byRank[i], oldPositions[i], newRanks[j],
+                                newOffsets[j]);
+                        double val = ((1000000 - scale(similarityScores.get(i, j), minSim, maxSim))
+                                * weightSimilarity) + scale(diff, minDiff, maxDiff) * weightPosition;
+                        matrix.set(i, j, val);
+                    }
+                }
+                if (greedy) {
+                    res = new int[oldNodes.size()];
+                    HashSet<Integer> alreadyDone = new HashSet<>();
+                    for (int i = 0; i < oldNodes.size(); i++) {
+                        double min = Double.MAX_VALUE;
+                        int index = -1;
+                        for (int j = 0; j < newNodes.size(); j++) {
+                            if (matrix.get(i, j) < min && !alreadyDone.contains(j)) {
+                                min = matrix.get(i, j);
+                                index = j;
+                                if (min == 0) {
+                                    break;
+                                }
                             }
                         }
+                        if (min != Double.MAX_VALUE) {
+                            res[i] = index;
+                            alreadyDone.add(index);
+                        }
                     }
-                    if (min != Double.MAX_VALUE) {
-                        res[i] = index;
-                        alreadyDone.add(index);
-                    }
+                } else {
+                    res = Hungarian.assign(matrix);
                 }
-            } else {
-                res = Hungarian.assign(matrix);
+            } finally {
+                matrix.finish();
             }
             initialList.clear();
 
@@ -438,8 +397,7 @@ class SimilarityMatrixHelper {
     /**
      * A similarity calculation based on a simplified ChangeDistiller matching.
      */
-    private float simpleSimilarity(final ITree tree1, final ITree tree2,
-            ConcurrentHashMap<String, Float> stringSimCache, boolean onlyOneClassPair,
+    private float simpleSimilarity(final ITree tree1, final ITree tree2, boolean onlyOneClassPair,
             IdentityHashMap<ITree, Mapping> resultMap, NGramCalculator stringSim,
             ConcurrentHashMap<ITree, MatchingCandidate> currentMatchings) {
 
@@ -554,19 +512,7 @@ class SimilarityMatrixHelper {
                         } else if (firstNode.getLabel().equals(secondNode.getLabel())) {
                             sim = 1.0f;
                         } else {
-
-                            if (stringSimCache.get(
-                                    firstNode.getLabel() + "@@" + secondNode.getLabel()) != null) {
-                                sim = stringSimCache
-                                        .get(firstNode.getLabel() + "@@" + secondNode.getLabel());
-                            } else if (stringSimCache.get(
-                                    secondNode.getLabel() + "@@" + firstNode.getLabel()) != null) {
-                                sim = stringSimCache
-                                        .get(secondNode.getLabel() + "@@" + firstNode.getLabel());
-                            } else {
-                                sim = stringSim.similarity(firstNode.getLabel(),
-                                        secondNode.getLabel());
-                            }
+                            sim = stringSim.similarity(firstNode.getLabel(), secondNode.getLabel());
                         }
                     } else if (tag == labelConfiguration.basicTypeLabel
                             || tag == labelConfiguration.qualifierLabel) {
@@ -619,7 +565,7 @@ class SimilarityMatrixHelper {
         }
         InnerNodeSimilarityCalculator nodeMatcher =
                 new InnerNodeSimilarityCalculator(labelConfiguration, leavesMap1, leavesMap2,
-                        directChildrenMap1, directChildrenMap2, currentResultSet);
+                        directChildrenMap1, directChildrenMap2, currentResultSet, stringSim);
         for (final ITree firstNode : unmatchedNodes1) {
             final Iterator<ITree> iterator = unmatchedNodes2.iterator();
             if (firstNode.getChildren() == null || firstNode.getChildren().size() == 0) {
@@ -650,18 +596,17 @@ class SimilarityMatrixHelper {
         return similarity / (float) nodeCount;
     }
 
-    private void updateSimilarityRow(boolean[][] aggregationFinished, double[][] similarityScores,
+    private void updateSimilarityRow(PendingPairs pendingPairs, DoubleMatrix similarityScores,
             ITree[] firstAggregations, ITree[] secondAggregations,
             ConcurrentHashMap<ITree, MatchingCandidate> currentResultMap, AtomicBoolean changed,
             int ipar, ArrayList<ITree> newNodes, boolean onlyOneClassPair,
             IdentityHashMap<ITree, Mapping> resultMap, NGramCalculator stringSim,
-            ConcurrentHashMap<String, Float> stringSimCache,
             ConcurrentHashMap<ITree, ConcurrentHashMap<ITree, Float>> similarityCache,
             AtomicLong similarityEntries) {
         {
 
             for (int j = 0; j < newNodes.size(); j++) {
-                if (!aggregationFinished[ipar][j]) {
+                if (pendingPairs.contains(ipar, j)) {
                     if (firstAggregations[ipar] != null
                             && firstAggregations[ipar].getType() != NodeAggregation.TAG) {
                         firstAggregations[ipar] = new NodeAggregation(firstAggregations[ipar]);
@@ -677,7 +622,7 @@ class SimilarityMatrixHelper {
                     if (firstAggregation == null || firstAggregation.getAssociatedTree() == null
                             || secondAggregation == null
                             || secondAggregation.getAssociatedTree() == null) {
-                        aggregationFinished[ipar][j] = true;
+                        pendingPairs.remove(ipar, j);
                     } else {
                         float similarity = Float.MIN_VALUE;
                         ConcurrentHashMap<ITree, Float> map =
@@ -701,7 +646,7 @@ class SimilarityMatrixHelper {
                                         similarity = simpleSimilarity(
                                                 firstAggregation.getAssociatedTree(),
                                                 secondAggregation.getAssociatedTree(),
-                                                stringSimCache, onlyOneClassPair, resultMap,
+                                                onlyOneClassPair, resultMap,
                                                 stringSim, currentResultMap);
                                         if (similarityEntries
                                                 .get() < MtDiffOptimizedMatcher.SIMILIARITY_CACHE_SIZE) {
@@ -715,7 +660,7 @@ class SimilarityMatrixHelper {
                                     similarity =
                                             simpleSimilarity(firstAggregation.getAssociatedTree(),
                                                     secondAggregation.getAssociatedTree(),
-                                                    stringSimCache, onlyOneClassPair, resultMap,
+                                                    onlyOneClassPair, resultMap,
                                                     stringSim, currentResultMap);
                                     if (similarityEntries
                                             .get() < MtDiffOptimizedMatcher.SIMILIARITY_CACHE_SIZE) {
@@ -727,13 +672,13 @@ class SimilarityMatrixHelper {
                                 }
                             } else {
                                 similarity = simpleSimilarity(firstAggregation.getAssociatedTree(),
-                                        secondAggregation.getAssociatedTree(), stringSimCache,
+                                        secondAggregation.getAssociatedTree(),
                                         onlyOneClassPair, resultMap, stringSim, currentResultMap);
                             }
 
                         }
                         changed.set(true);
-                        similarityScores[ipar][j] += similarity;
+                        similarityScores.set(ipar, j, similarityScores.get(ipar, j) + similarity);
                     }
 
                 }
@@ -39,7 +39,7 @@ public class InnerNodeSimilarityCalculator {
 
     private Set<Mapping> matchedNodes;
 
-    private NGramCalculator stringSim = new NGramCalculator(2, 10, 10);
+    private final NGramCalculator stringSim;
 
     private final int subtreeSizeThreshold = 4;
     private final float subtreeThresholdLarge = 0.6f;
@@ -61,6 +61,27 @@ public class InnerNodeSimilarityCalculator {
              Map<ITree, ArrayList<ITree>> leavesMap1, Map<ITree, ArrayList<ITree>> leavesMap2,
              Map<ITree, ArrayList<ITree>> directChildrenMap1,
              Map<ITree, ArrayList<ITree>> directChildrenMap2, Set<Mapping> matchedNodes) {
+        this(labelConfiguration, leavesMap1, leavesMap2, directChildrenMap1, directChildrenMap2, matchedNodes,
+                new NGramCalculator(2, 10, 10));
+    }
+
+    /**
+     * Instantiates a new inner node calculator comparing the string labels with the given calculator.
+     *
+     * @param labelConfiguration the label configuration
+     * @param leavesMap1         the leaves map1
+     * @param leavesMap2         the leaves map2
+     * @param directChildrenMap1 the direct children map1
+     * @param directChildrenMap2 the direct children map2
+     * @param matchedNodes       the matched nodes
+     * @param stringSim          the n-gram calculator
+     */
+    public InnerNodeSimilarityCalculator(LabelConfiguration labelConfiguration,
+             Map<ITree, ArrayList<ITree>> leavesMap1, Map<ITree, ArrayList<ITree>> leavesMap2,
+             Map<ITree, ArrayList<ITree>> directChildrenMap1,
+             Map<ITree, ArrayList<ITree>> directChildrenMap2, Set<Mapping> matchedNodes,
+             NGramCalculator stringSim) {
+        this.stringSim = stringSim;
         this.labelConfiguration = labelConfiguration;
         this.leavesMap1 = leavesMap1;
         this.leavesMap2 = leavesMap2;
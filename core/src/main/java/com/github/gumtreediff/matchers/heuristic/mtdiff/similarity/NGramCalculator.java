@@ -18,15 +18,42 @@
 */
 package com.github.gumtreediff.matchers.heuristic.mtdiff.similarity;
 
-import java.util.HashSet;
-import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
+import com.github.gumtreediff.utils.LabelTable;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Dice similarity of the sets of n-grams of two strings.
+ *
+ * The strings are interned in a {@link LabelTable}, and the n-grams of each interned string are
+ * computed once as a sorted array of distinct longs, so a similarity is a merge of two primitive
+ * arrays. Up to 4 characters, an n-gram is packed in its long, so the result is exactly the one
+ * of comparing substrings. Longer n-grams are hashed on 64 bits.
+ *
+ * The numbers of common n-grams are kept in a fixed size pair cache, a new pair replacing the
+ * one in its slot. The calculator is thread-safe and can be shared by the threads of a diff.
+ */
 public class NGramCalculator {
-    private ConcurrentHashMap<String, ConcurrentHashMap<String, Float>> cache;
+
+    private static final int MIN_CACHE_SIZE = 1 << 10;
+
+    private static final int MAX_CACHE_SIZE = 1 << 16;
+
+    private static final int ID_BITS = 24;
+
+    private static final int COMMON_BITS = 16;
+
+    private static final long COMMON_MASK = (1L << COMMON_BITS) - 1;
+
     private final int ngram;
 
-    private final int subMapSize;
+    private final boolean ownLabels;
+
+    private final int cacheSize;
+
+    private volatile State state;
 
     /**
      * Instantiates a new ngram calculator.
@@ -34,9 +61,7 @@ public class NGramCalculator {
      * @param ngram the ngram
      */
     public NGramCalculator(final int ngram) {
-        this.ngram = ngram;
-        cache = new ConcurrentHashMap<>(10000);
-        this.subMapSize = 3500200;
+        this(ngram, 10000, 3500200);
     }
 
     /**
@@ -47,31 +72,36 @@ public class NGramCalculator {
      * @param subMapSize the sub map size
      */
     public NGramCalculator(final int ngram, int cacheSize, int subMapSize) {
-        this.ngram = ngram;
-        cache = new ConcurrentHashMap<>(cacheSize);
-        this.subMapSize = subMapSize;
+        this(ngram, cacheSize, subMapSize, null);
     }
 
-    private HashSet<String> calculateNGrams(final String string, final int npar) {
-        final HashSet<String> result = new HashSet<String>();
-
-        for (int i = 0; i < string.length() - npar + 1; ++i) {
-            result.add(string.substring(i, i + npar));
-        }
+    /**
+     * Instantiates a new ngram calculator interning the strings in the given table.
+     *
+     * @param ngram      the n
+     * @param cacheSize  the cache size
+     * @param subMapSize the sub map size
+     * @param labels     the table shared with the other users of the labels, or null for a private one
+     */
+    public NGramCalculator(final int ngram, int cacheSize, int subMapSize, LabelTable labels) {
+        if (ngram < 1)
+            throw new IllegalArgumentException("The n-grams must have at least one character: " + ngram);
+        this.ngram = ngram;
+        this.ownLabels = labels == null;
+        long size = Long.highestOneBit(Math.max((long) cacheSize * subMapSize, 1L) * 2 - 1);
+        this.cacheSize = (int) Math.max(MIN_CACHE_SIZE, Math.min(MAX_CACHE_SIZE, size));
+        this.state = new State(ownLabels ? new LabelTable() : labels, ngram, this.cacheSize);
+    }
 
-        return result;
+    public LabelTable getLabels() {
+        return state.labels;
     }
 
     /**
      * Clear the cache.
      */
     public void clear() {
-        for (Entry<String, ConcurrentHashMap<String, Float>> e : cache.entrySet()) {
-            if (e.getValue() != null) {
-                e.getValue().clear();
-            }
-        }
-        cache.clear();
+        state = new State(ownLabels ? new LabelTable() : state.labels, ngram, cacheSize);
     }
 
     /**
@@ -87,30 +117,135 @@ public class NGramCalculator {
         } else if (first.equals("") || second.equals("")) {
             return 0.0f;
         } else {
-            ConcurrentHashMap<String, Float> map2 = cache.get(first);
-            if (map2 != null) {
-                Float result = map2.get(second);
-                if (result != null) {
-                    return result;
-                }
-            } else {
-                map2 = new ConcurrentHashMap<>();
-                cache.put(first, map2);
+            final int m = Math.min(ngram, Math.min(first.length(), second.length()));
+            final State state = this.state;
+            final int firstId = state.labels.intern(first);
+            final int secondId = state.labels.intern(second);
+            final long[] firstNGrams = state.profile(firstId, first, m, ngram);
+            final long[] secondNGrams = state.profile(secondId, second, m, ngram);
+
+            int common = state.cachedCommon(firstId, secondId);
+            if (common < 0) {
+                common = common(firstNGrams, secondNGrams);
+                state.cacheCommon(firstId, secondId, common);
             }
+            return 2.0f * common / (firstNGrams.length + secondNGrams.length);
+        }
+    }
 
-            final int m = Math.min(ngram, Math.min(first.length(), second.length()));
-            final HashSet<String> firstNGrams = calculateNGrams(first, m);
-            final HashSet<String> secondNGrams = calculateNGrams(second, m);
-            final int firstSize = firstNGrams.size();
-            final int secondSize = secondNGrams.size();
-            firstNGrams.retainAll(secondNGrams);
-
-            float result = 2.0f * firstNGrams.size() / (firstSize + secondSize);
-            if (map2.size() < subMapSize) {
-                map2.put(second, result);
+    /**
+     * @return the sorted distinct n-grams of length n of the string, which is at least n characters long.
+     */
+    static long[] calculateNGrams(final String string, final int n) {
+        long[] grams = new long[string.length() - n + 1];
+        if (n <= Long.SIZE / Character.SIZE) {
+            long mask = (n == Long.SIZE / Character.SIZE) ? -1L : (1L << (n * Character.SIZE)) - 1;
+            long gram = 0;
+            for (int i = 0; i < string.length(); i++) {
+                gram = ((gram << Character.SIZE) | string.charAt(i)) & mask;
+                if (i >= n - 1)
+                    grams[i - n + 1] = gram;
+            }
+        } else {
+            for (int i = 0; i < grams.length; i++) {
+                long h = 0;
+                for (int j = i; j < i + n; j++)
+                    h = (h + string.charAt(j)) * 0x9E3779B97F4A7C15L;
+                grams[i] = h ^ (h >>> 32);
+            }
+        }
+        Arrays.sort(grams);
+        int distinct = grams.length == 0 ? 0 : 1;
+        for (int i = 1; i < grams.length; i++)
+            if (grams[i] != grams[distinct - 1])
+                grams[distinct++] = grams[i];
+        return distinct == grams.length ? grams : Arrays.copyOf(grams, distinct);
+    }
+
+    private static int common(long[] first, long[] second) {
+        int common = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j])
+                i++;
+            else if (first[i] > second[j])
+                j++;
+            else {
+                common++;
+                i++;
+                j++;
             }
+        }
+        return common;
+    }
+
+    /**
+     * The interned labels with their n-grams and the pair cache, replaced as a whole when cleared.
+     */
+    private static final class State {
+
+        final LabelTable labels;
+
+        // The n-grams of length n of the label i are at i * ngram + n - 1.
+        volatile AtomicReferenceArray<long[]> profiles;
+
+        // Each slot packs the ids of two labels and their number of common n-grams, 0 being empty.
+        final AtomicLongArray pairs;
+
+        State(LabelTable labels, int ngram, int cacheSize) {
+            this.labels = labels;
+            this.profiles = new AtomicReferenceArray<>(64 * ngram);
+            this.pairs = new AtomicLongArray(cacheSize);
+        }
+
+        long[] profile(int id, String label, int n, int ngram) {
+            int index = id * ngram + n - 1;
+            AtomicReferenceArray<long[]> profiles = this.profiles;
+            if (index >= profiles.length())
+                profiles = growProfiles(index);
+            long[] profile = profiles.get(index);
+            if (profile == null) {
+                profile = calculateNGrams(label, n);
+                profiles.set(index, profile);
+            }
+            return profile;
+        }
+
+        private synchronized AtomicReferenceArray<long[]> growProfiles(int index) {
+            AtomicReferenceArray<long[]> old = profiles;
+            if (index < old.length())
+                return old;
+            AtomicReferenceArray<long[]> grown = new AtomicReferenceArray<>(Math.max(2 * old.length(), index + 1));
+            for (int i = 0; i < old.length(); i++)
+                grown.set(i, old.get(i));
+            profiles = grown;
+            return grown;
+        }
+
+        int cachedCommon(int firstId, int secondId) {
+            if (firstId >= 1 << ID_BITS || secondId >= 1 << ID_BITS)
+                return -1;
+            long entry = pairs.get(slot(firstId, secondId));
+            if (entry != 0 && (entry & ~COMMON_MASK) == key(firstId, secondId))
+                return (int) (entry & COMMON_MASK);
+            return -1;
+        }
+
+        void cacheCommon(int firstId, int secondId, int common) {
+            if (firstId >= 1 << ID_BITS || secondId >= 1 << ID_BITS || common > COMMON_MASK)
+                return;
+            pairs.set(slot(firstId, secondId), key(firstId, secondId) | common);
+        }
+
+        private int slot(int firstId, int secondId) {
+            int h = firstId * 0x9E3779B9 + secondId;
+            h ^= h >>> 16;
+            return h & (pairs.length() - 1);
+        }
 
-            return result;
+        private static long key(int firstId, int secondId) {
+            return ((long) firstId << (ID_BITS + COMMON_BITS)) | ((long) secondId << COMMON_BITS);
         }
     }
 }
@@ -16,6 +16,8 @@
 package com.github.gumtreediff.matchers.optimal.rted;
 
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
 
 import com.github.gumtreediff.tree.ITree;
 
@@ -23,6 +25,11 @@ import com.github.gumtreediff.tree.ITree;
 /**
  * Computes the tree edit distance using RTED algorithm.
  * 
+ * The quadratic matrices are single flat arrays taken from a {@link Workspace}, which can be
+ * reused by successive computations of the same thread to avoid reallocating them. Distances
+ * are stored as floats, which is exact as long as the costs and distances are integers smaller
+ * than 2^24 (as with the unit costs used by {@link RtedMatcher}).
+ * 
  * @author Mateusz Pawlik, Nikolaus Augsten
  */
 public class RtedAlgorithm {
@@ -68,32 +75,36 @@ public class RtedAlgorithm {
 	private int size2;
 	private LabelDictionary ld;
 
-	// arrays
-	private int[][] str; // strategy array
-	private double[][] delta; // an array for storing the distances between
-								// every pair of subtrees
-	private byte[][] deltaBit; // stores the distances difference of a form
+	// arrays, stored flat in row major order (see the class comment)
+	private byte[] str; // strategy array
+	private float[] delta; // an array for storing the distances between
+							// every pair of subtrees
+	private byte[] deltaBit; // stores the distances difference of a form
 								// delta(F,G)-delta(F°,G°) for every pair of
 								// subtrees, which is at most 1
-	private int[][] ij; // stores a forest preorder for given i and j
-	private long[][][] costV;
+	private int[] ij; // stores a forest preorder for given i and j
+	private long[] costV; // one row per depth of the left tree, see computeOptimalStrategy
 	private long[][] costW;
-	private double[][] t; // T array from Demaine's algorithm, stores
-							// delta(Fv,Gij), v on heavy path. Values are
-							// written to t.
-	private double[][] tCOPY; // tCOPY serves for writing values. It may happen
-								// that in single computePeriod values are
-								// overwritten before they are read because of
-								// the change of forest ordering.
-	private double[][] tTMP;
-	private double[][] s;
-	private double[] q;
+	private float[] t; // T array from Demaine's algorithm, stores
+						// delta(Fv,Gij), v on heavy path. Values are
+						// written to t.
+	private float[] tCOPY; // tCOPY serves for writing values. It may happen
+							// that in single computePeriod values are
+							// overwritten before they are read because of
+							// the change of forest ordering.
+	private float[] tTMP;
+	private float[] s;
+	private float[] q;
+	private int gCols; // row length of t, tCOPY, s and ij in the current spfH
+
+	private final Workspace ws;
 	
 	private double da, db, dc;
 	private int previousStrategy;
 	private int[] strStat = new int[5]; // statistics for strategies
 										// LEFT,RIGHT,HEAVY,SUM
 	private double costDel, costIns, costMatch; // edit operations costs
+	private BooleanSupplier cancelled = () -> false;
 
 	/**
 	 * The constructor. Parameters passed are the edit operation costs.
@@ -103,9 +114,40 @@ public class RtedAlgorithm {
 	 * @param matchCost
 	 */
 	public RtedAlgorithm(double delCost, double insCost, double matchCost) {
+		this(delCost, insCost, matchCost, new Workspace());
+	}
+
+	/**
+	 * The constructor. Parameters passed are the edit operation costs and
+	 * the workspace holding the matrices, which must not be used by another
+	 * computation at the same time.
+	 */
+	public RtedAlgorithm(double delCost, double insCost, double matchCost, Workspace ws) {
 		this.costDel = delCost;
 		this.costIns = insCost;
 		this.costMatch = matchCost;
+		this.ws = ws;
+	}
+
+	/**
+	 * Estimates the number of bytes of the matrices needed to compute the
+	 * distance and the mapping between two trees, the per node indexes
+	 * being neglected.
+	 * 
+	 * @param size1 size of the left tree
+	 * @param size2 size of the right tree
+	 * @param levels1 number of levels (greatest depth plus one) of the left tree
+	 */
+	public static long estimateMemory(int size1, int size2, int levels1) {
+		long cells = (long) size1 * size2;
+		long max = Math.max(size1, size2);
+		long mapping = (long) (size1 + 1) * (size2 + 1);
+		return 6 * cells // delta, deltaBit and str
+				+ 24L * levels1 * size2 // costV
+				+ 4 * max * max // ij
+				+ 4 * Math.max(max * max, mapping) + 4 * max * max // t and tCOPY
+				+ 4 * cells // s
+				+ 4 * mapping; // forest distances
 	}
 
 	/**
@@ -117,7 +159,6 @@ public class RtedAlgorithm {
 	 */
 	public double nonNormalizedTreeDist(ITree t1, ITree t2) {
 		init(t1, t2);
-		str = new int[size1][size2];
 		computeOptimalStrategy();
 		return computeDistUsingStrArray(it1, it2);
 	}
@@ -144,11 +185,11 @@ public class RtedAlgorithm {
 		it2 = new InfoTree(t2, ld);
 		size1 = it1.getSize();
 		size2 = it2.getSize();
-		ij = new int[Math.max(size1, size2)][Math.max(size1, size2)];
-		delta = new double[size1][size2];
-		deltaBit = new byte[size1][size2];
-		costV = new long[3][size1][size2];
+		int cells = size1 * size2;
+		delta = ws.delta = Workspace.grow(ws.delta, cells);
+		deltaBit = ws.deltaBit = Workspace.grow(ws.deltaBit, cells);
 		costW = new long[3][size2];
+		str = null;
 
 		// Calculate delta between every leaf in G (empty tree) and all the
 		// nodes in F.
@@ -166,21 +207,22 @@ public class RtedAlgorithm {
 				// This is an attempt for distances of single-node subtree and
 				// anything alse
 				// The differences between pairs of labels are stored
+				int xy = x * size2 + y;
 				if (labels1[x] == labels2[y]) {
-					deltaBit[x][y] = 0;
+					deltaBit[xy] = 0;
 				} else {
-					deltaBit[x][y] = 1; // if this set, the labels differ, cost
+					deltaBit[xy] = 1; // if this set, the labels differ, cost
 										// of relabeling is set to costMatch
 				}
 
-				if (sizes1[x] == 1 && sizes2[y] == 1) { // both nodes are leafs
-					delta[x][y] = 0;
-				} else {
+				// the workspace may hold values of a previous computation
+				delta[xy] = 0;
+				if (sizes1[x] != 1 || sizes2[y] != 1) {
 					if (sizes1[x] == 1) {
-						delta[x][y] = sizes2[y] - 1;
+						delta[xy] = sizes2[y] - 1;
 					}
 					if (sizes2[y] == 1) {
-						delta[x][y] = sizes1[x] - 1;
+						delta[xy] = sizes1[x] - 1;
 					}
 				}
 			}
@@ -189,6 +231,10 @@ public class RtedAlgorithm {
 
 	/**
 	 * A method for computing and storing the optimal strategy
+	 * 
+	 * The costs of a node v of the left tree are only accumulated while its
+	 * subtree is traversed, so costV holds one row per depth, the row of v
+	 * being cleared once v has been processed.
 	 */
 	public void computeOptimalStrategy() {
 		long heavyMin, revHeavyMin, leftMin, revLeftMin, rightMin, revRightMin;
@@ -213,11 +259,26 @@ public class RtedAlgorithm {
 		int[] post2parent1 = it1.info[POST2_PARENT];
 		int[] post2parent2 = it2.info[POST2_PARENT];
 
-		str = new int[size1][size2];
+		// parents come after their children in postorder
+		int[] depth1 = new int[size1];
+		int rows = 1;
+		for (int v = size1 - 1; v >= 0; v--) {
+			if (post2parent1[v] != -1) {
+				depth1[v] = depth1[post2parent1[v]] + 1;
+				rows = Math.max(rows, depth1[v] + 1);
+			}
+		}
+		int layer = rows * size2;
+		costV = ws.costV = Workspace.grow(ws.costV, 3 * layer);
+		Arrays.fill(costV, 0, 3 * layer, 0);
+		str = ws.str = Workspace.grow(ws.str, size1 * size2);
 
 		// v represents nodes of left input tree in postorder
 		// w represents nodes of right input tree in postorder
 		for (int v = 0; v < size1; v++) {
+			checkCancelled();
+			int rowV = depth1[v] * size2;
+			int rowParent1 = rowV - size2;
 			Arrays.fill(costW[0], 0);
 			Arrays.fill(costW[1], 0);
 			Arrays.fill(costW[2], 0);
@@ -228,28 +289,26 @@ public class RtedAlgorithm {
 					costW[RIGHT][w] = 0;
 					costW[HEAVY][w] = 0;
 				}
-				if (post2size1[v] == 1) {
-					// putTree zeros into arrays
-					costV[LEFT][v][w] = 0;
-					costV[RIGHT][v][w] = 0;
-					costV[HEAVY][v][w] = 0;
-				}
+				// the row of a leaf is still cleared
+				long costVLeft = costV[LEFT * layer + rowV + w];
+				long costVRight = costV[RIGHT * layer + rowV + w];
+				long costVHeavy = costV[HEAVY * layer + rowV + w];
 
 				// TODO: some things below may be putTree to outer loop
 
 				// count the minimum + get the strategy
 				heavyMin = (long) post2size1[v] * (long) post2descSum2[w]
-						+ costV[HEAVY][v][w];
+						+ costVHeavy;
 				revHeavyMin = (long) post2size2[w] * (long) post2descSum1[v]
 						+ costW[HEAVY][w];
 
 				leftMin = (long) post2size1[v] * (long) post2krSum2[w]
-						+ costV[LEFT][v][w];
+						+ costVLeft;
 				revLeftMin = (long) post2size2[w] * (long) post2krSum1[v]
 						+ costW[LEFT][w];
 
 				rightMin = (long) post2size1[v] * (long) post2revkrSum2[w]
-						+ costV[RIGHT][v][w];
+						+ costVRight;
 				revRightMin = (long) post2size2[w] * (long) post2revkrSum1[v]
 						+ costW[RIGHT][w];
 
@@ -266,16 +325,16 @@ public class RtedAlgorithm {
 				}
 
 				// store the strategy for the minimal cost
-				str[v][w] = strategy;
+				str[v * size2 + w] = (byte) strategy;
 
 				// fill the cost arrays
 				parent1 = post2parent1[v];
 				if (parent1 != -1) {
-					costV[HEAVY][parent1][w] += nodeTypeHeavy1[v] ? costV[HEAVY][v][w]
+					costV[HEAVY * layer + rowParent1 + w] += nodeTypeHeavy1[v] ? costVHeavy
 							: min;
-					costV[RIGHT][parent1][w] += nodeTypeRigt1[v] ? costV[RIGHT][v][w]
+					costV[RIGHT * layer + rowParent1 + w] += nodeTypeRigt1[v] ? costVRight
 							: min;
-					costV[LEFT][parent1][w] += nodeTypeLeft1[v] ? costV[LEFT][v][w]
+					costV[LEFT * layer + rowParent1 + w] += nodeTypeLeft1[v] ? costVLeft
 							: min;
 				}
 				parent2 = post2parent2[w];
@@ -288,6 +347,10 @@ public class RtedAlgorithm {
 							: min;
 				}
 			}
+			// free the row for the next node of the same depth
+			Arrays.fill(costV, LEFT * layer + rowV, LEFT * layer + rowV + size2, 0);
+			Arrays.fill(costV, RIGHT * layer + rowV, RIGHT * layer + rowV + size2, 0);
+			Arrays.fill(costV, HEAVY * layer + rowV, HEAVY * layer + rowV + size2, 0);
 		}
 	}
 
@@ -299,11 +362,12 @@ public class RtedAlgorithm {
 	 * @return
 	 */
 	private double computeDistUsingStrArray(InfoTree it1, InfoTree it2) {
+		checkCancelled();
 
 		int postorder1 = it1.getCurrentNode();
 		int postorder2 = it2.getCurrentNode();
 
-		int stepStrategy = str[postorder1][postorder2];
+		int stepStrategy = str[postorder1 * size2 + postorder2];
 
 		int tmpPostorder;
 
@@ -463,41 +527,42 @@ public class RtedAlgorithm {
 		}
 		treeEditDist(it1, it2, fPostorder, gPostorder);
 
-		return it1.isSwitched() ? delta[gPostorder][fPostorder]
-				+ deltaBit[gPostorder][fPostorder] * costMatch
-				: delta[fPostorder][gPostorder]
-						+ deltaBit[fPostorder][gPostorder] * costMatch;
+		int cell = cell(fPostorder, gPostorder, it1.isSwitched());
+		return delta[cell] + deltaBit[cell] * costMatch;
 	}
 
 	private void treeEditDist(InfoTree it1, InfoTree it2, int i, int j) {
 		int m = i - it1.info[POST2_LLD][i] + 2;
 		int n = j - it2.info[POST2_LLD][j] + 2;
-		double[][] forestdist = new double[m][n];
+		float[] forestdist = ws.forestdist = Workspace.grow(ws.forestdist, m * n);
 		int ioff = it1.info[POST2_LLD][i] - 1;
 		int joff = it2.info[POST2_LLD][j] - 1;
 		boolean switched = it1.isSwitched();
-		forestdist[0][0] = 0;
-		for (int i1 = 1; i1 <= i - ioff; i1++) forestdist[i1][0] = forestdist[i1 - 1][0] + 1;
-		for (int j1 = 1; j1 <= j - joff; j1++) forestdist[0][j1] = forestdist[0][j1 - 1] + 1;
+		forestdist[0] = 0;
+		for (int i1 = 1; i1 <= i - ioff; i1++) forestdist[i1 * n] = forestdist[(i1 - 1) * n] + 1;
+		for (int j1 = 1; j1 <= j - joff; j1++) forestdist[j1] = forestdist[j1 - 1] + 1;
 		for (int i1 = 1; i1 <= i - ioff; i1++) {
+			int row = i1 * n;
+			int previousRow = row - n;
 			for (int j1 = 1; j1 <= j - joff; j1++) {
 				if ((it1.info[POST2_LLD][i1 + ioff] == it1.info[POST2_LLD][i]) && (it2.info[POST2_LLD][j1 + joff] == it2.info[POST2_LLD][j])) {
 					double u = 0;
 					if (it1.info[POST2_LABEL][i1 + ioff] != it2.info[POST2_LABEL][j1 + joff]) u = costMatch;
-					da = forestdist[i1 - 1][j1] + costDel;
-					db = forestdist[i1][j1 - 1] + costIns;
-					dc = forestdist[i1 - 1][j1 - 1] + u;
-					forestdist[i1][j1] = (da < db) ? ((da < dc) ? da : dc) : ((db < dc) ? db : dc);
-					setDeltaValue(i1 + ioff, j1 + joff, forestdist[i1 - 1][j1 - 1], switched);
-					setDeltaBitValue(i1 + ioff, j1 + joff, (byte) ((forestdist[i1][j1] - forestdist[i1 - 1][j1 - 1] > 0) ? 1 : 0), switched);
+					da = forestdist[previousRow + j1] + costDel;
+					db = forestdist[row + j1 - 1] + costIns;
+					dc = forestdist[previousRow + j1 - 1] + u;
+					forestdist[row + j1] = (float) ((da < db) ? ((da < dc) ? da : dc) : ((db < dc) ? db : dc));
+					int cell = cell(i1 + ioff, j1 + joff, switched);
+					delta[cell] = forestdist[previousRow + j1 - 1];
+					deltaBit[cell] = (byte) ((forestdist[row + j1] - forestdist[previousRow + j1 - 1] > 0) ? 1 : 0);
 				} else {
-					double u = 0;
-					u = switched ? deltaBit[j1 + joff][i1 + ioff] * costMatch : deltaBit[i1 + ioff][j1 + joff] * costMatch;
-					da = forestdist[i1 - 1][j1] + costDel;
-					db = forestdist[i1][j1 - 1] + costIns;
-					dc = forestdist[it1.info[POST2_LLD][i1 + ioff] - 1 - ioff][it2.info[POST2_LLD][j1 + joff]
-							- 1 - joff] + (switched ? delta[j1 + joff][i1 + ioff] : delta[i1 + ioff][j1 + joff]) + u;
-					forestdist[i1][j1] = (da < db) ? ((da < dc) ? da : dc) : ((db < dc) ? db : dc);
+					int cell = cell(i1 + ioff, j1 + joff, switched);
+					double u = deltaBit[cell] * costMatch;
+					da = forestdist[previousRow + j1] + costDel;
+					db = forestdist[row + j1 - 1] + costIns;
+					dc = forestdist[(it1.info[POST2_LLD][i1 + ioff] - 1 - ioff) * n + it2.info[POST2_LLD][j1 + joff]
+							- 1 - joff] + delta[cell] + u;
+					forestdist[row + j1] = (float) ((da < db) ? ((da < dc) ? da : dc) : ((db < dc) ? db : dc));
 				}
 			}
 		}
@@ -521,26 +586,24 @@ public class RtedAlgorithm {
 		if (minRKR > -1) for (int j = minRKR; rkr[j] < gReversedPostorder; j++) treeEditDistRev(it1, it2, fReversedPostorder, rkr[j]);
 		treeEditDistRev(it1, it2, fReversedPostorder, gReversedPostorder);
 
-		return it1.isSwitched() ? delta[it2.getCurrentNode()][it1
-				.getCurrentNode()]
-				+ deltaBit[it2.getCurrentNode()][it1.getCurrentNode()]
-				* costMatch : delta[it1.getCurrentNode()][it2.getCurrentNode()]
-				+ deltaBit[it1.getCurrentNode()][it2.getCurrentNode()]
-				* costMatch;
+		int cell = cell(it1.getCurrentNode(), it2.getCurrentNode(), it1.isSwitched());
+		return delta[cell] + deltaBit[cell] * costMatch;
 	}
 
 	private void treeEditDistRev(InfoTree it1, InfoTree it2, int i, int j) {
 		int m = i - it1.info[RPOST2_RLD][i] + 2;
 		int n = j - it2.info[RPOST2_RLD][j] + 2;
-		double[][] forestdist = new double[m][n];
+		float[] forestdist = ws.forestdist = Workspace.grow(ws.forestdist, m * n);
 		int ioff = it1.info[RPOST2_RLD][i] - 1;
 		int joff = it2.info[RPOST2_RLD][j] - 1;
 		boolean switched = it1.isSwitched();
-		forestdist[0][0] = 0;
+		forestdist[0] = 0;
 		
-		for (int i1 = 1; i1 <= i - ioff; i1++) forestdist[i1][0] = forestdist[i1 - 1][0] + 1;
-		for (int j1 = 1; j1 <= j - joff; j1++) forestdist[0][j1] = forestdist[0][j1 - 1] + 1;
+		for (int i1 = 1; i1 <= i - ioff; i1++) forestdist[i1 * n] = forestdist[(i1 - 1) * n] + 1;
+		for (int j1 = 1; j1 <= j - joff; j1++) forestdist[j1] = forestdist[j1 - 1] + 1;
 		for (int i1 = 1; i1 <= i - ioff; i1++) {
+			int row = i1 * n;
+			int previousRow = row - n;
 			for (int j1 = 1; j1 <= j - joff; j1++) {
 				if ((it1.info[RPOST2_RLD][i1 + ioff] == it1.info[RPOST2_RLD][i])
 						&& (it2.info[RPOST2_RLD][j1 + joff] == it2.info[RPOST2_RLD][j])) {
@@ -548,34 +611,26 @@ public class RtedAlgorithm {
 					if (it1.info[POST2_LABEL][it1.info[RPOST2_POST][i1 + ioff]] != it2.info[POST2_LABEL][it2.info[RPOST2_POST][j1 + joff]])
 						u = costMatch;
 					
-					da = forestdist[i1 - 1][j1] + costDel;
-					db = forestdist[i1][j1 - 1] + costIns;
-					dc = forestdist[i1 - 1][j1 - 1] + u;
-					forestdist[i1][j1] = (da < db) ? ((da < dc) ? da : dc) : ((db < dc) ? db : dc);
-
-					setDeltaValue(it1.info[RPOST2_POST][i1 + ioff], it2.info[RPOST2_POST][j1 + joff], forestdist[i1 - 1][j1 - 1], switched);
-					setDeltaBitValue(it1.info[RPOST2_POST][i1 + ioff], it2.info[RPOST2_POST][j1 + joff],
-							(byte) ((forestdist[i1][j1] - forestdist[i1 - 1][j1 - 1] > 0) ? 1 : 0), switched);
+					da = forestdist[previousRow + j1] + costDel;
+					db = forestdist[row + j1 - 1] + costIns;
+					dc = forestdist[previousRow + j1 - 1] + u;
+					forestdist[row + j1] = (float) ((da < db) ? ((da < dc) ? da : dc) : ((db < dc) ? db : dc));
+
+					int cell = cell(it1.info[RPOST2_POST][i1 + ioff], it2.info[RPOST2_POST][j1 + joff], switched);
+					delta[cell] = forestdist[previousRow + j1 - 1];
+					deltaBit[cell] = (byte) ((forestdist[row + j1] - forestdist[previousRow + j1 - 1] > 0) ? 1 : 0);
 				} else {
-					double u = 0;
-					u = switched ? deltaBit[it2.info[RPOST2_POST][j1 + joff]][it1.info[RPOST2_POST][i1
-							+ ioff]]
-							* costMatch
-							: deltaBit[it1.info[RPOST2_POST][i1 + ioff]][it2.info[RPOST2_POST][j1
-									+ joff]]
-									* costMatch;
-
-					da = forestdist[i1 - 1][j1] + costDel;
-					db = forestdist[i1][j1 - 1] + costIns;
-					dc = forestdist[it1.info[RPOST2_RLD][i1 + ioff] - 1 - ioff][it2.info[RPOST2_RLD][j1
+					int cell = cell(it1.info[RPOST2_POST][i1 + ioff], it2.info[RPOST2_POST][j1 + joff], switched);
+					double u = deltaBit[cell] * costMatch;
+
+					da = forestdist[previousRow + j1] + costDel;
+					db = forestdist[row + j1 - 1] + costIns;
+					dc = forestdist[(it1.info[RPOST2_RLD][i1 + ioff] - 1 - ioff) * n + it2.info[RPOST2_RLD][j1
 							+ joff]
 							- 1 - joff]
-							+ (switched ? delta[it2.info[RPOST2_POST][j1 + joff]][it1.info[RPOST2_POST][i1
-									+ ioff]]
-									: delta[it1.info[RPOST2_POST][i1 + ioff]][it2.info[RPOST2_POST][j1
-											+ joff]]) + u;
-					forestdist[i1][j1] = (da < db) ? ((da < dc) ? da : dc)
-							: ((db < dc) ? db : dc);
+							+ delta[cell] + u;
+					forestdist[row + j1] = (float) ((da < db) ? ((da < dc) ? da : dc)
+							: ((db < dc) ? db : dc));
 				}
 			}
 		}
@@ -605,11 +660,17 @@ public class RtedAlgorithm {
 		int jOfi;
 
 		// Initialize arrays to their maximal possible size for current pairs of
-		// subtrees.
-		t = new double[gSize][gSize];
-		tCOPY = new double[gSize][gSize];
-		s = new double[fSize][gSize];
-		q = new double[fSize];
+		// subtrees, cleared as if they were new.
+		gCols = gSize;
+		t = ws.t = Workspace.grow(ws.t, gSize * gSize);
+		tCOPY = ws.tCOPY = Workspace.grow(ws.tCOPY, gSize * gSize);
+		s = ws.s = Workspace.grow(ws.s, fSize * gSize);
+		q = ws.q = Workspace.grow(ws.q, fSize);
+		ij = ws.ij = Workspace.grow(ws.ij, gSize * gSize);
+		Arrays.fill(t, 0, gSize * gSize, 0);
+		Arrays.fill(tCOPY, 0, gSize * gSize, 0);
+		Arrays.fill(s, 0, fSize * gSize, 0);
+		Arrays.fill(q, 0, fSize, 0);
 
 		int vp = -1;
 		int nextVp = -1;
@@ -623,7 +684,7 @@ public class RtedAlgorithm {
 						jOfi = jOfI(it2, i, gSize, gRevPre, gPre, strategy,
 								gTreeSize);
 						for (int j = jOfi; j >= 0; j--) {
-							t[i][j] = (gSize - (i + j)) * costIns;
+							t[i * gSize + j] = (float) ((gSize - (i + j)) * costIns);
 						}
 					}
 					previousStrategy = strategy;
@@ -635,7 +696,7 @@ public class RtedAlgorithm {
 						jOfi = jOfI(it2, i, gSize, gRevPre, gPre, LEFT,
 								gTreeSize);
 						for (int j = jOfi; j >= 0; j--) {
-							t[i][j] = (gSize - (i + j)) * costIns;
+							t[i * gSize + j] = (float) ((gSize - (i + j)) * costIns);
 						}
 					}
 					previousStrategy = LEFT;
@@ -646,7 +707,7 @@ public class RtedAlgorithm {
 						jOfi = jOfI(it2, i, gSize, gRevPre, gPre, RIGHT,
 								gTreeSize);
 						for (int j = jOfi; j >= 0; j--) {
-							t[i][j] = (gSize - (i + j)) * costIns;
+							t[i * gSize + j] = (float) ((gSize - (i + j)) * costIns);
 						}
 					}
 					previousStrategy = RIGHT;
@@ -655,7 +716,7 @@ public class RtedAlgorithm {
 			}
 			nextVp = vp;
 		}
-		return t[0][0];
+		return t[0];
 	}
 
 	/**
@@ -718,7 +779,7 @@ public class RtedAlgorithm {
 			if (gSize == 1) {
 				setDeltaValue(it1.info[PRE2_POST][vpPreorder], it2.info[PRE2_POST][gPreorder], vpSize - 1, switched);
 			} else {
-				setDeltaValue(it1.info[PRE2_POST][vpPreorder], it2.info[PRE2_POST][gPreorder], t[1][0], switched);
+				setDeltaValue(it1.info[PRE2_POST][vpPreorder], it2.info[PRE2_POST][gPreorder], t[gCols], switched);
 			}
 		}
 
@@ -779,8 +840,8 @@ public class RtedAlgorithm {
 
 					// delete from left
 
-					gijForestPreorder = aStrategy == LEFT ? ij[i][j]
-							: it2.info[POST2_PRE][gTreeSize - 1 - ij[i][j]];
+					gijForestPreorder = aStrategy == LEFT ? ij[i * gCols + j]
+							: it2.info[POST2_PRE][gTreeSize - 1 - ij[i * gCols + j]];
 
 					if (kPrime == 1) {
 						// if the direction changed from the previous period to
@@ -803,20 +864,20 @@ public class RtedAlgorithm {
 										- gRevPreorder; // minus rev preorder of
 														// G
 							}
-							deleteFromLeft += tCOPY[previousI][i + j
+							deleteFromLeft += tCOPY[previousI * gCols + i + j
 									- previousI];
 						} else {
-							deleteFromLeft += tCOPY[i][j];
+							deleteFromLeft += tCOPY[i * gCols + j];
 						}
 
 					} else {
-						deleteFromLeft += s[kPrime - 1 - 1][j];
+						deleteFromLeft += s[(kPrime - 1 - 1) * gCols + j];
 					}
 
 					// match
 
-					match += switched ? delta[it2.info[PRE2_POST][gijForestPreorder]][it1.info[PRE2_POST][fForestPreorderKPrime]]
-							: delta[it1.info[PRE2_POST][fForestPreorderKPrime]][it2.info[PRE2_POST][gijForestPreorder]];
+					match += delta[cell(it1.info[PRE2_POST][fForestPreorderKPrime], it2.info[PRE2_POST][gijForestPreorder],
+							switched)];
 
 					jPrime = j
 							+ it2.info[POST2_SIZE][it2.info[PRE2_POST][gijForestPreorder]];
@@ -833,19 +894,19 @@ public class RtedAlgorithm {
 					// only once
 					if (j != jOfI) {
 						// delete from right
-						deleteFromRight += s[kPrime - 1][j + 1];
+						deleteFromRight += s[(kPrime - 1) * gCols + j + 1];
 						if (kBis == 0) {
 							if (aStrategy != previousStrategy) {
-								previousI = aStrategy == LEFT ? ij[i][jPrime]
-										- gPreorder : ij[i][jPrime]
+								previousI = aStrategy == LEFT ? ij[i * gCols + jPrime]
+										- gPreorder : ij[i * gCols + jPrime]
 										- gRevPreorder;
-								match += tCOPY[previousI][i + jPrime
+								match += tCOPY[previousI * gCols + i + jPrime
 										- previousI];
 							} else {
-								match += tCOPY[i][jPrime];
+								match += tCOPY[i * gCols + jPrime];
 							}
 						} else if (kBis > 0) {
-							match += s[kBis - 1][jPrime];
+							match += s[(kBis - 1) * gCols + jPrime];
 						} else {
 							match += gSize - (i + jPrime);
 						}
@@ -853,10 +914,9 @@ public class RtedAlgorithm {
 					}
 
 					// fill S table
-					s[kPrime - 1][j] = (deleteFromLeft < deleteFromRight) ? ((deleteFromLeft < match) ? deleteFromLeft
-							: match)
-							: ((deleteFromRight < match) ? deleteFromRight
-									: match);
+					s[(kPrime - 1) * gCols + j] = (float) ((deleteFromLeft < deleteFromRight)
+							? ((deleteFromLeft < match) ? deleteFromLeft : match)
+							: ((deleteFromRight < match) ? deleteFromRight : match));
 
 					// reset the minimum arguments' values
 					deleteFromRight = costIns;
@@ -881,8 +941,8 @@ public class RtedAlgorithm {
 			// compute table T => add row to T
 			// we have to copy the values, otherwise they may be overwritten t
 			// early
-			t[i] = (realStrategy == BOTH && aStrategy == LEFT) ? s[k - 1 - 1]
-					.clone() : s[k - 1].clone();
+			System.arraycopy(s, ((realStrategy == BOTH && aStrategy == LEFT) ? k - 1 - 1 : k - 1) * gCols,
+					t, i * gCols, gCols);
 
 			if (i > 0) {
 				// compute table Q
@@ -891,7 +951,7 @@ public class RtedAlgorithm {
 				if (jOfIminus1 <= jOfI) {
 					for (int x = 0; x < k; x++) { // copy whole column |
 													// qTable.length=k
-						q[x] = s[x][jOfIminus1];
+						q[x] = s[x * gCols + jOfIminus1];
 					}
 				}
 
@@ -907,23 +967,23 @@ public class RtedAlgorithm {
 					// value has to be taken from previous T table.
 					if (k - 1 - 1 < 0) {
 						if (aStrategy != previousStrategy) {
-							previousI = aStrategy == LEFT ? ij[i][jOfIminus1]
-									- gPreorder : ij[i][jOfIminus1]
+							previousI = aStrategy == LEFT ? ij[i * gCols + jOfIminus1]
+									- gPreorder : ij[i * gCols + jOfIminus1]
 									- gRevPreorder;
 							setDeltaValue(
 									it1.info[PRE2_POST][vpPreorder],
 									it2.info[PRE2_POST][gijOfIMinus1Preorder],
-									tCOPY[previousI][i + jOfIminus1 - previousI],
+									tCOPY[previousI * gCols + i + jOfIminus1 - previousI],
 									switched);
 						} else {
 							setDeltaValue(it1.info[PRE2_POST][vpPreorder],
 									it2.info[PRE2_POST][gijOfIMinus1Preorder],
-									tCOPY[i][jOfIminus1], switched);
+									tCOPY[i * gCols + jOfIminus1], switched);
 						}
 					} else {
 						setDeltaValue(it1.info[PRE2_POST][vpPreorder],
 								it2.info[PRE2_POST][gijOfIMinus1Preorder],
-								s[k - 1 - 1][jOfIminus1], switched);
+								s[(k - 1 - 1) * gCols + jOfIminus1], switched);
 					}
 				}
 			}
@@ -953,32 +1013,28 @@ public class RtedAlgorithm {
 
 		if (aStrategy == LEFT) {
 			for (int x = 0; x < subtreeSize; x++) {
-				ij[0][x] = x + subtreePreorder;
+				ij[x] = x + subtreePreorder;
 			}
 			for (int x = 1; x < subtreeSize; x++) {
 				change = post2pre[(treeSize - 1 - (x - 1 + subtreeRevPreorder))];
+				int row = x * subtreeSize;
 				for (int z = 0; z < subtreeSize; z++) {
-					if (ij[x - 1][z] >= change) {
-						ij[x][z] = ij[x - 1][z] + 1;
-					} else {
-						ij[x][z] = ij[x - 1][z];
-					}
+					int previous = ij[row - subtreeSize + z];
+					ij[row + z] = previous >= change ? previous + 1 : previous;
 				}
 			}
 		} else { // if (aStrategy == RIGHT) {
 			for (int x = 0; x < subtreeSize; x++) {
-				ij[0][x] = x + subtreeRevPreorder;
+				ij[x] = x + subtreeRevPreorder;
 			}
 			for (int x = 1; x < subtreeSize; x++) {
 				change = treeSize
 						- 1
 						- rpost2post[(treeSize - 1 - (x - 1 + subtreePreorder))];
+				int row = x * subtreeSize;
 				for (int z = 0; z < subtreeSize; z++) {
-					if (ij[x - 1][z] >= change) {
-						ij[x][z] = ij[x - 1][z] + 1;
-					} else {
-						ij[x][z] = ij[x - 1][z];
-					}
+					int previous = ij[row - subtreeSize + z];
+					ij[row + z] = previous >= change ? previous + 1 : previous;
 				}
 			}
 		}
@@ -1006,20 +1062,30 @@ public class RtedAlgorithm {
 								- (aSubtreePre + aI)]];
 	}
 
+	/**
+	 * Returns the index in delta, deltaBit and str of the pair of nodes a, b
+	 * of it1 and it2, which are swapped if the trees are switched.
+	 */
+	private int cell(int a, int b, boolean switched) {
+		return switched ? b * size2 + a : a * size2 + b;
+	}
+
 	private void setDeltaValue(int a, int b, double value, boolean switched) {
-		if (switched) {
-			delta[b][a] = value;
-		} else {
-			delta[a][b] = value;
-		}
+		delta[cell(a, b, switched)] = (float) value;
 	}
 
-	private void setDeltaBitValue(int a, int b, byte value, boolean switched) {
-		if (switched) {
-			deltaBit[b][a] = value;
-		} else {
-			deltaBit[a][b] = value;
-		}
+	/**
+	 * Sets the condition checked while computing the strategy and the
+	 * distance, a {@link CancellationException} being thrown as soon as it
+	 * holds.
+	 */
+	public void setCancellation(BooleanSupplier cancelled) {
+		this.cancelled = cancelled;
+	}
+
+	private void checkCancelled() {
+		if (cancelled.getAsBoolean())
+			throw new CancellationException("RTED computation cancelled");
 	}
 
 	public void setCustomCosts(double costDel, double costIns, double costMatch) {
@@ -1029,22 +1095,25 @@ public class RtedAlgorithm {
 	}
 
 	public void setCustomStrategy(int[][] strategyArray) {
-		str = strategyArray;
+		str = ws.str = Workspace.grow(ws.str, size1 * size2);
+		for (int i = 0; i < size1; i++) {
+			for (int j = 0; j < size2; j++) {
+				str[i * size2 + j] = (byte) strategyArray[i][j];
+			}
+		}
 	}
 
 	public void setCustomStrategy(int strategy, boolean ifSwitch) {
-		str = new int[size1][size2];
+		str = ws.str = Workspace.grow(ws.str, size1 * size2);
 		if (ifSwitch) {
 			for (int i = 0; i < size1; i++) {
 				for (int j = 0; j < size2; j++) {
-					str[i][j] = it1.info[POST2_SIZE][i] >= it2.info[POST2_SIZE][j] ? strategy
-							: strategy + 4;
+					str[i * size2 + j] = (byte) (it1.info[POST2_SIZE][i] >= it2.info[POST2_SIZE][j] ? strategy
+							: strategy + 4);
 				}
 			}
 		} else {
-			for (int i = 0; i < size1; i++) {
-				Arrays.fill(str[i], strategy);
-			}
+			Arrays.fill(str, 0, size1 * size2, (byte) strategy);
 		}
 	}
 
@@ -1063,27 +1132,32 @@ public class RtedAlgorithm {
 	 */
 	public ArrayDeque<int[]> computeEditMapping() {
 
-		// initialize tree and forest distance arrays
-		double[][] treedist = new double[size1 + 1][size2 + 1];
-		double[][] forestdist = new double[size1 + 1][size2 + 1];
+		// initialize tree and forest distance arrays, reusing the buffers
+		// of T and of the forest distances, which are no longer needed
+		int cols = size2 + 1;
+		int cells = (size1 + 1) * cols;
+		float[] treedist = ws.t = Workspace.grow(ws.t, cells);
+		float[] forestdist = ws.forestdist = Workspace.grow(ws.forestdist, cells);
+		Arrays.fill(treedist, 0, cells, 0);
 		
 		boolean rootNodePair = true;
 
 		// treedist was already computed - the result is in delta and deltaBit
 		for (int i = 0; i < size1; i++) {
-			treedist[i][0] = i;
+			treedist[i * cols] = i;
 		}
 		for (int j = 0; j < size2; j++) {
-			treedist[0][j] = j;
+			treedist[j] = j;
 		}
 		for (int i = 1; i <= size1; i++) {
 			for (int j = 1; j <= size2; j++) {
-				treedist[i][j] = delta[i - 1][j - 1] + deltaBit[i - 1][j - 1];
+				int cell = (i - 1) * size2 + j - 1;
+				treedist[i * cols + j] = delta[cell] + deltaBit[cell];
 			}
 		}
 		
 		// forestdist for input trees has to be computed
-		forestDist(it1, it2, size1, size2, treedist, forestdist);
+		forestDist(it1, it2, size1, size2, treedist, forestdist, cols);
 
 		// empty edit mapping
 		ArrayDeque<int[]> editMapping = new ArrayDeque<>();
@@ -1103,7 +1177,7 @@ public class RtedAlgorithm {
 
 			// compute forest distance matrix
 			if (!rootNodePair) {
-				forestDist(it1, it2, lastRow, lastCol, treedist, forestdist);
+				forestDist(it1, it2, lastRow, lastCol, treedist, forestdist, cols);
 			}
 			rootNodePair = false;
 
@@ -1114,12 +1188,12 @@ public class RtedAlgorithm {
 			int col = lastCol;
 			while ((row > firstRow) || (col > firstCol)) {
 				if ((row > firstRow)
-						&& (forestdist[row - 1][col] + costDel == forestdist[row][col])) {
+						&& (forestdist[(row - 1) * cols + col] + costDel == forestdist[row * cols + col])) {
 					// node with postorderID row is deleted from ted1
 					editMapping.addFirst(new int[] { row, 0 });
 					row--;
 				} else if ((col > firstCol)
-						&& (forestdist[row][col - 1] + costIns == forestdist[row][col])) {
+						&& (forestdist[row * cols + col - 1] + costIns == forestdist[row * cols + col])) {
 					// node with postorderID col is inserted into ted2
 					editMapping.addFirst(new int[] { 0, col });
 					col--;
@@ -1148,12 +1222,17 @@ public class RtedAlgorithm {
 		return editMapping;
 	}
 	
-	private void forestDist(InfoTree ted1, InfoTree ted2, int i, int j, double[][] treedist, double[][] forestdist) {
-		forestdist[ted1.getInfo(POST2_LLD, i - 1) + 1 - 1][ted2.getInfo(POST2_LLD, j - 1) + 1 - 1] = 0;
-		for (int di = ted1.getInfo(POST2_LLD, i - 1) + 1; di <= i; di++) {
-			forestdist[di][ted2.getInfo(POST2_LLD, j - 1) + 1 - 1] = forestdist[di - 1][ted2.getInfo(POST2_LLD, j - 1) + 1 - 1] + costDel;
-			for (int dj = ted2.getInfo(POST2_LLD, j - 1) + 1; dj <= j; dj++) {
-				forestdist[ted1.getInfo(POST2_LLD, i - 1) + 1 - 1][dj] = forestdist[ted1.getInfo(POST2_LLD, i - 1) + 1 - 1][dj - 1]	+ costIns;
+	private void forestDist(InfoTree ted1, InfoTree ted2, int i, int j, float[] treedist, float[] forestdist,
+			int cols) {
+		int firstRow = ted1.getInfo(POST2_LLD, i - 1) + 1 - 1;
+		int firstCol = ted2.getInfo(POST2_LLD, j - 1) + 1 - 1;
+		forestdist[firstRow * cols + firstCol] = 0;
+		for (int di = firstRow + 1; di <= i; di++) {
+			int row = di * cols;
+			int previousRow = row - cols;
+			forestdist[row + firstCol] = (float) (forestdist[previousRow + firstCol] + costDel);
+			for (int dj = firstCol + 1; dj <= j; dj++) {
+				forestdist[firstRow * cols + dj] = (float) (forestdist[firstRow * cols + dj - 1] + costIns);
 
 				if ((ted1.getInfo(POST2_LLD, di - 1) == ted1.getInfo(POST2_LLD, i - 1))
 						&& (ted2.getInfo(POST2_LLD, dj - 1) == ted2.getInfo(POST2_LLD, j - 1))) {
@@ -1161,20 +1240,89 @@ public class RtedAlgorithm {
 					if (!(ted1.getInfo(POST2_LABEL, di - 1) == ted2.getInfo(POST2_LABEL, dj - 1))) {
 						costRen = costMatch;
 					}
-					forestdist[di][dj] = Math.min(Math.min(
-							forestdist[di - 1][dj] + costDel,
-							forestdist[di][dj - 1] + costIns),
-							forestdist[di - 1][dj - 1] + costRen);
-					treedist[di][dj] = forestdist[di][dj];
+					forestdist[row + dj] = (float) Math.min(Math.min(
+							forestdist[previousRow + dj] + costDel,
+							forestdist[row + dj - 1] + costIns),
+							forestdist[previousRow + dj - 1] + costRen);
+					treedist[row + dj] = forestdist[row + dj];
 				} else {
-					forestdist[di][dj] = Math.min(Math.min(
-							forestdist[di - 1][dj] + costDel,
-							forestdist[di][dj - 1] + costIns),
-							forestdist[ted1.getInfo(POST2_LLD, di - 1) + 1 - 1][ted2.getInfo(POST2_LLD, dj - 1) + 1 - 1]
-									+ treedist[di][dj]);
+					forestdist[row + dj] = (float) Math.min(Math.min(
+							forestdist[previousRow + dj] + costDel,
+							forestdist[row + dj - 1] + costIns),
+							forestdist[ted1.getInfo(POST2_LLD, di - 1) * cols + ted2.getInfo(POST2_LLD, dj - 1)]
+									+ treedist[row + dj]);
 				}
 			}
 		}
 	}
 
+	/**
+	 * Holds the matrices of the algorithm so that they can be reused by the
+	 * next computations. The arrays only grow, and must not be shared by
+	 * two computations running at the same time.
+	 */
+	public static final class Workspace {
+
+		private float[] delta;
+		private byte[] deltaBit;
+		private byte[] str;
+		private long[] costV;
+		private int[] ij;
+		private float[] t;
+		private float[] tCOPY;
+		private float[] s;
+		private float[] q;
+		private float[] forestdist;
+
+		/**
+		 * Returns the number of bytes currently held by the workspace.
+		 */
+		public long getMemory() {
+			return 4L * (length(delta) + length(t) + length(tCOPY) + length(s) + length(q) + length(forestdist))
+					+ length(deltaBit) + length(str) + 8L * length(costV) + 4L * length(ij);
+		}
+
+		/**
+		 * Drops all the matrices.
+		 */
+		public void release() {
+			delta = t = tCOPY = s = q = forestdist = null;
+			deltaBit = str = null;
+			costV = null;
+			ij = null;
+		}
+
+		private static long length(float[] a) {
+			return a == null ? 0 : a.length;
+		}
+
+		private static long length(byte[] a) {
+			return a == null ? 0 : a.length;
+		}
+
+		private static long length(int[] a) {
+			return a == null ? 0 : a.length;
+		}
+
+		private static long length(long[] a) {
+			return a == null ? 0 : a.length;
+		}
+
+		static float[] grow(float[] a, int size) {
+			return (a != null && a.length >= size) ? a : new float[size];
+		}
+
+		static byte[] grow(byte[] a, int size) {
+			return (a != null && a.length >= size) ? a : new byte[size];
+		}
+
+		static int[] grow(int[] a, int size) {
+			return (a != null && a.length >= size) ? a : new int[size];
+		}
+
+		static long[] grow(long[] a, int size) {
+			return (a != null && a.length >= size) ? a : new long[size];
+		}
+	}
+
 }
@@ -22,25 +22,119 @@ package com.github.gumtreediff.matchers.optimal.rted;
 
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.Matcher;
+import com.github.gumtreediff.matchers.optimal.zs.ZsMatcher;
 import com.github.gumtreediff.tree.ITree;
 import com.github.gumtreediff.tree.TreeUtils;
 
 import java.util.ArrayDeque;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 
+/**
+ * Maps the nodes along an optimal edit script computed by the RTED algorithm.
+ *
+ * The matrices of the algorithm are kept in a {@link RtedAlgorithm.Workspace}, by default one per thread,
+ * so that a batch of diffs does not reallocate them for each pair. When the memory they would need exceeds
+ * its memory budget ({@link #MEMORY_BUDGET} by default), the trees are matched by the {@link ZsMatcher}
+ * instead, its matrices being restricted to a band fitting in the same budget, or an
+ * {@link IllegalStateException} is thrown if the fallback is disabled.
+ *
+ * The computation is cancelled, adding no mapping, when the budget of the matcher is exhausted. The trees
+ * are not matched when the budget does not allow a matrix of their product of sizes.
+ */
 public class RtedMatcher extends Matcher {
 
+    /**
+     * The default maximum number of bytes of the matrices of a single match.
+     */
+    public static final long MEMORY_BUDGET = Long.parseLong(System.getProperty("gt.rted.mb", "1024")) << 20;
+
+    private static final ThreadLocal<RtedAlgorithm.Workspace> WORKSPACES =
+            ThreadLocal.withInitial(RtedAlgorithm.Workspace::new);
+
+    private final RtedAlgorithm.Workspace workspace;
+
+    private boolean fallback = true;
+
+    private long memoryBudget = MEMORY_BUDGET;
+
     public RtedMatcher(ITree src, ITree dst, MappingStore store) {
+        this(src, dst, store, WORKSPACES.get());
+    }
+
+    /**
+     * Create a matcher using the given workspace, which must not be used by another match at the same time.
+     */
+    public RtedMatcher(ITree src, ITree dst, MappingStore store, RtedAlgorithm.Workspace workspace) {
         super(src, dst, store);
+        this.workspace = workspace;
+    }
+
+    public boolean isFallback() {
+        return fallback;
+    }
+
+    /**
+     * Whether trees exceeding the memory budget are matched by the Zhang and Shasha algorithm (the default)
+     * rather than rejected.
+     */
+    public void setFallback(boolean fallback) {
+        this.fallback = fallback;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Set the maximum number of bytes of the matrices of the match, {@link #MEMORY_BUDGET} by default.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * @return the number of bytes the matrices of the RTED algorithm need to match the trees.
+     */
+    public long estimateMemory() {
+        return RtedAlgorithm.estimateMemory(src.getSize(), dst.getSize(), src.getHeight() + 1);
     }
 
     @Override
     public void match() {
-        RtedAlgorithm a = new RtedAlgorithm(1D, 1D, 1D);
-        a.init(src, dst);
-        a.computeOptimalStrategy();
-        a.nonNormalizedTreeDist();
-        ArrayDeque<int[]> arrayMappings = a.computeEditMapping();
+        if (!isCellsAllowed((long) src.getSize() * dst.getSize())) {
+            LOGGER.fine(String.format("RTED skipped on trees of %d and %d nodes, the budget allows %d cells.",
+                    src.getSize(), dst.getSize(), getBudget().getMaxCells()));
+            return;
+        }
+        long memory = estimateMemory();
+        if (memory > memoryBudget) {
+            String reason = String.format("RTED needs %d MB to match trees of %d and %d nodes, more than %d MB",
+                    memory >> 20, src.getSize(), dst.getSize(), memoryBudget >> 20);
+            if (!fallback)
+                throw new IllegalStateException(reason);
+            LOGGER.fine(reason + ", falling back to the Zhang and Shasha algorithm.");
+            ZsMatcher zs = new ZsMatcher(src, dst, mappings);
+            // ZS has a tree and a forest distance matrix of doubles.
+            zs.setMaxCells((int) Math.max(1, Math.min(memoryBudget / (2 * Double.BYTES), Integer.MAX_VALUE)));
+            runPhase(zs);
+            return;
+        }
+
+        RtedAlgorithm a = new RtedAlgorithm(1D, 1D, 1D, workspace);
+        if (getBudget() != null)
+            a.setCancellation(this::isBudgetExhausted);
+        ArrayDeque<int[]> arrayMappings;
+        try {
+            a.init(src, dst);
+            a.computeOptimalStrategy();
+            a.nonNormalizedTreeDist();
+            arrayMappings = a.computeEditMapping();
+        } catch (CancellationException e) {
+            LOGGER.fine("RTED cancelled, the budget is exhausted.");
+            return;
+        }
+        countCandidates((long) src.getSize() * dst.getSize());
         List<ITree> srcs = TreeUtils.postOrder(src);
         List<ITree> dsts = TreeUtils.postOrder(dst);
         for (int[] m: arrayMappings) {
@@ -25,65 +25,233 @@ import com.github.gumtreediff.matchers.Matcher;
 import com.github.gumtreediff.tree.ITree;
 import org.simmetrics.StringMetrics;
 
-import java.util.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.function.Predicate;
 
+/**
+ * The Zhang and Shasha tree edit distance algorithm, mapping the nodes along an optimal edit script.
+ *
+ * The distance matrices are stored flat. They are complete unless a bound is given, either a maximum
+ * distance or a maximum number of cells (see {@link #MAX_CELLS}), in which case only the cells within
+ * a band of that distance around their diagonal are computed and stored: the cells outside the band
+ * have a distance greater than the maximum one, as do the pairs of nodes whose post-order numbers
+ * differ by more than it. The mapping is then still an optimal one if the edit distance does not
+ * exceed the maximum distance. Otherwise, it is the best mapping whose edit script stays in the band,
+ * and there is none when the sizes of the trees differ by more than the maximum distance.
+ *
+ * No mapping is added either when the budget of the matcher is exhausted during the computation, or
+ * when it does not allow the tree distance matrix, which is counted with its band only.
+ */
 public class ZsMatcher extends Matcher {
 
-    private ZsTree zsSrc;
-    private ZsTree zsDst;
+    /**
+     * The default maximum number of cells of each distance matrix when no maximum distance is set,
+     * above which the matrices are restricted to the widest band fitting in this number of cells.
+     * The matrices are always complete when it is not positive (the default).
+     */
+    public static final int MAX_CELLS = Integer.parseInt(System.getProperty("gt.zs.mc", "0"));
 
-    private double[][] treeDist;
-    private double[][] forestDist;
+    private static final int UNBOUNDED = Integer.MAX_VALUE / 2;
 
-    private static ITree getFirstLeaf(ITree t) {
-        ITree current = t;
-        while (!current.isLeaf())
-            current = current.getChild(0);
+    private static final double INFINITY = Double.POSITIVE_INFINITY;
 
-        return current;
-    }
+    private final ZsTree zsSrc;
+    private final ZsTree zsDst;
+
+    private final Workspace workspace;
+
+    private int maxDistance = -1;
+
+    private int maxCells = MAX_CELLS;
+
+    private double[] treeDist;
+    private double[] forestDist;
+
+    // Half width of the band of the matrices, UNBOUNDED when they are complete.
+    private int band;
+
+    // Row length of the tree distance matrix, which is stored row by row.
+    private int treeDistWidth;
+
+    // Frame of the forest distance matrix of the current pair of subtrees: the first row and column
+    // (in post-order numbers), the number of columns and the row length.
+    private int frameRow;
+    private int frameCol;
+    private int forestDistCols;
+    private int forestDistWidth;
 
     public ZsMatcher(ITree src, ITree dst, MappingStore store) {
+        this(src, dst, store, t -> false, t -> false, new Workspace());
+    }
+
+    /**
+     * Instantiates a matcher on a view of the given trees, where the subtrees rooted at the ignored
+     * nodes (other than the roots) are left out, as if they had been removed from copies of the trees.
+     * The matcher uses the buffers of the given workspace, which therefore must not be used by another
+     * matcher until this one has been run.
+     */
+    public ZsMatcher(ITree src, ITree dst, MappingStore store,
+                     Predicate<ITree> srcIgnored, Predicate<ITree> dstIgnored, Workspace workspace) {
         super(src, dst, store);
-        this.zsSrc = new ZsTree(src);
-        this.zsDst = new ZsTree(dst);
+        this.workspace = workspace;
+        this.zsSrc = workspace.src.reset(src, srcIgnored);
+        this.zsDst = workspace.dst.reset(dst, dstIgnored);
     }
 
-    private double[][] computeTreeDist() {
+    /**
+     * @return the number of nodes of the source view.
+     */
+    public int getSrcSize() {
+        return zsSrc.nodeCount;
+    }
 
-        treeDist = new double[zsSrc.nodeCount + 1][zsDst.nodeCount + 1];
-        forestDist = new double[zsSrc.nodeCount + 1][zsDst.nodeCount + 1];
+    /**
+     * @return the number of nodes of the destination view.
+     */
+    public int getDstSize() {
+        return zsDst.nodeCount;
+    }
+
+    public int getMaxDistance() {
+        return maxDistance;
+    }
+
+    /**
+     * Restrict the matrices to a band of the given distance around their diagonal, or only bound their
+     * number of cells (see {@link #setMaxCells(int)}) if the distance is negative (the default).
+     */
+    public void setMaxDistance(int maxDistance) {
+        this.maxDistance = maxDistance;
+    }
+
+    public int getMaxCells() {
+        return maxCells;
+    }
 
-        for (int i = 1; i < zsSrc.kr.length; i++) {
-            for (int j = 1; j < zsDst.kr.length; j++) {
-                forestDist(zsSrc.kr[i], zsDst.kr[j]);
+    /**
+     * Restrict the matrices to the widest band fitting in the given number of cells when they would
+     * exceed it, unless a maximum distance is set. They are always complete if it is not positive.
+     */
+    public void setMaxCells(int maxCells) {
+        this.maxCells = maxCells;
+    }
+
+    private int computeBand(int rows, int cols) {
+        if (maxDistance >= 0)
+            return Math.min(maxDistance, UNBOUNDED);
+        if (maxCells <= 0 || (long) rows * cols <= maxCells)
+            return UNBOUNDED;
+        return Math.max(0, (maxCells / rows - 1) / 2);
+    }
+
+    /**
+     * @return false if no edit script stays in the band of the matrices, if the budget does not allow
+     *     the tree distance matrix, or if it was exhausted.
+     */
+    private boolean computeTreeDist() {
+        int rows = zsSrc.nodeCount + 1;
+        int cols = zsDst.nodeCount + 1;
+        band = computeBand(rows, cols);
+        treeDistWidth = (int) Math.min(2L * band + 1, cols);
+        if (!isCellsAllowed((long) rows * treeDistWidth))
+            return false;
+        workspace.ensureMatrixCapacity(Math.toIntExact((long) rows * treeDistWidth));
+        treeDist = workspace.treeDist;
+        forestDist = workspace.forestDist;
+        if (band == UNBOUNDED) {
+            for (int i = 1; i < zsSrc.keyRootCount; i++) {
+                if (isBudgetExhausted())
+                    return false;
+                for (int j = 1; j < zsDst.keyRootCount; j++) {
+                    computeForestDist(zsSrc.kr[i], zsDst.kr[j]);
+
+                }
+            }
+            return true;
+        }
 
+        if (Math.abs(zsSrc.nodeCount - zsDst.nodeCount) > band)
+            return false;
+        // Cells in the band are only written when their pair of subtrees is computed.
+        Arrays.fill(treeDist, 0, rows * treeDistWidth, INFINITY);
+        for (int i = 1; i < zsSrc.keyRootCount; i++) {
+            if (isBudgetExhausted())
+                return false;
+            int kri = zsSrc.kr[i];
+            for (int j = 1; j < zsDst.keyRootCount; j++) {
+                int krj = zsDst.kr[j];
+                // Skip the pairs whose leftmost paths only contain pairs of nodes outside the band.
+                if (zsSrc.lld(kri) <= krj + band && zsDst.lld(krj) <= kri + band)
+                    computeForestDist(kri, krj);
             }
         }
+        return treeDist(zsSrc.nodeCount, zsDst.nodeCount) != INFINITY;
+    }
+
+    private int treeDistIndex(int di, int dj) {
+        if (Math.abs(di - dj) > band)
+            return -1;
+        int base = Math.min(Math.max(di - band, 0), zsDst.nodeCount + 1 - treeDistWidth);
+        return di * treeDistWidth + dj - base;
+    }
+
+    private double treeDist(int di, int dj) {
+        int idx = treeDistIndex(di, dj);
+        return idx < 0 ? INFINITY : treeDist[idx];
+    }
 
-        return treeDist;
+    private int forestDistIndex(int row, int col) {
+        int r = row - frameRow;
+        int c = col - frameCol;
+        if (Math.abs(r - c) > band)
+            return -1;
+        int base = Math.min(Math.max(r - band, 0), forestDistCols - forestDistWidth);
+        return r * forestDistWidth + c - base;
     }
 
-    private void forestDist(int i, int j) {
-        forestDist[zsSrc.lld(i) - 1][zsDst.lld(j) - 1] = 0;
+    private double forestDist(int row, int col) {
+        int idx = forestDistIndex(row, col);
+        return idx < 0 ? INFINITY : forestDist[idx];
+    }
+
+    private void computeForestDist(int i, int j) {
+        frameRow = zsSrc.lld(i) - 1;
+        frameCol = zsDst.lld(j) - 1;
+        forestDistCols = j - frameCol + 1;
+        forestDistWidth = (int) Math.min(2L * band + 1, forestDistCols);
+
+        forestDist[forestDistIndex(frameRow, frameCol)] = 0;
+        for (int dj = zsDst.lld(j); dj <= j && dj - frameCol <= band; dj++)
+            forestDist[forestDistIndex(frameRow, dj)] = forestDist(frameRow, dj - 1)
+                    + getInsertionCost(zsDst.tree(dj));
+
         for (int di = zsSrc.lld(i); di <= i; di++) {
             double costDel =  getDeletionCost(zsSrc.tree(di));
-            forestDist[di][zsDst.lld(j) - 1] = forestDist[di - 1][zsDst.lld(j) - 1] + costDel;
-            for (int dj = zsDst.lld(j); dj <= j; dj++) {
+            int r = di - frameRow;
+            if (r <= band)
+                forestDist[forestDistIndex(di, frameCol)] = forestDist(di - 1, frameCol) + costDel;
+            int lastDj = (int) Math.min(j, (long) frameCol + r + band);
+            int firstDj = Math.max(zsDst.lld(j), frameCol + r - band);
+            if (lastDj >= firstDj)
+                countCandidates(lastDj - firstDj + 1);
+            for (int dj = firstDj; dj <= lastDj; dj++) {
                 double costIns = getInsertionCost(zsDst.tree(dj));
-                forestDist[zsSrc.lld(i) - 1][dj] = forestDist[zsSrc.lld(i) - 1][dj - 1] + costIns;
+                int idx = forestDistIndex(di, dj);
 
                 if ((zsSrc.lld(di) == zsSrc.lld(i) && (zsDst.lld(dj) == zsDst.lld(j)))) {
                     double costUpd = getUpdateCost(zsSrc.tree(di), zsDst.tree(dj));
-                    forestDist[di][dj] = Math.min(Math.min(forestDist[di - 1][dj] + costDel,
-                                    forestDist[di][dj - 1] + costIns),
-                            forestDist[di - 1][dj - 1] + costUpd);
-                    treeDist[di][dj] = forestDist[di][dj];
+                    forestDist[idx] = Math.min(Math.min(forestDist(di - 1, dj) + costDel,
+                                    forestDist(di, dj - 1) + costIns),
+                            forestDist(di - 1, dj - 1) + costUpd);
+                    int treeIdx = treeDistIndex(di, dj);
+                    if (treeIdx >= 0)
+                        treeDist[treeIdx] = forestDist[idx];
                 } else {
-                    forestDist[di][dj] = Math.min(Math.min(forestDist[di - 1][dj] + costDel,
-                                    forestDist[di][dj - 1] + costIns),
-                            forestDist[zsSrc.lld(di) - 1][zsDst.lld(dj) - 1]
-                                    + treeDist[di][dj]);
+                    forestDist[idx] = Math.min(Math.min(forestDist(di - 1, dj) + costDel,
+                                    forestDist(di, dj - 1) + costIns),
+                            forestDist(zsSrc.lld(di) - 1, zsDst.lld(dj) - 1)
+                                    + treeDist(di, dj));
                 }
             }
         }
@@ -91,7 +259,8 @@ public class ZsMatcher extends Matcher {
 
     @Override
     public void match() {
-        computeTreeDist();
+        if (!computeTreeDist())
+            return;
 
         boolean rootNodePair = true;
 
@@ -108,7 +277,7 @@ public class ZsMatcher extends Matcher {
 
             // compute forest distance matrix
             if (!rootNodePair)
-                forestDist(lastRow, lastCol);
+                computeForestDist(lastRow, lastCol);
 
             rootNodePair = false;
 
@@ -121,17 +290,18 @@ public class ZsMatcher extends Matcher {
 
             while ((row > firstRow) || (col > firstCol)) {
                 if ((row > firstRow)
-                        && (forestDist[row - 1][col] + 1D == forestDist[row][col])) {
+                        && (forestDist(row - 1, col) + 1D == forestDist(row, col))) {
                     // node with postorderID row is deleted from ted1
                     row--;
                 } else if ((col > firstCol)
-                        && (forestDist[row][col - 1] + 1D == forestDist[row][col])) {
+                        && (forestDist(row, col - 1) + 1D == forestDist(row, col))) {
                     // node with postorderID col is inserted into ted2
                     col--;
                 } else {
                     // node with postorderID row in ted1 is renamed to node col
                     // in ted2
-                    if ((zsSrc.lld(row) - 1 == zsSrc.lld(lastRow) - 1) && (zsDst.lld(col) - 1 == zsDst.lld(lastCol) - 1)) {
+                    if ((zsSrc.lld(row) - 1 == zsSrc.lld(lastRow) - 1)
+                            && (zsDst.lld(col) - 1 == zsDst.lld(lastCol) - 1)) {
                         // if both subforests are trees, map nodes
                         ITree tSrc = zsSrc.tree(row);
                         ITree tDst = zsDst.tree(col);
@@ -173,51 +343,106 @@ public class ZsMatcher extends Matcher {
             return Double.MAX_VALUE;
     }
 
-    private static final class ZsTree {
+    /**
+     * The buffers of a ZS matcher: the post-order arrays of the two trees and the distance matrices.
+     * They grow to fit the largest pair of trees seen, so a single workspace can serve the successive
+     * matchers run on many pairs of subtrees. A workspace is not thread safe.
+     */
+    public static final class Workspace {
+
+        private final ZsTree src = new ZsTree();
+
+        private final ZsTree dst = new ZsTree();
 
-        private int start; // internal array position of leafmost leaf descendant of the root node
+        private double[] treeDist = new double[0];
+
+        private double[] forestDist = new double[0];
+
+        private void ensureMatrixCapacity(int capacity) {
+            if (treeDist.length < capacity) {
+                treeDist = new double[capacity];
+                forestDist = new double[capacity];
+            }
+        }
+    }
+
+    private static final class ZsTree {
 
         private int nodeCount; // number of nodes
 
         private int leafCount;
 
-        private int[] llds; // llds[i] stores the postorder-ID of the
+        private int[] llds = new int[0]; // llds[i] stores the postorder-ID of the
         // left-most leaf descendant of the i-th node in postorder
-        private ITree[] labels; // labels[i] is the tree of the i-th node in postorder
-
-        private int[] kr;
-
-        private ZsTree(ITree t) {
-            this.start = 0;
-            this.nodeCount = t.getSize();
-            this.leafCount = 0;
-            this.llds = new int[start + nodeCount];
-            this.labels = new ITree[start + nodeCount];
-
-            int idx = 1;
-            Map<ITree,Integer> tmpData = new HashMap<>();
-            for (ITree n: t.postOrder()) {
-                tmpData.put(n, idx);
-                this.setITree(idx, n);
-                this.setLld(idx,  tmpData.get(ZsMatcher.getFirstLeaf(n)));
-                if (n.isLeaf())
-                    leafCount++;
-                idx++;
+        private ITree[] labels = new ITree[0]; // labels[i] is the tree of the i-th node in postorder
+
+        private int[] kr = new int[0];
+
+        private int keyRootCount;
+
+        private boolean[] visited = new boolean[0];
+
+        // Traversal stacks: the path to the current node, the index of the next child to visit for each
+        // node of the path, and the left-most leaf of the first retained child of each node (0 if none).
+        private ITree[] path = new ITree[0];
+
+        private int[] nextChild = new int[0];
+
+        private int[] firstLld = new int[0];
+
+        /**
+         * Number the nodes of the tree in post-order (starting from 1), leaving out the subtrees rooted
+         * at ignored nodes. The size of the tree bounds the size of the view.
+         */
+        private ZsTree reset(ITree t, Predicate<ITree> ignored) {
+            ensureCapacity(t.getSize() + 1);
+            nodeCount = 0;
+            leafCount = 0;
+
+            int depth = 0;
+            path[0] = t;
+            nextChild[0] = 0;
+            firstLld[0] = 0;
+            depth++;
+            while (depth > 0) {
+                ITree n = path[depth - 1];
+                if (nextChild[depth - 1] < n.getChildren().size()) {
+                    ITree c = n.getChild(nextChild[depth - 1]++);
+                    if (!ignored.test(c)) {
+                        path[depth] = c;
+                        nextChild[depth] = 0;
+                        firstLld[depth] = 0;
+                        depth++;
+                    }
+                } else {
+                    int idx = ++nodeCount;
+                    labels[idx] = n;
+                    if (firstLld[depth - 1] == 0) {
+                        llds[idx] = idx;
+                        leafCount++;
+                    } else
+                        llds[idx] = firstLld[depth - 1];
+                    path[depth - 1] = null;
+                    depth--;
+                    if (depth > 0 && firstLld[depth - 1] == 0)
+                        firstLld[depth - 1] = llds[idx];
+                }
             }
 
             setKeyRoots();
+            return this;
         }
 
-        public void setITree(int i, ITree tree) {
-            labels[i + start - 1] = tree;
-            if (nodeCount < i)
-                nodeCount = i;
-        }
-
-        public void setLld(int i, int lld) {
-            llds[i + start - 1] = lld + start - 1;
-            if (nodeCount < i)
-                nodeCount = i;
+        private void ensureCapacity(int capacity) {
+            if (labels.length < capacity) {
+                llds = new int[capacity];
+                labels = new ITree[capacity];
+                kr = new int[capacity];
+                visited = new boolean[capacity];
+                path = new ITree[capacity];
+                nextChild = new int[capacity];
+                firstLld = new int[capacity];
+            }
         }
 
         public boolean isLeaf(int i) {
@@ -225,18 +450,17 @@ public class ZsMatcher extends Matcher {
         }
 
         public int lld(int i) {
-            return llds[i + start - 1] - start + 1;
+            return llds[i];
         }
 
         public ITree tree(int i) {
-            return labels[i + start - 1];
+            return labels[i];
         }
 
         public void setKeyRoots() {
-            kr = new int[leafCount + 1];
-            boolean[] visited = new boolean[nodeCount + 1];
-            Arrays.fill(visited, false);
-            int k = kr.length - 1;
+            keyRootCount = leafCount + 1;
+            Arrays.fill(visited, 0, nodeCount + 1, false);
+            int k = keyRootCount - 1;
             for (int i = nodeCount; i >= 1; i--) {
                 if (!visited[lld(i)]) {
                     kr[k] = i;
@@ -24,6 +24,7 @@ import com.github.gumtreediff.matchers.Mapping;
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.Matcher;
 import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.utils.LcsTable;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -112,26 +113,6 @@ public class LcsOptMatcherThetaB extends Matcher {
         }
     }
 
-    private void backtrack(ArrayList<ITree> list1, ArrayList<ITree> list2,
-            LinkedList<Mapping> resultList, int[][] matrix, int ipar, int jpar,
-            Set<ITree> unmatchedNodes1, Set<ITree> unmatchedNodes2) {
-        assert (ipar >= 0);
-        assert (jpar >= 0);
-        while (ipar > 0 && jpar > 0) {
-            if (testCondition(list1.get(ipar - 1), list2.get(jpar - 1), unmatchedNodes1,
-                    unmatchedNodes2)) {
-                if (!mappings.hasSrc(list1.get(ipar - 1))) {
-                    resultList.add(new Mapping(list1.get(ipar - 1), list2.get(jpar - 1)));
-                }
-            }
-            if (matrix[ipar][jpar - 1] > matrix[ipar - 1][jpar]) {
-                jpar--;
-            } else {
-                ipar--;
-            }
-        }
-    }
-
     private void getNodeListInPostOrder(ITree tree, ArrayList<ITree> nodes) {
         if (tree != null) {
             for (ITree child : tree.getChildren()) {
@@ -154,20 +135,23 @@ public class LcsOptMatcherThetaB extends Matcher {
 
     private List<Mapping> lcs(ArrayList<ITree> list1, ArrayList<ITree> list2,
             Set<ITree> unmatchedNodes1, Set<ITree> unmatchedNodes2) {
-        int[][] matrix = new int[list1.size() + 1][list2.size() + 1];
-        for (int i = 1; i < list1.size() + 1; i++) {
-            for (int j = 1; j < list2.size() + 1; j++) {
-                if (testCondition(list1.get(i - 1), list2.get(j - 1), unmatchedNodes1,
-                        unmatchedNodes2)) {
-                    matrix[i][j] = matrix[i - 1][j - 1] + 1;
-                } else {
-                    matrix[i][j] = Math.max(matrix[i][j - 1], matrix[i - 1][j]);
+        countCandidates((long) list1.size() * list2.size());
+        LinkedList<Mapping> resultList = new LinkedList<>();
+        LcsTable.Equivalence condition = (i, j) -> testCondition(list1.get(i), list2.get(j),
+                unmatchedNodes1, unmatchedNodes2);
+        // Backtrack, collecting every matching pair on the way.
+        LcsTable.walk(list1.size(), list2.size(), condition, (matrix, ipar, jpar) -> {
+            if (condition.test(ipar - 1, jpar - 1)) {
+                if (!mappings.hasSrc(list1.get(ipar - 1))) {
+                    resultList.add(new Mapping(list1.get(ipar - 1), list2.get(jpar - 1)));
                 }
             }
-        }
-        LinkedList<Mapping> resultList = new LinkedList<>();
-        backtrack(list1, list2, resultList, matrix, list1.size(), list2.size(), unmatchedNodes1,
-                unmatchedNodes2);
+            if (matrix.get(ipar, jpar - 1) > matrix.get(ipar - 1, jpar)) {
+                return LcsTable.LEFT;
+            } else {
+                return LcsTable.UP;
+            }
+        });
         return resultList;
     }
 
@@ -0,0 +1,481 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.tree;
+
+import com.github.gumtreediff.tree.hash.HashUtils;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+
+import static com.github.gumtreediff.tree.CompactTreeStore.NONE;
+
+/**
+ * Flyweight view over a node of a {@link CompactTreeStore}. It only holds the store and the
+ * pre-order index of the node, every attribute being read from the store arrays.
+ * The lists returned by {@link #getChildren()}, {@link #getTrees()} and {@link #getDescendants()}
+ * are unmodifiable views.
+ */
+public final class CompactTree implements ITree {
+
+    private final CompactTreeStore store;
+
+    private final int index;
+
+    CompactTree(CompactTreeStore store, int index) {
+        this.store = store;
+        this.index = index;
+    }
+
+    public CompactTreeStore getStore() {
+        return store;
+    }
+
+    /**
+     * @return the pre-order index of the node in its store.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    private RuntimeException unsupportedOperation() {
+        return new UnsupportedOperationException("The structure of a compact tree can not be modified, "
+                + "use deepCopy() to obtain a mutable tree");
+    }
+
+    @Override
+    public int getHash() {
+        return store.hashes[index];
+    }
+
+    @Override
+    public void setHash(int hash) {
+        store.hashes[index] = hash;
+    }
+
+    @Override
+    public List<ITree> getTrees() {
+        return range(index, store.subtreeEnd(index));
+    }
+
+    @Override
+    public List<ITree> getDescendants() {
+        return range(index + 1, store.subtreeEnd(index));
+    }
+
+    private List<ITree> range(int from, int to) {
+        return Collections.unmodifiableList(Arrays.<ITree>asList(store.views).subList(from, to));
+    }
+
+    @Override
+    public Iterable<ITree> preOrder() {
+        return () -> getTrees().iterator();
+    }
+
+    @Override
+    public Iterable<ITree> postOrder() {
+        return () -> new Iterator<ITree>() {
+            int next = store.leftmostLeaf(index);
+
+            @Override
+            public boolean hasNext() {
+                return next != NONE;
+            }
+
+            @Override
+            public ITree next() {
+                if (next == NONE)
+                    throw new NoSuchElementException();
+                int current = next;
+                if (current == index)
+                    next = NONE;
+                else if (store.nextSiblings[current] != NONE)
+                    next = store.leftmostLeaf(store.nextSiblings[current]);
+                else
+                    next = store.parents[current];
+                return store.views[current];
+            }
+        };
+    }
+
+    @Override
+    public Iterable<ITree> breadthFirst() {
+        return () -> TreeUtils.breadthFirstIterator(this);
+    }
+
+    @Override
+    public void addChild(ITree t) {
+        throw unsupportedOperation();
+    }
+
+    @Override
+    public void insertChild(ITree t, int position) {
+        throw unsupportedOperation();
+    }
+
+    @Override
+    public void setChildren(List<ITree> children) {
+        throw unsupportedOperation();
+    }
+
+    @Override
+    public int getChildPosition(ITree child) {
+        if (!isChild(child))
+            return -1;
+        // The children are sorted, as they are numbered in pre-order.
+        int c = Arrays.binarySearch(store.children, store.childOffsets[index], store.childOffsets[index + 1],
+                ((CompactTree) child).index);
+        return c < 0 ? -1 : c - store.childOffsets[index];
+    }
+
+    private boolean isChild(Object o) {
+        if (!(o instanceof CompactTree))
+            return false;
+        CompactTree t = (CompactTree) o;
+        return t.store == store && store.parents[t.index] == index;
+    }
+
+    @Override
+    public ITree getChild(int position) {
+        if (position < 0 || position >= store.childCounts[index])
+            throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + store.childCounts[index]);
+        return store.views[store.children[store.childOffsets[index] + position]];
+    }
+
+    @Override
+    public List<ITree> getChildren() {
+        return new AbstractList<ITree>() {
+            @Override
+            public ITree get(int position) {
+                return getChild(position);
+            }
+
+            @Override
+            public int size() {
+                return store.childCounts[index];
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return isChild(o);
+            }
+
+            @Override
+            public int indexOf(Object o) {
+                return o instanceof ITree ? getChildPosition((ITree) o) : -1;
+            }
+
+            @Override
+            public int lastIndexOf(Object o) {
+                return indexOf(o);
+            }
+
+            @Override
+            public Iterator<ITree> iterator() {
+                return new Iterator<ITree>() {
+                    int next = store.firstChildren[index];
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != NONE;
+                    }
+
+                    @Override
+                    public ITree next() {
+                        if (next == NONE)
+                            throw new NoSuchElementException();
+                        int current = next;
+                        next = store.nextSiblings[current];
+                        return store.views[current];
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public boolean isLeaf() {
+        return store.firstChildren[index] == NONE;
+    }
+
+    /**
+     * Only the root of the store can be given a parent, as done when wrapping it into a fake tree.
+     */
+    @Override
+    public void setParent(ITree parent) {
+        if (store.parents[index] == NONE)
+            store.rootParent = parent;
+        else if (parent != getParent())
+            throw unsupportedOperation();
+    }
+
+    @Override
+    public void setParentAndUpdateChildren(ITree parent) {
+        throw unsupportedOperation();
+    }
+
+    @Override
+    public boolean isRoot() {
+        return getParent() == null;
+    }
+
+    @Override
+    public ITree getParent() {
+        int parent = store.parents[index];
+        return parent == NONE ? store.rootParent : store.views[parent];
+    }
+
+    @Override
+    public List<ITree> getParents() {
+        List<ITree> parents = new ArrayList<>();
+        for (ITree p = getParent(); p != null; p = p.getParent())
+            parents.add(p);
+        return parents;
+    }
+
+    @Override
+    public int positionInParent() {
+        ITree p = getParent();
+        if (p == null)
+            return -1;
+        else
+            return p.getChildPosition(this);
+    }
+
+    /**
+     * @return a mutable {@link Tree} copy of this subtree, sharing metadata values.
+     */
+    @Override
+    public ITree deepCopy() {
+        int end = store.subtreeEnd(index);
+        Tree[] copies = new Tree[end - index];
+        for (int i = index; i < end; i++) {
+            Tree copy = new Tree(store.types[i], store.labelTable.get(store.labels[i]));
+            copy.setId(store.ids[i]);
+            copy.setPos(store.positions[i]);
+            copy.setLength(store.lengths[i]);
+            copy.setHeight(store.heights[i]);
+            copy.setSize(store.sizes[i]);
+            copy.setDepth(store.depths[i]);
+            copy.setHash(store.hashes[i]);
+            Iterator<Entry<String, Object>> it = store.getMetadata(i);
+            while (it.hasNext()) {
+                Entry<String, Object> e = it.next();
+                copy.setMetadata(e.getKey(), e.getValue());
+            }
+            copies[i - index] = copy;
+            if (i != index)
+                copies[store.parents[i] - index].addChild(copy);
+        }
+        return copies[0];
+    }
+
+    @Override
+    public int getDepth() {
+        return store.depths[index];
+    }
+
+    @Override
+    public void setDepth(int depth) {
+        store.depths[index] = depth;
+    }
+
+    @Override
+    public int getHeight() {
+        return store.heights[index];
+    }
+
+    @Override
+    public void setHeight(int height) {
+        store.heights[index] = height;
+    }
+
+    @Override
+    public int getId() {
+        return store.ids[index];
+    }
+
+    @Override
+    public void setId(int id) {
+        store.ids[index] = id;
+    }
+
+    @Override
+    public boolean hasLabel() {
+        return !NO_LABEL.equals(getLabel());
+    }
+
+    @Override
+    public String getLabel() {
+        return store.labelTable.get(store.labels[index]);
+    }
+
+    @Override
+    public void setLabel(String label) {
+        store.labels[index] = store.internLabel(label);
+    }
+
+    @Override
+    public int getPos() {
+        return store.positions[index];
+    }
+
+    @Override
+    public void setPos(int pos) {
+        store.positions[index] = pos;
+    }
+
+    @Override
+    public int getLength() {
+        return store.lengths[index];
+    }
+
+    @Override
+    public void setLength(int length) {
+        store.lengths[index] = length;
+    }
+
+    @Override
+    public int getSize() {
+        return store.sizes[index];
+    }
+
+    @Override
+    public void setSize(int size) {
+        store.sizes[index] = size;
+    }
+
+    @Override
+    public int getType() {
+        return store.types[index];
+    }
+
+    @Override
+    public void setType(int type) {
+        store.types[index] = type;
+    }
+
+    @Override
+    public boolean hasSameType(ITree t) {
+        return getType() == t.getType();
+    }
+
+    @Override
+    public boolean isIsomorphicTo(ITree tree) {
+        if (this.getHash() != tree.getHash())
+            return false;
+        else
+            return this.toStaticHashString().equals(tree.toStaticHashString());
+    }
+
+    @Override
+    public boolean hasSameTypeAndLabel(ITree t) {
+        if (!hasSameType(t))
+            return false;
+        if (t instanceof CompactTree && ((CompactTree) t).store == store)
+            return store.labels[index] == store.labels[((CompactTree) t).index];
+        return getLabel().equals(t.getLabel());
+    }
+
+    /**
+     * Size, depth and height are computed with a single pass over the pre-order range of the subtree.
+     */
+    @Override
+    public void refresh() {
+        int end = store.subtreeEnd(index);
+        int parent = store.parents[index];
+        store.depths[index] = parent == NONE ? (isRoot() ? 0 : getParent().getDepth() + 1)
+                : store.depths[parent] + 1;
+        for (int i = index; i < end; i++) {
+            if (i != index)
+                store.depths[i] = store.depths[store.parents[i]] + 1;
+            store.sizes[i] = 1;
+            store.heights[i] = 0;
+        }
+        for (int i = end - 1; i > index; i--) {
+            int p = store.parents[i];
+            store.sizes[p] += store.sizes[i];
+            if (store.heights[i] + 1 > store.heights[p])
+                store.heights[p] = store.heights[i] + 1;
+        }
+        HashUtils.DEFAULT_HASH_GENERATOR.hash(this);
+    }
+
+    @Override
+    public String toStaticHashString() {
+        StringBuilder b = new StringBuilder();
+        b.append(OPEN_SYMBOL);
+        b.append(this.toShortString());
+        for (ITree c: this.getChildren())
+            b.append(c.toStaticHashString());
+        b.append(CLOSE_SYMBOL);
+        return b.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toShortString();
+    }
+
+    @Override
+    public String toShortString() {
+        return String.format("%d%s%s", getType(), SEPARATE_SYMBOL, getLabel());
+    }
+
+    @Override
+    public String toTreeString() {
+        StringBuilder b = new StringBuilder();
+        for (ITree t : preOrder()) {
+            for (int i = 0; i < t.getDepth(); i++)
+                b.append("\t");
+            b.append(t.toShortString()).append("\n");
+        }
+        return b.toString();
+    }
+
+    @Override
+    public String toPrettyString(TreeContext ctx) {
+        if (hasLabel())
+            return ctx.getTypeLabel(this) + ": " + getLabel();
+        else
+            return ctx.getTypeLabel(this);
+    }
+
+    @Override
+    public Object getMetadata(String key) {
+        return store.getMetadata(index, key);
+    }
+
+    @Override
+    public Object setMetadata(String key, Object value) {
+        return store.setMetadata(index, key, value);
+    }
+
+    @Override
+    public Iterator<Entry<String, Object>> getMetadata() {
+        return store.getMetadata(index);
+    }
+}
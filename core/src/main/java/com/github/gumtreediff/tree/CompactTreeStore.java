@@ -0,0 +1,360 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.tree;
+
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Struct-of-arrays storage for a whole tree. Nodes are numbered using a pre-order,
+ * so the descendants of a node are the contiguous range following it. Every node
+ * is exposed as a {@link CompactTree} flyweight implementing {@link ITree}, one
+ * view per node so that identity-based code keeps working.
+ *
+ * The structure of a store is frozen once built: metrics, labels and metadata can
+ * be changed through the views, but children can not be added or removed. Use
+ * {@link ITree#deepCopy()} to obtain a mutable {@link Tree}.
+ */
+public final class CompactTreeStore {
+
+    static final int NONE = -1;
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    int count;
+
+    int[] types;
+
+    int[] labels;
+
+    int[] parents;
+
+    int[] firstChildren;
+
+    int[] nextSiblings;
+
+    int[] childCounts;
+
+    // The children of node n, in order, are children[childOffsets[n]] to children[childOffsets[n + 1] - 1],
+    // which gives an indexed access to them. Both arrays are computed when the store is built.
+    int[] childOffsets;
+
+    int[] children;
+
+    int[] positions;
+
+    int[] lengths;
+
+    int[] sizes;
+
+    int[] heights;
+
+    int[] depths;
+
+    int[] hashes;
+
+    int[] ids;
+
+    final List<String> labelTable = new ArrayList<>();
+
+    private final Map<String, Integer> labelIds = new HashMap<>();
+
+    TIntObjectMap<AssociationMap> metadata;
+
+    CompactTree[] views;
+
+    ITree rootParent;
+
+    private CompactTreeStore(int capacity) {
+        types = new int[capacity];
+        labels = new int[capacity];
+        parents = new int[capacity];
+        firstChildren = new int[capacity];
+        nextSiblings = new int[capacity];
+        childCounts = new int[capacity];
+        positions = new int[capacity];
+        lengths = new int[capacity];
+        sizes = new int[capacity];
+        heights = new int[capacity];
+        depths = new int[capacity];
+        hashes = new int[capacity];
+        ids = new int[capacity];
+        internLabel(ITree.NO_LABEL);
+    }
+
+    /**
+     * Copy the given tree, its metrics, ids and metadata into a new store.
+     */
+    public static CompactTreeStore fromTree(ITree root) {
+        Builder builder = new Builder(Math.max(root.getSize(), DEFAULT_CAPACITY));
+        TreeUtils.visitTree(root, new TreeUtils.TreeVisitor() {
+            @Override
+            public void startTree(ITree tree) {
+                int node = builder.startTree(tree.getType(), tree.getLabel(), tree.getPos(), tree.getLength());
+                CompactTreeStore store = builder.store;
+                store.ids[node] = tree.getId();
+                store.hashes[node] = tree.getHash();
+                store.sizes[node] = tree.getSize();
+                store.heights[node] = tree.getHeight();
+                store.depths[node] = tree.getDepth();
+                Iterator<Entry<String, Object>> it = tree.getMetadata();
+                while (it.hasNext()) {
+                    Entry<String, Object> e = it.next();
+                    builder.setMetadata(e.getKey(), e.getValue());
+                }
+            }
+
+            @Override
+            public void endTree(ITree tree) {
+                builder.endTree();
+            }
+        });
+        return builder.build();
+    }
+
+    public ITree getRoot() {
+        return views[0];
+    }
+
+    /**
+     * @return the node at the given pre-order index.
+     */
+    public ITree getTree(int index) {
+        return views[index];
+    }
+
+    /**
+     * @return the number of nodes in the store.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return the pre-order index of the first node following the subtree rooted at the given node.
+     */
+    int subtreeEnd(int node) {
+        for (int n = node; n != NONE; n = parents[n])
+            if (nextSiblings[n] != NONE)
+                return nextSiblings[n];
+        return count;
+    }
+
+    int leftmostLeaf(int node) {
+        while (firstChildren[node] != NONE)
+            node = firstChildren[node];
+        return node;
+    }
+
+    int internLabel(String label) {
+        if (label == null)
+            label = ITree.NO_LABEL;
+        Integer id = labelIds.get(label);
+        if (id == null) {
+            id = labelTable.size();
+            labelTable.add(label);
+            labelIds.put(label, id);
+        }
+        return id;
+    }
+
+    Object getMetadata(int node, String key) {
+        if (metadata == null)
+            return null;
+        AssociationMap m = metadata.get(node);
+        return m == null ? null : m.get(key);
+    }
+
+    Object setMetadata(int node, String key, Object value) {
+        AssociationMap m = metadata == null ? null : metadata.get(node);
+        if (value == null)
+            return m == null ? null : m.remove(key);
+        if (m == null) {
+            if (metadata == null)
+                metadata = new TIntObjectHashMap<>();
+            m = new AssociationMap();
+            metadata.put(node, m);
+        }
+        return m.set(key, value);
+    }
+
+    Iterator<Entry<String, Object>> getMetadata(int node) {
+        AssociationMap m = metadata == null ? null : metadata.get(node);
+        return m == null ? new AbstractTree.EmptyEntryIterator() : m.iterator();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= types.length)
+            return;
+        int newCapacity = Math.max(capacity, types.length * 2);
+        types = Arrays.copyOf(types, newCapacity);
+        labels = Arrays.copyOf(labels, newCapacity);
+        parents = Arrays.copyOf(parents, newCapacity);
+        firstChildren = Arrays.copyOf(firstChildren, newCapacity);
+        nextSiblings = Arrays.copyOf(nextSiblings, newCapacity);
+        childCounts = Arrays.copyOf(childCounts, newCapacity);
+        positions = Arrays.copyOf(positions, newCapacity);
+        lengths = Arrays.copyOf(lengths, newCapacity);
+        sizes = Arrays.copyOf(sizes, newCapacity);
+        heights = Arrays.copyOf(heights, newCapacity);
+        depths = Arrays.copyOf(depths, newCapacity);
+        hashes = Arrays.copyOf(hashes, newCapacity);
+        ids = Arrays.copyOf(ids, newCapacity);
+    }
+
+    private void trim() {
+        if (count == types.length)
+            return;
+        types = Arrays.copyOf(types, count);
+        labels = Arrays.copyOf(labels, count);
+        parents = Arrays.copyOf(parents, count);
+        firstChildren = Arrays.copyOf(firstChildren, count);
+        nextSiblings = Arrays.copyOf(nextSiblings, count);
+        childCounts = Arrays.copyOf(childCounts, count);
+        positions = Arrays.copyOf(positions, count);
+        lengths = Arrays.copyOf(lengths, count);
+        sizes = Arrays.copyOf(sizes, count);
+        heights = Arrays.copyOf(heights, count);
+        depths = Arrays.copyOf(depths, count);
+        hashes = Arrays.copyOf(hashes, count);
+        ids = Arrays.copyOf(ids, count);
+    }
+
+    private void indexChildren() {
+        childOffsets = new int[count + 1];
+        for (int i = 0; i < count; i++)
+            childOffsets[i + 1] = childOffsets[i] + childCounts[i];
+        children = new int[Math.max(count - 1, 0)];
+        int[] filled = new int[count];
+        // The pre-order visits the children of a node in order.
+        for (int i = 1; i < count; i++) {
+            int parent = parents[i];
+            children[childOffsets[parent] + filled[parent]++] = i;
+        }
+    }
+
+    /**
+     * Build a store in a single pre-order pass: each node is opened with
+     * {@link #startTree(int, String, int, int)} and closed with {@link #endTree()}.
+     * As with {@link Tree}, the metrics are not computed, call {@link TreeContext#validate()}
+     * or {@link ITree#refresh()} once the tree is complete.
+     */
+    public static final class Builder {
+
+        private final CompactTreeStore store;
+
+        private int[] stack;
+
+        private int[] lastChildren;
+
+        private int top = -1;
+
+        public Builder() {
+            this(DEFAULT_CAPACITY);
+        }
+
+        public Builder(int capacity) {
+            store = new CompactTreeStore(Math.max(capacity, 1));
+            stack = new int[DEFAULT_CAPACITY];
+            lastChildren = new int[DEFAULT_CAPACITY];
+        }
+
+        /**
+         * Open a new node as the last child of the currently opened node.
+         * @return the pre-order index of the new node
+         */
+        public int startTree(int type, String label, int pos, int length) {
+            if (top == -1 && store.count > 0)
+                throw new IllegalStateException("A compact tree store can only have one root");
+            int node = store.count++;
+            store.ensureCapacity(store.count);
+            store.types[node] = type;
+            store.labels[node] = store.internLabel(label);
+            store.positions[node] = pos;
+            store.lengths[node] = length;
+            store.firstChildren[node] = NONE;
+            store.nextSiblings[node] = NONE;
+            store.childCounts[node] = 0;
+            store.ids[node] = ITree.NO_ID;
+            store.hashes[node] = ITree.NO_VALUE;
+            store.sizes[node] = ITree.NO_VALUE;
+            store.heights[node] = ITree.NO_VALUE;
+            store.depths[node] = ITree.NO_VALUE;
+
+            if (top == -1)
+                store.parents[node] = NONE;
+            else {
+                int parent = stack[top];
+                store.parents[node] = parent;
+                if (lastChildren[top] == NONE)
+                    store.firstChildren[parent] = node;
+                else
+                    store.nextSiblings[lastChildren[top]] = node;
+                lastChildren[top] = node;
+                store.childCounts[parent]++;
+            }
+
+            if (++top == stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+                lastChildren = Arrays.copyOf(lastChildren, lastChildren.length * 2);
+            }
+            stack[top] = node;
+            lastChildren[top] = NONE;
+            return node;
+        }
+
+        /**
+         * Attach a metadata to the currently opened node.
+         */
+        public void setMetadata(String key, Object value) {
+            if (top == -1)
+                throw new IllegalStateException("No opened node");
+            store.setMetadata(stack[top], key, value);
+        }
+
+        public void endTree() {
+            if (top == -1)
+                throw new IllegalStateException("No opened node");
+            top--;
+        }
+
+        public CompactTreeStore build() {
+            if (top != -1)
+                throw new IllegalStateException("Some nodes are still opened");
+            if (store.count == 0)
+                throw new IllegalStateException("Empty tree");
+            store.trim();
+            store.indexChildren();
+            store.views = new CompactTree[store.count];
+            for (int i = 0; i < store.count; i++)
+                store.views[i] = new CompactTree(store, i);
+            return store;
+        }
+    }
+}
@@ -63,7 +63,7 @@ public class TreeContext {
         return tl;
     }
 
-    protected void registerTypeLabel(int type, String name) {
+    public void registerTypeLabel(int type, String name) {
         if (name == null || name.equals(ITree.NO_LABEL))
             return;
         String typeLabel = typeLabels.get(type);
@@ -192,6 +192,19 @@ public class TreeContext {
         return newContext;
     }
 
+    /**
+     * Derive a context sharing the type labels, metadata and serializers of this one, whose tree
+     * is copied into a {@link CompactTreeStore}. The structure of the resulting tree can not be modified.
+     */
+    public TreeContext compact() {
+        TreeContext newContext = new TreeContext();
+        newContext.setRoot(CompactTreeStore.fromTree(getRoot()).getRoot());
+        newContext.typeLabels = typeLabels;
+        newContext.metadata.putAll(metadata);
+        newContext.serializers.addAll(serializers);
+        return newContext;
+    }
+
     /**
      * Get an iterator on local and global metadata.
      * To only get local metadata, simply use : `node.getMetadata()`
@@ -265,6 +278,10 @@ public class TreeContext {
             serializers.remove(key);
         }
 
+        public E get(String key) {
+            return serializers.get(key);
+        }
+
         public Set<String> exports() {
             return serializers.keySet();
         }
@@ -292,5 +309,11 @@ public class TreeContext {
                     tree.setMetadata(key, s.fromString(value));
             }
         }
+
+        public void load(TreeContext context, String key, String value) throws Exception {
+            MetadataUnserializer s = serializers.get(key);
+            if (s != null)
+                context.setMetadata(key, s.fromString(value));
+        }
     }
 }
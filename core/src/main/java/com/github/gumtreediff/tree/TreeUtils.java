@@ -22,11 +22,16 @@ package com.github.gumtreediff.tree;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
+import com.github.gumtreediff.tree.hash.HashUtils;
 import com.github.gumtreediff.utils.Pair;
 
 public final class TreeUtils {
@@ -82,6 +87,87 @@ public final class TreeUtils {
         }
     }
 
+    /**
+     * Insert the given tree as the position-th child of the parent, and update the metrics of the parent
+     * and of its ancestors with {@link #updateAncestors(ITree)}. The metrics of the inserted tree are
+     * computed if they were not, and its depths are updated if its level changes.
+     */
+    public static void insertChild(ITree parent, ITree child, int position) {
+        parent.insertChild(child, position);
+        if (child.getSize() == ITree.NO_VALUE)
+            child.refresh();
+        else if (child.getDepth() != parent.getDepth() + 1)
+            computeDepth(child);
+        updateAncestors(parent);
+    }
+
+    /**
+     * Detach the given tree from its parent, and update the metrics of its former ancestors with
+     * {@link #updateAncestors(ITree)}.
+     * @return the former position of the tree in the children of its parent.
+     */
+    public static int removeChild(ITree child) {
+        ITree parent = child.getParent();
+        int position = parent.getChildPosition(child);
+        parent.getChildren().remove(position);
+        child.setParent(null);
+        updateAncestors(parent);
+        return position;
+    }
+
+    /**
+     * Incremental counterpart of {@link ITree#refresh()}, to call on a tree whose children or label
+     * have been modified. The size, height and hash of the tree are recomputed from the ones of its
+     * children, then the ones of its ancestors, stopping at the first node left unchanged. This costs
+     * the number of children along the path to the root instead of the size of the whole tree.
+     * Hashes are computed by {@link HashUtils#DEFAULT_HASH_GENERATOR}.
+     * @param tree a Tree whose descendants have up to date metrics.
+     */
+    public static void updateAncestors(ITree tree) {
+        for (ITree t = tree; t != null; t = t.getParent())
+            if (!updateNode(t))
+                break;
+    }
+
+    /**
+     * Same as {@link #updateAncestors(ITree)} for several modified trees, with up to date depths. Each
+     * of their ancestors is updated once, after all its modified descendants.
+     */
+    public static void updateAncestors(Collection<ITree> trees) {
+        Set<ITree> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<List<ITree>> levels = new ArrayList<>();
+        for (ITree tree : trees) {
+            for (ITree t = tree; t != null && visited.add(t); t = t.getParent()) {
+                int depth = Math.max(t.getDepth(), 0);
+                while (levels.size() <= depth)
+                    levels.add(new ArrayList<>());
+                levels.get(depth).add(t);
+            }
+        }
+        for (int depth = levels.size() - 1; depth >= 0; depth--)
+            for (ITree t : levels.get(depth))
+                updateNode(t);
+    }
+
+    /**
+     * @return true if the size, height or hash of the tree changed.
+     */
+    private static boolean updateNode(ITree t) {
+        int size = 1;
+        int height = 0;
+        for (ITree c : t.getChildren()) {
+            size += c.getSize();
+            if (c.getHeight() + 1 > height)
+                height = c.getHeight() + 1;
+        }
+        boolean changed = size != t.getSize() || height != t.getHeight();
+        int hash = t.getHash();
+        t.setSize(size);
+        t.setHeight(height);
+        HashUtils.DEFAULT_HASH_GENERATOR.hashNode(t);
+        return changed || hash != t.getHash();
+    }
+
     /**
      * Returns a list of every subtrees and the tree ordered using a pre-order.
      * @param tree a Tree.
@@ -26,4 +26,12 @@ public interface HashGenerator {
 
     public void hash(ITree t);
 
+    /**
+     * Hash the given node only, the hashes of its children being up to date. By default, the whole
+     * subtree is hashed again.
+     */
+    default void hashNode(ITree t) {
+        hash(t);
+    }
+
 }
@@ -31,10 +31,15 @@ public abstract class RollingHashGenerator implements HashGenerator {
     @Override
     public void hash(ITree t) {
         for (ITree n: t.postOrder())
-            if (n.isLeaf())
-                n.setHash(leafHash(n));
-            else
-                n.setHash(innerNodeHash(n));
+            hashNode(n);
+    }
+
+    @Override
+    public void hashNode(ITree t) {
+        if (t.isLeaf())
+            t.setHash(leafHash(t));
+        else
+            t.setHash(innerNodeHash(t));
     }
 
     public abstract int hashFunction(String s);
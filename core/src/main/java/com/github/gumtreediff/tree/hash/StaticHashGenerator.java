@@ -33,6 +33,11 @@ public abstract class StaticHashGenerator implements HashGenerator {
             n.setHash(nodeHash(n));
     }
 
+    @Override
+    public void hashNode(ITree t) {
+        t.setHash(nodeHash(t));
+    }
+
     public abstract int nodeHash(ITree t);
 
     public static class StdHashGenerator extends StaticHashGenerator {
@@ -0,0 +1,81 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A thread-safe table assigning dense integer ids to labels, in their order of first interning.
+ * The ids can be used to index arrays or to build primitive keys, instead of concatenating labels.
+ */
+public final class LabelTable {
+
+    private final ConcurrentHashMap<String, Integer> ids;
+
+    private volatile String[] labels;
+
+    private int size;
+
+    public LabelTable() {
+        this(64);
+    }
+
+    public LabelTable(int capacity) {
+        ids = new ConcurrentHashMap<>(capacity);
+        labels = new String[Math.max(capacity, 1)];
+    }
+
+    /**
+     * @return the id of the label, which is added to the table if needed.
+     */
+    public int intern(String label) {
+        Integer id = ids.get(label);
+        if (id != null)
+            return id;
+        synchronized (this) {
+            id = ids.get(label);
+            if (id != null)
+                return id;
+            if (size == labels.length)
+                labels = Arrays.copyOf(labels, 2 * size);
+            labels[size] = label;
+            ids.put(label, size);
+            return size++;
+        }
+    }
+
+    /**
+     * @return the id of the label, or -1 if it has not been interned.
+     */
+    public int getId(String label) {
+        Integer id = ids.get(label);
+        return (id == null) ? -1 : id;
+    }
+
+    public String getLabel(int id) {
+        return labels[id];
+    }
+
+    public int size() {
+        return ids.size();
+    }
+}
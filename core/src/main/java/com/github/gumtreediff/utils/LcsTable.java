@@ -0,0 +1,163 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.utils;
+
+import java.util.Arrays;
+
+/**
+ * The table of the lengths of the longest common subsequences of the prefixes of two sequences,
+ * walked backward from its bottom right cell along a path chosen by the caller.
+ *
+ * When the table has more than {@link #MAX_CELLS} cells (or a given maximum number of cells), only
+ * every k-th row is kept by a first pass, k being at least the square root of the number of rows. The
+ * rows between two kept ones are computed again when the walk reaches them, so the space is in
+ * O(m * sqrt(n)) rather than O(n * m) for two passes of computation. The walk visits the same cells as
+ * with the whole table, which a divide and conquer approach such as Hirschberg's does not guarantee,
+ * so the tie-breaking of the callers is kept.
+ */
+public final class LcsTable {
+
+    /**
+     * The default maximum number of cells of the table computed in a single pass.
+     */
+    public static final int MAX_CELLS = Integer.parseInt(System.getProperty("gt.lcs.mc", "4000000"));
+
+    public static final int UP = 0;
+    public static final int LEFT = 1;
+    public static final int DIAGONAL = 2;
+
+    @FunctionalInterface
+    public interface Equivalence {
+        /**
+         * @return true if the i-th element of the first sequence matches the j-th one of the second.
+         */
+        boolean test(int i, int j);
+    }
+
+    @FunctionalInterface
+    public interface Step {
+        /**
+         * Choose the move from the cell (i, j), i and j being positive. The cells of the rows i and
+         * i - 1 can be read from the table.
+         *
+         * @return {@link #UP}, {@link #LEFT} or {@link #DIAGONAL}.
+         */
+        int next(LcsTable table, int i, int j);
+    }
+
+    private final int rows;
+
+    private final int cols;
+
+    private final Equivalence equivalence;
+
+    // Number of rows between two kept ones.
+    private final int interval;
+
+    // The kept rows 0, interval, 2 * interval... (row 0 excluded) when the table is not computed at once.
+    private int[] checkpoints;
+
+    private final int[] block;
+
+    private int blockFirstRow = -1;
+
+    private LcsTable(int length0, int length1, int maxCells, Equivalence equivalence) {
+        this.rows = length0 + 1;
+        this.cols = length1 + 1;
+        this.equivalence = equivalence;
+        if ((long) rows * cols <= maxCells) {
+            interval = Math.max(1, length0);
+        } else {
+            int sqrt = (int) Math.ceil(Math.sqrt(length0));
+            interval = Math.min(length0, Math.max(sqrt, maxCells / cols - 1));
+            computeCheckpoints();
+        }
+        block = new int[(interval + 1) * cols];
+    }
+
+    /**
+     * Walk the table of the sequences of the given lengths from its bottom right cell, until reaching
+     * its first row or column.
+     */
+    public static void walk(int length0, int length1, Equivalence equivalence, Step step) {
+        walk(length0, length1, MAX_CELLS, equivalence, step);
+    }
+
+    /**
+     * Walk the table of the sequences of the given lengths from its bottom right cell, until reaching
+     * its first row or column, computing it in a single pass only if it has at most maxCells cells.
+     */
+    public static void walk(int length0, int length1, int maxCells, Equivalence equivalence, Step step) {
+        if (length0 == 0 || length1 == 0)
+            return;
+        LcsTable table = new LcsTable(length0, length1, maxCells, equivalence);
+        int i = length0;
+        int j = length1;
+        while (i > 0 && j > 0) {
+            if (i - 1 < table.blockFirstRow || table.blockFirstRow < 0)
+                table.loadBlock((i - 1) / table.interval * table.interval);
+            int move = step.next(table, i, j);
+            if (move != LEFT)
+                i--;
+            if (move != UP)
+                j--;
+        }
+    }
+
+    /**
+     * @return the length of the longest common subsequence of the prefixes of lengths i and j.
+     */
+    public int get(int i, int j) {
+        return block[(i - blockFirstRow) * cols + j];
+    }
+
+    private void computeCheckpoints() {
+        checkpoints = new int[((rows - 1) / interval) * cols];
+        int[] rolling = new int[2 * cols];
+        for (int i = 1; i < rows - 1; i++) {
+            int current = (i % 2) * cols;
+            computeRow(rolling, cols - current, current, i);
+            if (i % interval == 0)
+                System.arraycopy(rolling, current, checkpoints, (i / interval - 1) * cols, cols);
+        }
+    }
+
+    private void loadBlock(int firstRow) {
+        if (firstRow == 0)
+            Arrays.fill(block, 0, cols, 0);
+        else
+            System.arraycopy(checkpoints, (firstRow / interval - 1) * cols, block, 0, cols);
+        int lastRow = Math.min(firstRow + interval, rows - 1);
+        for (int i = firstRow + 1; i <= lastRow; i++)
+            computeRow(block, (i - 1 - firstRow) * cols, (i - firstRow) * cols, i);
+        blockFirstRow = firstRow;
+    }
+
+    private void computeRow(int[] table, int previous, int current, int i) {
+        table[current] = 0;
+        for (int j = 1; j < cols; j++) {
+            if (equivalence.test(i - 1, j - 1))
+                table[current + j] = table[previous + j - 1] + 1;
+            else
+                table[current + j] = Math.max(table[current + j - 1], table[previous + j]);
+        }
+    }
+}
@@ -22,7 +22,9 @@ package com.github.gumtreediff.utils;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.github.gumtreediff.tree.ITree;
 
@@ -31,27 +33,7 @@ public final class StringAlgorithms {
     private StringAlgorithms() {}
 
     public static List<int[]> lcss(String s0, String s1) {
-        int[][] lengths = new int[s0.length() + 1][s1.length() + 1];
-        for (int i = 0; i < s0.length(); i++)
-            for (int j = 0; j < s1.length(); j++)
-                if (s0.charAt(i) == (s1.charAt(j)))
-                    lengths[i + 1][j + 1] = lengths[i][j] + 1;
-                else
-                    lengths[i + 1][j + 1] = Math.max(lengths[i + 1][j], lengths[i][j + 1]);
-
-        List<int[]> indexes = new ArrayList<>();
-
-        for (int x = s0.length(), y = s1.length(); x != 0 && y != 0; ) {
-            if (lengths[x][y] == lengths[x - 1][y]) x--;
-            else if (lengths[x][y] == lengths[x][y - 1]) y--;
-            else {
-                indexes.add(new int[] {x - 1, y - 1});
-                x--;
-                y--;
-            }
-        }
-        Collections.reverse(indexes);
-        return indexes;
+        return lcss(s0.length(), s1.length(), (i, j) -> s0.charAt(i) == s1.charAt(j));
     }
 
     public static List<int[]> hunks(String s0, String s1) {
@@ -100,25 +82,31 @@ public final class StringAlgorithms {
     }
 
     public static List<int[]> lcss(List<ITree> s0, List<ITree> s1) {
-        int[][] lengths = new int[s0.size() + 1][s1.size() + 1];
-        for (int i = 0; i < s0.size(); i++)
-            for (int j = 0; j < s1.size(); j++)
-                if (s0.get(i).hasSameTypeAndLabel(s1.get(j)))
-                    lengths[i + 1][j + 1] = lengths[i][j] + 1;
-                else
-                    lengths[i + 1][j + 1] = Math.max(lengths[i + 1][j], lengths[i][j + 1]);
+        // Compare interned type and label ids rather than the nodes.
+        Map<String, Integer> ids = new HashMap<>();
+        int[] ids0 = new int[s0.size()];
+        int[] ids1 = new int[s1.size()];
+        for (int i = 0; i < ids0.length; i++)
+            ids0[i] = intern(ids, s0.get(i));
+        for (int j = 0; j < ids1.length; j++)
+            ids1[j] = intern(ids, s1.get(j));
+        return lcss(ids0.length, ids1.length, (i, j) -> ids0[i] == ids1[j]);
+    }
 
-        List<int[]> indexes = new ArrayList<>();
+    private static int intern(Map<String, Integer> ids, ITree t) {
+        return ids.computeIfAbsent(t.getType() + ":" + t.getLabel(), k -> ids.size());
+    }
 
-        for (int x = s0.size(), y = s1.size(); x != 0 && y != 0; ) {
-            if (lengths[x][y] == lengths[x - 1][y]) x--;
-            else if (lengths[x][y] == lengths[x][y - 1]) y--;
-            else {
-                indexes.add(new int[] {x - 1, y - 1});
-                x--;
-                y--;
-            }
-        }
+    private static List<int[]> lcss(int length0, int length1, LcsTable.Equivalence equivalence) {
+        List<int[]> indexes = new ArrayList<>();
+        LcsTable.walk(length0, length1, equivalence, (lengths, x, y) -> {
+            if (lengths.get(x, y) == lengths.get(x - 1, y))
+                return LcsTable.UP;
+            else if (lengths.get(x, y) == lengths.get(x, y - 1))
+                return LcsTable.LEFT;
+            indexes.add(new int[] {x - 1, y - 1});
+            return LcsTable.DIAGONAL;
+        });
         Collections.reverse(indexes);
         return indexes;
     }
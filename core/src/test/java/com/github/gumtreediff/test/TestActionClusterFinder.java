@@ -0,0 +1,90 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.test;
+
+import com.github.gumtreediff.actions.ActionClusterFinder;
+import com.github.gumtreediff.actions.ActionGenerator;
+import com.github.gumtreediff.actions.model.*;
+import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestActionClusterFinder {
+
+    @Test
+    public void testClusters() {
+        TreeContext srcCtx = new TreeContext();
+        ITree src = srcCtx.createTree(0, "r", null);
+        srcCtx.setRoot(src);
+        ITree a = srcCtx.createTree(1, "a", null);
+        a.setParentAndUpdateChildren(src);
+        ITree b = srcCtx.createTree(1, "b", null);
+        b.setParentAndUpdateChildren(src);
+        ITree c = srcCtx.createTree(2, "c", null);
+        c.setParentAndUpdateChildren(src);
+        srcCtx.createTree(1, "d", null).setParentAndUpdateChildren(c);
+        srcCtx.validate();
+
+        TreeContext dstCtx = new TreeContext();
+        ITree dst = dstCtx.createTree(0, "r", null);
+        dstCtx.setRoot(dst);
+        ITree x = dstCtx.createTree(2, "x", null);
+        x.setParentAndUpdateChildren(dst);
+        dstCtx.createTree(1, "y", null).setParentAndUpdateChildren(x);
+        ITree a2 = dstCtx.createTree(1, "z", null);
+        a2.setParentAndUpdateChildren(dst);
+        ITree b2 = dstCtx.createTree(1, "z", null);
+        b2.setParentAndUpdateChildren(dst);
+        dstCtx.validate();
+
+        MappingStore ms = new MappingStore();
+        ms.link(src, dst);
+        ms.link(a, a2);
+        ms.link(b, b2);
+        List<Action> actions = new ActionGenerator(src, dst, ms).generate();
+        ActionClusterFinder f = new ActionClusterFinder(srcCtx, dstCtx, actions);
+        List<Set<Action>> clusters = f.getClusters();
+
+        // The inserts of x and y, the updates to z, and the deletes of c and d.
+        assertEquals(3, clusters.size());
+        int total = 0;
+        for (Set<Action> cluster : clusters) {
+            Class<?> type = cluster.iterator().next().getClass();
+            for (Action action : cluster)
+                assertEquals(type, action.getClass());
+            assertEquals(2, cluster.size());
+            total += cluster.size();
+        }
+        assertEquals(actions.size(), total);
+
+        Set<Action> inserts = clusters.get(0);
+        assertTrue(inserts.iterator().next() instanceof Insert);
+        assertEquals(actions.get(0).format(srcCtx), f.getClusterLabel(inserts));
+        assertEquals(x, actions.get(0).getNode());
+    }
+}
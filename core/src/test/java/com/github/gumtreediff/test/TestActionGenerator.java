@@ -93,4 +93,43 @@ public class TestActionGenerator {
         System.out.println(actions);
     }
 
+    @Test
+    public void testWithReorderedChildren() {
+        TreeContext srcCtx = new TreeContext();
+        ITree src = srcCtx.createTree(0, "r", null);
+        srcCtx.setRoot(src);
+        TreeContext dstCtx = new TreeContext();
+        ITree dst = dstCtx.createTree(0, "r", null);
+        dstCtx.setRoot(dst);
+        String[] srcLabels = {"a", "b", "c", "d", "e"};
+        String[] dstLabels = {"b", "c", "d", "a", "f"};
+        for (String l : srcLabels)
+            srcCtx.createTree(1, l, null).setParentAndUpdateChildren(src);
+        for (String l : dstLabels)
+            dstCtx.createTree(1, l, null).setParentAndUpdateChildren(dst);
+        srcCtx.validate();
+        dstCtx.validate();
+        MappingStore ms = new MappingStore();
+        ms.link(src, dst);
+        for (int i = 0; i < 4; i++)
+            ms.link(src.getChild(i), dst.getChild((i + 3) % 4));
+
+        List<Action> actions = new ActionGenerator(src, dst, ms).generate();
+
+        assertEquals(3, actions.size());
+        Move m = (Move) actions.get(0);
+        assertEquals(src.getChild(0), m.getNode());
+        assertEquals(src, m.getParent());
+        assertEquals(4, m.getPosition());
+        Insert i = (Insert) actions.get(1);
+        assertEquals(dst.getChild(4), i.getNode());
+        assertEquals(src, i.getParent());
+        assertEquals(4, i.getPosition());
+        assertEquals(src.getChild(4), actions.get(2).getNode());
+        assertTrue(actions.get(2) instanceof Delete);
+        // The source tree is left untouched.
+        assertEquals("a", src.getChild(0).getLabel());
+        assertEquals(5, src.getChildren().size());
+    }
+
 }
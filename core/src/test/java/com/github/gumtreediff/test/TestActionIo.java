@@ -34,6 +34,9 @@ import org.junit.Test;
 import java.io.IOException;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
 public class TestActionIo {
     private TreeContext src;
     private TreeContext dst;
@@ -71,4 +74,17 @@ public class TestActionIo {
     public void testBasicJsonActions() throws IOException {
         System.out.println(ActionsIoUtils.toJson(src, actions, mappings));
     }
+
+    @Test
+    public void testStreamedActions() throws IOException {
+        Matcher m = Matchers.getInstance().getMatcher(src.getRoot(), dst.getRoot());
+        m.match();
+        MappingStore ms = m.getMappings();
+        List<Action> list = new ActionGenerator(src.getRoot(), dst.getRoot(), ms).generate();
+        ActionGenerator g = new ActionGenerator(src.getRoot(), dst.getRoot(), ms);
+        assertEquals(ActionsIoUtils.toText(src, list, ms).toString(), ActionsIoUtils.toText(src, g, ms).toString());
+        assertEquals(ActionsIoUtils.toXml(src, list, ms).toString(), ActionsIoUtils.toXml(src, g, ms).toString());
+        assertEquals(ActionsIoUtils.toJson(src, list, ms).toString(), ActionsIoUtils.toJson(src, g, ms).toString());
+        assertNull(g.getActions());
+    }
 }
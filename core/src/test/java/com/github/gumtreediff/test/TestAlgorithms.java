@@ -20,12 +20,15 @@
 package com.github.gumtreediff.test;
 
 import com.github.gumtreediff.utils.HungarianAlgorithm;
+import com.github.gumtreediff.utils.LcsTable;
 import com.github.gumtreediff.utils.StringAlgorithms;
 import org.junit.Test;
 import static org.junit.Assert.assertThat;
 import static org.hamcrest.CoreMatchers.*;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 public class TestAlgorithms {
 
@@ -40,6 +43,57 @@ public class TestAlgorithms {
         assertThat(indexes, hasItem(new int[] {5, 4}));
     }
 
+    @Test
+    public void testLcssWithCheckpoints() {
+        Random random = new Random(42);
+        for (int n = 0; n < 200; n++)
+            assertLcss(randomString(random, random.nextInt(60)), randomString(random, random.nextInt(60)));
+        // Tables larger than LcsTable.MAX_CELLS only keep some rows.
+        for (int n = 0; n < 3; n++) {
+            String s0 = randomString(random, 2000 + random.nextInt(1000));
+            String s1 = randomString(random, 2000 + random.nextInt(1000));
+            assertThat((long) (s0.length() + 1) * (s1.length() + 1) > LcsTable.MAX_CELLS, is(true));
+            assertLcss(s0, s1);
+        }
+    }
+
+    private static void assertLcss(String s0, String s1) {
+        List<int[]> expected = fullLcss(s0, s1);
+        List<int[]> actual = StringAlgorithms.lcss(s0, s1);
+        assertThat(actual.size(), is(expected.size()));
+        for (int i = 0; i < expected.size(); i++)
+            assertThat(actual.get(i), is(expected.get(i)));
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < length; i++)
+            b.append((char) ('a' + random.nextInt(4)));
+        return b.toString();
+    }
+
+    // The traceback of the whole table.
+    private static List<int[]> fullLcss(String s0, String s1) {
+        int[][] lengths = new int[s0.length() + 1][s1.length() + 1];
+        for (int i = 0; i < s0.length(); i++)
+            for (int j = 0; j < s1.length(); j++)
+                if (s0.charAt(i) == s1.charAt(j))
+                    lengths[i + 1][j + 1] = lengths[i][j] + 1;
+                else
+                    lengths[i + 1][j + 1] = Math.max(lengths[i + 1][j], lengths[i][j + 1]);
+        List<int[]> indexes = new ArrayList<>();
+        for (int x = s0.length(), y = s1.length(); x != 0 && y != 0; ) {
+            if (lengths[x][y] == lengths[x - 1][y]) x--;
+            else if (lengths[x][y] == lengths[x][y - 1]) y--;
+            else {
+                indexes.add(0, new int[] {x - 1, y - 1});
+                x--;
+                y--;
+            }
+        }
+        return indexes;
+    }
+
     @Test
     public void testLcs() {
         String lcs = StringAlgorithms.lcs("FUTUR", "CHUTE");
@@ -0,0 +1,152 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.test;
+
+import com.github.gumtreediff.actions.ActionGenerator;
+import com.github.gumtreediff.actions.model.Action;
+import com.github.gumtreediff.matchers.Mapping;
+import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.matchers.Matcher;
+import com.github.gumtreediff.matchers.CompositeMatchers;
+import com.github.gumtreediff.tree.CompactTree;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
+import com.github.gumtreediff.tree.TreeUtils;
+import com.github.gumtreediff.utils.Pair;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class TestCompactTree {
+
+    @Test
+    public void testSameStructureAndMetrics() {
+        TreeContext ctx = TreeLoader.load("/Dummy_big.xml");
+        TreeContext compact = ctx.compact();
+        assertTrue(compact.getRoot() instanceof CompactTree);
+
+        List<ITree> expected = TreeUtils.postOrder(ctx.getRoot());
+        List<ITree> actual = TreeUtils.postOrder(compact.getRoot());
+        assertEquals(expected.size(), actual.size());
+        int i = 0;
+        for (ITree t : compact.getRoot().postOrder()) {
+            ITree e = expected.get(i);
+            assertSame(actual.get(i), t);
+            assertEquals(e.toShortString(), t.toShortString());
+            assertEquals(e.getId(), t.getId());
+            assertEquals(e.getHash(), t.getHash());
+            assertEquals(e.getSize(), t.getSize());
+            assertEquals(e.getHeight(), t.getHeight());
+            assertEquals(e.getDepth(), t.getDepth());
+            assertEquals(e.positionInParent(), t.positionInParent());
+            assertEquals(e.getDescendants().size(), t.getDescendants().size());
+            i++;
+        }
+        assertEquals(expected.size(), i);
+        assertTrue(ctx.getRoot().isIsomorphicTo(compact.getRoot()));
+    }
+
+    @Test
+    public void testIndexedChildren() {
+        TreeContext ctx = TreeLoader.load("/Dummy_big.xml");
+        TreeContext compact = ctx.compact();
+        List<ITree> expected = TreeUtils.preOrder(ctx.getRoot());
+        List<ITree> actual = TreeUtils.preOrder(compact.getRoot());
+        for (int i = 0; i < expected.size(); i++) {
+            ITree t = actual.get(i);
+            assertEquals(expected.get(i).getChildren().size(), t.getChildren().size());
+            for (int c = 0; c < t.getChildren().size(); c++) {
+                ITree child = t.getChild(c);
+                assertSame(t, child.getParent());
+                assertSame(child, t.getChildren().get(c));
+                assertEquals(c, t.getChildPosition(child));
+                assertEquals(expected.get(i).getChild(c).toShortString(), child.toShortString());
+            }
+            assertEquals(-1, t.getChildPosition(compact.getRoot()));
+        }
+    }
+
+    @Test
+    public void testRefresh() {
+        TreeContext ctx = TreeLoader.load("/Dummy_v0.xml");
+        TreeContext compact = ctx.compact();
+        for (ITree t : compact.getRoot().preOrder()) {
+            t.setSize(ITree.NO_VALUE);
+            t.setHeight(ITree.NO_VALUE);
+            t.setHash(ITree.NO_VALUE);
+        }
+        compact.validate();
+        assertEquals(ctx.getRoot().getSize(), compact.getRoot().getSize());
+        assertEquals(ctx.getRoot().getHeight(), compact.getRoot().getHeight());
+        assertEquals(ctx.getRoot().getHash(), compact.getRoot().getHash());
+    }
+
+    @Test
+    public void testDeepCopyIsMutable() {
+        TreeContext compact = TreeLoader.load("/Dummy_v0.xml").compact();
+        ITree root = compact.getRoot();
+        try {
+            root.addChild(root.getChild(0));
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        ITree copy = root.deepCopy();
+        assertFalse(copy instanceof CompactTree);
+        assertTrue(copy.isIsomorphicTo(root));
+        copy.getChildren().remove(0);
+        assertEquals(2, root.getChildren().size());
+    }
+
+    @Test
+    public void testMatchAndGenerateActions() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getActionPair();
+        ITree src = trees.getFirst().getRoot();
+        ITree dst = trees.getSecond().getRoot();
+        ITree csrc = trees.getFirst().compact().getRoot();
+        ITree cdst = trees.getSecond().compact().getRoot();
+
+        Matcher m = new CompositeMatchers.ClassicGumtree(src, dst, new MappingStore());
+        m.match();
+        Matcher cm = new CompositeMatchers.ClassicGumtree(csrc, cdst, new MappingStore());
+        cm.match();
+        assertEquals(ids(m.getMappings()), ids(cm.getMappings()));
+
+        ActionGenerator g = new ActionGenerator(src, dst, m.getMappings());
+        List<Action> actions = g.generate();
+        ActionGenerator cg = new ActionGenerator(csrc, cdst, cm.getMappings());
+        List<Action> cactions = cg.generate();
+        assertEquals(actions.size(), cactions.size());
+        for (int i = 0; i < actions.size(); i++)
+            assertEquals(actions.get(i).toString(), cactions.get(i).toString());
+    }
+
+    private static Set<Pair<Integer, Integer>> ids(MappingStore mappings) {
+        Set<Pair<Integer, Integer>> ids = new HashSet<>();
+        for (Mapping m : mappings)
+            ids.add(new Pair<>(m.getFirst().getId(), m.getSecond().getId()));
+        return ids;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.test;
+
+import com.github.gumtreediff.actions.ActionGenerator;
+import com.github.gumtreediff.actions.model.Action;
+import com.github.gumtreediff.diff.DiffEngine;
+import com.github.gumtreediff.gen.Generators;
+import com.github.gumtreediff.gen.Register;
+import com.github.gumtreediff.io.TreeIoUtils;
+import com.github.gumtreediff.matchers.Matcher;
+import com.github.gumtreediff.matchers.Matchers;
+import com.github.gumtreediff.tree.TreeContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class TestDiffEngine {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private boolean installed;
+
+    @Before
+    public void installXmlGenerator() {
+        Generators generators = Generators.getInstance();
+        if (generators.findByClass(TreeIoUtils.XmlInternalGenerator.class) == null) {
+            generators.install(TreeIoUtils.XmlInternalGenerator.class,
+                    TreeIoUtils.XmlInternalGenerator.class.getAnnotation(Register.class));
+            installed = true;
+        }
+    }
+
+    @After
+    public void uninstallXmlGenerator() {
+        if (installed)
+            Generators.getInstance().uninstall(TreeIoUtils.XmlInternalGenerator.class);
+    }
+
+    @Test
+    public void testBatchDiff() throws Exception {
+        String[] names = {"action", "Dummy", "zs", "cd"};
+        List<DiffEngine.Input> inputs = new ArrayList<>();
+        Map<String, List<String>> expected = new HashMap<>();
+        for (String name : names) {
+            TreeContext src = TreeLoader.load("/" + name + "_v0.xml");
+            TreeContext dst = TreeLoader.load("/" + name + "_v1.xml");
+            File srcFile = folder.newFile(name + "_v0.gxml");
+            File dstFile = folder.newFile(name + "_v1.gxml");
+            TreeIoUtils.toXml(src).writeTo(srcFile);
+            TreeIoUtils.toXml(dst).writeTo(dstFile);
+            inputs.add(new DiffEngine.Input(srcFile.getPath(), dstFile.getPath()));
+
+            Matcher m = Matchers.getInstance().getMatcher(src.getRoot(), dst.getRoot());
+            m.match();
+            expected.put(srcFile.getPath(), toStrings(
+                    new ActionGenerator(src.getRoot(), dst.getRoot(), m.getMappings()).generate()));
+        }
+        String missing = new File(folder.getRoot(), "missing.gxml").getPath();
+        inputs.add(new DiffEngine.Input(missing, missing));
+
+        List<DiffEngine.Result> results = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try (DiffEngine engine = new DiffEngine(null, "xml", pool, 2)) {
+            engine.diff(inputs, results::add);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(inputs.size(), results.size());
+        for (DiffEngine.Result r : results) {
+            if (r.getInput().getSrc().equals(missing)) {
+                assertFalse(r.isSuccessful());
+                assertTrue(r.getError() instanceof UncheckedIOException);
+            } else {
+                assertTrue(r.isSuccessful());
+                assertEquals(expected.get(r.getInput().getSrc()), toStrings(r.getActions()));
+            }
+        }
+    }
+
+    private static List<String> toStrings(List<Action> actions) {
+        List<String> strings = new ArrayList<>();
+        for (Action a : actions)
+            strings.add(a.toString());
+        return strings;
+    }
+}
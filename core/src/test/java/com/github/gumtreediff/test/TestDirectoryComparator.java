@@ -0,0 +1,91 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.test;
+
+import com.github.gumtreediff.io.DirectoryComparator;
+import com.github.gumtreediff.utils.Pair;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class TestDirectoryComparator {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCompare() throws Exception {
+        File src = folder.newFolder("src");
+        File dst = folder.newFolder("dst");
+        write(src, "same.txt", "foo");
+        write(dst, "same.txt", "foo");
+        write(src, "sub/modified.txt", "foo");
+        write(dst, "sub/modified.txt", "bar");
+        write(src, "resized.txt", "foo");
+        write(dst, "resized.txt", "foobar");
+        write(src, "deleted.txt", "foo");
+        write(dst, "sub/added.txt", "foo");
+        byte[] big = new byte[1024 * 1024];
+        Arrays.fill(big, (byte) 'a');
+        Files.write(new File(src, "big.txt").toPath(), big);
+        Files.write(new File(dst, "big_same.txt").toPath(), big);
+        Files.write(new File(src, "big_same.txt").toPath(), big);
+        big[big.length - 1] = 'b';
+        Files.write(new File(dst, "big.txt").toPath(), big);
+
+        DirectoryComparator comparator = new DirectoryComparator(src.getPath(), dst.getPath());
+        Set<String> published = ConcurrentHashMap.newKeySet();
+        comparator.compare(new DirectoryComparator.Listener() {
+            @Override
+            public void modified(File s, File d) {
+                published.add(d.getName());
+            }
+        });
+
+        Set<String> modified = new HashSet<>();
+        for (Pair<File, File> p : comparator.getModifiedFiles()) {
+            assertEquals(p.getFirst().getName(), p.getSecond().getName());
+            modified.add(p.getFirst().getName());
+        }
+        assertEquals(new HashSet<>(Arrays.asList("modified.txt", "resized.txt", "big.txt")), modified);
+        assertEquals(modified, published);
+        assertEquals(new HashSet<>(Arrays.asList(new File(src, "deleted.txt"))), comparator.getDeletedFiles());
+        assertEquals(new HashSet<>(Arrays.asList(new File(dst, "sub/added.txt"))), comparator.getAddedFiles());
+        assertTrue(comparator.hasChanged("big.txt", "big.txt"));
+        assertFalse(comparator.hasChanged("big_same.txt", "big_same.txt"));
+    }
+
+    private static void write(File root, String path, String content) throws Exception {
+        File f = new File(root, path);
+        f.getParentFile().mkdirs();
+        Files.write(f.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
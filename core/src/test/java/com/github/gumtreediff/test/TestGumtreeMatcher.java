@@ -23,11 +23,19 @@ package com.github.gumtreediff.test;
 import com.github.gumtreediff.matchers.CompositeMatchers;
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.Matcher;
+import com.github.gumtreediff.matchers.MatchingProfile;
+import com.github.gumtreediff.matchers.SimilarityMetrics;
 import com.github.gumtreediff.matchers.heuristic.gt.AbstractBottomUpMatcher;
+import com.github.gumtreediff.matchers.heuristic.gt.GreedyBottomUpMatcher;
 import com.github.gumtreediff.matchers.heuristic.gt.GreedySubtreeMatcher;
 import com.github.gumtreediff.utils.Pair;
+import com.github.gumtreediff.tree.ITree;
 import com.github.gumtreediff.tree.TreeContext;
 import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
 import static org.junit.Assert.*;
 
 public class TestGumtreeMatcher {
@@ -66,4 +74,94 @@ public class TestGumtreeMatcher {
         assertEquals(6, m.getMappingsAsSet().size());
     }
 
+    @Test
+    public void testSimilarityMetrics() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getActionPair();
+        ITree src = trees.getFirst().getRoot();
+        ITree dst = trees.getSecond().getRoot();
+        Matcher m = new CompositeMatchers.ClassicGumtree(src, dst, new MappingStore());
+        m.match();
+        MappingStore ms = m.getMappings();
+
+        SimilarityMetrics metrics = new SimilarityMetrics(src, dst, ms);
+        SimilarityMetrics subtreeMetrics = new SimilarityMetrics(src.getChild(0), dst.getChild(0), ms);
+        for (ITree s : src.preOrder())
+            for (ITree d : dst.preOrder()) {
+                int expected = numberOfCommonDescendants(s, d, ms);
+                assertEquals(expected, metrics.numberOfCommonDescendants(s, d));
+                assertEquals(expected, subtreeMetrics.numberOfCommonDescendants(s, d));
+            }
+        double common = numberOfCommonDescendants(src, dst, ms);
+        double jaccard = common / (src.getDescendants().size() + dst.getDescendants().size() - common);
+        assertEquals(jaccard, metrics.jaccardSimilarity(src, dst), 0D);
+    }
+
+    @Test
+    public void testProfile() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getActionPair();
+        ITree src = trees.getFirst().getRoot();
+        ITree dst = trees.getSecond().getRoot();
+        GreedySubtreeMatcher.MIN_HEIGHT = 1;
+        AbstractBottomUpMatcher.SIZE_THRESHOLD = 1000;
+        Matcher m = new CompositeMatchers.ClassicGumtree(src, dst, new MappingStore());
+        m.match();
+        Matcher pm = new CompositeMatchers.ClassicGumtree(src, dst, new MappingStore());
+        MatchingProfile profile = new MatchingProfile();
+        pm.match(profile);
+        assertEquals(m.getMappingsAsSet(), pm.getMappingsAsSet());
+
+        MatchingProfile.Phase all = profile.getPhase("ClassicGumtree");
+        MatchingProfile.Phase subtree = profile.getPhase("ClassicGumtree/GreedySubtreeMatcher");
+        MatchingProfile.Phase bottomUp = profile.getPhase("ClassicGumtree/GreedyBottomUpMatcher");
+        MatchingProfile.Phase zs = profile.getPhase("ClassicGumtree/GreedyBottomUpMatcher/ZsMatcher");
+        assertEquals(4, profile.getPhases().size());
+        assertEquals(1, all.getRuns());
+        assertEquals(pm.getMappings().size(), all.getMappings());
+        assertEquals(all.getMappings(), subtree.getMappings() + bottomUp.getMappings());
+        assertTrue(subtree.getCandidates() > 0);
+        assertTrue(bottomUp.getCandidates() > 0);
+        assertTrue(zs.getRuns() > 0);
+        assertTrue(zs.getCandidates() > 0);
+        assertTrue(all.getNanos() >= subtree.getNanos() + bottomUp.getNanos());
+        assertTrue(bottomUp.getNanos() >= zs.getNanos());
+    }
+
+    @Test
+    public void testParallelBottomUp() {
+        GreedySubtreeMatcher.MIN_HEIGHT = 1;
+        AbstractBottomUpMatcher.SIZE_THRESHOLD = 1000;
+        for (String name : new String[] {"action", "Dummy", "cd", "gumtree"}) {
+            TreeContext srcCtx = TreeLoader.load("/" + name + "_v0.xml");
+            TreeContext dstCtx = TreeLoader.load("/" + name + "_v1.xml");
+            ITree src = srcCtx.getRoot();
+            ITree dst = dstCtx.getRoot();
+            MatchingProfile serialProfile = new MatchingProfile();
+            MappingStore serial = bottomUp(src, dst, false, serialProfile);
+            MatchingProfile parallelProfile = new MatchingProfile();
+            MappingStore parallel = bottomUp(src, dst, true, parallelProfile);
+            assertEquals(name, serial.asSet(), parallel.asSet());
+            MatchingProfile.Phase serialZs = serialProfile.getPhase("GreedyBottomUpMatcher/ZsMatcher");
+            MatchingProfile.Phase parallelZs = parallelProfile.getPhase("GreedyBottomUpMatcher/ZsMatcher");
+            assertEquals(name, serialZs.getRuns(), parallelZs.getRuns());
+            assertEquals(name, serialZs.getMappings(), parallelZs.getMappings());
+        }
+    }
+
+    private static MappingStore bottomUp(ITree src, ITree dst, boolean parallel, MatchingProfile profile) {
+        MappingStore mappings = new MappingStore();
+        new GreedySubtreeMatcher(src, dst, mappings).match();
+        GreedyBottomUpMatcher m = new GreedyBottomUpMatcher(src, dst, mappings);
+        m.setParallel(parallel);
+        m.match(profile);
+        return mappings;
+    }
+
+    private static int numberOfCommonDescendants(ITree src, ITree dst, MappingStore ms) {
+        Set<ITree> dstDescendants = new HashSet<>(dst.getDescendants());
+        int common = 0;
+        for (ITree t : src.getDescendants())
+            if (dstDescendants.contains(ms.getDst(t)))
+                common++;
+        return common;
+    }
 }
@@ -0,0 +1,92 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.test;
+
+import com.github.gumtreediff.matchers.CompositeMatchers;
+import com.github.gumtreediff.matchers.IntMappingStore;
+import com.github.gumtreediff.matchers.Mapping;
+import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.matchers.Matcher;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
+import com.github.gumtreediff.utils.Pair;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class TestMappingStore {
+
+    @Test
+    public void testIntMappingStore() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getDummyPair();
+        ITree src = trees.getFirst().getRoot();
+        ITree dst = trees.getSecond().getRoot();
+        IntMappingStore ms = new IntMappingStore(src, dst);
+        assertEquals(0, ms.size());
+        assertFalse(ms.hasSrc(src));
+
+        ms.link(src, dst);
+        ms.link(src.getChild(0), dst.getChild(0));
+        assertEquals(2, ms.size());
+        assertTrue(ms.has(src, dst));
+        assertSame(dst.getChild(0), ms.getDst(src.getChild(0)));
+        assertSame(src, ms.getSrc(dst));
+        assertEquals(dst.getId(), ms.getDstId(src.getId()));
+        assertFalse(ms.isMatchable(src, dst.getChild(1)));
+        assertEquals(2, ms.asSet().size());
+
+        MappingStore copy = ms.copy();
+        ms.unlink(src, dst);
+        assertEquals(1, ms.size());
+        assertFalse(ms.hasSrc(src));
+        assertFalse(ms.hasDst(dst));
+        assertEquals(IntMappingStore.NO_MAPPING, ms.getDstId(src.getId()));
+        assertTrue(copy.has(src, dst));
+
+        ITree foreign = src.deepCopy();
+        assertFalse(ms.hasSrc(foreign));
+        try {
+            ms.link(foreign, dst);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSameMappingsAsHashStore() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getActionPair();
+        ITree src = trees.getFirst().getRoot();
+        ITree dst = trees.getSecond().getRoot();
+        Matcher m = new CompositeMatchers.ClassicGumtree(src, dst, new MappingStore());
+        m.match();
+        Matcher im = new CompositeMatchers.ClassicGumtree(src, dst, new IntMappingStore(src, dst));
+        im.match();
+        assertEquals(m.getMappingsAsSet(), new HashSet<>(im.getMappingsAsSet()));
+
+        Set<Mapping> visited = new HashSet<>();
+        im.getMappings().forEachMapping((s, d) -> visited.add(new Mapping(s, d)));
+        assertEquals(m.getMappingsAsSet(), visited);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.test;
+
+import com.github.gumtreediff.matchers.CompositeMatcher;
+import com.github.gumtreediff.matchers.CompositeMatchers;
+import com.github.gumtreediff.matchers.Mapping;
+import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.matchers.Matcher;
+import com.github.gumtreediff.matchers.MatchingBudget;
+import com.github.gumtreediff.matchers.heuristic.gt.GreedySubtreeMatcher;
+import com.github.gumtreediff.matchers.optimal.rted.RtedMatcher;
+import com.github.gumtreediff.matchers.optimal.zs.ZsMatcher;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
+import com.github.gumtreediff.utils.Pair;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestMatchingBudget {
+
+    @Test
+    public void testUnlimitedBudget() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getGumtreePair();
+        ITree src = trees.getFirst().getRoot();
+        ITree dst = trees.getSecond().getRoot();
+        Matcher expected = new CompositeMatchers.ClassicGumtree(src, dst, new MappingStore());
+        expected.match();
+        Matcher m = new CompositeMatchers.ClassicGumtree(src, dst, new MappingStore());
+        m.setBudget(MatchingBudget.ofTime(1, TimeUnit.HOURS));
+        m.match();
+        assertEquals(expected.getMappingsAsSet(), m.getMappingsAsSet());
+        assertTrue(m.getBudget().getCandidates() > 0);
+        assertFalse(m.getBudget().isExhausted());
+    }
+
+    @Test
+    public void testExhaustedBudget() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getGumtreePair();
+        ITree src = trees.getFirst().getRoot();
+        ITree dst = trees.getSecond().getRoot();
+        CompositeMatcher m = new CompositeMatchers.ClassicGumtree(src, dst, new MappingStore());
+        m.setBudget(MatchingBudget.ofTime(0, TimeUnit.NANOSECONDS));
+        m.match();
+        assertTrue(m.getBudget().isExhausted());
+        assertEquals(0, m.getMappings().size());
+
+        Matcher subtrees = new GreedySubtreeMatcher(src, dst, new MappingStore());
+        subtrees.match();
+        m = new CompositeMatchers.ClassicGumtree(src, dst, new MappingStore());
+        m.setBudget(MatchingBudget.ofTime(0, TimeUnit.NANOSECONDS));
+        m.setFallback(GreedySubtreeMatcher::new);
+        m.match();
+        assertEquals(subtrees.getMappingsAsSet(), m.getMappingsAsSet());
+    }
+
+    @Test
+    public void testCandidatesBudget() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getGumtreePair();
+        ITree src = trees.getFirst().getRoot();
+        ITree dst = trees.getSecond().getRoot();
+        Matcher subtrees = new GreedySubtreeMatcher(src, dst, new MappingStore());
+        subtrees.match();
+        Matcher complete = new CompositeMatchers.ClassicGumtree(src, dst, new MappingStore());
+        complete.match();
+
+        // Enough for the subtree phase, which keeps its mappings, but not for the bottom-up one.
+        CompositeMatcher m = new CompositeMatchers.ClassicGumtree(src, dst, new MappingStore());
+        m.setBudget(new MatchingBudget(MatchingBudget.UNLIMITED, TimeUnit.NANOSECONDS,
+                subtrees.getCandidates(), MatchingBudget.UNLIMITED));
+        m.match();
+        assertTrue(m.getBudget().isExhausted());
+        for (Mapping mapping : subtrees.getMappings())
+            assertTrue(m.getMappings().has(mapping.getFirst(), mapping.getSecond()));
+        assertTrue(m.getMappings().size() < complete.getMappings().size());
+    }
+
+    @Test
+    public void testOptimalMatchers() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getZsSlidePair();
+        ITree src = trees.getFirst().getRoot();
+        ITree dst = trees.getSecond().getRoot();
+        MatchingBudget cells = new MatchingBudget(MatchingBudget.UNLIMITED, TimeUnit.NANOSECONDS,
+                MatchingBudget.UNLIMITED, 10);
+        MatchingBudget time = MatchingBudget.ofTime(0, TimeUnit.NANOSECONDS);
+        for (MatchingBudget budget : new MatchingBudget[] {cells, time}) {
+            Matcher zs = new ZsMatcher(src, dst, new MappingStore());
+            zs.setBudget(budget);
+            zs.match();
+            assertEquals(0, zs.getMappings().size());
+            Matcher rted = new RtedMatcher(src, dst, new MappingStore());
+            rted.setBudget(budget);
+            rted.match();
+            assertEquals(0, rted.getMappings().size());
+        }
+    }
+
+    @Test
+    public void testBandedZsCells() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getActionPair();
+        ITree src = trees.getFirst().getRoot();
+        ITree dst = trees.getSecond().getRoot();
+        int band = 3;
+        ZsMatcher expected = new ZsMatcher(src, dst, new MappingStore());
+        expected.setMaxDistance(band);
+        expected.match();
+
+        // The budget allows the band of the tree distance matrix, but not the complete matrix.
+        long cells = (long) (src.getSize() + 1) * (2 * band + 1);
+        assertTrue(cells < (long) (src.getSize() + 1) * (dst.getSize() + 1));
+        ZsMatcher m = new ZsMatcher(src, dst, new MappingStore());
+        m.setMaxDistance(band);
+        m.setBudget(new MatchingBudget(MatchingBudget.UNLIMITED, TimeUnit.NANOSECONDS,
+                MatchingBudget.UNLIMITED, cells));
+        m.match();
+        assertTrue(m.getMappings().size() > 0);
+        assertEquals(expected.getMappingsAsSet(), m.getMappingsAsSet());
+    }
+}
@@ -23,12 +23,34 @@ package com.github.gumtreediff.test;
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.Matcher;
 import com.github.gumtreediff.matchers.OptimizedVersions;
+import com.github.gumtreediff.matchers.heuristic.mtdiff.hungarian.DoubleMatrix;
+import com.github.gumtreediff.matchers.heuristic.mtdiff.hungarian.Hungarian;
+import com.github.gumtreediff.matchers.heuristic.mtdiff.similarity.NGramCalculator;
 import com.github.gumtreediff.matchers.optimal.zs.ZsMatcher;
+import com.github.gumtreediff.matchers.optimizations.IdenticalSubtreeMatcherThetaA;
 import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.utils.LabelTable;
 import com.github.gumtreediff.utils.Pair;
 import com.github.gumtreediff.tree.TreeContext;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -49,4 +71,166 @@ public class TestMtDiffMatcher {
         assertTrue(matcher.getMappings().has(src.getChild(1).getChild(2), dst.getChild(0).getChild(1).getChild(2)));
     }
 
+    @Test
+    public void testWithPool() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getGumtreePair();
+        ITree src = trees.getFirst().getRoot();
+        ITree dst = trees.getSecond().getRoot();
+        Matcher sequential = new OptimizedVersions.MtDiff(src, dst, new MappingStore());
+        sequential.match();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            Matcher parallel = new OptimizedVersions.MtDiff(src, dst, new MappingStore(), pool);
+            parallel.match();
+            assertEquals(sequential.getMappingsAsSet(), parallel.getMappingsAsSet());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getGumtreePair();
+        ITree src = trees.getFirst().getRoot();
+        ITree dst = trees.getSecond().getRoot();
+        Matcher identical = new IdenticalSubtreeMatcherThetaA(src, dst, new MappingStore());
+        identical.match();
+
+        // The only worker is busy, so the tasks of MTDIFF never start.
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        try {
+            OptimizedVersions.MtDiff matcher = new OptimizedVersions.MtDiff(src, dst, new MappingStore(), executor);
+            matcher.setTimeout(10, TimeUnit.MILLISECONDS);
+            matcher.match();
+            assertTrue(matcher.getMappingsAsSet().containsAll(identical.getMappingsAsSet()));
+        } finally {
+            latch.countDown();
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLargeMatrices() {
+        Random random = new Random(1);
+        double[][] costs = new double[30][40];
+        for (double[] row : costs)
+            for (int j = 0; j < row.length; j++)
+                row[j] = random.nextInt(100);
+        int[] expected = Hungarian.assign(DoubleMatrix.newMatrix(costs));
+
+        // Hungarian works on a dense copy of mapped and sparse matrices.
+        DoubleMatrix mappedCosts = DoubleMatrix.newMatrix(30, 40, 0, 1200, 0);
+        DoubleMatrix sparseCosts = DoubleMatrix.newMatrix(30, 40, 0, 1, 0);
+        for (int i = 0; i < costs.length; i++)
+            for (int j = 0; j < costs[i].length; j++) {
+                mappedCosts.set(i, j, costs[i][j]);
+                sparseCosts.set(i, j, costs[i][j]);
+            }
+        assertArrayEquals(expected, Hungarian.assign(mappedCosts));
+        assertArrayEquals(expected, Hungarian.assign(sparseCosts));
+        assertEquals(costs[29][39], mappedCosts.get(29, 39), 0);
+        mappedCosts.finish();
+        sparseCosts.finish();
+
+        DoubleMatrix sparse = DoubleMatrix.newMatrix(1000, 1000, Float.MIN_VALUE, 10, 0);
+        sparse.set(3, 7, 0.5);
+        sparse.set(999, 0, 2);
+        sparse.set(999, 0, Float.MIN_VALUE);
+        assertEquals(0.5, sparse.get(3, 7), 0);
+        assertEquals(Float.MIN_VALUE, sparse.get(999, 0), 0);
+        assertEquals(Float.MIN_VALUE, sparse.get(500, 500), 0);
+        sparse.finish();
+
+        DoubleMatrix mapped = DoubleMatrix.newMatrix(100, 100, 42, 10000, 0);
+        assertEquals(42, mapped.get(99, 99), 0);
+        mapped.set(50, 50, 1);
+        assertEquals(1, mapped.get(50, 50), 0);
+        mapped.finish();
+    }
+
+    @Test
+    public void testMatchingWithLargeMatrices() throws Exception {
+        Path tmp = Paths.get(System.getProperty("java.io.tmpdir"));
+        List<Pair<TreeContext, TreeContext>> pairs = Arrays.asList(TreeLoader.getZsCustomPair(),
+                TreeLoader.getActionPair(), TreeLoader.getGumtreePair(), TreeLoader.getDummyPair());
+        for (Pair<TreeContext, TreeContext> trees : pairs) {
+            ITree src = trees.getFirst().getRoot();
+            ITree dst = trees.getSecond().getRoot();
+            Matcher dense = new OptimizedVersions.MtDiff(src, dst, new MappingStore(), null);
+            dense.match();
+            // The similarity scores are sparse or mapped, the temporary files being deleted.
+            OptimizedVersions.MtDiff large = new OptimizedVersions.MtDiff(src, dst, new MappingStore(), null);
+            large.setMaxDenseCells(0);
+            Set<Path> files = matrixFiles(tmp);
+            large.match();
+            assertEquals(dense.getMappingsAsSet(), large.getMappingsAsSet());
+            assertEquals(files, matrixFiles(tmp));
+        }
+    }
+
+    private static Set<Path> matrixFiles(Path directory) throws IOException {
+        Set<Path> files = new HashSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "gumtree-matrix*")) {
+            for (Path file : stream)
+                files.add(file);
+        }
+        return files;
+    }
+
+    @Test
+    public void testNGramSimilarity() {
+        Random random = new Random(42);
+        String[] labels = new String[200];
+        for (int i = 0; i < labels.length; i++) {
+            char[] chars = new char[random.nextInt(12)];
+            for (int j = 0; j < chars.length; j++)
+                chars[j] = (char) ((j % 3 == 2) ? random.nextInt(0x10000) : 'a' + random.nextInt(4));
+            labels[i] = new String(chars);
+        }
+        LabelTable table = new LabelTable();
+        for (int n = 1; n <= 6; n++) {
+            NGramCalculator shared = new NGramCalculator(n, 1, 1, table);
+            NGramCalculator own = new NGramCalculator(n);
+            for (int k = 0; k < 3; k++) {
+                for (String first : labels)
+                    for (String second : labels) {
+                        float expected = referenceSimilarity(first, second, n);
+                        assertEquals(expected, shared.similarity(first, second), 0f);
+                        assertEquals(expected, own.similarity(first, second), 0f);
+                    }
+                own.clear();
+            }
+        }
+        for (String label : labels)
+            if (!label.isEmpty())
+                assertEquals(label, table.getLabel(table.getId(label)));
+    }
+
+    private static float referenceSimilarity(String first, String second, int n) {
+        if (first.equals(second))
+            return 1.0f;
+        if (first.isEmpty() || second.isEmpty())
+            return 0.0f;
+        int m = Math.min(n, Math.min(first.length(), second.length()));
+        Set<String> firstNGrams = new HashSet<>();
+        for (int i = 0; i < first.length() - m + 1; i++)
+            firstNGrams.add(first.substring(i, i + m));
+        Set<String> secondNGrams = new HashSet<>();
+        for (int i = 0; i < second.length() - m + 1; i++)
+            secondNGrams.add(second.substring(i, i + m));
+        int firstSize = firstNGrams.size();
+        int secondSize = secondNGrams.size();
+        firstNGrams.retainAll(secondNGrams);
+        return 2.0f * firstNGrams.size() / (firstSize + secondSize);
+    }
+
 }
@@ -22,7 +22,9 @@ package com.github.gumtreediff.test;
 
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.Matcher;
+import com.github.gumtreediff.matchers.optimal.rted.RtedAlgorithm;
 import com.github.gumtreediff.matchers.optimal.rted.RtedMatcher;
+import com.github.gumtreediff.matchers.optimal.zs.ZsMatcher;
 import com.github.gumtreediff.tree.ITree;
 import com.github.gumtreediff.utils.Pair;
 import com.github.gumtreediff.tree.TreeContext;
@@ -30,6 +32,7 @@ import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class TestRtedMatcher {
 
@@ -48,4 +51,50 @@ public class TestRtedMatcher {
         assertTrue(matcher.getMappings().has(src.getChild(0).getChild(2), dst.getChild(2)));
     }
 
+    @Test
+    public void testWorkspaceReuse() {
+        RtedAlgorithm.Workspace workspace = new RtedAlgorithm.Workspace();
+        Pair<TreeContext, TreeContext> small = TreeLoader.getZsSlidePair();
+        Pair<TreeContext, TreeContext> large = TreeLoader.getActionPair();
+        ITree src = small.getFirst().getRoot();
+        ITree dst = small.getSecond().getRoot();
+        new RtedMatcher(src, dst, new MappingStore(), workspace).match();
+        new RtedMatcher(large.getFirst().getRoot(), large.getSecond().getRoot(),
+                new MappingStore(), workspace).match();
+        long memory = workspace.getMemory();
+        assertTrue(memory > 0);
+
+        Matcher reusing = new RtedMatcher(src, dst, new MappingStore(), workspace);
+        reusing.match();
+        Matcher fresh = new RtedMatcher(src, dst, new MappingStore(), new RtedAlgorithm.Workspace());
+        fresh.match();
+        assertEquals(fresh.getMappingsAsSet(), reusing.getMappingsAsSet());
+        assertEquals(memory, workspace.getMemory());
+    }
+
+    @Test
+    public void testMemoryBudget() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getZsSlidePair();
+        ITree src = trees.getFirst().getRoot();
+        ITree dst = trees.getSecond().getRoot();
+        // Enough for the matrices of ZS, which then are complete, but not for the ones of RTED.
+        long budget = 2 * Double.BYTES * (src.getSize() + 1) * (dst.getSize() + 1);
+        RtedMatcher matcher = new RtedMatcher(src, dst, new MappingStore());
+        matcher.setMemoryBudget(budget);
+        assertTrue(matcher.estimateMemory() > budget);
+        matcher.match();
+        Matcher zs = new ZsMatcher(src, dst, new MappingStore());
+        zs.match();
+        assertEquals(zs.getMappingsAsSet(), matcher.getMappingsAsSet());
+
+        matcher = new RtedMatcher(src, dst, new MappingStore());
+        matcher.setMemoryBudget(budget);
+        matcher.setFallback(false);
+        try {
+            matcher.match();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(0, matcher.getMappings().size());
+        }
+    }
 }
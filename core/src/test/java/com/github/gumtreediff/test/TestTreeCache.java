@@ -0,0 +1,151 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.test;
+
+import com.github.gumtreediff.gen.CachingTreeGenerator;
+import com.github.gumtreediff.gen.TreeCache;
+import com.github.gumtreediff.gen.TreeGenerator;
+import com.github.gumtreediff.io.TreeIoUtils;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestTreeCache {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static class CountingGenerator extends TreeGenerator {
+
+        int count;
+
+        @Override
+        protected TreeContext generate(Reader r) throws IOException {
+            count++;
+            return TreeIoUtils.fromXml().generateFromReader(r);
+        }
+    }
+
+    public static class VersionedGenerator {
+    }
+
+    @Test
+    public void testVersionFollowsTheCode() throws Exception {
+        String name = VersionedGenerator.class.getName();
+        String file = name.replace('.', '/') + ".class";
+        Path root = folder.newFolder().toPath();
+        Path copy = root.resolve(file);
+        Files.createDirectories(copy.getParent());
+        try (InputStream in = VersionedGenerator.class.getClassLoader().getResourceAsStream(file)) {
+            Files.copy(in, copy);
+        }
+
+        String version = versionInNewLoader(root, name);
+        assertEquals(version, TreeCache.versionOf(loadInNewLoader(root, name)));
+        Files.write(copy.resolveSibling("Visitor.class"), new byte[] {1, 2, 3});
+        assertNotEquals(version, versionInNewLoader(root, name));
+    }
+
+    private static Class<?> loadInNewLoader(Path root, String name) throws Exception {
+        return new URLClassLoader(new URL[] {root.toUri().toURL()}, null).loadClass(name);
+    }
+
+    private static String versionInNewLoader(Path root, String name) throws Exception {
+        Class<?> clazz = loadInNewLoader(root, name);
+        assertNotSame(VersionedGenerator.class, clazz);
+        return TreeCache.versionOf(clazz);
+    }
+
+    @Test
+    public void testCachedTreesAreIdentical() throws Exception {
+        TreeContext expected = TreeLoader.load("/Dummy_big.xml");
+        String xml = TreeIoUtils.toXml(expected).toString();
+        TreeCache cache = new TreeCache(folder.getRoot().toPath(), 1024 * 1024);
+        CountingGenerator generator = new CountingGenerator();
+        CachingTreeGenerator caching = new CachingTreeGenerator(generator, "xml", "1", cache);
+
+        TreeContext first = caching.generateFromString(xml);
+        TreeContext second = caching.generateFromString(xml);
+        assertEquals(1, generator.count);
+        assertEquals(1, cache.getCount());
+        assertEquals(TreeIoUtils.toXml(first).toString(), TreeIoUtils.toXml(second).toString());
+        List<ITree> expectedTrees = expected.getRoot().getTrees();
+        List<ITree> actualTrees = second.getRoot().getTrees();
+        assertEquals(expectedTrees.size(), actualTrees.size());
+        for (int i = 0; i < expectedTrees.size(); i++) {
+            assertEquals(expectedTrees.get(i).getId(), actualTrees.get(i).getId());
+            assertEquals(expectedTrees.get(i).getHash(), actualTrees.get(i).getHash());
+            assertEquals(expectedTrees.get(i).getPos(), actualTrees.get(i).getPos());
+            assertEquals(expected.getTypeLabel(expectedTrees.get(i)), second.getTypeLabel(actualTrees.get(i)));
+        }
+
+        new CachingTreeGenerator(generator, "xml", "2", cache).generateFromString(xml);
+        assertEquals(2, generator.count);
+        TreeCache reopened = new TreeCache(folder.getRoot().toPath(), 1024 * 1024);
+        assertEquals(2, reopened.getCount());
+        new CachingTreeGenerator(generator, "xml", "1", reopened).generateFromString(xml);
+        assertEquals(2, generator.count);
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        String[] files = {"/Dummy_v0.xml", "/Dummy_v1.xml", "/action_v0.xml"};
+        TreeCache cache = new TreeCache(folder.getRoot().toPath(), Long.MAX_VALUE);
+        CountingGenerator generator = new CountingGenerator();
+        CachingTreeGenerator caching = new CachingTreeGenerator(generator, "xml", "1", cache);
+        for (String file : files)
+            caching.generateFromString(TreeIoUtils.toXml(TreeLoader.load(file)).toString());
+        long size = cache.getSize();
+
+        cache = new TreeCache(folder.getRoot().toPath(), size - 1);
+        assertEquals(2, cache.getCount());
+        assertTrue(cache.getSize() < size);
+    }
+
+    @Test
+    public void testFailingCacheWrite() throws Exception {
+        String xml = TreeIoUtils.toXml(TreeLoader.load("/Dummy_v0.xml")).toString();
+        TreeCache cache = new TreeCache(folder.getRoot().toPath(), Long.MAX_VALUE) {
+            @Override
+            public void put(String key, TreeContext context) throws IOException {
+                throw new IOException("Disk full");
+            }
+        };
+        CountingGenerator generator = new CountingGenerator();
+        TreeContext context = new CachingTreeGenerator(generator, "xml", "1", cache).generateFromString(xml);
+        assertNotNull(context);
+        assertEquals(1, generator.count);
+        assertEquals(0, cache.getCount());
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.test;
+
+import com.github.gumtreediff.actions.ActionGenerator;
+import com.github.gumtreediff.actions.LeavesClassifier;
+import com.github.gumtreediff.actions.RootAndLeavesClassifier;
+import com.github.gumtreediff.actions.RootsClassifier;
+import com.github.gumtreediff.actions.TreeClassifier;
+import com.github.gumtreediff.actions.model.Action;
+import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
+import com.github.gumtreediff.utils.Pair;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class TestTreeClassifier {
+
+    @Test
+    public void testWithActionExample() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getActionPair();
+        ITree src = trees.getFirst().getRoot();
+        ITree dst = trees.getSecond().getRoot();
+        MappingStore ms = new MappingStore();
+        ms.link(src, dst);
+        ms.link(src.getChild(1), dst.getChild(0));
+        ms.link(src.getChild(1).getChild(0), dst.getChild(0).getChild(0));
+        ms.link(src.getChild(1).getChild(1), dst.getChild(0).getChild(1));
+        ms.link(src.getChild(0), dst.getChild(1).getChild(0));
+        ms.link(src.getChild(0).getChild(0), dst.getChild(1).getChild(0).getChild(0));
+        List<Action> actions = new ActionGenerator(src, dst, ms).generate();
+
+        TreeClassifier c = new RootsClassifier(trees.getFirst(), trees.getSecond(), ms.asSet(), actions);
+        assertEquals(new HashSet<>(Arrays.asList(dst.getChild(1))), c.getDstAddTrees());
+        assertEquals(new HashSet<>(Arrays.asList(src.getChild(0))), c.getSrcMvTrees());
+        assertEquals(new HashSet<>(Arrays.asList(dst.getChild(1).getChild(0))), c.getDstMvTrees());
+        assertEquals(new HashSet<>(Arrays.asList(src.getChild(0).getChild(0))), c.getSrcUpdTrees());
+        assertEquals(new HashSet<>(Arrays.asList(src.getChild(2))), c.getSrcDelTrees());
+        assertTrue(c.getSrcUpdTrees().contains(src.getChild(0).getChild(0)));
+        assertFalse(c.getSrcUpdTrees().contains(src.getChild(1)));
+        assertFalse(c.getSrcDelTrees().contains(dst.getChild(0)));
+
+        TreeClassifier rl = new RootAndLeavesClassifier(trees.getFirst(), trees.getSecond(), ms.asSet(), actions);
+        assertEquals(c.getDstAddTrees(), rl.getDstAddTrees());
+        assertEquals(c.getSrcDelTrees(), rl.getSrcDelTrees());
+
+        // The moved e contains the updated f.
+        TreeClassifier l = new LeavesClassifier(trees.getFirst(), trees.getSecond(), ms.asSet(), actions);
+        assertTrue(l.getSrcMvTrees().isEmpty());
+        assertEquals(c.getSrcUpdTrees(), l.getSrcUpdTrees());
+    }
+
+    @Test
+    public void testMutableClasses() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getActionPair();
+        ITree src = trees.getFirst().getRoot();
+        ITree dst = trees.getSecond().getRoot();
+        MappingStore ms = new MappingStore();
+        ms.link(src, dst);
+        List<Action> actions = new ActionGenerator(src, dst, ms).generate();
+        TreeClassifier c = new LeavesClassifier(trees.getFirst(), trees.getSecond(), ms.asSet(), actions);
+
+        Set<ITree> deleted = c.getSrcDelTrees();
+        Set<ITree> expected = new HashSet<>(deleted);
+        assertTrue(expected.size() > 2);
+        ITree first = deleted.iterator().next();
+        assertTrue(deleted.removeIf(t -> t == first));
+        expected.remove(first);
+        assertEquals(expected, deleted);
+
+        Iterator<ITree> it = deleted.iterator();
+        ITree second = it.next();
+        it.remove();
+        expected.remove(second);
+        assertFalse(deleted.contains(second));
+        assertEquals(expected, deleted);
+
+        assertTrue(deleted.add(dst));
+        assertTrue(deleted.retainAll(Arrays.asList(dst, deleted.iterator().next())));
+        assertEquals(2, deleted.size());
+        assertTrue(deleted.removeIf(t -> t == dst));
+        assertEquals(1, deleted.size());
+        assertFalse(deleted.contains(dst));
+        deleted.clear();
+        assertTrue(deleted.isEmpty());
+        assertFalse(deleted.iterator().hasNext());
+    }
+}
@@ -23,17 +23,23 @@ package com.github.gumtreediff.test;
 import com.github.gumtreediff.io.TreeIoUtils;
 import com.github.gumtreediff.tree.ITree;
 import com.github.gumtreediff.tree.TreeContext;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.util.List;
 import java.util.ListIterator;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 
 import static org.junit.Assert.*;
 
 public class TestTreeIoUtils {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void testSerializeTree() throws Exception {
         TreeContext tc = new TreeContext();
@@ -78,4 +84,66 @@ public class TestTreeIoUtils {
         }
         assertFalse(it.hasNext());
     }
+
+    @Test
+    public void testBinaryRoundTrip() throws Exception {
+        TreeContext tc = TreeLoader.load("/Dummy_big.xml");
+        tc.getRoot().getChild(0).setMetadata("foo", 42);
+        tc.setMetadata("bar", "baz");
+        tc.export("foo", "bar");
+
+        byte[] bytes = TreeIoUtils.toBinary(tc).toByteArray();
+        TreeContext.MetadataUnserializers unserializers = new TreeContext.MetadataUnserializers();
+        unserializers.add("foo", Integer::parseInt);
+        unserializers.add("bar", x -> x);
+        TreeContext tca = TreeIoUtils.fromBinary(unserializers).generateFromBytes(bytes);
+        tca.export("foo", "bar");
+
+        assertEquals(TreeIoUtils.toXml(tc).toString(), TreeIoUtils.toXml(tca).toString());
+        List<ITree> expected = tc.getRoot().getTrees();
+        List<ITree> actual = tca.getRoot().getTrees();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            assertEquals(expected.get(i).getHash(), actual.get(i).getHash());
+            assertEquals(expected.get(i).getLength(), actual.get(i).getLength());
+        }
+        assertEquals(42, tca.getRoot().getChild(0).getMetadata("foo"));
+        assertEquals("baz", tca.getMetadata("bar"));
+        assertTrue(bytes.length * 5 < TreeIoUtils.toXml(tc).toString().length());
+
+        try {
+            TreeIoUtils.fromBinary().generateFromBytes(new byte[] {1, 2, 3, 4, 5});
+            fail();
+        } catch (java.io.IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testXmlRoundTrip() throws Exception {
+        TreeContext tc = TreeLoader.load("/Dummy_big.xml");
+        String xml = TreeIoUtils.toXml(tc).toString();
+        File file = folder.newFile("Dummy_big.gxml");
+        TreeIoUtils.toXml(tc).writeTo(file);
+
+        TreeIoUtils.XmlInternalGenerator compact = TreeIoUtils.fromXml();
+        compact.setCompact(true);
+        TreeContext[] contexts = {
+            TreeIoUtils.fromXml().generateFromString(xml),
+            TreeIoUtils.fromXml().generateFromFile(file),
+            compact.generateFromFile(file)
+        };
+        for (TreeContext tca : contexts) {
+            assertTrue(tc.getRoot().isIsomorphicTo(tca.getRoot()));
+            assertEquals(xml, TreeIoUtils.toXml(tca).toString());
+        }
+
+        try {
+            TreeIoUtils.fromXml().generateFromString("<root><tree label=\"a\"></tree></root>");
+            fail();
+        } catch (java.io.IOException e) {
+            // expected
+        }
+    }
 }
@@ -24,10 +24,12 @@ import static org.junit.Assert.*;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
 import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.Tree;
 import com.github.gumtreediff.tree.TreeUtils;
 
 public class TestTreeUtils {
@@ -184,4 +186,49 @@ public class TestTreeUtils {
         assertNull(leaf);
     }
 
+    @Test
+    public void testIncrementalUpdates() {
+        ITree root = TreeLoader.getDummyBig();
+        Random random = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            List<ITree> trees = TreeUtils.preOrder(root);
+            ITree t = trees.get(1 + random.nextInt(trees.size() - 1));
+            switch (random.nextInt(3)) {
+                case 0:
+                    TreeUtils.removeChild(t);
+                    List<ITree> parents = TreeUtils.preOrder(root);
+                    ITree parent = parents.get(random.nextInt(parents.size()));
+                    TreeUtils.insertChild(parent, t, random.nextInt(parent.getChildren().size() + 1));
+                    break;
+                case 1:
+                    t.setLabel("l" + random.nextInt(5));
+                    TreeUtils.updateAncestors(t);
+                    break;
+                default:
+                    TreeUtils.insertChild(t, new Tree(random.nextInt(3), "new"),
+                            random.nextInt(t.getChildren().size() + 1));
+            }
+            assertMetricsUpToDate(root);
+        }
+        int size = root.getSize();
+        ITree removed = root.getChild(0);
+        TreeUtils.removeChild(removed);
+        assertNull(removed.getParent());
+        assertEquals(size - removed.getSize(), root.getSize());
+        assertMetricsUpToDate(root);
+    }
+
+    private static void assertMetricsUpToDate(ITree root) {
+        List<ITree> trees = TreeUtils.preOrder(root);
+        int[][] metrics = new int[trees.size()][];
+        for (int i = 0; i < trees.size(); i++) {
+            ITree t = trees.get(i);
+            metrics[i] = new int[] {t.getSize(), t.getHeight(), t.getDepth(), t.getHash()};
+        }
+        root.refresh();
+        for (int i = 0; i < trees.size(); i++) {
+            ITree t = trees.get(i);
+            assertArrayEquals(new int[] {t.getSize(), t.getHeight(), t.getDepth(), t.getHash()}, metrics[i]);
+        }
+    }
 }
@@ -20,6 +20,7 @@
 
 package com.github.gumtreediff.test;
 
+import com.github.gumtreediff.matchers.Mapping;
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.Matcher;
 import com.github.gumtreediff.matchers.optimal.zs.ZsMatcher;
@@ -28,6 +29,11 @@ import com.github.gumtreediff.utils.Pair;
 import com.github.gumtreediff.tree.TreeContext;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -63,4 +69,73 @@ public class TestZsMatcher {
         assertTrue(matcher.getMappings().has(src.getChild(0).getChild(2), dst.getChild(2)));
     }
 
+    @Test
+    public void testIgnoredSubtrees() {
+        ZsMatcher.Workspace workspace = new ZsMatcher.Workspace();
+        Pair<TreeContext, TreeContext> big = TreeLoader.getActionPair();
+        Pair<TreeContext, TreeContext> small = TreeLoader.getZsSlidePair();
+        for (Pair<TreeContext, TreeContext> trees : Arrays.asList(big, small, big)) {
+            ITree src = trees.getFirst().getRoot();
+            ITree dst = trees.getSecond().getRoot();
+            Predicate<ITree> srcIgnored = t -> t.getId() % 3 == 1;
+            Predicate<ITree> dstIgnored = t -> t.getId() % 4 == 2;
+
+            ZsMatcher view = new ZsMatcher(src, dst, new MappingStore(), srcIgnored, dstIgnored, workspace);
+            view.match();
+
+            ITree srcCopy = removeIgnored(src.deepCopy(), srcIgnored);
+            ITree dstCopy = removeIgnored(dst.deepCopy(), dstIgnored);
+            Matcher copies = new ZsMatcher(srcCopy, dstCopy, new MappingStore());
+            copies.match();
+
+            assertEquals(srcCopy.getSize(), view.getSrcSize());
+            assertEquals(dstCopy.getSize(), view.getDstSize());
+            assertEquals(ids(copies.getMappings()), ids(view.getMappings()));
+        }
+    }
+
+    @Test
+    public void testMaxDistance() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getActionPair();
+        ITree src = trees.getFirst().getRoot();
+        ITree dst = trees.getSecond().getRoot();
+        Matcher full = new ZsMatcher(src, dst, new MappingStore());
+        full.match();
+
+        ZsMatcher.Workspace workspace = new ZsMatcher.Workspace();
+        ZsMatcher wide = new ZsMatcher(src, dst, new MappingStore(), t -> false, t -> false, workspace);
+        wide.setMaxDistance(src.getSize() + dst.getSize());
+        wide.match();
+        assertEquals(ids(full.getMappings()), ids(wide.getMappings()));
+
+        ZsMatcher narrow = new ZsMatcher(src, dst, new MappingStore(), t -> false, t -> false, workspace);
+        narrow.setMaxCells(1);
+        narrow.match();
+        assertEquals(0, narrow.getMappings().size());
+
+        ZsMatcher unbounded = new ZsMatcher(src, dst, new MappingStore(), t -> false, t -> false, workspace);
+        unbounded.setMaxCells(0);
+        unbounded.match();
+        assertEquals(ids(full.getMappings()), ids(unbounded.getMappings()));
+
+        ZsMatcher tooFar = new ZsMatcher(src, dst.getChild(0), new MappingStore(), t -> false, t -> false, workspace);
+        tooFar.setMaxDistance(src.getSize() - dst.getChild(0).getSize() - 1);
+        tooFar.match();
+        assertEquals(0, tooFar.getMappings().size());
+    }
+
+    private static ITree removeIgnored(ITree root, Predicate<ITree> ignored) {
+        for (ITree t : root.getDescendants())
+            if (t.getParent() != null && ignored.test(t))
+                t.getParent().getChildren().remove(t);
+        root.refresh();
+        return root;
+    }
+
+    private static Set<String> ids(MappingStore mappings) {
+        Set<String> ids = new HashSet<>();
+        for (Mapping m : mappings)
+            ids.add(m.getFirst().getId() + "-" + m.getSecond().getId());
+        return ids;
+    }
 }